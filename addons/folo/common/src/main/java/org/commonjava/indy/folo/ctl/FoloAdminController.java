@@ -54,7 +54,9 @@ import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -230,6 +232,38 @@ public class FoloAdminController
         return file;
     }
 
+    /**
+     * @return the paths in a tracking record, uploads first, each with the store it was tracked in, sorted by path
+     * within uploads and downloads. A path tracked more than once is only listed the first time.
+     */
+    public Map<String, StoreKey> getRepositoryEntries( final String id )
+            throws IndyWorkflowException
+    {
+        final TrackingKey tk = new TrackingKey( id );
+        final TrackedContent record = recordManager.get( tk );
+        if ( record == null )
+        {
+            throw new IndyWorkflowException( ApplicationStatus.NOT_FOUND.code(),
+                                             "No tracking record available for: %s. Maybe you forgot to seal it?", tk );
+        }
+
+        final Map<String, StoreKey> entries = new LinkedHashMap<>();
+        addEntries( record.getUploads(), entries );
+        addEntries( record.getDownloads(), entries );
+        return entries;
+    }
+
+    private void addEntries( final Set<TrackedContentEntry> tracked, final Map<String, StoreKey> entries )
+    {
+        if ( tracked != null )
+        {
+            tracked.stream()
+                   .filter( entry -> entry.getPath() != null )
+                   .sorted( Comparator.comparing( TrackedContentEntry::getPath ) )
+                   .forEach( entry -> entries.putIfAbsent( entry.getPath(), entry.getStoreKey() ) );
+        }
+    }
+
     private void addTransfers( final Set<TrackedContentEntry> entries, final List<Transfer> items,
                                final String trackingId, final Set<String> seenPaths )
             throws IndyWorkflowException
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.ctl;
+
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.folo.conf.FoloConfig;
+import org.commonjava.indy.folo.data.FoloRecordCache;
+import org.commonjava.indy.folo.model.StoreEffect;
+import org.commonjava.indy.folo.model.TrackedContent;
+import org.commonjava.indy.folo.model.TrackedContentEntry;
+import org.commonjava.indy.folo.model.TrackingKey;
+import org.commonjava.indy.model.core.AccessChannel;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class FoloAdminControllerTest
+{
+    private static final StoreKey HOSTED = new StoreKey( MAVEN_PKG_KEY, StoreType.hosted, "local" );
+
+    private static final StoreKey REMOTE = new StoreKey( MAVEN_PKG_KEY, StoreType.remote, "central" );
+
+    private static EmbeddedCacheManager cacheManager;
+
+    private static Cache<TrackingKey, TrackedContent> sealed;
+
+    private static Cache<TrackedContentEntry, TrackedContentEntry> inProgress;
+
+    private FoloRecordCache recordCache;
+
+    private FoloAdminController controller;
+
+    @BeforeClass
+    public static void setupClass()
+    {
+        cacheManager = new DefaultCacheManager( new ConfigurationBuilder().simpleCache( true ).build() );
+
+        sealed = cacheManager.getCache( "sealed", true );
+        inProgress = cacheManager.getCache( "in-progress", true );
+    }
+
+    @Before
+    public void setup()
+    {
+        recordCache = new FoloRecordCache( inProgress, sealed );
+        controller = new FoloAdminController( new FoloConfig(), recordCache, null, null, null );
+    }
+
+    @After
+    public void teardown()
+    {
+        inProgress.clear();
+        sealed.clear();
+    }
+
+    @Test
+    public void repositoryEntriesHaveUploadsFirstAndEachPathOnce()
+            throws Exception
+    {
+        final TrackingKey key = new TrackingKey( "repository-entries" );
+        record( key, HOSTED, "/org/foo/2/foo-2.jar", StoreEffect.UPLOAD );
+        record( key, HOSTED, "/org/foo/1/foo-1.jar", StoreEffect.UPLOAD );
+        record( key, REMOTE, "/org/bar/1/bar-1.jar", StoreEffect.DOWNLOAD );
+        record( key, REMOTE, "/org/foo/1/foo-1.jar", StoreEffect.DOWNLOAD );
+        record( key, REMOTE, "/com/baz/1/baz-1.jar", StoreEffect.DOWNLOAD );
+        recordCache.seal( key );
+
+        final Map<String, StoreKey> entries = controller.getRepositoryEntries( key.getId() );
+
+        assertThat( new ArrayList<>( entries.keySet() ),
+                    equalTo( Arrays.asList( "/org/foo/1/foo-1.jar", "/org/foo/2/foo-2.jar", "/com/baz/1/baz-1.jar",
+                                            "/org/bar/1/bar-1.jar" ) ) );
+        assertThat( entries.get( "/org/foo/1/foo-1.jar" ), equalTo( HOSTED ) );
+        assertThat( entries.get( "/org/bar/1/bar-1.jar" ), equalTo( REMOTE ) );
+    }
+
+    @Test
+    public void repositoryEntriesOfMissingRecord()
+    {
+        try
+        {
+            controller.getRepositoryEntries( "no-such-record" );
+            fail( "Expected a missing tracking record to fail" );
+        }
+        catch ( final IndyWorkflowException e )
+        {
+            assertThat( e.getStatus(), equalTo( 404 ) );
+        }
+    }
+
+    private void record( final TrackingKey key, final StoreKey storeKey, final String path, final StoreEffect effect )
+            throws Exception
+    {
+        recordCache.recordArtifact( new TrackedContentEntry( key, storeKey, AccessChannel.NATIVE, "", path, effect,
+                                                             1L, "", "", "" ) );
+    }
+}
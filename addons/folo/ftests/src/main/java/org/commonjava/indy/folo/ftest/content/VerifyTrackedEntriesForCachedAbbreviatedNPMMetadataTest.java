@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.ftest.content;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.commonjava.indy.client.core.IndyClientHttp;
+import org.commonjava.indy.client.core.IndyClientModule;
+import org.commonjava.indy.client.core.module.IndyRawHttpModule;
+import org.commonjava.indy.folo.client.IndyFoloAdminClientModule;
+import org.commonjava.indy.folo.client.IndyFoloContentClientModule;
+import org.commonjava.indy.folo.dto.TrackedContentDTO;
+import org.commonjava.indy.folo.dto.TrackedContentEntryDTO;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.test.fixture.core.CoreServerFixture;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+import static org.commonjava.indy.model.core.StoreType.remote;
+import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * <b>GIVEN:</b>
+ * <ul>
+ *     <li>The npm metadata cache is enabled</li>
+ *     <li>A package.json in a remote repository, already retrieved (and cached) in abbreviated form through a
+ *     tracking id</li>
+ *     <li>The tracking record is cleared</li>
+ * </ul>
+ *
+ * <br/>
+ * <b>WHEN:</b>
+ * <ul>
+ *     <li>The abbreviated package.json is retrieved again through the same tracking id, from the metadata cache</li>
+ * </ul>
+ *
+ * <br/>
+ * <b>THEN:</b>
+ * <ul>
+ *     <li>The download is in the tracking record</li>
+ * </ul>
+ */
+public class VerifyTrackedEntriesForCachedAbbreviatedNPMMetadataTest
+        extends AbstractNPMFoloContentManagementTest
+{
+
+    private static final String ABBREVIATED_CONTENT_TYPE = "application/vnd.npm.install-v1+json";
+
+    @Test
+    public void run()
+            throws Exception
+    {
+        final String packageContent =
+                "{\"name\": \"jquery\",\n" + "\"description\": \"JavaScript library for DOM operations\",\n" + "\"license\": \"MIT\"}";
+
+        final String packagePath = "jquery";
+
+        final String trackingId = newName();
+
+        npmjsServer.expect( npmjsServer.formatUrl( packagePath ), 200, new ByteArrayInputStream( packageContent.getBytes() ) );
+
+        IndyFoloAdminClientModule adminModule = client.module( IndyFoloAdminClientModule.class );
+
+        final StoreKey storeKey = new StoreKey( NPM_PKG_KEY, remote, NPMJS );
+
+        getAbbreviated( trackingId, storeKey, packagePath );
+
+        adminModule.clearTrackingRecord( trackingId );
+
+        assertThat( getAbbreviated( trackingId, storeKey, packagePath ).contains( "jquery" ), equalTo( true ) );
+
+        boolean success = adminModule.sealTrackingRecord( trackingId );
+        assertThat( success, equalTo( true ) );
+
+        final TrackedContentDTO report = adminModule.getTrackingReport( trackingId );
+        assertThat( report, notNullValue() );
+
+        final Set<TrackedContentEntryDTO> downloads = report.getDownloads();
+        assertThat( downloads, notNullValue() );
+        assertThat( downloads.size(), equalTo( 1 ) );
+        assertThat( downloads.iterator().next().getPath(), equalTo( "/jquery" ) );
+    }
+
+    private String getAbbreviated( final String trackingId, final StoreKey storeKey, final String path )
+            throws Exception
+    {
+        final IndyClientHttp http = client.module( IndyRawHttpModule.class ).getHttp();
+        final String url = client.module( IndyFoloContentClientModule.class ).contentUrl( trackingId, storeKey, path );
+
+        final HttpGet request = http.newRawGet( url );
+        request.addHeader( "Accept", ABBREVIATED_CONTENT_TYPE );
+
+        try (CloseableHttpClient hc = http.newClient();
+             CloseableHttpResponse response = hc.execute( request ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            return IOUtils.toString( response.getEntity().getContent() );
+        }
+    }
+
+    @Override
+    protected Collection<IndyClientModule> getAdditionalClientModules()
+    {
+        return Arrays.asList( new IndyRawHttpModule(), new IndyFoloContentClientModule(),
+                              new IndyFoloAdminClientModule() );
+    }
+
+    @Override
+    protected void initTestConfig( CoreServerFixture fixture )
+            throws IOException
+    {
+        writeConfigFile( "main.conf", "npm.metadata.cache.enabled=true\n\nInclude conf.d/*.conf\n" );
+    }
+}
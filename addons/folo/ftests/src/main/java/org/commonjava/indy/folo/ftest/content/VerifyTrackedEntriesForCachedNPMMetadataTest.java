@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.ftest.content;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.folo.client.IndyFoloAdminClientModule;
+import org.commonjava.indy.folo.client.IndyFoloContentClientModule;
+import org.commonjava.indy.folo.dto.TrackedContentDTO;
+import org.commonjava.indy.folo.dto.TrackedContentEntryDTO;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.test.fixture.core.CoreServerFixture;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+import static org.commonjava.indy.model.core.StoreType.remote;
+import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * <b>GIVEN:</b>
+ * <ul>
+ *     <li>The npm metadata cache is enabled</li>
+ *     <li>A package.json in a remote repository, already retrieved (and cached) through a tracking id</li>
+ *     <li>The tracking record is cleared</li>
+ * </ul>
+ *
+ * <br/>
+ * <b>WHEN:</b>
+ * <ul>
+ *     <li>The package.json is retrieved again through the same tracking id, from the metadata cache</li>
+ * </ul>
+ *
+ * <br/>
+ * <b>THEN:</b>
+ * <ul>
+ *     <li>The download is in the tracking record</li>
+ * </ul>
+ */
+public class VerifyTrackedEntriesForCachedNPMMetadataTest
+        extends AbstractNPMFoloContentManagementTest
+{
+
+    @Test
+    public void run()
+            throws Exception
+    {
+        final String packageContent =
+                "{\"name\": \"jquery\",\n" + "\"description\": \"JavaScript library for DOM operations\",\n" + "\"license\": \"MIT\"}";
+
+        final String packagePath = "jquery";
+
+        final String trackingId = newName();
+
+        npmjsServer.expect( npmjsServer.formatUrl( packagePath ), 200, new ByteArrayInputStream( packageContent.getBytes() ) );
+
+        IndyFoloContentClientModule folo = client.module( IndyFoloContentClientModule.class );
+        IndyFoloAdminClientModule adminModule = client.module( IndyFoloAdminClientModule.class );
+
+        final StoreKey storeKey = new StoreKey( NPM_PKG_KEY, remote, NPMJS );
+
+        try (InputStream in = folo.get( trackingId, storeKey, packagePath ))
+        {
+            IOUtils.toString( in );
+        }
+
+        adminModule.clearTrackingRecord( trackingId );
+
+        try (InputStream in = folo.get( trackingId, storeKey, packagePath ))
+        {
+            assertThat( IOUtils.toString( in ).contains( "jquery" ), equalTo( true ) );
+        }
+
+        boolean success = adminModule.sealTrackingRecord( trackingId );
+        assertThat( success, equalTo( true ) );
+
+        final TrackedContentDTO report = adminModule.getTrackingReport( trackingId );
+        assertThat( report, notNullValue() );
+
+        final Set<TrackedContentEntryDTO> downloads = report.getDownloads();
+        assertThat( downloads, notNullValue() );
+        assertThat( downloads.size(), equalTo( 1 ) );
+        assertThat( downloads.iterator().next().getPath(), equalTo( "/jquery" ) );
+    }
+
+    @Override
+    protected void initTestConfig( CoreServerFixture fixture )
+            throws IOException
+    {
+        writeConfigFile( "main.conf", "npm.metadata.cache.enabled=true\n\nInclude conf.d/*.conf\n" );
+    }
+}
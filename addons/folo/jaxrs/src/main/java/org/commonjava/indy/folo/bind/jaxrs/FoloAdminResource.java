@@ -51,6 +51,7 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
@@ -151,6 +152,28 @@ public class FoloAdminResource
         return null;
     }
 
+    @ApiOperation( "Retrieve the content referenced in a tracking record as one zip or tar archive, built while it is sent." )
+    @ApiResponses( { @ApiResponse( code = 200, message = "Archive of the tracked content, uploads first" ),
+                           @ApiResponse( code = 400, message = "Unknown format" ),
+                           @ApiResponse( code = 404, message = "No such tracking record" ) } )
+    @Path( "/{id}/repo/archive" )
+    @GET
+    public Response getRepositoryArchive( @ApiParam( "User-assigned tracking session key" ) @PathParam( "id" ) String id,
+                                          @ApiParam( value = "The archive format", allowableValues = "zip,tar" )
+                                          @QueryParam( "format" ) String format )
+    {
+        try
+        {
+            return handler.doArchive( controller.getRepositoryEntries( id ), format, id, new EventMetadata() );
+        }
+        catch ( IndyWorkflowException e )
+        {
+            logger.error( String.format( "Failed to archive tracked content of: %s. Reason: %s", id, e.getMessage() ),
+                          e );
+            return responseHelper.formatResponse( e );
+        }
+    }
+
     @ApiOperation( "Alias of /{id}/record, returns the tracking record for the specified key" )
     @ApiResponses( { @ApiResponse( code = 404, message = "No such tracking record exists." ),
                            @ApiResponse( code = 200, message = "Tracking record",
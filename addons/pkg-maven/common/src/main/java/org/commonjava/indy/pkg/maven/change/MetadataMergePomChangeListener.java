@@ -17,6 +17,7 @@ package org.commonjava.indy.pkg.maven.change;
 
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.content.DownloadManager;
+import org.commonjava.indy.content.InvalidationBatch;
 import org.commonjava.indy.core.change.event.IndyFileEventManager;
 import org.commonjava.indy.core.conf.IndyEventHandlerConfig;
 import org.commonjava.indy.core.content.group.GroupMergeHelper;
@@ -111,6 +112,20 @@ public class MetadataMergePomChangeListener
         final String clearPath = getMetadataPath( path );
         logger.info( "Pom file {} {}, will clean matched metadata file {}, store: {}", path, eventOps, clearPath, key );
 
+        // when many poms of the same artifact are deleted together, clear its metadata once at the end
+        final InvalidationBatch batch = InvalidationBatch.get( eventMetadata );
+        if ( batch != null && hosted == key.getType() )
+        {
+            batch.defer( getClass().getSimpleName() + ":" + key + ":" + clearPath,
+                         () -> metaClear( key, clearPath, eventMetadata ) );
+            return;
+        }
+
+        metaClear( key, clearPath, eventMetadata );
+    }
+
+    private void metaClear( final StoreKey key, final String clearPath, final EventMetadata eventMetadata )
+    {
         try
         {
             if ( hosted == key.getType() )
@@ -132,7 +147,7 @@ public class MetadataMergePomChangeListener
                     logger.info( "Metadata file {} in store {} cleared.", clearPath, key );
                 }
 
-                final Set<Group> groups = dataManager.affectedBy( Arrays.asList( key ), event.getEventMetadata() );
+                final Set<Group> groups = dataManager.affectedBy( Arrays.asList( key ), eventMetadata );
 
                 if ( groups != null )
                 {
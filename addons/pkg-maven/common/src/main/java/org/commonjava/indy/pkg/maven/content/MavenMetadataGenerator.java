@@ -15,6 +15,7 @@
  */
 package org.commonjava.indy.pkg.maven.content;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.artifact.repository.metadata.Metadata;
@@ -47,6 +48,7 @@ import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.model.util.HttpUtils;
 import org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger;
 import org.commonjava.indy.pkg.maven.content.group.MavenMetadataProvider;
 import org.commonjava.indy.util.LocationUtils;
@@ -93,6 +95,7 @@ import static org.commonjava.atlas.maven.ident.util.SnapshotUtils.LOCAL_SNAPSHOT
 import static org.commonjava.atlas.maven.ident.util.SnapshotUtils.generateUpdateTimestamp;
 import static org.commonjava.atlas.maven.ident.util.SnapshotUtils.getCurrentTimestamp;
 import static org.commonjava.indy.core.content.PathMaskChecker.checkMavenMetadataMask;
+import static org.commonjava.indy.core.content.group.GroupMergeHelper.GROUP_METADATA_ETAG;
 import static org.commonjava.indy.core.content.group.GroupMergeHelper.GROUP_METADATA_EXISTS;
 import static org.commonjava.indy.core.content.group.GroupMergeHelper.GROUP_METADATA_GENERATED;
 import static org.commonjava.indy.core.ctl.PoolUtils.detectOverloadVoid;
@@ -389,6 +392,7 @@ public class MavenMetadataGenerator
             logger.trace( "Raw metadata file exists for group {} of path {}, no need to regenerate.", group.getKey(),
                           path );
             eventMetadata.set( GROUP_METADATA_EXISTS, true );
+            setETagFromCache( group, path, eventMetadata );
             return rawTarget;
         }
 
@@ -446,6 +450,7 @@ public class MavenMetadataGenerator
                         eventMetadata.set( GROUP_METADATA_GENERATED, true );
                         MetadataInfo info = new MetadataInfo( md );
                         info.setMetadataMergeInfo( mergeInfo );
+                        info.setEtag( HttpUtils.formatETag( DigestUtils.sha1Hex( merged ) ) );
                         putToMetadataCache( group.getKey(), mergePath, info );
                     }
                     catch ( final IOException e )
@@ -486,6 +491,7 @@ public class MavenMetadataGenerator
                 {
                     logger.debug( "This is a checksum file, return the original path {}", path );
                 }
+                setETagFromCache( group, path, eventMetadata );
                 return original;
             }
         }
@@ -506,6 +512,24 @@ public class MavenMetadataGenerator
         return null;
     }
 
+    /**
+     * Passes the ETag recorded with the merged metadata on to whoever serves it, so it can be revalidated without
+     * reading it. Checksum files of the metadata get theirs from their own checksums.
+     */
+    private void setETagFromCache( final Group group, final String path, final EventMetadata eventMetadata )
+    {
+        if ( !path.endsWith( MavenMetadataMerger.METADATA_NAME ) )
+        {
+            return;
+        }
+
+        final MetadataInfo info = getMetaInfoFromCache( group.getKey(), path );
+        if ( info != null && info.getEtag() != null )
+        {
+            eventMetadata.set( GROUP_METADATA_ETAG, info.getEtag() );
+        }
+    }
+
     private String computeKey( final Group group, final String path )
     {
         return group.getKey().toString() + "-" + path;
@@ -560,11 +584,13 @@ public class MavenMetadataGenerator
             toMergePath = normalize( normalize( parentPath( toMergePath ) ), MavenMetadataMerger.METADATA_NAME );
         }
 
-        Metadata meta = getMetaFromCache( group.getKey(), toMergePath );
+        MetadataInfo cached = getMetaInfoFromCache( group.getKey(), toMergePath );
 
-        if ( meta != null )
+        if ( cached != null && cached.getMetadata() != null )
         {
-            return meta;
+            // keep the contributors, so the merge info written (and cached) again doesn't lose them
+            contributingMembers.addAll( helper.getKeysFromMergeInfo( cached.getMetadataMergeInfo() ) );
+            return cached.getMetadata();
         }
 
         Metadata master = new Metadata();
@@ -0,0 +1,805 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.commonjava.atlas.maven.ident.util.SnapshotUtils;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.util.IdempotentCloseOutputStream;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+import org.commonjava.o11yphant.metrics.api.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Filters a maven-metadata.xml on its way to storage, in one pass over the bytes as they are written, removing the
+ * snapshot or release versions the location doesn't allow:
+ * <ul>
+ *     <li><code>versioning/versions/version</code> elements with a prohibited version are dropped</li>
+ *     <li>a prohibited <code>versioning/latest</code> is replaced by the last remaining version (or emptied). If it
+ *     comes before the versions, it is held back and written right after <code>&lt;/versions&gt;</code></li>
+ *     <li><code>versioning/release</code> is emptied when releases are not allowed</li>
+ *     <li>the content of <code>versioning/snapshot</code> and <code>versioning/snapshotVersions</code> is dropped when
+ *     snapshots are not allowed</li>
+ * </ul>
+ * Everything else is copied as it comes. Only the markup or element currently being looked at is kept in memory,
+ * bounded by {@link #MAX_TOKEN_LENGTH}; content that doesn't fit, or isn't well-formed, is copied unfiltered from there
+ * on.
+ * <p>
+ * The JDK's StAX parser pulls from an input stream, so it can't be fed from the writes of an output stream without a
+ * second thread; this filter tokenizes just the markup it needs instead. UTF-8 never encodes other characters with
+ * ASCII bytes, so this works on the raw bytes.
+ */
+final class MetadataFilteringOutputStream
+        extends IdempotentCloseOutputStream
+{
+    private static final String TIMER = "io.maven.metadata.out.filter";
+
+    static final int MAX_TOKEN_LENGTH = 64 * 1024;
+
+    private static final int MAX_DEPTH = 64;
+
+    private static final byte[] COMMENT_END = "-->".getBytes( UTF_8 );
+
+    private static final byte[] CDATA_END = "]]>".getBytes( UTF_8 );
+
+    private static final byte[] PI_END = "?>".getBytes( UTF_8 );
+
+    private static final byte[] DECL_END = ">".getBytes( UTF_8 );
+
+    private static final String VERSIONING = "versioning";
+
+    private static final String VERSIONS = "versions";
+
+    private static final String VERSION = "version";
+
+    private static final String LATEST = "latest";
+
+    private static final String RELEASE = "release";
+
+    private static final String SNAPSHOT = "snapshot";
+
+    private static final String SNAPSHOT_VERSIONS = "snapshotVersions";
+
+    private enum Capture
+    {
+        NONE, VERSION, LATEST, RELEASE
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( this.getClass() );
+
+    private final boolean allowsSnapshots;
+
+    private final boolean allowsReleases;
+
+    private final Transfer transfer;
+
+    private final DefaultMetricsManager metricsManager;
+
+    private final Deque<String> elements = new ArrayDeque<>();
+
+    // bytes of the markup being read, from its '<'
+    private final Bytes markup = new Bytes();
+
+    // start tag and content of the element being captured (version, latest or release)
+    private final Bytes captured = new Bytes();
+
+    // whitespace between elements, written before the next thing that is written (dropped with a dropped element)
+    private final Bytes whitespace = new Bytes();
+
+    private final Bytes output = new Bytes();
+
+    private final Bytes discarded = new Bytes();
+
+    private boolean inMarkup;
+
+    // terminator of a comment, CDATA section, processing instruction or declaration being copied; null for tags
+    private byte[] markupEnd;
+
+    // KMP prefix function of markupEnd: length of the longest proper prefix that is also a suffix of end[0..i]
+    private int[] markupEndBorders;
+
+    private int markupEndMatched;
+
+    private byte quote;
+
+    private Capture capture = Capture.NONE;
+
+    private int captureDepth;
+
+    // depth of the snapshot element whose content is dropped, or -1
+    private int droppingDepth = -1;
+
+    private boolean versionsDone;
+
+    private String lastAllowedVersion;
+
+    private byte[] heldLatestStart;
+
+    private byte[] heldLatestEnd;
+
+    // gave up on filtering, everything is copied from here on
+    private boolean copying;
+
+    private boolean finished;
+
+    MetadataFilteringOutputStream( final OutputStream stream, final boolean allowsSnapshots,
+                                   final boolean allowsReleases, final Transfer transfer,
+                                   final DefaultMetricsManager metricsManager )
+    {
+        super( stream );
+        this.allowsSnapshots = allowsSnapshots;
+        this.allowsReleases = allowsReleases;
+        this.transfer = transfer;
+        this.metricsManager = metricsManager;
+    }
+
+    @Override
+    public void write( final int b )
+            throws IOException
+    {
+        process( (byte) b );
+        drainOutput( false );
+    }
+
+    @Override
+    public void write( final byte[] buff, final int offset, final int len )
+            throws IOException
+    {
+        if ( buff == null || len <= 0 )
+        {
+            return;
+        }
+
+        if ( offset < 0 || len > buff.length - offset )
+        {
+            throw new ArrayIndexOutOfBoundsException( "Out of bounds exception" );
+        }
+
+        Timer.Context timer = metricsManager == null ? null : metricsManager.startTimer( TIMER );
+        try
+        {
+            for ( int i = offset; i < offset + len; i++ )
+            {
+                process( buff[i] );
+            }
+        }
+        finally
+        {
+            if ( timer != null )
+            {
+                metricsManager.stopTimer( TIMER );
+            }
+        }
+
+        drainOutput( false );
+    }
+
+    @Override
+    public void flush()
+            throws IOException
+    {
+        drainOutput( true );
+        out.flush();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if ( !finished )
+        {
+            finished = true;
+
+            // whatever is incomplete is written as it came
+            emit( captured );
+            captured.reset();
+            emit( markup );
+            markup.reset();
+            writeHeldLatest();
+            emit( whitespace );
+            whitespace.reset();
+            drainOutput( true );
+        }
+
+        super.close();
+    }
+
+    private void process( final byte b )
+    {
+        if ( copying )
+        {
+            output.add( b );
+        }
+        else if ( inMarkup )
+        {
+            processMarkup( b );
+        }
+        else if ( b == '<' )
+        {
+            inMarkup = true;
+            markupEnd = null;
+            quote = 0;
+            markup.reset();
+            markup.add( b );
+        }
+        else
+        {
+            processText( b );
+        }
+    }
+
+    private void processText( final byte b )
+    {
+        if ( droppingDepth >= 0 )
+        {
+            return;
+        }
+
+        if ( capture != Capture.NONE )
+        {
+            captured.add( b );
+            checkSize( captured );
+        }
+        else if ( isWhitespace( b ) )
+        {
+            whitespace.add( b );
+            if ( whitespace.length() > MAX_TOKEN_LENGTH )
+            {
+                emit( whitespace );
+                whitespace.reset();
+            }
+        }
+        else
+        {
+            emitWhitespace();
+            output.add( b );
+        }
+    }
+
+    private void processMarkup( final byte b )
+    {
+        if ( markupEnd != null )
+        {
+            // copying a comment, CDATA section, etc. to wherever the surrounding content goes
+            final Bytes sink = contentSink();
+            sink.add( b );
+            if ( sink == captured )
+            {
+                checkSize( captured );
+            }
+            // fall back along the terminator's borders, so an overlapping match like the "]]>" in "]]]>" is found
+            while ( markupEndMatched > 0 && b != markupEnd[markupEndMatched] )
+            {
+                markupEndMatched = markupEndBorders[markupEndMatched - 1];
+            }
+            if ( b == markupEnd[markupEndMatched] )
+            {
+                markupEndMatched++;
+            }
+            if ( markupEndMatched == markupEnd.length )
+            {
+                inMarkup = false;
+            }
+            return;
+        }
+
+        markup.add( b );
+
+        if ( markup.length() == 2 && b == '?' )
+        {
+            startCopyingMarkup( PI_END );
+        }
+        else if ( markup.length() == 4 && markup.startsWith( "<!--" ) )
+        {
+            startCopyingMarkup( COMMENT_END );
+        }
+        else if ( markup.length() == 9 && markup.startsWith( "<![CDATA[" ) )
+        {
+            startCopyingMarkup( CDATA_END );
+        }
+        else if ( markup.length() == 3 && markup.startsWith( "<!" ) && b != '-' && b != '[' )
+        {
+            startCopyingMarkup( DECL_END );
+        }
+        else if ( quote != 0 )
+        {
+            if ( b == quote )
+            {
+                quote = 0;
+            }
+        }
+        else if ( ( b == '"' || b == '\'' ) && markup.byteAt( 1 ) != '!' )
+        {
+            quote = b;
+        }
+        else if ( b == '>' && markup.byteAt( 1 ) != '!' )
+        {
+            inMarkup = false;
+            handleTag();
+        }
+
+        checkSize( markup );
+    }
+
+    private static int[] borders( final byte[] pattern )
+    {
+        final int[] borders = new int[pattern.length];
+        int k = 0;
+        for ( int i = 1; i < pattern.length; i++ )
+        {
+            while ( k > 0 && pattern[i] != pattern[k] )
+            {
+                k = borders[k - 1];
+            }
+            if ( pattern[i] == pattern[k] )
+            {
+                k++;
+            }
+            borders[i] = k;
+        }
+        return borders;
+    }
+
+    private void startCopyingMarkup( final byte[] end )
+    {
+        markupEnd = end;
+        markupEndBorders = borders( end );
+        markupEndMatched = 0;
+
+        final Bytes sink = contentSink();
+        if ( sink == output )
+        {
+            emitWhitespace();
+        }
+        sink.add( markup );
+        markup.reset();
+    }
+
+    /**
+     * Where content other than tags goes: into the captured element, nowhere while dropping, or out.
+     */
+    private Bytes contentSink()
+    {
+        if ( droppingDepth >= 0 )
+        {
+            discarded.reset();
+            return discarded;
+        }
+        return capture != Capture.NONE ? captured : output;
+    }
+
+    private void handleTag()
+    {
+        final boolean end = markup.byteAt( 1 ) == '/';
+        final boolean empty = !end && markup.byteAt( markup.length() - 2 ) == '/';
+        final String name = tagName( end );
+
+        if ( end )
+        {
+            handleEndTag( name );
+        }
+        else
+        {
+            handleStartTag( name, empty );
+        }
+
+        markup.reset();
+    }
+
+    private void handleStartTag( final String name, final boolean empty )
+    {
+        if ( !empty && elements.size() >= MAX_DEPTH )
+        {
+            giveUp( "too deeply nested" );
+            return;
+        }
+
+        final String parent = elements.peek();
+        final String grandParent = grandParent();
+
+        if ( droppingDepth >= 0 || capture != Capture.NONE )
+        {
+            if ( droppingDepth < 0 )
+            {
+                captured.add( markup );
+            }
+        }
+        else if ( !empty && VERSION.equals( name ) && VERSIONS.equals( parent ) && VERSIONING.equals( grandParent ) )
+        {
+            startCapture( Capture.VERSION );
+        }
+        else if ( !empty && LATEST.equals( name ) && VERSIONING.equals( parent ) )
+        {
+            startCapture( Capture.LATEST );
+        }
+        else if ( !empty && RELEASE.equals( name ) && VERSIONING.equals( parent ) && !allowsReleases )
+        {
+            startCapture( Capture.RELEASE );
+        }
+        else
+        {
+            emitWhitespace();
+            output.add( markup );
+
+            if ( !empty && !allowsSnapshots && VERSIONING.equals( parent ) && ( SNAPSHOT.equals( name )
+                    || SNAPSHOT_VERSIONS.equals( name ) ) )
+            {
+                logger.debug( "FILTER: Suppressing prohibited snapshot fields from: {}", transfer );
+                droppingDepth = elements.size() + 1;
+            }
+        }
+
+        if ( !empty )
+        {
+            elements.push( name );
+        }
+    }
+
+    private void handleEndTag( final String name )
+    {
+        if ( !name.equals( elements.peek() ) )
+        {
+            giveUp( "unexpected end tag: " + name );
+            return;
+        }
+
+        final int depth = elements.size();
+        elements.pop();
+        final String parent = elements.peek();
+
+        if ( droppingDepth >= 0 )
+        {
+            if ( depth == droppingDepth )
+            {
+                droppingDepth = -1;
+                whitespace.reset();
+                output.add( markup );
+            }
+        }
+        else if ( capture != Capture.NONE )
+        {
+            if ( depth == captureDepth && isCapturedElement( name, parent ) )
+            {
+                finishCapture();
+            }
+            else
+            {
+                captured.add( markup );
+            }
+        }
+        else
+        {
+            if ( VERSIONING.equals( name ) )
+            {
+                writeHeldLatest();
+            }
+
+            emitWhitespace();
+            output.add( markup );
+
+            if ( VERSIONS.equals( name ) && VERSIONING.equals( parent ) )
+            {
+                versionsDone = true;
+                writeHeldLatest();
+            }
+        }
+    }
+
+    private boolean isCapturedElement( final String name, final String parent )
+    {
+        switch ( capture )
+        {
+            case VERSION:
+                return VERSION.equals( name ) && VERSIONS.equals( parent );
+            case LATEST:
+                return LATEST.equals( name ) && VERSIONING.equals( parent );
+            case RELEASE:
+                return RELEASE.equals( name ) && VERSIONING.equals( parent );
+            default:
+                return false;
+        }
+    }
+
+    private void startCapture( final Capture kind )
+    {
+        capture = kind;
+        captureDepth = elements.size() + 1;
+        captured.reset();
+        captured.add( markup );
+    }
+
+    private void finishCapture()
+    {
+        final Capture kind = capture;
+        capture = Capture.NONE;
+
+        final int startTagLength = captured.indexOf( (byte) '>' ) + 1;
+        final byte[] startTag = captured.copy( 0, startTagLength );
+        final String value = captured.toString( startTagLength ).trim();
+        final byte[] endTag = markup.copy( 0, markup.length() );
+
+        switch ( kind )
+        {
+            case VERSION:
+            {
+                final boolean isSnapshot = SnapshotUtils.isSnapshotVersion( value );
+                if ( !allowsSnapshots && isSnapshot || !allowsReleases && !isSnapshot )
+                {
+                    logger.debug( "FILTER: Removing prohibited version: {} from: {}", value, transfer );
+                    whitespace.reset();
+                }
+                else
+                {
+                    lastAllowedVersion = value;
+                    emitWhitespace();
+                    output.add( captured );
+                    output.add( endTag );
+                }
+                break;
+            }
+            case LATEST:
+            {
+                final boolean isSnapshot = value.endsWith( "-SNAPSHOT" );
+                if ( ( !allowsSnapshots && isSnapshot ) || ( !allowsReleases && !isSnapshot ) )
+                {
+                    logger.debug( "FILTER: Recalculating LATEST version; supplied value is prohibited: {} from: {}",
+                                  value, transfer );
+                    heldLatestStart = startTag;
+                    heldLatestEnd = endTag;
+                    if ( versionsDone )
+                    {
+                        emitWhitespace();
+                        writeHeldLatest();
+                    }
+                    else
+                    {
+                        // written with the new value after the versions
+                        whitespace.reset();
+                    }
+                }
+                else
+                {
+                    emitWhitespace();
+                    output.add( captured );
+                    output.add( endTag );
+                }
+                break;
+            }
+            case RELEASE:
+            {
+                logger.debug( "FILTER: Suppressing prohibited release fields from: {}", transfer );
+                emitWhitespace();
+                output.add( startTag );
+                output.add( endTag );
+                break;
+            }
+            default:
+        }
+
+        captured.reset();
+    }
+
+    private void writeHeldLatest()
+    {
+        if ( heldLatestStart != null )
+        {
+            output.add( heldLatestStart );
+            if ( lastAllowedVersion != null )
+            {
+                output.add( lastAllowedVersion.getBytes( UTF_8 ) );
+            }
+            output.add( heldLatestEnd );
+            heldLatestStart = null;
+            heldLatestEnd = null;
+        }
+    }
+
+    private void giveUp( final String reason )
+    {
+        logger.error( "Error: Can not filter {} as it is not a valid maven-metadata.xml ({}).", transfer.getPath(),
+                      reason );
+        copying = true;
+
+        emit( captured );
+        captured.reset();
+        emit( markup );
+        markup.reset();
+        inMarkup = false;
+        capture = Capture.NONE;
+        droppingDepth = -1;
+    }
+
+    private void checkSize( final Bytes bytes )
+    {
+        if ( bytes.length() > MAX_TOKEN_LENGTH )
+        {
+            giveUp( "element larger than " + MAX_TOKEN_LENGTH + " bytes" );
+        }
+    }
+
+    private void emit( final Bytes bytes )
+    {
+        emitWhitespace();
+        output.add( bytes );
+    }
+
+    private void emitWhitespace()
+    {
+        if ( whitespace.length() > 0 )
+        {
+            output.add( whitespace );
+            whitespace.reset();
+        }
+    }
+
+    private void drainOutput( final boolean all )
+            throws IOException
+    {
+        if ( output.length() > 0 && ( all || output.length() >= 8192 ) )
+        {
+            out.write( output.buffer(), 0, output.length() );
+            output.reset();
+        }
+    }
+
+    private String tagName( final boolean end )
+    {
+        int start = end ? 2 : 1;
+        int stop = start;
+        int colon = -1;
+        while ( stop < markup.length() )
+        {
+            final byte c = markup.byteAt( stop );
+            if ( isWhitespace( c ) || c == '/' || c == '>' )
+            {
+                break;
+            }
+            if ( c == ':' )
+            {
+                colon = stop;
+            }
+            stop++;
+        }
+
+        // namespace prefixes don't matter here
+        if ( colon >= 0 )
+        {
+            start = colon + 1;
+        }
+        return new String( markup.buffer(), start, stop - start, UTF_8 );
+    }
+
+    private String grandParent()
+    {
+        final Iterator<String> it = elements.iterator();
+        if ( it.hasNext() )
+        {
+            it.next();
+            if ( it.hasNext() )
+            {
+                return it.next();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isWhitespace( final byte b )
+    {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static final class Bytes
+    {
+        private byte[] bytes = new byte[256];
+
+        private int length;
+
+        void add( final byte b )
+        {
+            ensure( 1 );
+            bytes[length++] = b;
+        }
+
+        void add( final byte[] b )
+        {
+            ensure( b.length );
+            System.arraycopy( b, 0, bytes, length, b.length );
+            length += b.length;
+        }
+
+        void add( final Bytes other )
+        {
+            ensure( other.length );
+            System.arraycopy( other.bytes, 0, bytes, length, other.length );
+            length += other.length;
+        }
+
+        byte byteAt( final int index )
+        {
+            return bytes[index];
+        }
+
+        int indexOf( final byte b )
+        {
+            for ( int i = 0; i < length; i++ )
+            {
+                if ( bytes[i] == b )
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        boolean startsWith( final String prefix )
+        {
+            if ( prefix.length() > length )
+            {
+                return false;
+            }
+            for ( int i = 0; i < prefix.length(); i++ )
+            {
+                if ( bytes[i] != prefix.charAt( i ) )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        byte[] copy( final int from, final int to )
+        {
+            return Arrays.copyOfRange( bytes, from, to );
+        }
+
+        String toString( final int from )
+        {
+            return new String( bytes, from, length - from, UTF_8 );
+        }
+
+        byte[] buffer()
+        {
+            return bytes;
+        }
+
+        int length()
+        {
+            return length;
+        }
+
+        void reset()
+        {
+            length = 0;
+        }
+
+        private void ensure( final int more )
+        {
+            if ( length + more > bytes.length )
+            {
+                bytes = Arrays.copyOf( bytes, Math.max( bytes.length * 2, length + more ) );
+            }
+        }
+    }
+}
@@ -29,6 +29,8 @@ public class MetadataInfo
 
     private String metadataMergeInfo;
 
+    private String etag;
+
     public MetadataInfo( final Metadata metadata )
     {
         this.metadata = metadata;
@@ -53,4 +55,17 @@ public class MetadataInfo
     {
         this.metadataMergeInfo = metadataMergeInfo;
     }
+
+    /**
+     * @return the ETag of the merged metadata file, or null if it wasn't recorded
+     */
+    public String getEtag()
+    {
+        return etag;
+    }
+
+    public void setEtag( String etag )
+    {
+        this.etag = etag;
+    }
 }
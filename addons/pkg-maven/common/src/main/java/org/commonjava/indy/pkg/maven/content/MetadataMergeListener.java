@@ -15,22 +15,43 @@
  */
 package org.commonjava.indy.pkg.maven.content;
 
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.conf.InternalFeatureConfig;
 import org.commonjava.indy.content.DirectContentAccess;
 import org.commonjava.indy.content.MergedContentAction;
+import org.commonjava.indy.core.content.group.GroupMergeHelper;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger;
+import org.commonjava.indy.pkg.maven.content.group.MavenMetadataProvider;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
+import org.commonjava.maven.galley.model.Transfer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import static org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger.METADATA_NAME;
+
 /**
  * This listener will do these tasks:
  * <ul>
  *     <li>When the metadata file changed of a member in a group, delete correspond cache of that file path of the member and group (cascaded)</li>
+ *     <li>If incremental merging is enabled and the member's new metadata is available, patch the cached metadata of
+ *     the groups with the versions the member added or removed instead, so they don't need to be merged from all
+ *     members again</li>
  * </ul>
  */
 @ApplicationScoped
@@ -45,6 +66,18 @@ public class MetadataMergeListener
     @Inject
     private MetadataCacheManager cacheManager;
 
+    @Inject
+    private MavenMetadataMerger merger;
+
+    @Inject
+    private GroupMergeHelper helper;
+
+    @Inject
+    private InternalFeatureConfig internalFeatureConfig;
+
+    @Inject
+    private Instance<MavenMetadataProvider> metadataProviders;
+
     /**
      * Will clear the both merge path and merge info file of member and group contains that member(cascaded)
      * if that path of file changed in the member of #originatingStore
@@ -54,10 +87,149 @@ public class MetadataMergeListener
     public void clearMergedPath( ArtifactStore originatingStore, Set<Group> affectedGroups, String path )
     {
         logger.debug( "Clear merged path {}, origin: {}, affected: {}", path, originatingStore, affectedGroups );
+        if ( internalFeatureConfig.isMavenMetadataIncrementalMergeEnabled() && mergeIncrementally( originatingStore,
+                                                                                                   affectedGroups,
+                                                                                                   path ) )
+        {
+            return;
+        }
+
         cacheManager.remove( new MetadataKey( originatingStore.getKey(), path ) );
         affectedGroups.forEach( group -> {
             cacheManager.remove( new MetadataKey( group.getKey(), path ) );
         } );
     }
 
+    /**
+     * Replace the member's cached metadata with its new content, and apply the difference to the cached metadata of
+     * the affected groups. Groups whose metadata can't be patched get their cache entry removed as usual.
+     *
+     * @return false if nothing was done, because the member's previous or new metadata isn't known
+     */
+    private synchronized boolean mergeIncrementally( final ArtifactStore originatingStore,
+                                                     final Set<Group> affectedGroups, final String path )
+    {
+        if ( StoreType.group == originatingStore.getKey().getType() || !path.endsWith( METADATA_NAME ) )
+        {
+            return false;
+        }
+
+        final MetadataKey memberKey = new MetadataKey( originatingStore.getKey(), path );
+        final MetadataInfo previous = cacheManager.get( memberKey );
+        if ( previous == null || previous.getMetadata() == null )
+        {
+            return false;
+        }
+
+        // a deleted member file will be re-downloaded or regenerated, so there is no new content to merge yet
+        final Metadata updated = readMetadata( originatingStore, path );
+        if ( updated == null )
+        {
+            return false;
+        }
+
+        cacheManager.put( memberKey, new MetadataInfo( updated ) );
+
+        affectedGroups.forEach( group -> {
+            final MetadataKey groupKey = new MetadataKey( group.getKey(), path );
+            if ( !patchGroup( group, groupKey, originatingStore.getKey(), previous.getMetadata(), updated ) )
+            {
+                logger.debug( "Can't merge {} incrementally into {}, clearing it", memberKey, groupKey );
+                cacheManager.remove( groupKey );
+            }
+        } );
+
+        return true;
+    }
+
+    private boolean patchGroup( final Group group, final MetadataKey groupKey, final StoreKey memberKey,
+                                final Metadata previous, final Metadata updated )
+    {
+        final MetadataInfo groupInfo = cacheManager.get( groupKey );
+        if ( groupInfo == null || groupInfo.getMetadata() == null )
+        {
+            // nothing cached, the next request merges all members anyway
+            return true;
+        }
+
+        final List<StoreKey> contributors = helper.getKeysFromMergeInfo( groupInfo.getMetadataMergeInfo() );
+        if ( !contributors.contains( memberKey ) )
+        {
+            return false;
+        }
+
+        if ( previous.getVersioning() == null || updated.getVersioning() == null )
+        {
+            return false;
+        }
+
+        final Set<String> removed = new HashSet<>( previous.getVersioning().getVersions() );
+        removed.removeAll( updated.getVersioning().getVersions() );
+
+        final Set<String> retained = new HashSet<>();
+        if ( !removed.isEmpty() )
+        {
+            // providers aren't cached, so there is no telling whether they still have a removed version
+            if ( !metadataProviders.isUnsatisfied() )
+            {
+                return false;
+            }
+
+            for ( final StoreKey contributor : contributors )
+            {
+                if ( contributor.equals( memberKey ) )
+                {
+                    continue;
+                }
+
+                final MetadataInfo info = cacheManager.get( new MetadataKey( contributor, groupKey.getPath() ) );
+                if ( info == null || info.getMetadata() == null )
+                {
+                    return false;
+                }
+
+                if ( info.getMetadata().getVersioning() != null )
+                {
+                    info.getMetadata().getVersioning().getVersions().stream().filter( removed::contains ).forEach(
+                            retained::add );
+                }
+            }
+        }
+
+        final Metadata patched =
+                merger.mergeDelta( groupInfo.getMetadata(), previous, updated, retained::contains, group,
+                                   groupKey.getPath() );
+        if ( patched == null )
+        {
+            return false;
+        }
+
+        final MetadataInfo patchedInfo = new MetadataInfo( patched );
+        patchedInfo.setMetadataMergeInfo( groupInfo.getMetadataMergeInfo() );
+        cacheManager.put( groupKey, patchedInfo );
+        return true;
+    }
+
+    private Metadata readMetadata( final ArtifactStore store, final String path )
+    {
+        try
+        {
+            final Transfer transfer = fileManager.getTransfer( store, path );
+            if ( transfer == null || !transfer.exists() )
+            {
+                return null;
+            }
+
+            try (InputStream in = transfer.openInputStream())
+            {
+                return new MetadataXpp3Reader().read( in, false );
+            }
+        }
+        catch ( final IndyWorkflowException | IOException | XmlPullParserException e )
+        {
+            logger.warn( "Cannot read {} from {}: {}", path, store.getKey(), e.getMessage() );
+            return null;
+        }
+    }
+
 }
@@ -18,18 +18,20 @@ package org.commonjava.indy.pkg.maven.content.group;
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.apache.maven.artifact.repository.metadata.SnapshotVersion;
 import org.apache.maven.artifact.repository.metadata.Versioning;
-import org.commonjava.atlas.maven.ident.util.VersionUtils;
-import org.commonjava.atlas.maven.ident.version.InvalidVersionSpecificationException;
-import org.commonjava.atlas.maven.ident.version.SingleVersion;
 import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.pkg.maven.content.group.ParsedVersionCache.ParsedVersion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static org.commonjava.atlas.maven.ident.util.SnapshotUtils.LOCAL_SNAPSHOT_VERSION_PART;
@@ -69,6 +71,8 @@ public class MavenMetadataMerger
 
     public static final String METADATA_MD5_NAME = METADATA_NAME + MD5.getExtension();
 
+    private final ParsedVersionCache versionCache = new ParsedVersionCache();
+
     public Metadata merge( final Metadata master, final Metadata src, final Group group, final String path )
     {
         if ( src == null )
@@ -95,22 +99,29 @@ public class MavenMetadataMerger
             master.setVersion( src.getVersion() );
         }
 
-        master.merge( src );
+        // versions are merged below, in linear time; Metadata.merge() would look up each of them in the master's list
+        master.merge( withoutVersions( src ) );
 
         Versioning versioning = master.getVersioning();
 
         Versioning srcVersioning = src.getVersioning();
 
+        if ( srcVersioning != null && !srcVersioning.getVersions().isEmpty() )
+        {
+            versioning.setVersions( mergeVersions( versioning.getVersions(), srcVersioning.getVersions() ) );
+        }
+
         if ( srcVersioning != null && srcVersioning.getSnapshot() != null )
         {
             logger.trace( "INCLUDING snapshot information from: {} in: {}:{}", src, group.getKey(), path );
             versioning.setSnapshot( srcVersioning.getSnapshot() );
 
             final List<SnapshotVersion> snapshotVersions = versioning.getSnapshotVersions();
+            final Set<SnapshotVersion> existing = new HashSet<>( snapshotVersions );
             boolean added = false;
             for ( final SnapshotVersion snap : srcVersioning.getSnapshotVersions() )
             {
-                if ( !snapshotVersions.contains( snap ) )
+                if ( existing.add( snap ) )
                 {
                     snapshotVersions.add( snap );
                     added = true;
@@ -130,32 +141,100 @@ public class MavenMetadataMerger
         return master;
     }
 
+    /**
+     * Apply the change of one member's metadata, from oldSrc to newSrc, to a master earlier merged from it and other
+     * sources, without merging the other sources again. Versions the member dropped are removed from the master unless
+     * retainedElsewhere says another source still has them.
+     * <p>
+     * Only plain version-list metadata (no snapshot or plugin information) is handled this way.
+     *
+     * @return a patched copy of master, or null if the change can't be applied incrementally (the master has to be
+     * merged from all sources again then)
+     */
+    public Metadata mergeDelta( final Metadata master, final Metadata oldSrc, final Metadata newSrc,
+                                final Predicate<String> retainedElsewhere, final Group group, final String path )
+    {
+        if ( !isVersionListOnly( master ) || !isVersionListOnly( oldSrc ) || !isVersionListOnly( newSrc ) )
+        {
+            return null;
+        }
+
+        final Set<String> removed = new HashSet<>( oldSrc.getVersioning().getVersions() );
+        removed.removeAll( newSrc.getVersioning().getVersions() );
+        removed.removeIf( retainedElsewhere );
+
+        final Set<String> remaining = new HashSet<>( master.getVersioning().getVersions() );
+        remaining.addAll( newSrc.getVersioning().getVersions() );
+        remaining.removeAll( removed );
+        if ( remaining.isEmpty() )
+        {
+            // a full merge wouldn't produce any metadata
+            return null;
+        }
+
+        Logger logger = LoggerFactory.getLogger( getClass() );
+        logger.debug( "Merge metadata delta, group: {}, path: {}, removed: {}", group.getKey(), path, removed );
+
+        final Metadata result = master.clone();
+        merge( result, newSrc, group, path );
+
+        final Versioning versioning = result.getVersioning();
+        if ( !removed.isEmpty() )
+        {
+            versioning.getVersions().removeAll( removed );
+        }
+
+        sortVersions( result );
+
+        if ( versioning.getRelease() == null || removed.contains( versioning.getRelease() ) )
+        {
+            final List<String> versions = versioning.getVersions();
+            versioning.setRelease( null );
+            for ( int i = versions.size() - 1; i >= 0; i-- )
+            {
+                if ( !versions.get( i ).endsWith( LOCAL_SNAPSHOT_VERSION_PART ) )
+                {
+                    versioning.setRelease( versions.get( i ) );
+                    break;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isVersionListOnly( final Metadata metadata )
+    {
+        if ( metadata == null || metadata.getVersioning() == null )
+        {
+            return false;
+        }
+
+        final Versioning versioning = metadata.getVersioning();
+        return versioning.getSnapshot() == null && versioning.getSnapshotVersions().isEmpty()
+                && metadata.getPlugins().isEmpty();
+    }
+
     public void sortVersions( Metadata metadata )
     {
         Versioning versioning = metadata.getVersioning();
         if ( versioning != null && versioning.getVersions() != null )
         {
+            List<ParsedVersion> versionObjects = versioning.getVersions()
+                                                           .stream()
+                                                           .map( versionCache::get )
+                                                           .filter( Objects::nonNull )
+                                                           .collect( Collectors.toList() );
 
-            List<SingleVersion> versionObjects =
-                    versioning.getVersions().stream().map( (v)->{
-                        try
-                        {
-                            return VersionUtils.createSingleVersion( v );
-                        }
-                        catch (InvalidVersionSpecificationException e )
-                        {
-                            return null;
-                        }
-                    } ).filter( Objects::nonNull ).collect( Collectors.toList() );
-
+            // nearly free when the versions were merged in order already
             Collections.sort( versionObjects );
 
             versioning.setVersions(
-                    versionObjects.stream().map( SingleVersion::renderStandard ).collect( Collectors.toList() ) );
+                    versionObjects.stream().map( ParsedVersion::getRendered ).collect( Collectors.toList() ) );
 
             if ( versionObjects.size() > 0 )
             {
-                String latest = versionObjects.get( versionObjects.size() - 1 ).renderStandard();
+                String latest = versionObjects.get( versionObjects.size() - 1 ).getRendered();
                 versioning.setLatest( latest );
                 if ( !latest.endsWith( LOCAL_SNAPSHOT_VERSION_PART ) )
                 {
@@ -165,4 +244,114 @@ public class MavenMetadataMerger
         }
     }
 
+    /**
+     * Merge two version lists into one in version order, without duplicates. Lists already in order (as merged lists,
+     * and most member metadata, are) are merged in one pass; others are sorted first. Versions that can't be parsed
+     * go last, in their original order.
+     */
+    List<String> mergeVersions( final List<String> first, final List<String> second )
+    {
+        final List<Entry> a = toSortedEntries( first );
+        final List<Entry> b = toSortedEntries( second );
+
+        final List<String> result = new ArrayList<>( a.size() + b.size() );
+        final Set<String> seen = new HashSet<>( ( a.size() + b.size() ) * 2 );
+
+        int i = 0;
+        int j = 0;
+        while ( i < a.size() || j < b.size() )
+        {
+            final Entry next;
+            if ( j == b.size() || ( i < a.size() && a.get( i ).compareTo( b.get( j ) ) <= 0 ) )
+            {
+                next = a.get( i++ );
+            }
+            else
+            {
+                next = b.get( j++ );
+            }
+
+            if ( seen.add( next.raw ) )
+            {
+                result.add( next.raw );
+            }
+        }
+
+        return result;
+    }
+
+    private List<Entry> toSortedEntries( final List<String> versions )
+    {
+        final List<Entry> entries = new ArrayList<>( versions.size() );
+        boolean sorted = true;
+        for ( final String version : versions )
+        {
+            final Entry entry = new Entry( version, versionCache.get( version ) );
+            if ( sorted && !entries.isEmpty() && entries.get( entries.size() - 1 ).compareTo( entry ) > 0 )
+            {
+                sorted = false;
+            }
+            entries.add( entry );
+        }
+
+        if ( !sorted )
+        {
+            // stable, so unparseable versions keep their order
+            entries.sort( Entry::compareTo );
+        }
+
+        return entries;
+    }
+
+    /**
+     * Everything of the metadata except its version list, for {@link Metadata#merge(Metadata)}. The source is not
+     * modified by that merge this way either.
+     */
+    private static Metadata withoutVersions( final Metadata src )
+    {
+        final Metadata view = new Metadata();
+        view.setGroupId( src.getGroupId() );
+        view.setArtifactId( src.getArtifactId() );
+        view.setVersion( src.getVersion() );
+        view.setPlugins( src.getPlugins() );
+
+        final Versioning srcVersioning = src.getVersioning();
+        if ( srcVersioning != null )
+        {
+            final Versioning versioning = new Versioning();
+            versioning.setLatest( srcVersioning.getLatest() );
+            versioning.setRelease( srcVersioning.getRelease() );
+            versioning.setSnapshot( srcVersioning.getSnapshot() );
+            versioning.setSnapshotVersions( srcVersioning.getSnapshotVersions() );
+            versioning.setLastUpdated( srcVersioning.getLastUpdated() );
+            view.setVersioning( versioning );
+        }
+
+        return view;
+    }
+
+    private static final class Entry
+            implements Comparable<Entry>
+    {
+        private final String raw;
+
+        private final ParsedVersion parsed;
+
+        private Entry( final String raw, final ParsedVersion parsed )
+        {
+            this.raw = raw;
+            this.parsed = parsed;
+        }
+
+        @Override
+        public int compareTo( final Entry other )
+        {
+            if ( parsed == null || other.parsed == null )
+            {
+                return parsed == null ? ( other.parsed == null ? 0 : 1 ) : -1;
+            }
+            return parsed.compareTo( other.parsed );
+        }
+    }
+
 }
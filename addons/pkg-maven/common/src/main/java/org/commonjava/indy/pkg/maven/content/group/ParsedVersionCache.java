@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.commonjava.atlas.maven.ident.util.VersionUtils;
+import org.commonjava.atlas.maven.ident.version.InvalidVersionSpecificationException;
+import org.commonjava.atlas.maven.ident.version.SingleVersion;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Version strings parsed to {@link SingleVersion}, together with their standard rendering, so metadata merges of the
+ * same artifacts don't parse and render every version again.
+ * <p>
+ * The cache is bounded by dropping all entries once it's full; versions still in use are parsed again on their next
+ * lookup.
+ */
+public final class ParsedVersionCache
+{
+    public static final int DEFAULT_MAX_ENTRIES = 200000;
+
+    // marks strings that can't be parsed, so they aren't tried again
+    private static final ParsedVersion INVALID = new ParsedVersion( null, null );
+
+    private final Map<String, ParsedVersion> versions = new ConcurrentHashMap<>();
+
+    private final int maxEntries;
+
+    public ParsedVersionCache()
+    {
+        this( DEFAULT_MAX_ENTRIES );
+    }
+
+    public ParsedVersionCache( final int maxEntries )
+    {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the parsed version, or null if the string is not a valid single version
+     */
+    public ParsedVersion get( final String version )
+    {
+        ParsedVersion parsed = versions.get( version );
+        if ( parsed == null )
+        {
+            if ( versions.size() >= maxEntries )
+            {
+                versions.clear();
+            }
+
+            parsed = versions.computeIfAbsent( version, ParsedVersionCache::parse );
+        }
+
+        return parsed == INVALID ? null : parsed;
+    }
+
+    public int size()
+    {
+        return versions.size();
+    }
+
+    private static ParsedVersion parse( final String version )
+    {
+        try
+        {
+            final SingleVersion single = VersionUtils.createSingleVersion( version );
+            return new ParsedVersion( single, single.renderStandard() );
+        }
+        catch ( final InvalidVersionSpecificationException e )
+        {
+            return INVALID;
+        }
+    }
+
+    public static final class ParsedVersion
+            implements Comparable<ParsedVersion>
+    {
+        private final SingleVersion version;
+
+        private final String rendered;
+
+        private ParsedVersion( final SingleVersion version, final String rendered )
+        {
+            this.version = version;
+            this.rendered = rendered;
+        }
+
+        public SingleVersion getVersion()
+        {
+            return version;
+        }
+
+        public String getRendered()
+        {
+            return rendered;
+        }
+
+        @Override
+        public int compareTo( final ParsedVersion other )
+        {
+            return version.compareTo( other.version );
+        }
+    }
+}
@@ -28,6 +28,7 @@ public class MetadataInfoMarshaller implements MessageMarshaller<MetadataInfo>
     {
         MetadataInfo info = new MetadataInfo( reader.readObject( "metadata", Metadata.class) );
         info.setMetadataMergeInfo( reader.readString( "metadataMergeInfo" ) );
+        info.setEtag( reader.readString( "etag" ) );
         return info;
     }
 
@@ -36,6 +37,7 @@ public class MetadataInfoMarshaller implements MessageMarshaller<MetadataInfo>
     {
         writer.writeObject( "metadata", metadataInfo.getMetadata(), Metadata.class );
         writer.writeString( "metadataMergeInfo", metadataInfo.getMetadataMergeInfo() );
+        writer.writeString( "etag", metadataInfo.getEtag() );
     }
 
     @Override
@@ -122,6 +122,93 @@ public class MavenContentFilteringTransferDecoratorTest
         }
     }
 
+    @Test
+    public void metadataLatestRecalculatedWhenSnapshotsNotAllowed() throws Exception
+    {
+        final String fname = "/org/foo/bar/maven-metadata.xml";
+
+        // @formatter:off
+        final String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<metadata>"
+            + "  <groupId>org.foo</groupId>"
+            + "  <artifactId>bar</artifactId>"
+            + "  <versioning>"
+            + "    <latest>1.3-SNAPSHOT</latest>"
+            + "    <release>1.2</release>"
+            + "    <versions>"
+            + "      <version>1.1</version>"
+            + "      <version>1.2</version>"
+            + "      <version>1.3-SNAPSHOT</version>"
+            + "    </versions>"
+            + "    <snapshot><timestamp>20171020.231327</timestamp></snapshot>"
+            + "    <lastUpdated>20171020231327</lastUpdated>"
+            + "  </versioning>"
+            + "</metadata>";
+        // @formatter:on
+
+        final SimpleHttpLocation location =
+                new SimpleHttpLocation( "test", fixture.getBaseUri(), false, true, true, true, null );
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, fname ) );
+
+        try (OutputStream stream = transfer.openOutputStream( TransferOperation.UPLOAD ))
+        {
+            // small writes, so elements are split across them
+            for ( byte b : content.getBytes() )
+            {
+                stream.write( new byte[] { b } );
+            }
+        }
+
+        try (InputStream in = transfer.openInputStream())
+        {
+            String result = IOUtils.toString( in );
+            assertThat( result.contains( "1.3-SNAPSHOT" ), equalTo( false ) );
+            assertThat( result.contains( "<latest>1.2</latest>" ), equalTo( true ) );
+            assertThat( result.contains( "<release>1.2</release>" ), equalTo( true ) );
+            assertThat( result.contains( "<snapshot></snapshot>" ), equalTo( true ) );
+            assertThat( result.contains( "<version>1.1</version>" ), equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void metadataFilteredAfterCdataEndingWithBracket() throws Exception
+    {
+        final String fname = "/org/foo/baz/maven-metadata.xml";
+
+        // @formatter:off
+        final String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<metadata>"
+            + "  <groupId>org.foo</groupId>"
+            + "  <artifactId><![CDATA[baz]]]></artifactId>"
+            + "  <versioning>"
+            + "    <latest>1.2</latest>"
+            + "    <release>1.2</release>"
+            + "    <versions>"
+            + "      <version>1.1-SNAPSHOT</version>"
+            + "      <version>1.2</version>"
+            + "    </versions>"
+            + "  </versioning>"
+            + "</metadata>";
+        // @formatter:on
+
+        final SimpleHttpLocation location =
+                new SimpleHttpLocation( "test", fixture.getBaseUri(), false, true, true, true, null );
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, fname ) );
+
+        try (OutputStream stream = transfer.openOutputStream( TransferOperation.UPLOAD ))
+        {
+            IOUtils.write( content, stream );
+        }
+
+        try (InputStream in = transfer.openInputStream())
+        {
+            String result = IOUtils.toString( in );
+            assertThat( result.contains( "<![CDATA[baz]]]>" ), equalTo( true ) );
+            assertThat( result.contains( "1.1-SNAPSHOT" ), equalTo( false ) );
+            assertThat( result.contains( "<version>1.2</version>" ), equalTo( true ) );
+        }
+    }
+
     @Test
     public void snapshotNotExistsWhenSnapshotsNotAllowed()
             throws Exception
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Snapshot;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.commonjava.indy.model.core.Group;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MavenMetadataDeltaMergeTest
+{
+    private static final String PATH = "org/foo/bar/maven-metadata.xml";
+
+    private final Group group = new Group( "maven", "test-group" );
+
+    private final MavenMetadataMerger merger = new MavenMetadataMerger();
+
+    @Test
+    public void addedVersionIsMerged()
+    {
+        Metadata master = metadata( "1.0", "1.1", "2.0" );
+        Metadata result = merger.mergeDelta( master, metadata( "1.0", "1.1" ), metadata( "1.0", "1.1", "1.2" ),
+                                             v -> false, group, PATH );
+
+        assertThat( result.getVersioning().getVersions(), equalTo( Arrays.asList( "1.0", "1.1", "1.2", "2.0" ) ) );
+        assertThat( result.getVersioning().getLatest(), equalTo( "2.0" ) );
+        assertThat( result.getVersioning().getRelease(), equalTo( "2.0" ) );
+
+        // the cached master is not modified
+        assertThat( master.getVersioning().getVersions(), equalTo( Arrays.asList( "1.0", "1.1", "2.0" ) ) );
+    }
+
+    @Test
+    public void removedVersionIsDroppedUnlessRetainedElsewhere()
+    {
+        Metadata master = metadata( "1.0", "1.1", "2.0", "2.1-SNAPSHOT" );
+        Metadata result =
+                merger.mergeDelta( master, metadata( "1.0", "2.0" ), metadata( "1.1" ), "1.0"::equals, group, PATH );
+
+        assertThat( result.getVersioning().getVersions(), equalTo( Arrays.asList( "1.0", "1.1", "2.1-SNAPSHOT" ) ) );
+        assertThat( result.getVersioning().getLatest(), equalTo( "2.1-SNAPSHOT" ) );
+        assertThat( result.getVersioning().getRelease(), equalTo( "1.1" ) );
+    }
+
+    @Test
+    public void snapshotMetadataOrEmptyResultIsNotMergedIncrementally()
+    {
+        Metadata snapshot = metadata( "1.0-SNAPSHOT" );
+        snapshot.getVersioning().setSnapshot( new Snapshot() );
+
+        assertThat( merger.mergeDelta( metadata( "1.0" ), metadata( "1.0" ), snapshot, v -> false, group, PATH ),
+                    nullValue() );
+        assertThat( merger.mergeDelta( metadata( "1.0" ), metadata( "1.0" ), metadata(), v -> false, group, PATH ),
+                    nullValue() );
+    }
+
+    private static Metadata metadata( final String... versions )
+    {
+        Metadata metadata = new Metadata();
+        metadata.setGroupId( "org.foo" );
+        metadata.setArtifactId( "bar" );
+
+        Versioning versioning = new Versioning();
+        versioning.setVersions( new ArrayList<>( Arrays.asList( versions ) ) );
+        metadata.setVersioning( versioning );
+        return metadata;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.commonjava.indy.model.core.Group;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MavenMetadataVersionMergeTest
+{
+    private final MavenMetadataMerger merger = new MavenMetadataMerger();
+
+    @Test
+    public void sortedAndUnsortedListsMergeInOrderWithoutDuplicates()
+    {
+        List<String> merged = merger.mergeVersions( Arrays.asList( "1.0", "1.2", "2.0" ),
+                                                    Arrays.asList( "2.0", "1.1", "1.0", "1.10" ) );
+
+        assertThat( merged, equalTo( Arrays.asList( "1.0", "1.1", "1.2", "1.10", "2.0" ) ) );
+    }
+
+    @Test
+    public void mergedMetadataIsSortedAndSourceIsUntouched()
+    {
+        Group group = new Group( "maven", "test-group" );
+        String path = "org/foo/bar/maven-metadata.xml";
+
+        Metadata master = new Metadata();
+        master.setVersioning( new Versioning() );
+
+        Metadata first = metadata( "1.0", "3.0" );
+        Metadata second = metadata( "2.0", "3.0", "4.0-SNAPSHOT" );
+        second.getVersioning().setLastUpdated( "20200101000000" );
+
+        merger.merge( master, first, group, path );
+        merger.merge( master, second, group, path );
+        merger.sortVersions( master );
+
+        Versioning versioning = master.getVersioning();
+        assertThat( versioning.getVersions(), equalTo( Arrays.asList( "1.0", "2.0", "3.0", "4.0-SNAPSHOT" ) ) );
+        assertThat( versioning.getLatest(), equalTo( "4.0-SNAPSHOT" ) );
+        assertThat( versioning.getLastUpdated(), equalTo( "20200101000000" ) );
+
+        assertThat( first.getVersioning().getVersions(), equalTo( Arrays.asList( "1.0", "3.0" ) ) );
+    }
+
+    private static Metadata metadata( final String... versions )
+    {
+        Metadata metadata = new Metadata();
+        metadata.setGroupId( "org.foo" );
+        metadata.setArtifactId( "bar" );
+
+        Versioning versioning = new Versioning();
+        versioning.setVersions( new ArrayList<>( Arrays.asList( versions ) ) );
+        metadata.setVersioning( versioning );
+        return metadata;
+    }
+}
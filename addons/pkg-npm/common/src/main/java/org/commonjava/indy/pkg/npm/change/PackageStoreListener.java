@@ -26,6 +26,9 @@ import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.HostedRepository;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.pkg.PackageTypeConstants;
+import org.commonjava.indy.pkg.npm.content.HostedPackageMetadataUpdater;
+import org.commonjava.indy.pkg.npm.content.MaskedPackageMetadataCache;
+import org.commonjava.indy.pkg.npm.content.PackagePath;
 import org.commonjava.indy.pkg.npm.content.group.PackageMetadataMerger;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.event.FileDeletionEvent;
@@ -65,6 +68,43 @@ public class PackageStoreListener
     @Inject
     private IndyFileEventManager fileEvent;
 
+    @Inject
+    private MaskedPackageMetadataCache renderCache;
+
+    @Inject
+    private HostedPackageMetadataUpdater metadataUpdater;
+
+    /**
+     * Drops the cached rewritten content of a package.json when it is stored (e.g. published or downloaded again).
+     */
+    public void onMetadataStorageEvent( @Observes FileStorageEvent event )
+    {
+        invalidateRendered( event.getTransfer() );
+    }
+
+    /**
+     * Drops the cached rewritten content of a package.json when it is deleted (including the merged files cleared below).
+     */
+    public void onMetadataDeletionEvent( @Observes FileDeletionEvent event )
+    {
+        invalidateRendered( event.getTransfer() );
+    }
+
+    private void invalidateRendered( final Transfer transfer )
+    {
+        if ( renderCache == null || transfer == null || !transfer.getPath().endsWith( NPM_METADATA_NAME ) )
+        {
+            return;
+        }
+
+        final StoreKey storeKey = getKey( transfer );
+        if ( storeKey != null && PKG_TYPE_NPM.equals( storeKey.getPackageType() ) )
+        {
+            logger.debug( "Invalidating rendered package metadata: {} in store: {}", transfer.getPath(), storeKey );
+            renderCache.invalidate( storeKey, transfer.getPath() );
+        }
+    }
+
     /**
      * this listener observes {@link org.commonjava.maven.galley.event.FileStorageEvent}
      * for a tarball file, which means package.json will be cleared when a npm package
@@ -90,35 +130,29 @@ public class PackageStoreListener
         {
             if ( hosted == storeKey.getType() )
             {
-                HostedRepository hosted = dataManager.query().getHostedRepository( PKG_TYPE_NPM, storeKey.getName() );
-                try
-                {
-                    doClear( hosted, pkgMetadataPath );
-                }
-                catch ( final IOException e )
+                final EventMetadata eventMetadata = event.getEventMetadata();
+                if ( eventMetadata != null && Boolean.TRUE.equals(
+                                eventMetadata.get( HostedPackageMetadataUpdater.METADATA_PATCHED ) ) )
                 {
-                    logger.error( String.format(
-                                    "Failed to delete: %s from hosted: %s when npm package changed. Error: %s", pkgMetadataPath,
-                                    hosted, e.getMessage() ), e );
+                    logger.debug( "Package metadata: {} in hosted: {} is patched by the publish, skip clearing it",
+                                  pkgMetadataPath, storeKey );
                 }
-
-                final Set<Group> groups = dataManager.query().getGroupsAffectedBy( storeKey );
-                if ( groups != null )
+                else
                 {
-                    for ( final Group group : groups )
+                    HostedRepository hosted = dataManager.query().getHostedRepository( PKG_TYPE_NPM, storeKey.getName() );
+                    try
+                    {
+                        doClear( hosted, pkgMetadataPath );
+                    }
+                    catch ( final IOException e )
                     {
-                        try
-                        {
-                            doClear( group, pkgMetadataPath );
-                        }
-                        catch ( final IOException e )
-                        {
-                            logger.error( String.format(
-                                            "Failed to delete: %s from its group: %s when npm package changed. Error: %s",
-                                            pkgMetadataPath, group, e.getMessage() ), e );
-                        }
+                        logger.error( String.format(
+                                        "Failed to delete: %s from hosted: %s when npm package changed. Error: %s", pkgMetadataPath,
+                                        hosted, e.getMessage() ), e );
                     }
                 }
+
+                clearGroups( storeKey, pkgMetadataPath );
             }
         }
         catch ( final IndyDataException e )
@@ -128,6 +162,77 @@ public class PackageStoreListener
         }
     }
 
+    /**
+     * this listener observes {@link org.commonjava.maven.galley.event.FileDeletionEvent} for a tarball file in a hosted
+     * repository and, if incremental hosted metadata is enabled, removes its version from the stored package.json
+     * (see {@link HostedPackageMetadataUpdater}). The package.json of the affected groups is cleared as on upload.
+     */
+    public void onPackageDeletionEvent( @Observes FileDeletionEvent event )
+    {
+        final Transfer transfer = event.getTransfer();
+        if ( metadataUpdater == null || !metadataUpdater.isEnabled() || transfer == null
+                        || !transfer.getPath().endsWith( PACKAGE_TARBALL_EXTENSION ) )
+        {
+            return;
+        }
+
+        final StoreKey storeKey = getKey( transfer );
+        if ( storeKey == null || hosted != storeKey.getType() || !PKG_TYPE_NPM.equals( storeKey.getPackageType() ) )
+        {
+            return;
+        }
+
+        logger.info( "Package deletion: {}", transfer );
+
+        final String pkgPath = normalize( parentPath( transfer.getParent().getPath() ) );
+        final String pkgMetadataPath = normalize( pkgPath, NPM_METADATA_NAME );
+
+        final PackagePath packagePath = PackagePath.parse( transfer.getPath() ).orElse( null );
+        try
+        {
+            final HostedRepository hosted = dataManager.query().getHostedRepository( PKG_TYPE_NPM, storeKey.getName() );
+            if ( packagePath != null && packagePath.getVersion() != null )
+            {
+                metadataUpdater.removeVersion( storeKey, fileManager.getStorageReference( hosted, pkgMetadataPath ),
+                                               packagePath.getVersion() );
+            }
+            else
+            {
+                logger.warn( "Cannot get the version of deleted tarball: {}, clearing: {}", transfer, pkgMetadataPath );
+                doClear( hosted, pkgMetadataPath );
+            }
+
+            clearGroups( storeKey, pkgMetadataPath );
+        }
+        catch ( final IndyDataException | IOException e )
+        {
+            logger.warn( "Failed to update package.json for npm packages after deletion from: {}. Reason: {}",
+                         storeKey, e.getMessage() );
+        }
+    }
+
+    private void clearGroups( final StoreKey storeKey, final String pkgMetadataPath )
+            throws IndyDataException
+    {
+        final Set<Group> groups = dataManager.query().getGroupsAffectedBy( storeKey );
+        if ( groups != null )
+        {
+            for ( final Group group : groups )
+            {
+                try
+                {
+                    doClear( group, pkgMetadataPath );
+                }
+                catch ( final IOException e )
+                {
+                    logger.error( String.format(
+                                    "Failed to delete: %s from its group: %s when npm package changed. Error: %s",
+                                    pkgMetadataPath, group, e.getMessage() ), e );
+                }
+            }
+        }
+    }
+
         private boolean doClear( final ArtifactStore store, final String path )
             throws IOException
         {
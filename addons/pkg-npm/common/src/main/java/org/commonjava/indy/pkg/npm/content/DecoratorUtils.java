@@ -71,12 +71,7 @@ public class DecoratorUtils
 
             int nextQuote = raw.indexOf( "\"", quote + 1 );
 
-            String url = raw.substring( quote + 1, nextQuote );
-            String path = getPath( url );
-            if ( path != null )
-            {
-                url = UrlUtils.buildUrl( contextURL, path );
-            }
+            String url = maskTarballUrl( raw.substring( quote + 1, nextQuote ), contextURL );
             final String value = "\"" + url + "\"";
             sb.append( value );
             raw = raw.substring( nextQuote + 1 );
@@ -85,6 +80,20 @@ public class DecoratorUtils
         return sb.toString();
     }
 
+    /**
+     * Tarball url pointing to the same package file under the context url, or the url itself if it can't be parsed.
+     */
+    public static String maskTarballUrl( final String url, final String contextURL )
+            throws MalformedURLException
+    {
+        String path = getPath( url );
+        if ( path != null )
+        {
+            return UrlUtils.buildUrl( contextURL, path );
+        }
+        return url;
+    }
+
     private static String getPath( String url )
     {
         URL url1;
@@ -0,0 +1,347 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import org.commonjava.cdi.util.weft.Locker;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.indy.pkg.npm.model.Dist;
+import org.commonjava.indy.pkg.npm.model.DistTag;
+import org.commonjava.indy.pkg.npm.model.PackageMetadata;
+import org.commonjava.indy.pkg.npm.model.VersionMetadata;
+import org.commonjava.indy.pkg.npm.model.io.PackageSerializerModule;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.function.Function;
+
+import static org.commonjava.indy.pkg.npm.model.DistTag.LATEST;
+import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_METADATA_NAME;
+import static org.commonjava.maven.galley.util.PathUtils.normalize;
+
+/**
+ * Keeps the package.json of a hosted npm repository up to date when a version is published or removed, by patching the
+ * stored document instead of regenerating it from every version file (see {@link PackageMetadataGenerator}, which is
+ * still used when the package.json is missing).
+ * <p>
+ * Changes to a package.json are made while holding its lock (see {@link #lockAnd(StoreKey, String, Function)}), so
+ * publishes of different packages don't wait for each other.
+ */
+@ApplicationScoped
+public class HostedPackageMetadataUpdater
+{
+    /**
+     * Set in the event metadata of a publish whose package.json is patched by this class, so it isn't deleted when the
+     * tarball is stored.
+     */
+    public static final String METADATA_PATCHED = "npm-hosted-metadata-patched";
+
+    private static final long LOCK_TIMEOUT_SECONDS = 30;
+
+    private static final String TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+    private static final String MODIFIED = "modified";
+
+    private static final String CREATED = "created";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private IndyConfiguration config;
+
+    private final Locker<String> packageLocks = new Locker<>();
+
+    @Inject
+    private IndyObjectMapper mapper;
+
+    @Inject
+    private PackageSerializerModule packageSerializerModule;
+
+    protected HostedPackageMetadataUpdater()
+    {
+    }
+
+    public HostedPackageMetadataUpdater( final IndyConfiguration config, final IndyObjectMapper mapper )
+    {
+        this.config = config;
+        this.mapper = mapper;
+    }
+
+    @PostConstruct
+    public void setupCDI()
+    {
+        mapper.registerModule( packageSerializerModule );
+    }
+
+    public boolean isEnabled()
+    {
+        return config.isNpmHostedIncrementalMetadataEnabled();
+    }
+
+    /**
+     * Runs the function while holding the lock of a package.json in the store.
+     *
+     * @return the result of the function, or null if the lock couldn't be acquired in time
+     */
+    public <R> R lockAnd( final StoreKey key, final String path, final Function<String, R> function )
+    {
+        return packageLocks.lockAnd( computeKey( key, path ), LOCK_TIMEOUT_SECONDS, function, ( k, lock ) -> false );
+    }
+
+    /**
+     * @return the package metadata in the transfer, or null if it doesn't exist
+     */
+    public PackageMetadata read( final Transfer transfer )
+            throws IOException
+    {
+        if ( transfer == null || !transfer.exists() )
+        {
+            return null;
+        }
+
+        try (InputStream in = transfer.openInputStream( false ))
+        {
+            return mapper.readValue( in, PackageMetadata.class );
+        }
+    }
+
+    /**
+     * @return the package metadata in the content, e.g. the document sent by 'npm publish'
+     */
+    public PackageMetadata read( final byte[] content )
+            throws IOException
+    {
+        return mapper.readValue( content, PackageMetadata.class );
+    }
+
+    /**
+     * Replaces the content of the transfer with the package metadata. The document is serialized before the transfer
+     * is opened, so it is written in one go.
+     */
+    public void write( final PackageMetadata metadata, final Transfer transfer, final EventMetadata eventMetadata )
+            throws IOException
+    {
+        final byte[] content = mapper.writeValueAsBytes( metadata );
+        try (OutputStream out = transfer.openOutputStream( TransferOperation.GENERATE, true, eventMetadata ))
+        {
+            out.write( content );
+        }
+    }
+
+    /**
+     * Removes a version from the stored package.json of a hosted repository, e.g. when its tarball is deleted. The
+     * package.json is deleted instead if no version is left.
+     */
+    public void removeVersion( final StoreKey key, final Transfer transfer, final String version )
+    {
+        final Boolean done = lockAnd( key, transfer.getPath(), p -> {
+            try
+            {
+                final PackageMetadata metadata = read( transfer );
+                if ( metadata == null || !applyUnpublish( metadata, version ) )
+                {
+                    return true;
+                }
+
+                if ( metadata.getVersions().isEmpty() )
+                {
+                    logger.info( "Last version: {} removed, deleting: {}", version, transfer );
+                    transfer.delete( true );
+                }
+                else
+                {
+                    logger.info( "Removing version: {} from: {}", version, transfer );
+                    write( metadata, transfer, new EventMetadata() );
+                }
+            }
+            catch ( final IOException e )
+            {
+                logger.warn( String.format( "Cannot remove version: %s from: %s, deleting it to be regenerated. Reason: %s",
+                                            version, transfer, e.getMessage() ), e );
+                deleteQuietly( transfer );
+            }
+            return true;
+        } );
+
+        if ( done == null )
+        {
+            logger.warn( "Timed out waiting for the lock of: {} in: {}, deleting it to be regenerated", transfer.getPath(),
+                         key );
+            deleteQuietly( transfer );
+        }
+    }
+
+    /**
+     * Adds the versions of a published document (as sent by 'npm publish') to the package metadata, together with their
+     * dist-tags and publish times. If a published version is the latest one, the package-level fields are taken from
+     * it, as {@link PackageMetadataGenerator} does.
+     */
+    public void applyPublish( final PackageMetadata metadata, final PackageMetadata published )
+    {
+        final String now = now();
+        final Map<String, VersionMetadata> versions = new LinkedHashMap<>( metadata.getVersions() );
+        final Map<String, String> times = new LinkedHashMap<>( metadata.getTime() );
+
+        for ( final Map.Entry<String, VersionMetadata> entry : published.getVersions().entrySet() )
+        {
+            final VersionMetadata version = entry.getValue();
+            if ( version.getDist() == null && version.getName() != null )
+            {
+                // same mock host as PackageMetadataGenerator, indy will amend it with the right hostname
+                final String name = version.getName();
+                final String tarball = name.substring( name.lastIndexOf( '/' ) + 1 ) + "-" + entry.getKey() + ".tgz";
+                version.setDist( new Dist( null, "http://indy/" + normalize( name, "-", tarball ) ) );
+            }
+            versions.put( entry.getKey(), version );
+            times.put( entry.getKey(), now );
+        }
+        metadata.setVersions( sortVersions( versions ) );
+
+        final DistTag distTags = metadata.getDistTags();
+        published.getDistTags().fetchTagsMap().forEach( ( tag, version ) -> {
+            if ( version != null )
+            {
+                distTags.putTag( tag, version );
+            }
+        } );
+        if ( distTags.getLatest() == null || !versions.containsKey( distTags.getLatest() ) )
+        {
+            distTags.setLatest( getLastVersion( metadata ) );
+        }
+
+        final VersionMetadata latest = published.getVersions().get( distTags.getLatest() );
+        if ( latest != null )
+        {
+            metadata.setName( latest.getName() );
+            metadata.setDescription( latest.getDescription() );
+            metadata.setAuthor( latest.getAuthor() );
+            if ( latest.getLicense() != null )
+            {
+                metadata.setLicense( latest.getLicense() );
+            }
+            metadata.setRepository( latest.getRepository() );
+            metadata.setBugs( latest.getBugs() );
+        }
+
+        for ( final VersionMetadata version : published.getVersions().values() )
+        {
+            if ( version.getKeywords() != null )
+            {
+                version.getKeywords()
+                       .stream()
+                       .filter( keyword -> !metadata.getKeywords().contains( keyword ) )
+                       .forEach( metadata::addKeywords );
+            }
+        }
+
+        metadata.setTime( touch( times, now ) );
+    }
+
+    /**
+     * Removes a version and the dist-tags pointing to it from the package metadata. If that was the latest version,
+     * the highest remaining version becomes the latest.
+     *
+     * @return false if the version wasn't there
+     */
+    public boolean applyUnpublish( final PackageMetadata metadata, final String version )
+    {
+        final Map<String, VersionMetadata> versions = new LinkedHashMap<>( metadata.getVersions() );
+        if ( versions.remove( version ) == null )
+        {
+            return false;
+        }
+        metadata.setVersions( versions );
+
+        final Map<String, String> tags = metadata.getDistTags().fetchTagsMap();
+        tags.values().removeIf( version::equals );
+        if ( tags.get( LATEST ) == null && !versions.isEmpty() )
+        {
+            tags.put( LATEST, getLastVersion( metadata ) );
+        }
+
+        final Map<String, String> times = new LinkedHashMap<>( metadata.getTime() );
+        times.remove( version );
+        metadata.setTime( touch( times, now() ) );
+        return true;
+    }
+
+    private void deleteQuietly( final Transfer transfer )
+    {
+        try
+        {
+            transfer.delete( true );
+        }
+        catch ( final IOException e )
+        {
+            logger.error( String.format( "Cannot delete: %s. Reason: %s", transfer, e.getMessage() ), e );
+        }
+    }
+
+    // the package path and its package.json share the lock
+    private static String computeKey( final StoreKey key, final String path )
+    {
+        final String metadataPath = path.endsWith( NPM_METADATA_NAME ) ? path : normalize( path, NPM_METADATA_NAME );
+        return key.toString() + "-" + normalize( metadataPath );
+    }
+
+    // same order as PackageMetadataGenerator
+    private static Map<String, VersionMetadata> sortVersions( final Map<String, VersionMetadata> versions )
+    {
+        final Map<String, VersionMetadata> sorted = new LinkedHashMap<>( versions.size() );
+        new ArrayList<>( versions.keySet() ).stream().sorted().forEach( k -> sorted.put( k, versions.get( k ) ) );
+        return sorted;
+    }
+
+    private static String getLastVersion( final PackageMetadata metadata )
+    {
+        final List<String> versions = new ArrayList<>( metadata.getVersions().keySet() );
+        versions.sort( null );
+        return versions.isEmpty() ? null : versions.get( versions.size() - 1 );
+    }
+
+    private static Map<String, String> touch( final Map<String, String> times, final String now )
+    {
+        final Map<String, String> result = new LinkedHashMap<>();
+        result.put( MODIFIED, now );
+        result.put( CREATED, times.getOrDefault( CREATED, now ) );
+        times.forEach( result::putIfAbsent );
+        return result;
+    }
+
+    private static String now()
+    {
+        final SimpleDateFormat format = new SimpleDateFormat( TIME_FORMAT );
+        format.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+        return format.format( new Date() );
+    }
+}
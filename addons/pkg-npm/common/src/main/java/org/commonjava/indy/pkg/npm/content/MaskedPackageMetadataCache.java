@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.maven.galley.util.UrlUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.net.MalformedURLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Package metadata (package.json) as written by {@link NPMPackageMaskingTransferDecorator}, i.e. with the tarball urls
+ * pointing at one entry point, so the same file doesn't have to be rewritten for every request.
+ * <p>
+ * The abbreviated form of the same metadata (see {@link PackageMetadataAbbreviator}) is cached next to it.
+ * <p>
+ * Entries are keyed by store, path and context url, and remember the size and timestamp of the stored file they were
+ * rendered from; an entry is only returned while the stored file still matches. The least recently used entries are
+ * dropped once the total size of the cached content goes over {@link IndyConfiguration#getNpmMetadataCacheMaxBytes()}.
+ */
+@ApplicationScoped
+public class MaskedPackageMetadataCache
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private IndyConfiguration config;
+
+    private final LinkedHashMap<Key, Rendered> entries = new LinkedHashMap<>( 256, 0.75f, true );
+
+    private long totalBytes;
+
+    protected MaskedPackageMetadataCache()
+    {
+    }
+
+    public MaskedPackageMetadataCache( final IndyConfiguration config )
+    {
+        this.config = config;
+    }
+
+    /**
+     * The url the tarball urls of a package.json in the given store are rewritten against, for requests coming in
+     * through the given base uri.
+     */
+    public static String getContextURL( final String baseURI, final StoreKey key )
+            throws MalformedURLException
+    {
+        return UrlUtils.buildUrl( baseURI, key.getType().name(), key.getName() );
+    }
+
+    public boolean isEnabled()
+    {
+        return config != null && config.isNpmMetadataCacheEnabled();
+    }
+
+    public int getMaxEntryBytes()
+    {
+        return config.getNpmMetadataCacheMaxEntryBytes();
+    }
+
+    /**
+     * @return the rewritten content, or null if there is none for the stored file with the given size and timestamp
+     */
+    public byte[] get( final StoreKey store, final String path, final String contextURL, final long lastModified,
+                       final long length )
+    {
+        return get( store, path, contextURL, false, lastModified, length );
+    }
+
+    /**
+     * @param abbreviated whether to look up the abbreviated metadata instead of the full one
+     * @return the rewritten content, or null if there is none for the stored file with the given size and timestamp
+     */
+    public synchronized byte[] get( final StoreKey store, final String path, final String contextURL,
+                                    final boolean abbreviated, final long lastModified, final long length )
+    {
+        if ( !isEnabled() )
+        {
+            return null;
+        }
+
+        final Key key = new Key( store, path, contextURL, abbreviated );
+        final Rendered rendered = entries.get( key );
+        if ( rendered == null )
+        {
+            return null;
+        }
+
+        if ( rendered.lastModified != lastModified || rendered.length != length )
+        {
+            logger.trace( "Dropping stale rendered metadata: {}", key );
+            remove( key );
+            return null;
+        }
+
+        return rendered.content;
+    }
+
+    public void put( final StoreKey store, final String path, final String contextURL, final long lastModified,
+                     final long length, final byte[] content )
+    {
+        put( store, path, contextURL, false, lastModified, length, content );
+    }
+
+    public synchronized void put( final StoreKey store, final String path, final String contextURL,
+                                  final boolean abbreviated, final long lastModified, final long length,
+                                  final byte[] content )
+    {
+        if ( !isEnabled() || content.length > getMaxEntryBytes() )
+        {
+            return;
+        }
+
+        final Key key = new Key( store, path, contextURL, abbreviated );
+        remove( key );
+
+        entries.put( key, new Rendered( lastModified, length, content ) );
+        totalBytes += content.length;
+
+        final long maxBytes = config.getNpmMetadataCacheMaxBytes();
+        final Iterator<Map.Entry<Key, Rendered>> it = entries.entrySet().iterator();
+        while ( totalBytes > maxBytes && it.hasNext() )
+        {
+            final Map.Entry<Key, Rendered> eldest = it.next();
+            totalBytes -= eldest.getValue().content.length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Drops the rendered content of the given path in the given store, for every context url, full and abbreviated.
+     */
+    public synchronized void invalidate( final StoreKey store, final String path )
+    {
+        final Iterator<Map.Entry<Key, Rendered>> it = entries.entrySet().iterator();
+        while ( it.hasNext() )
+        {
+            final Map.Entry<Key, Rendered> entry = it.next();
+            if ( entry.getKey().matches( store, path ) )
+            {
+                logger.trace( "Invalidating rendered metadata: {}", entry.getKey() );
+                totalBytes -= entry.getValue().content.length;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes()
+    {
+        return totalBytes;
+    }
+
+    private void remove( final Key key )
+    {
+        final Rendered old = entries.remove( key );
+        if ( old != null )
+        {
+            totalBytes -= old.content.length;
+        }
+    }
+
+    private static final class Key
+    {
+        private final StoreKey store;
+
+        private final String path;
+
+        private final String contextURL;
+
+        private final boolean abbreviated;
+
+        private Key( final StoreKey store, final String path, final String contextURL, final boolean abbreviated )
+        {
+            this.store = store;
+            this.path = path;
+            this.contextURL = contextURL;
+            this.abbreviated = abbreviated;
+        }
+
+        private boolean matches( final StoreKey store, final String path )
+        {
+            return this.store.equals( store ) && this.path.equals( path );
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof Key ) )
+            {
+                return false;
+            }
+            final Key other = (Key) o;
+            return abbreviated == other.abbreviated && store.equals( other.store ) && path.equals( other.path )
+                    && contextURL.equals( other.contextURL );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( store, path, contextURL, abbreviated );
+        }
+
+        @Override
+        public String toString()
+        {
+            return store + ":" + path + " (" + contextURL + ( abbreviated ? ", abbreviated)" : ")" );
+        }
+    }
+
+    private static final class Rendered
+    {
+        private final long lastModified;
+
+        private final long length;
+
+        private final byte[] content;
+
+        private Rendered( final long lastModified, final long length, final byte[] content )
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.content = content;
+        }
+    }
+}
@@ -24,7 +24,6 @@ import org.commonjava.maven.galley.io.AbstractTransferDecorator;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.util.IdempotentCloseInputStream;
-import org.commonjava.maven.galley.util.UrlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,11 +32,11 @@ import javax.inject.Inject;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.commonjava.indy.content.ContentManager.ENTRY_POINT_BASE_URI;
 import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
-import static org.commonjava.indy.pkg.npm.content.DecoratorUtils.updatePackageJson;
 import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_METADATA_NAME;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
@@ -50,10 +49,18 @@ public class NPMPackageMaskingTransferDecorator
     @Inject
     private DefaultMetricsManager metricsManager;
 
+    @Inject
+    private MaskedPackageMetadataCache renderCache;
+
     public NPMPackageMaskingTransferDecorator()
     {
     }
 
+    public NPMPackageMaskingTransferDecorator( final MaskedPackageMetadataCache renderCache )
+    {
+        this.renderCache = renderCache;
+    }
+
     @Override
     public InputStream decorateRead( final InputStream stream, final Transfer transfer, EventMetadata metadata )
                     throws IOException
@@ -85,103 +92,177 @@ public class NPMPackageMaskingTransferDecorator
         }
 
         StoreKey key = keyedLocation.getKey();
-        String contextURL = UrlUtils.buildUrl( baseURI, key.getType().name(), key.getName() );
+        String contextURL = MaskedPackageMetadataCache.getContextURL( baseURI, key );
         logger.debug( "Use contextURL: {}", contextURL );
-        return new PackageMaskingInputStream( stream, contextURL, metricsManager );
+
+        RenderCapture capture = null;
+        if ( renderCache != null && renderCache.isEnabled() )
+        {
+            capture = new RenderCapture( renderCache, key, transfer, contextURL );
+        }
+        return new PackageMaskingInputStream( stream, contextURL, metricsManager, capture );
     }
 
+    /**
+     * Rewrites the values of "tarball" fields (see {@link DecoratorUtils#updatePackageJson(String, String)}) while the
+     * packument is read, leaving all other bytes as they are. JSON strings are tracked byte by byte (structural
+     * characters are ASCII, so UTF-8 content doesn't need decoding); only a tarball url being rewritten is held back,
+     * so memory use doesn't grow with the size of the packument.
+     */
     private static class PackageMaskingInputStream
             extends IdempotentCloseInputStream
     {
         private static final String TIMER = "io.npm.metadata.in.filter";
 
+        private static final byte[] TARBALL = "tarball".getBytes( UTF_8 );
+
+        private static final int SIZE = 8192;
+
+        // longer values are passed on unchanged
+        private static final int MAX_URL_LENGTH = 8192;
+
+        private enum State
+        {
+            NONE, AFTER_KEY, AFTER_COLON, VALUE
+        }
+
         final Logger logger = LoggerFactory.getLogger( this.getClass() );
 
-        int position;
+        private final String contextURL;
+
+        private final DefaultMetricsManager metricsManager;
+
+        private final byte[] chunk = new byte[SIZE];
+
+        private byte[] pending = new byte[SIZE * 2];
+
+        private int pendingLength;
+
+        private int position;
+
+        private final byte[] value = new byte[MAX_URL_LENGTH];
+
+        private int valueLength;
+
+        private State state = State.NONE;
 
-        private String contextURL;
+        private boolean inString;
 
-        private DefaultMetricsManager metricsManager;
+        private boolean escape;
 
-        private byte[] bytes;
+        // how many bytes of the current string matched "tarball" so far, -1 if it doesn't match
+        private int keyMatched;
 
-        boolean masked;
+        private boolean eof;
 
-        private static final int SIZE = 1024;
+        private final RenderCapture capture;
 
         private PackageMaskingInputStream( final InputStream stream, final String contextURL,
-                                           final DefaultMetricsManager metricsManager )
+                                           final DefaultMetricsManager metricsManager, final RenderCapture capture )
         {
             super( stream );
             this.contextURL = contextURL;
             this.metricsManager = metricsManager;
+            this.capture = capture;
         }
 
         @Override
-        public synchronized int read() throws IOException
+        public int read() throws IOException
         {
-            if ( !masked )
+            while ( position >= pendingLength )
             {
-                mask( contextURL );
-            }
-            if ( position < bytes.length )
-            {
-                return bytes[position++];
+                if ( eof )
+                {
+                    return -1;
+                }
+                fill();
             }
-            return -1;
+            return pending[position++] & 0xff;
         }
 
         @Override
-        public synchronized int read( byte[] b, int off, int len ) throws IOException
+        public int read( byte[] b, int off, int len ) throws IOException
         {
-            if ( !masked )
-            {
-                mask( contextURL );
-            }
-            if ( position >= bytes.length )
+            if ( len == 0 )
             {
-                return -1;
+                return 0;
             }
-            int read = 0;
-            for ( int i = 0; i < len; i++ )
+
+            while ( position >= pendingLength )
             {
-                if ( position < bytes.length )
+                if ( eof )
                 {
-                    b[off + i] = bytes[position++];
-                    read++;
+                    return -1;
                 }
-                else
+                fill();
+            }
+
+            final int read = Math.min( len, pendingLength - position );
+            System.arraycopy( pending, position, b, off, read );
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip( final long n ) throws IOException
+        {
+            long skipped = 0;
+            while ( skipped < n )
+            {
+                final int read = read( chunk, 0, (int) Math.min( chunk.length, n - skipped ) );
+                if ( read < 0 )
                 {
                     break;
                 }
+                skipped += read;
             }
-            return read;
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return pendingLength - position;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
         }
 
-        private void mask( String contextURL ) throws IOException
+        private void fill() throws IOException
         {
+            position = 0;
+            pendingLength = 0;
+
+            final int read = super.read( chunk, 0, chunk.length );
+
             Timer.Context timer = metricsManager == null ? null : metricsManager.startTimer( TIMER );
             try
             {
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                int read;
+                if ( read < 0 )
                 {
-                    byte[] buffer = new byte[SIZE];
-                    while ( ( read = super.read(buffer, 0, buffer.length) ) >= 0 )
+                    eof = true;
+                    if ( state == State.VALUE )
                     {
-                        bos.write( buffer, 0, read );
+                        // unterminated; pass on what there is
+                        emit( (byte) '"' );
+                        emit( value, valueLength );
+                    }
+                }
+                else
+                {
+                    for ( int i = 0; i < read; i++ )
+                    {
+                        process( chunk[i] );
                     }
                 }
-                byte[] rawBytes = bos.toByteArray();
-                String raw = new String( rawBytes, UTF_8 );
-
-                logger.trace( "Mask for raw:\n{}", raw );
-
-                String s = updatePackageJson( raw, contextURL );
 
-                logger.trace( "Masked:\n{}", s );
-                bytes = s.getBytes();
-                masked = true;
+                if ( capture != null )
+                {
+                    capture.append( pending, pendingLength, eof );
+                }
             }
             finally
             {
@@ -191,6 +272,292 @@ public class NPMPackageMaskingTransferDecorator
                 }
             }
         }
+
+        private void process( final byte b ) throws IOException
+        {
+            if ( state == State.VALUE )
+            {
+                processValue( b );
+                return;
+            }
+
+            if ( inString )
+            {
+                emit( b );
+                if ( escape )
+                {
+                    escape = false;
+                    keyMatched = -1;
+                }
+                else if ( b == '\\' )
+                {
+                    escape = true;
+                    keyMatched = -1;
+                }
+                else if ( b == '"' )
+                {
+                    inString = false;
+                    state = keyMatched == TARBALL.length ? State.AFTER_KEY : State.NONE;
+                }
+                else if ( keyMatched >= 0 && keyMatched < TARBALL.length && b == TARBALL[keyMatched] )
+                {
+                    keyMatched++;
+                }
+                else
+                {
+                    keyMatched = -1;
+                }
+                return;
+            }
+
+            if ( state == State.AFTER_KEY )
+            {
+                if ( b == ':' )
+                {
+                    state = State.AFTER_COLON;
+                }
+                else if ( !isWhitespace( b ) )
+                {
+                    state = State.NONE;
+                }
+            }
+            else if ( state == State.AFTER_COLON )
+            {
+                if ( b == '"' )
+                {
+                    // the opening quote is written with the value
+                    state = State.VALUE;
+                    valueLength = 0;
+                    escape = false;
+                    return;
+                }
+                else if ( !isWhitespace( b ) )
+                {
+                    state = State.NONE;
+                }
+            }
+
+            emit( b );
+            if ( b == '"' )
+            {
+                inString = true;
+                escape = false;
+                keyMatched = 0;
+            }
+        }
+
+        private void processValue( final byte b ) throws IOException
+        {
+            if ( !escape && b == '"' )
+            {
+                final String raw = new String( value, 0, valueLength, UTF_8 );
+                final String url = unescape( raw );
+                final String masked = url == null ? null : DecoratorUtils.maskTarballUrl( url, contextURL );
+                logger.trace( "Masked tarball url: {} to: {}", raw, masked );
+
+                emit( (byte) '"' );
+                if ( masked == null || masked.equals( url ) )
+                {
+                    emit( value, valueLength );
+                }
+                else
+                {
+                    final byte[] maskedBytes = escape( masked ).getBytes( UTF_8 );
+                    emit( maskedBytes, maskedBytes.length );
+                }
+                emit( b );
+                state = State.NONE;
+                return;
+            }
+
+            if ( valueLength == value.length )
+            {
+                // too long for a url, carry on with it as an ordinary string
+                emit( (byte) '"' );
+                emit( value, valueLength );
+                state = State.NONE;
+                inString = true;
+                keyMatched = -1;
+                process( b );
+                return;
+            }
+
+            value[valueLength++] = b;
+            escape = !escape && b == '\\';
+        }
+
+        private void emit( final byte b )
+        {
+            if ( pendingLength == pending.length )
+            {
+                pending = Arrays.copyOf( pending, pending.length * 2 );
+            }
+            pending[pendingLength++] = b;
+        }
+
+        private void emit( final byte[] bytes, final int length )
+        {
+            if ( pendingLength + length > pending.length )
+            {
+                pending = Arrays.copyOf( pending, Math.max( pending.length * 2, pendingLength + length ) );
+            }
+            System.arraycopy( bytes, 0, pending, pendingLength, length );
+            pendingLength += length;
+        }
+
+        private static boolean isWhitespace( final byte b )
+        {
+            return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+        }
+
+        /**
+         * The value of a JSON string with its escapes resolved, or null if it has an invalid escape.
+         */
+        private static String unescape( final String raw )
+        {
+            if ( raw.indexOf( '\\' ) < 0 )
+            {
+                return raw;
+            }
+
+            final StringBuilder sb = new StringBuilder( raw.length() );
+            for ( int i = 0; i < raw.length(); i++ )
+            {
+                char c = raw.charAt( i );
+                if ( c != '\\' )
+                {
+                    sb.append( c );
+                    continue;
+                }
+
+                if ( ++i == raw.length() )
+                {
+                    return null;
+                }
+
+                c = raw.charAt( i );
+                switch ( c )
+                {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append( c );
+                        break;
+                    case 'b':
+                        sb.append( '\b' );
+                        break;
+                    case 'f':
+                        sb.append( '\f' );
+                        break;
+                    case 'n':
+                        sb.append( '\n' );
+                        break;
+                    case 'r':
+                        sb.append( '\r' );
+                        break;
+                    case 't':
+                        sb.append( '\t' );
+                        break;
+                    case 'u':
+                        if ( i + 4 >= raw.length() )
+                        {
+                            return null;
+                        }
+                        try
+                        {
+                            sb.append( (char) Integer.parseInt( raw.substring( i + 1, i + 5 ), 16 ) );
+                        }
+                        catch ( NumberFormatException e )
+                        {
+                            return null;
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            return sb.toString();
+        }
+
+        private static String escape( final String value )
+        {
+            final StringBuilder sb = new StringBuilder( value.length() );
+            for ( int i = 0; i < value.length(); i++ )
+            {
+                final char c = value.charAt( i );
+                if ( c == '"' || c == '\\' )
+                {
+                    sb.append( '\\' ).append( c );
+                }
+                else if ( c < 0x20 )
+                {
+                    sb.append( String.format( "\\u%04x", (int) c ) );
+                }
+                else
+                {
+                    sb.append( c );
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Collects the rewritten package.json as it is read, and hands it to the {@link MaskedPackageMetadataCache} once it
+     * has been read completely. Nothing is cached if the stored file changed meanwhile or it gets too large.
+     */
+    private static final class RenderCapture
+    {
+        private final MaskedPackageMetadataCache cache;
+
+        private final StoreKey key;
+
+        private final Transfer transfer;
+
+        private final String contextURL;
+
+        private final long lastModified;
+
+        private final long length;
+
+        private ByteArrayOutputStream content;
+
+        private RenderCapture( final MaskedPackageMetadataCache cache, final StoreKey key, final Transfer transfer,
+                               final String contextURL )
+        {
+            this.cache = cache;
+            this.key = key;
+            this.transfer = transfer;
+            this.contextURL = contextURL;
+            this.lastModified = transfer.lastModified();
+            this.length = transfer.length();
+            this.content = new ByteArrayOutputStream( (int) Math.max( 0, Math.min( length, cache.getMaxEntryBytes() ) ) );
+        }
+
+        private void append( final byte[] bytes, final int len, final boolean complete )
+        {
+            if ( content == null )
+            {
+                return;
+            }
+
+            if ( content.size() + len > cache.getMaxEntryBytes() )
+            {
+                content = null;
+                return;
+            }
+
+            content.write( bytes, 0, len );
+            if ( complete )
+            {
+                if ( transfer.lastModified() == lastModified && transfer.length() == length )
+                {
+                    cache.put( key, transfer.getPath(), contextURL, lastModified, length, content.toByteArray() );
+                }
+                content = null;
+            }
+        }
     }
 
 }
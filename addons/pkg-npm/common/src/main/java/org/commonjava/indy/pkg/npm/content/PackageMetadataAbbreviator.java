@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Derives the abbreviated package metadata ("corgi" document) that npm clients ask for with
+ * <code>Accept: application/vnd.npm.install-v1+json</code> from the full package metadata. Only the fields needed to
+ * install a package are kept: name, modified (from time.modified), dist-tags and, per version, its dependencies, dist,
+ * engines and a few more.
+ * <p>
+ * The full document is read and the abbreviated one written token by token, so only one field name is held at a time.
+ */
+public final class PackageMetadataAbbreviator
+{
+    public static final String ABBREVIATED_CONTENT_TYPE = "application/vnd.npm.install-v1+json";
+
+    private static final Set<String> VERSION_FIELDS = Collections.unmodifiableSet( new HashSet<>(
+            Arrays.asList( "name", "version", "deprecated", "dependencies", "optionalDependencies",
+                           "devDependencies", "bundleDependencies", "bundledDependencies", "peerDependencies",
+                           "peerDependenciesMeta", "acceptDependencies", "bin", "directories", "dist", "engines",
+                           "cpu", "os", "_hasShrinkwrap", "hasInstallScript" ) ) );
+
+    private static final Set<String> INSTALL_SCRIPTS =
+            Collections.unmodifiableSet( new HashSet<>( Arrays.asList( "preinstall", "install", "postinstall" ) ) );
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private PackageMetadataAbbreviator()
+    {
+    }
+
+    /**
+     * Whether the Accept header asks for abbreviated metadata.
+     */
+    public static boolean isAbbreviatedAccepted( final String accept )
+    {
+        return accept != null && accept.contains( ABBREVIATED_CONTENT_TYPE );
+    }
+
+    /**
+     * Writes the abbreviated form of the full package metadata read from <code>in</code> to <code>out</code>. Neither
+     * stream is closed.
+     *
+     * @throws JsonParseException if the package metadata isn't a JSON object
+     */
+    public static void abbreviate( final InputStream in, final OutputStream out )
+            throws IOException
+    {
+        try (JsonParser parser = FACTORY.createParser( in );
+             JsonGenerator generator = FACTORY.createGenerator( out ))
+        {
+            parser.disable( JsonParser.Feature.AUTO_CLOSE_SOURCE );
+            generator.disable( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+
+            if ( parser.nextToken() != JsonToken.START_OBJECT )
+            {
+                throw new JsonParseException( parser, "Package metadata is not a JSON object" );
+            }
+
+            String modified = null;
+            generator.writeStartObject();
+            while ( parser.nextToken() == JsonToken.FIELD_NAME )
+            {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                switch ( field )
+                {
+                    case "name":
+                    case "dist-tags":
+                    {
+                        generator.writeFieldName( field );
+                        generator.copyCurrentStructure( parser );
+                        break;
+                    }
+                    case "time":
+                    {
+                        modified = readModified( parser, value );
+                        break;
+                    }
+                    case "versions":
+                    {
+                        generator.writeFieldName( field );
+                        writeVersions( parser, generator, value );
+                        break;
+                    }
+                    default:
+                    {
+                        parser.skipChildren();
+                    }
+                }
+            }
+
+            if ( modified != null )
+            {
+                generator.writeStringField( "modified", modified );
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private static String readModified( final JsonParser parser, final JsonToken value )
+            throws IOException
+    {
+        if ( value != JsonToken.START_OBJECT )
+        {
+            parser.skipChildren();
+            return null;
+        }
+
+        String modified = null;
+        while ( parser.nextToken() == JsonToken.FIELD_NAME )
+        {
+            final String field = parser.getCurrentName();
+            if ( parser.nextToken() == JsonToken.VALUE_STRING && "modified".equals( field ) )
+            {
+                modified = parser.getText();
+            }
+            parser.skipChildren();
+        }
+        return modified;
+    }
+
+    private static void writeVersions( final JsonParser parser, final JsonGenerator generator, final JsonToken value )
+            throws IOException
+    {
+        if ( value != JsonToken.START_OBJECT )
+        {
+            generator.copyCurrentStructure( parser );
+            return;
+        }
+
+        generator.writeStartObject();
+        while ( parser.nextToken() == JsonToken.FIELD_NAME )
+        {
+            generator.writeFieldName( parser.getCurrentName() );
+            if ( parser.nextToken() == JsonToken.START_OBJECT )
+            {
+                writeVersion( parser, generator );
+            }
+            else
+            {
+                generator.copyCurrentStructure( parser );
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeVersion( final JsonParser parser, final JsonGenerator generator )
+            throws IOException
+    {
+        boolean installScript = false;
+        boolean installScriptWritten = false;
+
+        generator.writeStartObject();
+        while ( parser.nextToken() == JsonToken.FIELD_NAME )
+        {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ( VERSION_FIELDS.contains( field ) )
+            {
+                installScriptWritten |= "hasInstallScript".equals( field );
+                generator.writeFieldName( field );
+                generator.copyCurrentStructure( parser );
+            }
+            else if ( "scripts".equals( field ) && value == JsonToken.START_OBJECT )
+            {
+                // the registry derives hasInstallScript from the scripts, which aren't part of the abbreviated form
+                while ( parser.nextToken() == JsonToken.FIELD_NAME )
+                {
+                    installScript |= INSTALL_SCRIPTS.contains( parser.getCurrentName() );
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
+
+        if ( installScript && !installScriptWritten )
+        {
+            generator.writeBooleanField( "hasInstallScript", true );
+        }
+        generator.writeEndObject();
+    }
+}
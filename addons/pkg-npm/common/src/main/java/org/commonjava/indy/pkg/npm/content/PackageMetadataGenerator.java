@@ -162,12 +162,12 @@ public class PackageMetadataGenerator
                 }
             }
 
-            final byte[] merged = merger.merge( sources, group, toMergePath );
+            final PackageMetadata merged = merger.mergeMetadata( sources, group, toMergePath );
             if ( merged != null )
             {
                 try (OutputStream fos = target.openOutputStream( TransferOperation.GENERATE, true, eventMetadata ))
                 {
-                    fos.write( merged );
+                    merger.write( merged, fos );
                 }
                 catch ( final IOException e )
                 {
@@ -15,8 +15,11 @@
  */
 package org.commonjava.indy.pkg.npm.content.group;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import org.apache.commons.io.IOUtils;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
@@ -31,13 +34,18 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
-import static org.apache.commons.io.IOUtils.closeQuietly;
 import static org.commonjava.indy.util.LocationUtils.getKey;
 
 @ApplicationScoped
@@ -53,6 +61,11 @@ public class PackageMetadataMerger
     @Inject
     private IndyObjectMapper mapper;
 
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "npm-metadata-merger", threads = 8, priority = 8 )
+    private WeftExecutorService parseExecutor;
+
     private List<PackageMetadataProvider> metadataProviders;
 
     public PackageMetadataMerger()
@@ -60,11 +73,21 @@ public class PackageMetadataMerger
     }
 
     public PackageMetadataMerger( Iterable<PackageMetadataProvider> providers, IndyObjectMapper mapper )
+    {
+        this( providers, mapper, null );
+    }
+
+    /**
+     * @param parseExecutor runs the parsing of member metadata; if null, members are parsed on the calling thread
+     */
+    public PackageMetadataMerger( Iterable<PackageMetadataProvider> providers, IndyObjectMapper mapper,
+                                  WeftExecutorService parseExecutor )
     {
         metadataProviders = new ArrayList<>();
         providers.forEach( provider -> metadataProviders.add( provider ) );
 
         this.mapper = mapper;
+        this.parseExecutor = parseExecutor;
     }
 
     @PostConstruct
@@ -80,42 +103,73 @@ public class PackageMetadataMerger
     }
 
     public byte[] merge( final Collection<Transfer> sources, final Group group, final String path )
+    {
+        final PackageMetadata packageMetadata = mergeMetadata( sources, group, path );
+        if ( packageMetadata != null )
+        {
+            try
+            {
+                return mapper.writeValueAsBytes( packageMetadata );
+            }
+            catch ( JsonProcessingException e )
+            {
+                Logger logger = LoggerFactory.getLogger( getClass() );
+                logger.error( String.format( "Cannot convert from metadata: %s to String. Reason: %s", packageMetadata,
+                                             e.getMessage() ), e );
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Merges the package metadata of the group members (and the metadata providers), in member order. The members are
+     * parsed in parallel, each straight from its stream.
+     *
+     * @return the merged metadata, or null if there was nothing to merge
+     */
+    public PackageMetadata mergeMetadata( final Collection<Transfer> sources, final Group group, final String path )
     {
         Logger logger = LoggerFactory.getLogger( getClass() );
         logger.debug( "Generating merged metadata in: {}:{}", group.getKey(), path );
 
-        InputStream stream = null;
-
         boolean merged = false;
 
         final PackageMetadata packageMetadata = new PackageMetadata();
 
+        final List<Future<PackageMetadata>> parsed = new ArrayList<>( sources.size() );
         for ( final Transfer src : sources )
         {
-            if ( !src.exists() )
+            if ( src.exists() )
             {
-                continue;
+                parsed.add( submitRead( src ) );
             }
+        }
 
+        for ( final Future<PackageMetadata> future : parsed )
+        {
+            final PackageMetadata md;
             try
             {
-                stream = src.openInputStream();
-                String content = IOUtils.toString( stream );
-                logger.debug( "Adding in metadata content from: {}\n\n{}\n\n", src, content );
-
-                PackageMetadata md = mapper.readValue( content, PackageMetadata.class );
-
-                merged = packageMetadata.merge( md, true ) || merged;
+                md = future.get();
             }
-            catch ( final IOException e )
+            catch ( final InterruptedException e )
             {
-                final StoreKey key = getKey( src );
-                logger.error( String.format( "Cannot read metadata: %s from artifact-store: %s. Reason: %s",
-                                             src.getPath(), key, e.getMessage() ), e );
+                logger.warn( "Interrupted while merging package metadata: {} in: {}", path, group.getKey() );
+                parsed.forEach( f -> f.cancel( true ) );
+                Thread.currentThread().interrupt();
+                return null;
             }
-            finally
+            catch ( final ExecutionException e )
             {
-                closeQuietly( stream );
+                logger.error( String.format( "Cannot parse metadata: %s for group: %s. Reason: %s", path,
+                                             group.getKey(), e.getMessage() ), e );
+                continue;
+            }
+
+            if ( md != null )
+            {
+                merged = packageMetadata.merge( md, true ) || merged;
             }
         }
 
@@ -139,35 +193,23 @@ public class PackageMetadataMerger
             }
         }
 
-        if ( merged )
-        {
-
-            String output = null;
-            try
-            {
-                output = mapper.writeValueAsString( packageMetadata );
-            }
-            catch ( JsonProcessingException e )
-            {
-                logger.error( String.format( "Cannot convert from metadata: %s to String. Reason: %s", packageMetadata,
-                                             e.getMessage() ), e );
-            }
-            if ( output != null )
-            {
-                return output.getBytes();
-            }
-        }
+        return merged ? packageMetadata : null;
+    }
 
-        return null;
+    /**
+     * Serializes the metadata straight to the given stream, which is left open.
+     */
+    public void write( final PackageMetadata packageMetadata, final OutputStream out )
+            throws IOException
+    {
+        mapper.writer().without( JsonGenerator.Feature.AUTO_CLOSE_TARGET ).writeValue( out, packageMetadata );
     }
-    
+
     public InputStream merge( final Transfer... sources )
     {
         Logger logger = LoggerFactory.getLogger( getClass() );
         logger.debug( "[NPM] Generating merged metadata when publish" );
 
-        InputStream stream = null;
-
         final PackageMetadata packageMetadata = new PackageMetadata();
 
         for ( final Transfer src : sources )
@@ -177,32 +219,16 @@ public class PackageMetadataMerger
                 continue;
             }
 
-            try
+            PackageMetadata md = read( src );
+            if ( md != null )
             {
-                stream = src.openInputStream();
-                String content = IOUtils.toString( stream );
-                logger.debug( "[NPM] Adding in metadata content from: {}\n\n{}\n\n", src, content );
-
-                PackageMetadata md = mapper.readValue( content, PackageMetadata.class );
-
                 packageMetadata.merge( md, false );
             }
-            catch ( final IOException e )
-            {
-                final StoreKey key = getKey( src );
-                logger.error( String.format( "[NPM] Cannot read metadata: %s from artifact-store: %s. Reason: %s",
-                                             src.getPath(), key, e.getMessage() ), e );
-            }
-            finally
-            {
-                closeQuietly( stream );
-            }
         }
 
-        String output = null;
         try
         {
-            output = mapper.writeValueAsString( packageMetadata );
+            return new ByteArrayInputStream( mapper.writeValueAsBytes( packageMetadata ) );
         }
         catch ( JsonProcessingException e )
         {
@@ -211,9 +237,41 @@ public class PackageMetadataMerger
                                    e.getMessage() ), e );
         }
 
-        if ( output != null )
+        return null;
+    }
+
+    private Future<PackageMetadata> submitRead( final Transfer src )
+    {
+        if ( parseExecutor != null )
+        {
+            try
+            {
+                return parseExecutor.submit( () -> read( src ) );
+            }
+            catch ( final RejectedExecutionException e )
+            {
+                Logger logger = LoggerFactory.getLogger( getClass() );
+                logger.debug( "Parsing metadata: {} on the calling thread, executor is busy", src );
+            }
+        }
+
+        return CompletableFuture.completedFuture( read( src ) );
+    }
+
+    private PackageMetadata read( final Transfer src )
+    {
+        Logger logger = LoggerFactory.getLogger( getClass() );
+        logger.debug( "Adding in metadata content from: {}", src );
+
+        try (InputStream stream = src.openInputStream())
+        {
+            return mapper.readValue( stream, PackageMetadata.class );
+        }
+        catch ( final IOException e )
         {
-            return IOUtils.toInputStream( output );
+            final StoreKey key = getKey( src );
+            logger.error( String.format( "Cannot read metadata: %s from artifact-store: %s. Reason: %s",
+                                         src.getPath(), key, e.getMessage() ), e );
         }
 
         return null;
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.pkg.npm.model.PackageMetadata;
+import org.commonjava.indy.pkg.npm.model.VersionMetadata;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class HostedPackageMetadataUpdaterTest
+{
+    private final HostedPackageMetadataUpdater updater =
+            new HostedPackageMetadataUpdater( new DefaultIndyConfiguration(), null );
+
+    @Test
+    public void publishAddsVersionAndMovesLatest()
+    {
+        PackageMetadata current = packageMetadata( "1.0.0", "1.1.0" );
+        current.getTime().put( "created", "2020-01-01T00:00:00.000Z" );
+        PackageMetadata published = packageMetadata( "1.2.0" );
+        published.getVersions().get( "1.2.0" ).setDescription( "new description" );
+
+        updater.applyPublish( current, published );
+
+        assertThat( new ArrayList<>( current.getVersions().keySet() ),
+                    equalTo( Arrays.asList( "1.0.0", "1.1.0", "1.2.0" ) ) );
+        assertThat( current.getDistTags().getLatest(), equalTo( "1.2.0" ) );
+        assertThat( current.getDescription(), equalTo( "new description" ) );
+        assertThat( current.getTime().get( "created" ), equalTo( "2020-01-01T00:00:00.000Z" ) );
+        assertThat( current.getTime().get( "modified" ), equalTo( current.getTime().get( "1.2.0" ) ) );
+        assertThat( current.getVersions().get( "1.2.0" ).getDist().getTarball(),
+                    equalTo( "http://indy/test/-/test-1.2.0.tgz" ) );
+    }
+
+    @Test
+    public void publishOfOlderVersionKeepsLatest()
+    {
+        PackageMetadata current = packageMetadata( "2.0.0" );
+        PackageMetadata published = packageMetadata( "1.5.0" );
+        published.getDistTags().setLatest( null );
+        published.getDistTags().putTag( "legacy", "1.5.0" );
+
+        updater.applyPublish( current, published );
+
+        assertThat( current.getDistTags().getLatest(), equalTo( "2.0.0" ) );
+        assertThat( current.getDistTags().getTag( "legacy" ), equalTo( "1.5.0" ) );
+        assertThat( new ArrayList<>( current.getVersions().keySet() ), equalTo( Arrays.asList( "1.5.0", "2.0.0" ) ) );
+    }
+
+    @Test
+    public void unpublishRemovesVersionAndItsTags()
+    {
+        PackageMetadata current = packageMetadata( "1.0.0", "1.1.0", "1.2.0" );
+        current.getDistTags().putTag( "beta", "1.2.0" );
+        current.getTime().put( "1.2.0", "2020-01-01T00:00:00.000Z" );
+
+        assertThat( updater.applyUnpublish( current, "1.2.0" ), equalTo( true ) );
+        assertThat( updater.applyUnpublish( current, "3.0.0" ), equalTo( false ) );
+
+        assertThat( new ArrayList<>( current.getVersions().keySet() ), equalTo( Arrays.asList( "1.0.0", "1.1.0" ) ) );
+        assertThat( current.getDistTags().getLatest(), equalTo( "1.1.0" ) );
+        assertThat( current.getDistTags().getBeta(), nullValue() );
+        assertThat( current.getTime().get( "1.2.0" ), nullValue() );
+    }
+
+    @Test
+    public void lockOfOnePackageDoesNotBlockAnother()
+            throws Exception
+    {
+        final StoreKey key = new StoreKey( NPM_PKG_KEY, StoreType.hosted, "test" );
+        final CountDownLatch locked = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            final Future<Boolean> holder = executor.submit( () -> updater.lockAnd( key, "jquery", p -> {
+                locked.countDown();
+                try
+                {
+                    return release.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( final InterruptedException e )
+                {
+                    return false;
+                }
+            } ) );
+
+            assertThat( locked.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+            assertThat( updater.lockAnd( key, "lodash/package.json", p -> true ), equalTo( true ) );
+
+            release.countDown();
+            assertThat( holder.get(), equalTo( true ) );
+        }
+        finally
+        {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static PackageMetadata packageMetadata( final String... versions )
+    {
+        PackageMetadata metadata = new PackageMetadata( "test" );
+        for ( String version : versions )
+        {
+            VersionMetadata versionMetadata = new VersionMetadata( "test", version );
+            metadata.getVersions().put( version, versionMetadata );
+            metadata.getDistTags().setLatest( version );
+        }
+        return metadata;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MaskedPackageMetadataCacheTest
+{
+    private static final String PATH = "jquery/package.json";
+
+    private static final String CONTEXT = "http://localhost/api/content/npm/group/test";
+
+    private final StoreKey group = new StoreKey( PKG_TYPE_NPM, StoreType.group, "test" );
+
+    private MaskedPackageMetadataCache cache;
+
+    @Before
+    public void setup()
+    {
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setNpmMetadataCacheEnabled( true );
+        config.setNpmMetadataCacheMaxBytes( 10L );
+        config.setNpmMetadataCacheMaxEntryBytes( 6 );
+        cache = new MaskedPackageMetadataCache( config );
+    }
+
+    @Test
+    public void contentIsOnlyServedForUnchangedFile()
+    {
+        cache.put( group, PATH, CONTEXT, 100L, 4L, "json".getBytes() );
+
+        assertThat( new String( cache.get( group, PATH, CONTEXT, 100L, 4L ) ), equalTo( "json" ) );
+        assertThat( cache.get( group, PATH, "http://other/api/content/npm/group/test", 100L, 4L ), nullValue() );
+        assertThat( cache.get( group, PATH, CONTEXT, 101L, 4L ), nullValue() );
+
+        // the stale entry is gone
+        assertThat( cache.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void invalidateDropsAllContextUrls()
+    {
+        cache.put( group, PATH, CONTEXT, 100L, 4L, "a".getBytes() );
+        cache.put( group, PATH, "http://other/api/content/npm/group/test", 100L, 4L, "b".getBytes() );
+        cache.put( group, "lodash/package.json", CONTEXT, 100L, 4L, "c".getBytes() );
+
+        cache.invalidate( group, PATH );
+
+        assertThat( cache.size(), equalTo( 1 ) );
+        assertThat( cache.getTotalBytes(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void leastRecentlyUsedAndOversizedEntriesAreDropped()
+    {
+        cache.put( group, "a/package.json", CONTEXT, 1L, 1L, "aaaa".getBytes() );
+        cache.put( group, "b/package.json", CONTEXT, 1L, 1L, "bbbb".getBytes() );
+        cache.get( group, "a/package.json", CONTEXT, 1L, 1L );
+        cache.put( group, "c/package.json", CONTEXT, 1L, 1L, "cccc".getBytes() );
+        cache.put( group, "d/package.json", CONTEXT, 1L, 1L, "too large".getBytes() );
+
+        assertThat( cache.get( group, "b/package.json", CONTEXT, 1L, 1L ), nullValue() );
+        assertThat( cache.get( group, "d/package.json", CONTEXT, 1L, 1L ), nullValue() );
+        assertThat( new String( cache.get( group, "a/package.json", CONTEXT, 1L, 1L ) ), equalTo( "aaaa" ) );
+        assertThat( cache.getTotalBytes(), equalTo( 8L ) );
+    }
+}
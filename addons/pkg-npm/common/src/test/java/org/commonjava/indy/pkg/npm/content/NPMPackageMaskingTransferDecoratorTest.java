@@ -28,11 +28,16 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 import static org.commonjava.indy.content.ContentManager.ENTRY_POINT_BASE_URI;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
 import static org.junit.Assert.assertEquals;
 
@@ -88,6 +93,137 @@ public class NPMPackageMaskingTransferDecoratorTest
         assertEquals( expected, ret );
     }
 
+    private static final String BASE_URI = "http://localhost/api/content/npm";
+
+    private static final String URL = "https://registry.npmjs.org/jquery/-/jquery-1.5.1.tgz";
+
+    private static final String MASKED = BASE_URI + "/group/test/jquery/-/jquery-1.5.1.tgz";
+
+    @Test
+    public void keyAndUrlSplitAcrossChunks() throws Exception
+    {
+        // moves the "tarball" key, the colon and the url across the 8k boundary of the first read
+        for ( int pad = 8100; pad <= 8192; pad++ )
+        {
+            assertEquals( "padding: " + pad, packument( pad, MASKED ), mask( packument( pad, URL ), 0 ) );
+        }
+    }
+
+    @Test
+    public void tinyReads() throws Exception
+    {
+        for ( int readSize : new int[] { 1, 2, 5, 7 } )
+        {
+            assertEquals( "read size: " + readSize, packument( 9000, MASKED ), mask( packument( 9000, URL ), readSize ) );
+        }
+    }
+
+    @Test
+    public void escapedUrl() throws Exception
+    {
+        final String escaped = URL.replace( "/", "\\/" );
+        for ( int pad = 8140; pad <= 8192; pad++ )
+        {
+            assertEquals( "padding: " + pad, packument( pad, MASKED ), mask( packument( pad, escaped ), 0 ) );
+        }
+        assertEquals( packument( 9000, MASKED ), mask( packument( 9000, escaped ), 1 ) );
+    }
+
+    @Test
+    public void escapedQuotesAreNotKeys() throws Exception
+    {
+        final String json = "{\"description\":\"say \\\"tarball\\\": \\\"" + URL + "\\\"\"}";
+        assertEquals( json, mask( json, 0 ) );
+        assertEquals( json, mask( json, 1 ) );
+    }
+
+    @Test
+    public void overlongValueIsLeftAlone() throws Exception
+    {
+        final StringBuilder longUrl = new StringBuilder( "https://registry.npmjs.org/" );
+        while ( longUrl.length() < 9000 )
+        {
+            longUrl.append( 'a' );
+        }
+
+        final String json = "{\"a\":{\"tarball\":\"" + longUrl + "\"},\"b\":{\"tarball\":\"" + URL + "\"}}";
+        final String expected = json.replace( "\"" + URL + "\"", "\"" + MASKED + "\"" );
+        assertEquals( expected, mask( json, 0 ) );
+        assertEquals( expected, mask( json, 7 ) );
+    }
+
+    @Test
+    public void eofInsideValue() throws Exception
+    {
+        final String truncated = "{\"dist\":{\"tarball\":\"https://registry.npmjs.org/jq";
+        assertEquals( truncated, mask( truncated, 0 ) );
+        assertEquals( truncated, mask( truncated, 3 ) );
+
+        final String truncatedEscape = "{\"dist\":{\"tarball\":\"https:\\/\\/registry\\";
+        assertEquals( truncatedEscape, mask( truncatedEscape, 1 ) );
+    }
+
+    private static String packument( final int padding, final String tarball )
+    {
+        final StringBuilder description = new StringBuilder();
+        for ( int i = 0; i < padding; i++ )
+        {
+            description.append( 'x' );
+        }
+        return "{\"description\":\"" + description + "\",\"dist\":{\"tarball\" : \"" + tarball + "\"}}";
+    }
+
+    /**
+     * Run the json through the decorator, with the source handing out at most readSize bytes per read (0 for no
+     * limit), and read the result a few bytes at a time.
+     */
+    private String mask( final String json, final int readSize ) throws Exception
+    {
+        KeyedLocation location = new GroupLocation( PKG_TYPE_NPM, "test" );
+        TestCacheProvider provider = new TestCacheProvider( temp.getRoot(), new TestFileEventManager(),
+                                                            new TransferDecoratorManager( new NPMPackageMaskingTransferDecorator() ) );
+        Transfer transfer = provider.getTransfer( new ConcreteResource( location, "jquery/package.json" ) );
+
+        InputStream source = new ByteArrayInputStream( json.getBytes( UTF_8 ) );
+        if ( readSize > 0 )
+        {
+            source = new TinyReadInputStream( source, readSize );
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new NPMPackageMaskingTransferDecorator().decorateRead( source, transfer,
+                                                                                     new EventMetadata().set(
+                                                                                             ENTRY_POINT_BASE_URI,
+                                                                                             BASE_URI ) ))
+        {
+            byte[] buf = new byte[3];
+            int read;
+            while ( ( read = in.read( buf ) ) >= 0 )
+            {
+                out.write( buf, 0, read );
+            }
+        }
+        return new String( out.toByteArray(), UTF_8 );
+    }
+
+    private static final class TinyReadInputStream
+            extends FilterInputStream
+    {
+        private final int readSize;
+
+        private TinyReadInputStream( final InputStream in, final int readSize )
+        {
+            super( in );
+            this.readSize = readSize;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len ) throws IOException
+        {
+            return super.read( b, off, Math.min( len, readSize ) );
+        }
+    }
+
     private InputStream getResourceAsStream( String path )
     {
         return getClass().getClassLoader().getResourceAsStream( path );
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PackageMetadataAbbreviatorTest
+{
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void onlyInstallFieldsAreKept() throws Exception
+    {
+        JsonNode abbreviated = abbreviate( getClass().getClassLoader().getResourceAsStream( "metadata/package-1.json" ) );
+
+        assertThat( fieldNames( abbreviated ), equalTo( Arrays.asList( "name", "dist-tags", "versions", "modified" ) ) );
+        assertThat( abbreviated.path( "modified" ).asText(), equalTo( "2017-04-23T10:57:14.309Z" ) );
+        assertThat( abbreviated.path( "dist-tags" ).path( "latest" ).asText(), equalTo( "2.2.1" ) );
+
+        JsonNode version = abbreviated.path( "versions" ).path( "1.5.1" );
+        assertThat( fieldNames( version ),
+                    equalTo( Arrays.asList( "name", "dependencies", "version", "engines", "directories", "dist",
+                                            "deprecated" ) ) );
+    }
+
+    @Test
+    public void installScriptIsFlagged() throws Exception
+    {
+        String json = "{\"name\":\"foo\",\"versions\":{"
+                + "\"1.0.0\":{\"version\":\"1.0.0\",\"scripts\":{\"test\":\"mocha\",\"postinstall\":\"node x.js\"}},"
+                + "\"1.0.1\":{\"version\":\"1.0.1\",\"scripts\":{\"test\":\"mocha\"}}}}";
+
+        JsonNode versions = abbreviate( new ByteArrayInputStream( json.getBytes() ) ).path( "versions" );
+
+        assertThat( versions.path( "1.0.0" ).path( "hasInstallScript" ).asBoolean(), equalTo( true ) );
+        assertThat( versions.path( "1.0.1" ).has( "hasInstallScript" ), equalTo( false ) );
+        assertThat( versions.path( "1.0.1" ).has( "scripts" ), equalTo( false ) );
+    }
+
+    private JsonNode abbreviate( final InputStream in ) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PackageMetadataAbbreviator.abbreviate( in, out );
+        return mapper.readTree( out.toByteArray() );
+    }
+
+    private static List<String> fieldNames( final JsonNode node )
+    {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining( names::add );
+        return names;
+    }
+}
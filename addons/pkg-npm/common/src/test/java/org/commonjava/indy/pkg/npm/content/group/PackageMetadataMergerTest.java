@@ -16,6 +16,8 @@
 package org.commonjava.indy.pkg.npm.content.group;
 
 import org.apache.commons.io.IOUtils;
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.content.IndyPathGenerator;
 import org.commonjava.indy.model.core.Group;
@@ -55,6 +57,8 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_PKG_KEY;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -179,6 +183,45 @@ public class PackageMetadataMergerTest
 
     }
 
+    @Test
+    public void parallelMergeMatchesSequentialMerge() throws Exception
+    {
+        String path = "jquery";
+        HostedRepository h1 = new HostedRepository( NPM_PKG_KEY, "test-hosted-1" );
+        HostedRepository h2 = new HostedRepository( NPM_PKG_KEY, "test-hosted-2" );
+        HostedRepository h3 = new HostedRepository( NPM_PKG_KEY, "test-hosted-3" );
+
+        Transfer t1 = cacheProvider.getTransfer( new ConcreteResource( LocationUtils.toLocation( h1 ), path ) );
+        initTestData( t1, VERSION_META + "package-1.json" );
+
+        Transfer t2 = cacheProvider.getTransfer( new ConcreteResource( LocationUtils.toLocation( h2 ), path ) );
+        initTestData( t2, VERSION_META + "package-2.json" );
+
+        Transfer t3 = cacheProvider.getTransfer( new ConcreteResource( LocationUtils.toLocation( h3 ), path ) );
+        initTestData( t3, VERSION_META + "package-1.json" );
+
+        Group g = new Group( NPM_PKG_KEY, "test-group", h1.getKey(), h2.getKey(), h3.getKey() );
+
+        List<Transfer> sources = Arrays.asList( t1, t2, t3 );
+
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool( 2 );
+        try
+        {
+            WeftExecutorService executor =
+                    new PoolWeftExecutorService( "test-npm-metadata-merger", pool, 2, 10f, false, null, null );
+
+            byte[] sequential = new PackageMetadataMerger( Collections.emptyList(), mapper ).merge( sources, g, path );
+            byte[] parallel =
+                    new PackageMetadataMerger( Collections.emptyList(), mapper, executor ).merge( sources, g, path );
+
+            assertThat( new String( parallel ), equalTo( new String( sequential ) ) );
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
     @Test
     public void mergeWhenOneTransferIsMissing() throws Exception
     {
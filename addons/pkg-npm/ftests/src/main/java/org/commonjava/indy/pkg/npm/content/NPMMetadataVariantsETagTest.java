@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.commonjava.indy.client.core.IndyClientHttp;
+import org.commonjava.indy.client.core.IndyClientModule;
+import org.commonjava.indy.client.core.helper.HttpResources;
+import org.commonjava.indy.client.core.module.IndyRawHttpModule;
+import org.commonjava.indy.ftest.core.AbstractContentManagementTest;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * This case tests that the full and abbreviated package.json, sent for the same url, have no ETag.
+ * when: <br />
+ * <ul>
+ *      <li>creates remote repo A and expect metadata file in it</li>
+ *      <li>retrieves the metadata file from A, in full and abbreviated</li>
+ * </ul>
+ * then: <br />
+ * <ul>
+ *     <li>both variants are sent without an ETag</li>
+ * </ul>
+ */
+public class NPMMetadataVariantsETagTest
+                extends AbstractContentManagementTest
+{
+    private static final String ABBREVIATED_CONTENT_TYPE = "application/vnd.npm.install-v1+json";
+
+    private final IndyRawHttpModule httpModule = new IndyRawHttpModule();
+
+    @Test
+    public void test() throws Exception
+    {
+        final String packageContent = IOUtils.toString(
+                        Thread.currentThread().getContextClassLoader().getResourceAsStream( "package-1.5.1.json" ) );
+
+        final String packagePath = "jquery";
+
+        server.expect( server.formatUrl( STORE, packagePath ), 200,
+                       new ByteArrayInputStream( packageContent.getBytes() ) );
+
+        final RemoteRepository remoteRepository = new RemoteRepository( NPM_PKG_KEY, STORE, server.formatUrl( STORE ) );
+        client.stores().create( remoteRepository, "adding npm remote repo", RemoteRepository.class );
+
+        final IndyClientHttp http = client.module( IndyRawHttpModule.class ).getHttp();
+        final String path = client.content().contentPath( remoteRepository.getKey(), packagePath );
+
+        final String full = getETag( http, path, Collections.emptyMap() );
+        final String abbreviated =
+                getETag( http, path, Collections.singletonMap( "Accept", ABBREVIATED_CONTENT_TYPE ) );
+
+        // the stored file's checksum doesn't identify either rewritten variant
+        assertThat( full, nullValue() );
+        assertThat( abbreviated, nullValue() );
+    }
+
+    private String getETag( final IndyClientHttp http, final String path, final Map<String, String> headers )
+            throws Exception
+    {
+        try (HttpResources ret = http.getRaw( path, headers ))
+        {
+            assertThat( ret.getResponse().getStatusLine().getStatusCode(), equalTo( 200 ) );
+            HttpResources.entityToString( ret.getResponse() );
+
+            final Header etag = ret.getResponse().getFirstHeader( "ETag" );
+            return etag == null ? null : etag.getValue();
+        }
+    }
+
+    @Override
+    protected Collection<IndyClientModule> getAdditionalClientModules()
+    {
+        return Arrays.asList( httpModule );
+    }
+
+    @Override
+    protected boolean createStandardTestStructures()
+    {
+        return false;
+    }
+}
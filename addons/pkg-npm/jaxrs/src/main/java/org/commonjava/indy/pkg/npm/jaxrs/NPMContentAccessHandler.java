@@ -15,9 +15,11 @@
  */
 package org.commonjava.indy.pkg.npm.jaxrs;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.bind.jaxrs.util.REST;
 import org.commonjava.indy.bind.jaxrs.util.ResponseHelper;
@@ -29,14 +31,20 @@ import org.commonjava.indy.core.model.StoreHttpExchangeMetadata;
 import org.commonjava.indy.model.core.PackageTypes;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.indy.pkg.npm.content.HostedPackageMetadataUpdater;
+import org.commonjava.indy.pkg.npm.content.MaskedPackageMetadataCache;
+import org.commonjava.indy.pkg.npm.content.PackageMetadataAbbreviator;
 import org.commonjava.indy.pkg.npm.content.group.PackageMetadataMerger;
 import org.commonjava.indy.pkg.npm.inject.NPMContentHandler;
+import org.commonjava.indy.pkg.npm.model.PackageMetadata;
 import org.commonjava.indy.util.AcceptInfo;
 import org.commonjava.indy.util.ApplicationContent;
 import org.commonjava.indy.util.ApplicationHeader;
 import org.commonjava.maven.galley.TransferManager;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferOperation;
 import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
@@ -48,9 +56,12 @@ import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -62,8 +73,10 @@ import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import static java.lang.Thread.sleep;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.commonjava.indy.IndyRequestConstants.TRANSFER_SIZE;
+import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_METADATA_NAME;
 import static org.commonjava.o11yphant.trace.TraceManager.addFieldToActiveSpan;
 
 @ApplicationScoped
@@ -90,6 +103,12 @@ public class NPMContentAccessHandler
     @Inject
     private PackageMetadataMerger packageMetadataMerger;
 
+    @Inject
+    private MaskedPackageMetadataCache renderCache;
+
+    @Inject
+    private HostedPackageMetadataUpdater metadataUpdater;
+
     @Override
     public Response doCreate( String packageType, String type, String name, String path, HttpServletRequest request,
                               EventMetadata eventMetadata, Supplier<URI> uriBuilder )
@@ -107,6 +126,11 @@ public class NPMContentAccessHandler
 
         eventMetadata = eventMetadata.set( ContentManager.ENTRY_POINT_STORE, sk );
 
+        if ( st == StoreType.hosted && metadataUpdater.isEnabled() )
+        {
+            return doIncrementalPublish( sk, path, request, eventMetadata, uriBuilder, builderModifier );
+        }
+
         Response response;
         try
         {
@@ -133,6 +157,78 @@ public class NPMContentAccessHandler
         return response;
     }
 
+    /**
+     * Publishes to a hosted repository, patching its package.json with the published version instead of replacing it
+     * with the publish document. The request body is read, and the version and tarball files are stored from it, before
+     * taking the lock of the package.json, which is only held to patch it.
+     */
+    private Response doIncrementalPublish( final StoreKey sk, final String path, final HttpServletRequest request,
+                                           final EventMetadata eventMetadata, final Supplier<URI> uriBuilder,
+                                           final Consumer<Response.ResponseBuilder> builderModifier )
+    {
+        Response response;
+        try
+        {
+            final Transfer metadataFile = contentController.getTransfer( sk, path, TransferOperation.UPLOAD );
+            if ( metadataFile == null )
+            {
+                throw new IndyWorkflowException( 404, "Cannot find storage for: %s in: %s", path, sk );
+            }
+
+            // the publish document isn't stored as the package.json, which is patched below, so it's kept in memory
+            // (the tarball in it is decoded in memory anyway)
+            final byte[] published;
+            try (InputStream in = request.getInputStream())
+            {
+                published = IOUtils.toByteArray( in );
+            }
+            addFieldToActiveSpan( TRANSFER_SIZE, published.length );
+
+            // the package.json is patched, it shouldn't be cleared when the tarball is stored
+            eventMetadata.set( HostedPackageMetadataUpdater.METADATA_PATCHED, true );
+
+            // generate its relevant files from the publish document
+            final List<Transfer> generated =
+                    generateNPMContents( metadataFile.getLocation(), new ByteArrayInputStream( published ),
+                                         eventMetadata );
+
+            if ( generated != null )
+            {
+                final Boolean patched = metadataUpdater.lockAnd( sk, metadataFile.getPath(),
+                                                                 p -> patchPackageMetadata( metadataFile, published,
+                                                                                            eventMetadata ) );
+                if ( patched == null )
+                {
+                    logger.warn( "[NPM] Timed out waiting for the lock of: {}, deleting it to be regenerated",
+                                 metadataFile );
+                    deleteQuietly( metadataFile );
+                }
+            }
+
+            final URI uri = uriBuilder.get();
+            final Response created = responseWithBuilder( Response.created( uri ), builderModifier );
+
+            // generate .http-metadata.json for hosted repo to resolve npm header requirements
+            if ( metadataFile.exists() )
+            {
+                generateHttpMetadataHeaders( metadataFile, generated, request, created );
+            }
+            else if ( generated != null )
+            {
+                generated.forEach( t -> generateHttpMetadataHeaders( t, request, created ) );
+            }
+            response = created;
+        }
+        catch ( final IndyWorkflowException | IOException e )
+        {
+            logger.error( String.format( "Failed to upload: %s to: %s. Reason: %s", path, sk.getName(), e.getMessage() ), e );
+
+            response = responseHelper.formatResponse( e, builderModifier );
+        }
+
+        return response;
+    }
+
     @Override
     public Response doHead( final String packageType, final String type, final String name, final String path,
                             final Boolean cacheOnly, final String baseUri, final HttpServletRequest request,
@@ -208,7 +304,7 @@ public class NPMContentAccessHandler
                     final Response.ResponseBuilder builder = Response.ok();
 
                     responseHelper.setInfoHeaders( builder, item, sk, path, true, getNPMContentType( path ),
-                                    httpMetadata );
+                                    httpMetadata, getETag( item, httpMetadata, eventMetadata ) );
                     if ( builderModifier != null )
                     {
                         builderModifier.accept( builder );
@@ -352,6 +448,36 @@ public class NPMContentAccessHandler
 //                            responseHelper.throwError( ApplicationStatus.SERVER_ERROR, new NullPointerException( path ), "Retrieval of mapped file from storage failed." );
 //                        }
 
+                        if ( isPackageMetadata( item ) && PackageMetadataAbbreviator.isAbbreviatedAccepted(
+                                request.getHeader( ApplicationHeader.accept.key() ) ) )
+                        {
+                            final byte[] abbreviated = getAbbreviatedMetadata( item, eventMetadata );
+                            if ( abbreviated != null )
+                            {
+                                logger.info( "RETURNING: abbreviated metadata: {}:{}", sk, path );
+                                addFieldToActiveSpan( TRANSFER_SIZE, abbreviated.length );
+                                // headers recorded for the full document (length, etag, type) don't apply here
+                                final Response.ResponseBuilder builder = Response.ok( abbreviated );
+                                responseHelper.setInfoHeaders( builder, item, sk, path, false,
+                                                               PackageMetadataAbbreviator.ABBREVIATED_CONTENT_TYPE,
+                                                               null, null );
+                                builder.header( ApplicationHeader.vary.key(), ApplicationHeader.accept.key() );
+                                return responseWithBuilder( builder, builderModifier );
+                            }
+                        }
+
+                        final byte[] rendered = getRenderedMetadata( item, eventMetadata );
+                        if ( rendered != null )
+                        {
+                            logger.info( "RETURNING: cached rendered metadata: {}:{}", sk, path );
+                            addFieldToActiveSpan( TRANSFER_SIZE, rendered.length );
+                            final Response.ResponseBuilder builder = Response.ok( rendered );
+                            responseHelper.setInfoHeaders( builder, item, sk, path, false, getNPMContentType( path ),
+                                                           contentController.getHttpMetadata( item ), null );
+                            builder.header( ApplicationHeader.vary.key(), ApplicationHeader.accept.key() );
+                            return responseWithBuilder( builder, builderModifier );
+                        }
+
                         logger.info( "RETURNING: retrieval of content: {}:{}", sk, path );
                         // open the stream here to prevent deletion while waiting for the transfer back to the user to start...
                         InputStream in = openInputStreamSafe( item, eventMetadata );
@@ -360,8 +486,14 @@ public class NPMContentAccessHandler
                         final Response.ResponseBuilder builder =
                                 Response.ok( new TransferStreamingOutput( in, metricsManager, metricsConfig ) );
 
+                        final HttpExchangeMetadata httpMetadata = contentController.getHttpMetadata( item );
                         responseHelper.setInfoHeaders( builder, item, sk, path, false, getNPMContentType( path ),
-                                        contentController.getHttpMetadata( item ) );
+                                                       httpMetadata, getETag( item, httpMetadata, eventMetadata ) );
+                        if ( isPackageMetadata( item ) )
+                        {
+                            // the abbreviated form is sent for the same url when asked for
+                            builder.header( ApplicationHeader.vary.key(), ApplicationHeader.accept.key() );
+                        }
                         response = responseWithBuilder( builder, builderModifier );
 
 //                        // generating .http-metadata.json for npm group and remote retrieve to resolve header requirements
@@ -393,6 +525,127 @@ public class NPMContentAccessHandler
         return response;
     }
 
+    /**
+     * A package.json is rewritten for the entry point and has an abbreviated variant, so the checksum of the stored file
+     * isn't a valid (strong) ETag for what is sent, and it gets none.
+     */
+    @Override
+    protected String getETag( final Transfer item, final HttpExchangeMetadata httpMetadata,
+                              final EventMetadata eventMetadata )
+    {
+        if ( item != null && isPackageMetadata( item ) )
+        {
+            return null;
+        }
+        return super.getETag( item, httpMetadata, eventMetadata );
+    }
+
+    /**
+     * The package.json as rewritten for this entry point by an earlier request, if the stored file hasn't changed since.
+     */
+    private byte[] getRenderedMetadata( final Transfer item, final EventMetadata eventMetadata )
+    {
+        if ( !renderCache.isEnabled() || !isPackageMetadata( item ) )
+        {
+            return null;
+        }
+
+        final String contextURL = getContextURL( item, eventMetadata );
+        if ( isBlank( contextURL ) )
+        {
+            return null;
+        }
+
+        final byte[] rendered =
+                renderCache.get( getKey( item ), item.getPath(), contextURL, item.lastModified(), item.length() );
+        if ( rendered != null )
+        {
+            // the stream isn't opened, which is what would fire this
+            fireAccessEvent( item, eventMetadata );
+        }
+        return rendered;
+    }
+
+    /**
+     * The abbreviated form of the package.json (see {@link PackageMetadataAbbreviator}), taken from the cache or derived
+     * from the full metadata as rewritten for this entry point. Returns null if the package.json can't be parsed, so
+     * the full document is sent instead.
+     */
+    private byte[] getAbbreviatedMetadata( final Transfer item, final EventMetadata eventMetadata )
+            throws IOException
+    {
+        final StoreKey key = getKey( item );
+        final String contextURL = getContextURL( item, eventMetadata );
+        final long lastModified = item.lastModified();
+        final long length = item.length();
+
+        if ( contextURL != null )
+        {
+            final byte[] cached = renderCache.get( key, item.getPath(), contextURL, true, lastModified, length );
+            if ( cached != null )
+            {
+                // the stream isn't opened, which is what would fire this
+                fireAccessEvent( item, eventMetadata );
+                return cached;
+            }
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = openInputStreamSafe( item, eventMetadata ))
+        {
+            PackageMetadataAbbreviator.abbreviate( in, out );
+        }
+        catch ( final JsonProcessingException e )
+        {
+            logger.warn( "Cannot abbreviate package metadata: {}, sending the full document. Reason: {}",
+                         item.getResource(), e.getMessage() );
+            return null;
+        }
+
+        final byte[] abbreviated = out.toByteArray();
+        if ( contextURL != null )
+        {
+            renderCache.put( key, item.getPath(), contextURL, true, lastModified, length, abbreviated );
+        }
+        return abbreviated;
+    }
+
+    private boolean isPackageMetadata( final Transfer item )
+    {
+        return item.getPath().endsWith( NPM_METADATA_NAME ) && item.getLocation() instanceof KeyedLocation;
+    }
+
+    private StoreKey getKey( final Transfer item )
+    {
+        return ( (KeyedLocation) item.getLocation() ).getKey();
+    }
+
+    /**
+     * The url tarball urls are rewritten against for this request (see
+     * {@link org.commonjava.indy.pkg.npm.content.NPMPackageMaskingTransferDecorator}), empty if they aren't rewritten,
+     * or null if the url can't be built.
+     */
+    private String getContextURL( final Transfer item, final EventMetadata eventMetadata )
+    {
+        final String baseURI = (String) eventMetadata.get( ContentManager.ENTRY_POINT_BASE_URI );
+        if ( isBlank( baseURI ) )
+        {
+            return "";
+        }
+
+        final StoreKey key = getKey( item );
+        try
+        {
+            return MaskedPackageMetadataCache.getContextURL( baseURI, key );
+        }
+        catch ( final MalformedURLException e )
+        {
+            logger.warn( "Cannot build context url for: {} from base uri: {}. Reason: {}", key, baseURI,
+                         e.getMessage() );
+            return null;
+        }
+    }
+
     /**
      * Due to race condition, the target file may be deleted / regenerated, especially for metadata. Add retry here to safely open the input stream.
      */
@@ -463,6 +716,44 @@ public class NPMContentAccessHandler
         return baseUri;
     }
 
+    /**
+     * Patches the package.json with the versions in the publish document. If there is no package.json yet, it's left to
+     * be generated from the version files; if it can't be read or written, it's deleted, so it will be regenerated.
+     */
+    private Boolean patchPackageMetadata( final Transfer metadataFile, final byte[] published,
+                                          final EventMetadata eventMetadata )
+    {
+        try
+        {
+            final PackageMetadata current = metadataUpdater.read( metadataFile );
+            if ( current != null )
+            {
+                metadataUpdater.applyPublish( current, metadataUpdater.read( published ) );
+                metadataUpdater.write( current, metadataFile, eventMetadata );
+            }
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( String.format( "[NPM] Cannot patch package metadata: %s, deleting it to be regenerated. Reason: %s",
+                                        metadataFile, e.getMessage() ), e );
+            deleteQuietly( metadataFile );
+        }
+        return true;
+    }
+
+    private void deleteQuietly( final Transfer transfer )
+    {
+        try
+        {
+            transfer.delete( true );
+        }
+        catch ( final IOException e )
+        {
+            logger.error( String.format( "[NPM] Cannot delete package metadata: %s. Reason: %s", transfer,
+                                         e.getMessage() ), e );
+        }
+    }
+
     private List<Transfer> generateNPMContentsFromTransfer( final Transfer transfer, final EventMetadata eventMetadata )
     {
         if ( transfer == null || !transfer.exists() )
@@ -470,16 +761,29 @@ public class NPMContentAccessHandler
             return null;
         }
 
+        try (InputStream in = transfer.openInputStream( true ))
+        {
+            return generateNPMContents( transfer.getLocation(), in, eventMetadata );
+        }
+        catch ( final IOException e )
+        {
+            logger.error( String.format( "[NPM] Cannot read: %s. Reason: %s", transfer, e.getMessage() ), e );
+            return null;
+        }
+    }
+
+    private List<Transfer> generateNPMContents( final Location location, final InputStream in,
+                                                final EventMetadata eventMetadata )
+    {
         Transfer versionTarget = null;
         Transfer tarballTarget = null;
         String versionContent = "";
         String tarballContent = "";
 
-        ConcreteResource resource = transfer.getResource();
         try
         {
             ObjectMapper mapper = new ObjectMapper();
-            JsonNode root = mapper.readTree( transfer.openInputStream( true ) );
+            JsonNode root = mapper.readTree( in );
 
             String versionPath = null;
             String tarballPath = null;
@@ -521,13 +825,13 @@ public class NPMContentAccessHandler
                 return null;
             }
 
-            versionTarget = transfers.getCacheReference( new ConcreteResource( resource.getLocation(), versionPath ) );
-            tarballTarget = transfers.getCacheReference( new ConcreteResource( resource.getLocation(), tarballPath ) );
+            versionTarget = transfers.getCacheReference( new ConcreteResource( location, versionPath ) );
+            tarballTarget = transfers.getCacheReference( new ConcreteResource( location, tarballPath ) );
 
         }
         catch ( final IOException e )
         {
-            logger.error( String.format( "[NPM] Json node parse failed for resource: %s. Reason: %s", resource, e.getMessage() ), e );
+            logger.error( String.format( "[NPM] Json node parse failed for package in: %s. Reason: %s", location, e.getMessage() ), e );
         }
 
         if ( versionTarget == null || tarballTarget == null )
@@ -68,6 +68,54 @@ public class DefaultIndyConfiguration
 
     public static final int DEFAULT_CASSANDRA_KEYSPACE_REPLICAS = 1;
 
+    public static final Boolean DEFAULT_GROUP_HEDGED_RETRIEVAL_ENABLED = false;
+
+    public static final int DEFAULT_GROUP_HEDGED_RETRIEVAL_WIDTH = 4;
+
+    public static final Boolean DEFAULT_DOWNLOAD_COALESCING_ENABLED = true;
+
+    public static final int DEFAULT_DOWNLOAD_COALESCING_TIMEOUT_SECONDS = 60;
+
+    public static final Boolean DEFAULT_GROUP_MEMBERSHIP_CACHE_ENABLED = false;
+
+    public static final int DEFAULT_GROUP_MEMBERSHIP_CACHE_EXPIRATION_SECONDS = 300;
+
+    public static final Boolean DEFAULT_GROUP_ROUTE_CACHE_ENABLED = false;
+
+    public static final int DEFAULT_GROUP_ROUTE_CACHE_TIMEOUT_SECONDS = 600;
+
+    public static final int DEFAULT_GROUP_ROUTE_CACHE_MAX_ENTRIES = 100000;
+
+    public static final Boolean DEFAULT_NFC_BLOOM_FILTER_ENABLED = false;
+
+    public static final int DEFAULT_NFC_BLOOM_FILTER_STORE_ENTRIES = 10000;
+
+    public static final int DEFAULT_NFC_BLOOM_FILTER_REBUILD_MINUTES = 30;
+
+    public static final Boolean DEFAULT_NFC_WRITE_BEHIND_ENABLED = false;
+
+    public static final int DEFAULT_NFC_WRITE_BEHIND_QUEUE_SIZE = 10000;
+
+    public static final int DEFAULT_NFC_WRITE_BEHIND_FLUSH_MILLIS = 500;
+
+    public static final Boolean DEFAULT_NFC_SUBTREE_ENABLED = false;
+
+    public static final Boolean DEFAULT_NFC_SUBTREE_METADATA_ENABLED = false;
+
+    public static final Boolean DEFAULT_NPM_METADATA_CACHE_ENABLED = false;
+
+    public static final long DEFAULT_NPM_METADATA_CACHE_MAX_BYTES = 256L * 1024 * 1024;
+
+    public static final int DEFAULT_NPM_METADATA_CACHE_MAX_ENTRY_BYTES = 8 * 1024 * 1024;
+
+    public static final Boolean DEFAULT_NPM_HOSTED_INCREMENTAL_METADATA_ENABLED = false;
+
+    public static final Boolean DEFAULT_ZERO_COPY_CONTENT_ENABLED = false;
+
+    public static final long DEFAULT_ZERO_COPY_CONTENT_MIN_BYTES = 1024L * 1024;
+
+    public static final Boolean DEFAULT_CONTENT_FAST_PATH_ENABLED = false;
+
     private Integer passthroughTimeoutSeconds;
 
     private Integer notFoundCacheTimeoutSeconds;
@@ -114,6 +162,54 @@ public class DefaultIndyConfiguration
 
     private Boolean timeoutProcessing;
 
+    private Boolean groupHedgedRetrievalEnabled;
+
+    private Integer groupHedgedRetrievalWidth;
+
+    private Boolean downloadCoalescingEnabled;
+
+    private Integer downloadCoalescingTimeoutSeconds;
+
+    private Boolean groupMembershipCacheEnabled;
+
+    private Integer groupMembershipCacheExpirationSeconds;
+
+    private Boolean groupRouteCacheEnabled;
+
+    private Integer groupRouteCacheTimeoutSeconds;
+
+    private Integer groupRouteCacheMaxEntries;
+
+    private Boolean nfcBloomFilterEnabled;
+
+    private Integer nfcBloomFilterStoreEntries;
+
+    private Integer nfcBloomFilterRebuildMinutes;
+
+    private Boolean nfcWriteBehindEnabled;
+
+    private Integer nfcWriteBehindQueueSize;
+
+    private Integer nfcWriteBehindFlushMillis;
+
+    private Boolean nfcSubtreeEnabled;
+
+    private Boolean nfcSubtreeMetadataEnabled;
+
+    private Boolean npmMetadataCacheEnabled;
+
+    private Long npmMetadataCacheMaxBytes;
+
+    private Integer npmMetadataCacheMaxEntryBytes;
+
+    private Boolean npmHostedIncrementalMetadataEnabled;
+
+    private Boolean zeroCopyContentEnabled;
+
+    private Long zeroCopyContentMinBytes;
+
+    private Boolean contentFastPathEnabled;
+
     public DefaultIndyConfiguration()
     {
     }
@@ -442,6 +538,306 @@ public class DefaultIndyConfiguration
         this.timeoutProcessing = timeoutProcessing;
     }
 
+    @Override
+    public boolean isGroupHedgedRetrievalEnabled()
+    {
+        return groupHedgedRetrievalEnabled == null ? DEFAULT_GROUP_HEDGED_RETRIEVAL_ENABLED : groupHedgedRetrievalEnabled;
+    }
+
+    @ConfigName( "group.hedged.retrieval.enabled" )
+    public void setGroupHedgedRetrievalEnabled( Boolean groupHedgedRetrievalEnabled )
+    {
+        this.groupHedgedRetrievalEnabled = groupHedgedRetrievalEnabled;
+    }
+
+    @Override
+    public int getGroupHedgedRetrievalWidth()
+    {
+        return groupHedgedRetrievalWidth == null ? DEFAULT_GROUP_HEDGED_RETRIEVAL_WIDTH : groupHedgedRetrievalWidth;
+    }
+
+    @ConfigName( "group.hedged.retrieval.width" )
+    public void setGroupHedgedRetrievalWidth( Integer groupHedgedRetrievalWidth )
+    {
+        this.groupHedgedRetrievalWidth = groupHedgedRetrievalWidth;
+    }
+
+    @Override
+    public boolean isDownloadCoalescingEnabled()
+    {
+        return downloadCoalescingEnabled == null ? DEFAULT_DOWNLOAD_COALESCING_ENABLED : downloadCoalescingEnabled;
+    }
+
+    @ConfigName( "download.coalescing.enabled" )
+    public void setDownloadCoalescingEnabled( Boolean downloadCoalescingEnabled )
+    {
+        this.downloadCoalescingEnabled = downloadCoalescingEnabled;
+    }
+
+    @Override
+    public int getDownloadCoalescingTimeoutSeconds()
+    {
+        return downloadCoalescingTimeoutSeconds == null ?
+                DEFAULT_DOWNLOAD_COALESCING_TIMEOUT_SECONDS :
+                downloadCoalescingTimeoutSeconds;
+    }
+
+    @ConfigName( "download.coalescing.timeout" )
+    public void setDownloadCoalescingTimeoutSeconds( Integer downloadCoalescingTimeoutSeconds )
+    {
+        this.downloadCoalescingTimeoutSeconds = downloadCoalescingTimeoutSeconds;
+    }
+
+    @Override
+    public boolean isGroupMembershipCacheEnabled()
+    {
+        return groupMembershipCacheEnabled == null ? DEFAULT_GROUP_MEMBERSHIP_CACHE_ENABLED : groupMembershipCacheEnabled;
+    }
+
+    @ConfigName( "group.membership.cache.enabled" )
+    public void setGroupMembershipCacheEnabled( Boolean groupMembershipCacheEnabled )
+    {
+        this.groupMembershipCacheEnabled = groupMembershipCacheEnabled;
+    }
+
+    @Override
+    public int getGroupMembershipCacheExpirationSeconds()
+    {
+        return groupMembershipCacheExpirationSeconds == null ?
+                DEFAULT_GROUP_MEMBERSHIP_CACHE_EXPIRATION_SECONDS :
+                groupMembershipCacheExpirationSeconds;
+    }
+
+    @ConfigName( "group.membership.cache.expiration" )
+    public void setGroupMembershipCacheExpirationSeconds( Integer groupMembershipCacheExpirationSeconds )
+    {
+        this.groupMembershipCacheExpirationSeconds = groupMembershipCacheExpirationSeconds;
+    }
+
+    @Override
+    public boolean isGroupRouteCacheEnabled()
+    {
+        return groupRouteCacheEnabled == null ? DEFAULT_GROUP_ROUTE_CACHE_ENABLED : groupRouteCacheEnabled;
+    }
+
+    @ConfigName( "group.route.cache.enabled" )
+    public void setGroupRouteCacheEnabled( Boolean groupRouteCacheEnabled )
+    {
+        this.groupRouteCacheEnabled = groupRouteCacheEnabled;
+    }
+
+    @Override
+    public int getGroupRouteCacheTimeoutSeconds()
+    {
+        return groupRouteCacheTimeoutSeconds == null ?
+                DEFAULT_GROUP_ROUTE_CACHE_TIMEOUT_SECONDS :
+                groupRouteCacheTimeoutSeconds;
+    }
+
+    @ConfigName( "group.route.cache.timeout" )
+    public void setGroupRouteCacheTimeoutSeconds( Integer groupRouteCacheTimeoutSeconds )
+    {
+        this.groupRouteCacheTimeoutSeconds = groupRouteCacheTimeoutSeconds;
+    }
+
+    @Override
+    public int getGroupRouteCacheMaxEntries()
+    {
+        return groupRouteCacheMaxEntries == null ? DEFAULT_GROUP_ROUTE_CACHE_MAX_ENTRIES : groupRouteCacheMaxEntries;
+    }
+
+    @ConfigName( "group.route.cache.max.entries" )
+    public void setGroupRouteCacheMaxEntries( Integer groupRouteCacheMaxEntries )
+    {
+        this.groupRouteCacheMaxEntries = groupRouteCacheMaxEntries;
+    }
+
+    @Override
+    public boolean isNfcBloomFilterEnabled()
+    {
+        return nfcBloomFilterEnabled == null ? DEFAULT_NFC_BLOOM_FILTER_ENABLED : nfcBloomFilterEnabled;
+    }
+
+    @ConfigName( "nfc.bloom.filter.enabled" )
+    public void setNfcBloomFilterEnabled( Boolean nfcBloomFilterEnabled )
+    {
+        this.nfcBloomFilterEnabled = nfcBloomFilterEnabled;
+    }
+
+    @Override
+    public int getNfcBloomFilterStoreEntries()
+    {
+        return nfcBloomFilterStoreEntries == null ? DEFAULT_NFC_BLOOM_FILTER_STORE_ENTRIES : nfcBloomFilterStoreEntries;
+    }
+
+    @ConfigName( "nfc.bloom.filter.store.entries" )
+    public void setNfcBloomFilterStoreEntries( Integer nfcBloomFilterStoreEntries )
+    {
+        this.nfcBloomFilterStoreEntries = nfcBloomFilterStoreEntries;
+    }
+
+    @Override
+    public int getNfcBloomFilterRebuildMinutes()
+    {
+        return nfcBloomFilterRebuildMinutes == null ?
+                DEFAULT_NFC_BLOOM_FILTER_REBUILD_MINUTES :
+                nfcBloomFilterRebuildMinutes;
+    }
+
+    @ConfigName( "nfc.bloom.filter.rebuild.minutes" )
+    public void setNfcBloomFilterRebuildMinutes( Integer nfcBloomFilterRebuildMinutes )
+    {
+        this.nfcBloomFilterRebuildMinutes = nfcBloomFilterRebuildMinutes;
+    }
+
+    @Override
+    public boolean isNfcWriteBehindEnabled()
+    {
+        return nfcWriteBehindEnabled == null ? DEFAULT_NFC_WRITE_BEHIND_ENABLED : nfcWriteBehindEnabled;
+    }
+
+    @ConfigName( "nfc.write.behind.enabled" )
+    public void setNfcWriteBehindEnabled( Boolean nfcWriteBehindEnabled )
+    {
+        this.nfcWriteBehindEnabled = nfcWriteBehindEnabled;
+    }
+
+    @Override
+    public int getNfcWriteBehindQueueSize()
+    {
+        return nfcWriteBehindQueueSize == null ? DEFAULT_NFC_WRITE_BEHIND_QUEUE_SIZE : nfcWriteBehindQueueSize;
+    }
+
+    @ConfigName( "nfc.write.behind.queue.size" )
+    public void setNfcWriteBehindQueueSize( Integer nfcWriteBehindQueueSize )
+    {
+        this.nfcWriteBehindQueueSize = nfcWriteBehindQueueSize;
+    }
+
+    @Override
+    public int getNfcWriteBehindFlushMillis()
+    {
+        return nfcWriteBehindFlushMillis == null ? DEFAULT_NFC_WRITE_BEHIND_FLUSH_MILLIS : nfcWriteBehindFlushMillis;
+    }
+
+    @ConfigName( "nfc.write.behind.flush.millis" )
+    public void setNfcWriteBehindFlushMillis( Integer nfcWriteBehindFlushMillis )
+    {
+        this.nfcWriteBehindFlushMillis = nfcWriteBehindFlushMillis;
+    }
+
+    @Override
+    public boolean isNfcSubtreeEnabled()
+    {
+        return nfcSubtreeEnabled == null ? DEFAULT_NFC_SUBTREE_ENABLED : nfcSubtreeEnabled;
+    }
+
+    @ConfigName( "nfc.subtree.enabled" )
+    public void setNfcSubtreeEnabled( Boolean nfcSubtreeEnabled )
+    {
+        this.nfcSubtreeEnabled = nfcSubtreeEnabled;
+    }
+
+    @Override
+    public boolean isNfcSubtreeMetadataEnabled()
+    {
+        return nfcSubtreeMetadataEnabled == null ? DEFAULT_NFC_SUBTREE_METADATA_ENABLED : nfcSubtreeMetadataEnabled;
+    }
+
+    @ConfigName( "nfc.subtree.metadata.enabled" )
+    public void setNfcSubtreeMetadataEnabled( Boolean nfcSubtreeMetadataEnabled )
+    {
+        this.nfcSubtreeMetadataEnabled = nfcSubtreeMetadataEnabled;
+    }
+
+    @Override
+    public boolean isNpmMetadataCacheEnabled()
+    {
+        return npmMetadataCacheEnabled == null ? DEFAULT_NPM_METADATA_CACHE_ENABLED : npmMetadataCacheEnabled;
+    }
+
+    @ConfigName( "npm.metadata.cache.enabled" )
+    public void setNpmMetadataCacheEnabled( Boolean npmMetadataCacheEnabled )
+    {
+        this.npmMetadataCacheEnabled = npmMetadataCacheEnabled;
+    }
+
+    @Override
+    public long getNpmMetadataCacheMaxBytes()
+    {
+        return npmMetadataCacheMaxBytes == null ? DEFAULT_NPM_METADATA_CACHE_MAX_BYTES : npmMetadataCacheMaxBytes;
+    }
+
+    @ConfigName( "npm.metadata.cache.max.bytes" )
+    public void setNpmMetadataCacheMaxBytes( Long npmMetadataCacheMaxBytes )
+    {
+        this.npmMetadataCacheMaxBytes = npmMetadataCacheMaxBytes;
+    }
+
+    @Override
+    public int getNpmMetadataCacheMaxEntryBytes()
+    {
+        return npmMetadataCacheMaxEntryBytes == null ?
+                DEFAULT_NPM_METADATA_CACHE_MAX_ENTRY_BYTES :
+                npmMetadataCacheMaxEntryBytes;
+    }
+
+    @ConfigName( "npm.metadata.cache.max.entry.bytes" )
+    public void setNpmMetadataCacheMaxEntryBytes( Integer npmMetadataCacheMaxEntryBytes )
+    {
+        this.npmMetadataCacheMaxEntryBytes = npmMetadataCacheMaxEntryBytes;
+    }
+
+    @Override
+    public boolean isNpmHostedIncrementalMetadataEnabled()
+    {
+        return npmHostedIncrementalMetadataEnabled == null ?
+                DEFAULT_NPM_HOSTED_INCREMENTAL_METADATA_ENABLED :
+                npmHostedIncrementalMetadataEnabled;
+    }
+
+    @ConfigName( "npm.hosted.incremental.metadata.enabled" )
+    public void setNpmHostedIncrementalMetadataEnabled( Boolean npmHostedIncrementalMetadataEnabled )
+    {
+        this.npmHostedIncrementalMetadataEnabled = npmHostedIncrementalMetadataEnabled;
+    }
+
+    @Override
+    public boolean isZeroCopyContentEnabled()
+    {
+        return zeroCopyContentEnabled == null ? DEFAULT_ZERO_COPY_CONTENT_ENABLED : zeroCopyContentEnabled;
+    }
+
+    @ConfigName( "content.zero.copy.enabled" )
+    public void setZeroCopyContentEnabled( Boolean zeroCopyContentEnabled )
+    {
+        this.zeroCopyContentEnabled = zeroCopyContentEnabled;
+    }
+
+    @Override
+    public long getZeroCopyContentMinBytes()
+    {
+        return zeroCopyContentMinBytes == null ? DEFAULT_ZERO_COPY_CONTENT_MIN_BYTES : zeroCopyContentMinBytes;
+    }
+
+    @ConfigName( "content.zero.copy.min.bytes" )
+    public void setZeroCopyContentMinBytes( Long zeroCopyContentMinBytes )
+    {
+        this.zeroCopyContentMinBytes = zeroCopyContentMinBytes;
+    }
+
+    @Override
+    public boolean isContentFastPathEnabled()
+    {
+        return contentFastPathEnabled == null ? DEFAULT_CONTENT_FAST_PATH_ENABLED : contentFastPathEnabled;
+    }
+
+    @ConfigName( "content.fast.path.enabled" )
+    public void setContentFastPathEnabled( Boolean contentFastPathEnabled )
+    {
+        this.contentFastPathEnabled = contentFastPathEnabled;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
@@ -134,4 +134,161 @@ public interface IndyConfiguration
      * @sinces 2.5.4
      */
     int getKeyspaceReplicas();
+
+    /**
+     * Whether group retrievals probe their concrete members concurrently (hedged) instead of one at a time. The first
+     * hit in group order still wins.
+     * @since 2.7.7
+     */
+    boolean isGroupHedgedRetrievalEnabled();
+
+    /**
+     * Maximum number of group members being probed concurrently for one hedged group retrieval.
+     * @since 2.7.7
+     */
+    int getGroupHedgedRetrievalWidth();
+
+    /**
+     * Whether concurrent downloads of the same path from the same remote repository share a single upstream request.
+     * Can be switched off per remote with the 'download_coalescing' store metadata.
+     * @since 2.7.7
+     */
+    boolean isDownloadCoalescingEnabled();
+
+    /**
+     * Number of seconds a coalesced download waits for the in-flight request before fetching on its own.
+     * @since 2.7.7
+     */
+    int getDownloadCoalescingTimeoutSeconds();
+
+    /**
+     * Whether the flattened, ordered member lists of groups are memoized between requests. Entries are invalidated
+     * when the group or anything reachable from it changes on this node.
+     * @since 2.7.7
+     */
+    boolean isGroupMembershipCacheEnabled();
+
+    /**
+     * Maximum age of a memoized group member list in seconds (0 means no expiration). This bounds how long changes made
+     * on other nodes of a cluster can go unnoticed.
+     * @since 2.7.7
+     */
+    int getGroupMembershipCacheExpirationSeconds();
+
+    /**
+     * Whether the member store that served a path through a group is remembered, so later retrievals of the same path
+     * go straight to it.
+     * @since 2.7.7
+     */
+    boolean isGroupRouteCacheEnabled();
+
+    /**
+     * Number of seconds a remembered group route is used before the group is walked again.
+     * @since 2.7.7
+     */
+    int getGroupRouteCacheTimeoutSeconds();
+
+    /**
+     * Maximum number of remembered group routes.
+     * @since 2.7.7
+     */
+    int getGroupRouteCacheMaxEntries();
+
+    /**
+     * Whether the Cassandra NFC keeps node-local Bloom filters of its entries, to answer most "not missing" lookups
+     * without querying Cassandra.
+     * @since 2.7.7
+     */
+    boolean isNfcBloomFilterEnabled();
+
+    /**
+     * Expected number of NFC entries per store, used to size the Bloom filter of stores that got their first entry
+     * since the last rebuild.
+     * @since 2.7.7
+     */
+    int getNfcBloomFilterStoreEntries();
+
+    /**
+     * Interval in minutes between reloads of the NFC Bloom filters from Cassandra.
+     * @since 2.7.7
+     */
+    int getNfcBloomFilterRebuildMinutes();
+
+    /**
+     * Whether Cassandra NFC inserts are queued and written in per-store batches in the background instead of on the
+     * request thread.
+     * @since 2.7.7
+     */
+    boolean isNfcWriteBehindEnabled();
+
+    /**
+     * Maximum number of queued NFC inserts; when the queue is full, inserts are written synchronously again.
+     * @since 2.7.7
+     */
+    int getNfcWriteBehindQueueSize();
+
+    /**
+     * Interval in milliseconds between flushes of queued NFC inserts.
+     * @since 2.7.7
+     */
+    int getNfcWriteBehindFlushMillis();
+
+    /**
+     * Whether a missing directory (path ending with '/') in the NFC also marks every path beneath it as missing.
+     * @since 2.7.7
+     */
+    boolean isNfcSubtreeEnabled();
+
+    /**
+     * Whether a missing maven-metadata.xml also marks its directory (and so everything beneath it) as missing. Only used
+     * if {@link #isNfcSubtreeEnabled()}.
+     * @since 2.7.7
+     */
+    boolean isNfcSubtreeMetadataEnabled();
+
+    /**
+     * Whether npm package metadata (package.json), once rewritten with the tarball urls of the requested entry point,
+     * is kept in memory and served from there until the stored file changes.
+     * @since 2.7.7
+     */
+    boolean isNpmMetadataCacheEnabled();
+
+    /**
+     * Maximum total size in bytes of the cached npm package metadata.
+     * @since 2.7.7
+     */
+    long getNpmMetadataCacheMaxBytes();
+
+    /**
+     * Maximum size in bytes of a single cached npm package metadata file; larger files are always streamed.
+     * @since 2.7.7
+     */
+    int getNpmMetadataCacheMaxEntryBytes();
+
+    /**
+     * Whether publishing a package to (or deleting a tarball from) a hosted npm repository patches the stored
+     * package.json in place, instead of deleting it to be regenerated from every version on the next request.
+     * @since 2.7.7
+     */
+    boolean isNpmHostedIncrementalMetadataEnabled();
+
+    /**
+     * Whether content GETs of plain files stored locally are sent straight from the file (sendfile), instead of being
+     * copied through the read stream. Files whose read stream is decorated are always copied.
+     * @since 2.7.7
+     */
+    boolean isZeroCopyContentEnabled();
+
+    /**
+     * Files smaller than this are always copied through the read stream, even with zero-copy serving enabled.
+     * @since 2.7.7
+     */
+    long getZeroCopyContentMinBytes();
+
+    /**
+     * Whether GET and HEAD requests for maven and generic-http content are served by a native Undertow handler,
+     * instead of going through RESTEasy.
+     * @since 2.7.7
+     */
+    boolean isContentFastPathEnabled();
 }
@@ -39,6 +39,12 @@ public class InternalFeatureConfig implements IndyConfigInfo {
 
     private boolean mavenMetadataCacheEnabled = TRUE;
 
+    /**
+     * When a member's maven-metadata.xml changes, patch the cached group metadata with the versions it added or removed
+     * instead of dropping it and merging all members again. Requires the maven metadata cache. False by default.
+     */
+    private boolean mavenMetadataIncrementalMergeEnabled;
+
     /**
      * Indy disables a remote store when transfer error happens, and try to re-enable it
      * after a timeout specified either by global 'storeDisableTimeoutSeconds' or store specific timeout.
@@ -93,6 +99,15 @@ public class InternalFeatureConfig implements IndyConfigInfo {
         this.mavenMetadataCacheEnabled = mavenMetadataCacheEnabled;
     }
 
+    public boolean isMavenMetadataIncrementalMergeEnabled() {
+        return mavenMetadataIncrementalMergeEnabled;
+    }
+
+    @ConfigName("maven.metadata.incremental.merge.enabled")
+    public void setMavenMetadataIncrementalMergeEnabled(boolean mavenMetadataIncrementalMergeEnabled) {
+        this.mavenMetadataIncrementalMergeEnabled = mavenMetadataIncrementalMergeEnabled;
+    }
+
     public boolean isStoreAutoDisableAndReEnable() {
         return storeAutoDisableAndReEnable;
     }
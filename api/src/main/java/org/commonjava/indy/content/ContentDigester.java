@@ -32,6 +32,11 @@ import org.commonjava.maven.galley.model.Transfer;
 public interface ContentDigester
         extends TransferMetadataConsumer
 {
+    /**
+     * System property set by the storage configuration when the SHA-256 of stored content is calculated on request
+     * instead of on write, so metadata without it has to be completed when digested.
+     */
+    String LAZY_STRONG_DIGESTS = "indy.storage.checksum.lazy.strong";
 
     TransferMetadata getContentMetadata( Transfer transfer );
 
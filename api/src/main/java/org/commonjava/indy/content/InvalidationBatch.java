@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content;
+
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the cache invalidations caused by a batch of content changes, so that each one runs once when the whole
+ * batch is done instead of once per changed path (e.g. the merged metadata of a version directory when all its poms
+ * are deleted). It is passed to the event listeners and content generators in the event metadata, under
+ * {@link #EVENT_METADATA_KEY}. Anything deferred after the batch has run is run right away.
+ */
+public final class InvalidationBatch
+{
+    public static final String EVENT_METADATA_KEY = "invalidation-batch";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<String, Runnable> invalidations = new LinkedHashMap<>();
+
+    private boolean done;
+
+    /**
+     * @return the batch in the event metadata, or null if the change isn't part of one
+     */
+    public static InvalidationBatch get( final EventMetadata eventMetadata )
+    {
+        final Object batch = eventMetadata == null ? null : eventMetadata.get( EVENT_METADATA_KEY );
+        return batch instanceof InvalidationBatch ? (InvalidationBatch) batch : null;
+    }
+
+    /**
+     * Schedules an invalidation for the end of the batch, unless one with the same key already is.
+     *
+     * @param key identifies what is invalidated, e.g. a store key and path
+     */
+    public void defer( final String key, final Runnable invalidation )
+    {
+        synchronized ( this )
+        {
+            if ( !done )
+            {
+                invalidations.putIfAbsent( key, invalidation );
+                return;
+            }
+        }
+
+        invalidation.run();
+    }
+
+    /**
+     * Runs the deferred invalidations, in the order they were first scheduled.
+     *
+     * @return the number of invalidations run
+     */
+    public int run()
+    {
+        final List<Runnable> pending;
+        synchronized ( this )
+        {
+            done = true;
+            pending = new ArrayList<>( invalidations.values() );
+            invalidations.clear();
+        }
+
+        for ( final Runnable invalidation : pending )
+        {
+            try
+            {
+                invalidation.run();
+            }
+            catch ( final RuntimeException e )
+            {
+                logger.error( "Deferred invalidation failed: " + e.getMessage(), e );
+            }
+        }
+
+        return pending.size();
+    }
+}
@@ -25,6 +25,7 @@ public enum ApplicationHeader
     last_modified( "Last-Modified" ),
     deprecated( "Deprecated-Use-Alt" ),
     accept( "Accept" ),
+    vary( "Vary" ),
     allow( "Allow" ),
     authorization( "Authorization" ),
     proxy_authenticate( "Proxy-Authenticate" ),
@@ -33,6 +34,13 @@ public enum ApplicationHeader
     content_disposition( "Content-Disposition" ),
     indy_origin( "Indy-Origin" ),
     transfer_encoding( "Transfer-Encoding" ),
+    range( "Range" ),
+    if_range( "If-Range" ),
+    accept_ranges( "Accept-Ranges" ),
+    content_range( "Content-Range" ),
+    etag( "ETag" ),
+    if_none_match( "If-None-Match" ),
+    if_modified_since( "If-Modified-Since" ),
     md5("INDY-MD5"),
     sha1("INDY-SHA1")
     ;
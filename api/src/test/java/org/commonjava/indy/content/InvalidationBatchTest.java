@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content;
+
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class InvalidationBatchTest
+{
+    @Test
+    public void runsEachInvalidationOnceAtTheEnd()
+    {
+        final List<String> ran = new ArrayList<>();
+        final InvalidationBatch batch = new InvalidationBatch();
+
+        batch.defer( "a", () -> ran.add( "a1" ) );
+        batch.defer( "b", () -> ran.add( "b" ) );
+        batch.defer( "a", () -> ran.add( "a2" ) );
+        assertThat( ran.isEmpty(), is( true ) );
+
+        assertThat( batch.run(), is( 2 ) );
+        assertThat( ran, is( Arrays.asList( "a1", "b" ) ) );
+    }
+
+    @Test
+    public void runsLateInvalidationsRightAway()
+    {
+        final List<String> ran = new ArrayList<>();
+        final InvalidationBatch batch = new InvalidationBatch();
+        batch.run();
+
+        batch.defer( "a", () -> ran.add( "a" ) );
+        assertThat( ran, is( Arrays.asList( "a" ) ) );
+    }
+
+    @Test
+    public void getFromEventMetadata()
+    {
+        final InvalidationBatch batch = new InvalidationBatch();
+        assertThat( InvalidationBatch.get( new EventMetadata().set( InvalidationBatch.EVENT_METADATA_KEY, batch ) ),
+                    sameInstance( batch ) );
+        assertThat( InvalidationBatch.get( new EventMetadata() ), nullValue() );
+        assertThat( InvalidationBatch.get( null ), nullValue() );
+    }
+}
@@ -20,18 +20,27 @@ import org.commonjava.indy.bind.jaxrs.IndyResources;
 import org.commonjava.indy.bind.jaxrs.util.JaxRsRequestHelper;
 import org.commonjava.indy.bind.jaxrs.util.REST;
 import org.commonjava.indy.bind.jaxrs.util.ResponseHelper;
+import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.content.ContentDigester;
 import org.commonjava.indy.content.ContentManager;
+import org.commonjava.indy.core.bind.jaxrs.util.ArchiveStreamingOutput;
+import org.commonjava.indy.core.bind.jaxrs.util.BatchDeleteStreamingOutput;
+import org.commonjava.indy.core.bind.jaxrs.util.ByteRange;
+import org.commonjava.indy.core.bind.jaxrs.util.RangeStreamingOutput;
 import org.commonjava.indy.core.bind.jaxrs.util.RequestUtils;
 import org.commonjava.indy.core.bind.jaxrs.util.TransferCountingInputStream;
 import org.commonjava.indy.core.bind.jaxrs.util.TransferStreamingOutput;
+import org.commonjava.indy.core.content.group.GroupMergeHelper;
 import org.commonjava.indy.core.ctl.ContentController;
 import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.BatchArchiveRequest;
 import org.commonjava.indy.model.core.BatchDeleteRequest;
 import org.commonjava.indy.model.core.PackageTypes;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.model.util.HttpUtils;
 import org.commonjava.indy.util.AcceptInfo;
 import org.commonjava.indy.util.ApplicationContent;
 import org.commonjava.indy.util.ApplicationHeader;
@@ -39,10 +48,12 @@ import org.commonjava.indy.util.ApplicationStatus;
 import org.commonjava.indy.util.LocationUtils;
 import org.commonjava.indy.util.UriFormatter;
 import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.FileAccessEvent;
 import org.commonjava.maven.galley.io.checksum.ContentDigest;
 import org.commonjava.maven.galley.model.SpecialPathInfo;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.event.FileEventManager;
 import org.commonjava.maven.galley.spi.io.SpecialPathManager;
 import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
 import org.slf4j.Logger;
@@ -56,10 +67,14 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.util.HashMap;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -108,6 +123,12 @@ public class ContentAccessHandler
     @Inject
     ContentDigester contentDigester;
 
+    @Inject
+    private IndyConfiguration indyConfig;
+
+    @Inject
+    private FileEventManager fileEventManager;
+
 
     protected ContentAccessHandler()
     {
@@ -121,6 +142,17 @@ public class ContentAccessHandler
         this.jaxRsRequestHelper = jaxRsRequestHelper;
     }
 
+    public ContentAccessHandler( final ContentController controller, final UriFormatter uriFormatter,
+                                 final JaxRsRequestHelper jaxRsRequestHelper,
+                                 final SpecialPathManager specialPathManager, final ResponseHelper responseHelper,
+                                 final IndyConfiguration indyConfig )
+    {
+        this( controller, uriFormatter, jaxRsRequestHelper );
+        this.specialPathManager = specialPathManager;
+        this.responseHelper = responseHelper;
+        this.indyConfig = indyConfig;
+    }
+
     public Response doCreate( final String packageType, final String type, final String name, final String path,
                               final HttpServletRequest request, EventMetadata eventMetadata,
                               final Supplier<URI> uriBuilder )
@@ -211,28 +243,86 @@ public class ContentAccessHandler
         eventMetadata = eventMetadata.set( ContentManager.ENTRY_POINT_STORE, sk );
         setContext( CONTENT_ENTRY_POINT, sk.toString() );
 
-        Response response;
-        Map<String, String> results = new HashMap<>();
-        for ( final String path : paths )
+        final ArtifactStore store;
+        try
         {
-            setContext( PATH, path );
-            try
-            {
-                final ApplicationStatus result = contentController.delete( sk, path, eventMetadata );
-                results.put( path, String.valueOf( result.code() ) );
-            }
-            catch ( final IndyWorkflowException e )
-            {
-                logger.error( String.format( "Failed to tryDelete artifact: %s from: %s. Reason: %s", path, sk,
-                                             e.getMessage() ), e );
-                results.put( path, e.getMessage() );
-            }
+            store = contentController.getStore( sk );
+        }
+        catch ( final IndyWorkflowException e )
+        {
+            logger.error( String.format( "Failed to delete: %s paths from: %s. Reason: %s", paths.size(), sk,
+                                         e.getMessage() ), e );
+            return responseHelper.formatResponse( e );
         }
-        ResponseBuilder builder = Response.status( 200 );
-        response = builder.entity( results ).build();
 
-        return response;
+        // the deletes run while the results are sent, see BatchDeleteStreamingOutput
+        return Response.ok( new BatchDeleteStreamingOutput( contentController, store, paths, eventMetadata ) )
+                       .type( MediaType.APPLICATION_JSON )
+                       .build();
+    }
+
+    public Response doArchive( final BatchArchiveRequest request, EventMetadata eventMetadata )
+    {
+        StoreKey sk = request.getStoreKey();
+
+        if ( sk == null || !PackageTypes.contains( sk.getPackageType() ) )
+        {
+            ResponseBuilder builder = Response.status( 400 );
+            return builder.build();
+        }
 
+        setContext( PACKAGE_TYPE, sk.getPackageType() );
+
+        List<String> paths = request.getPaths();
+        if ( paths == null || paths.isEmpty() )
+        {
+            ResponseBuilder builder = Response.status( 400 );
+            return builder.build();
+        }
+
+        eventMetadata = eventMetadata.set( ContentManager.ENTRY_POINT_STORE, sk );
+        setContext( CONTENT_ENTRY_POINT, sk.toString() );
+
+        try
+        {
+            contentController.getStore( sk );
+        }
+        catch ( final IndyWorkflowException e )
+        {
+            logger.error( String.format( "Failed to archive: %s paths from: %s. Reason: %s", paths.size(), sk,
+                                         e.getMessage() ), e );
+            return responseHelper.formatResponse( e );
+        }
+
+        final Map<String, StoreKey> entries = new LinkedHashMap<>();
+        paths.forEach( path -> entries.put( path, sk ) );
+
+        return doArchive( entries, request.getFormat(), sk.getName(), eventMetadata );
+    }
+
+    /**
+     * Sends an archive of the given paths, each retrieved from its own store, as it is built. See
+     * {@link ArchiveStreamingOutput}.
+     *
+     * @param entries the paths to archive, in the order they are written
+     * @param name the name of the archive file, without extension
+     */
+    public Response doArchive( final Map<String, StoreKey> entries, final String format, final String name,
+                               final EventMetadata eventMetadata )
+    {
+        final ArchiveStreamingOutput.Format archiveFormat = ArchiveStreamingOutput.Format.get( format );
+        if ( archiveFormat == null )
+        {
+            ResponseBuilder builder = Response.status( 400 );
+            return builder.build();
+        }
+
+        return Response.ok( new ArchiveStreamingOutput( contentController, entries, archiveFormat, eventMetadata ) )
+                       .type( archiveFormat.getContentType() )
+                       .header( ApplicationHeader.content_disposition.key(),
+                                "attachment; filename=\"" + name.replace( "\\", "\\\\" ).replace( "\"", "\\\"" )
+                                        + "." + archiveFormat.name() + "\"" )
+                       .build();
     }
 
     public Response doDelete( final String packageType, final String type, final String name, final String path,
@@ -371,6 +461,15 @@ public class ContentAccessHandler
                         setContext( METADATA_CONTENT, Boolean.toString( spi != null && spi.isMetadata() ) );
                     }
 
+                    final String etag = getETag( item, httpMetadata, eventMetadata );
+                    final String lastModified = responseHelper.getLastModified( item, httpMetadata );
+                    if ( responseHelper.isNotModified( request, etag, lastModified ) )
+                    {
+                        logger.debug( "Not modified: {} (ETag: {}, Last-Modified: {})", item, etag, lastModified );
+                        return responseHelper.formatNotModifiedResponse( item, etag, lastModified,
+                                                                         builderModifier );
+                    }
+
                     logger.trace( "Building 200 response. Using HTTP metadata: {}", httpMetadata );
 
                     setContext( HTTP_STATUS, String.valueOf( 200 ) );
@@ -382,7 +481,7 @@ public class ContentAccessHandler
                             contentController.getContentType( path );
 
                     responseHelper.setInfoHeaders( builder, item, sk, path, true, contentType,
-                                    httpMetadata );
+                                    httpMetadata, etag );
     
                     if(!path.endsWith("/")) {
                         // Content hashing headers
@@ -520,13 +619,79 @@ public class ContentAccessHandler
                         logger.debug( "RETURNING: retrieval of content: {}:{}", sk, path );
                         // open the stream here to prevent deletion while waiting for the transfer back to the user to start...
 
-                        addFieldToActiveSpan( TRANSFER_SIZE, item.length() );
-                        InputStream in = item.openInputStream( true, eventMetadata );
-                        final ResponseBuilder builder = Response.ok(
-                                new TransferStreamingOutput( in, metricsManager, metricsConfig ) );
+                        final String contentType = contentController.getContentType( path );
+                        final HttpExchangeMetadata httpMetadata = contentController.getHttpMetadata( item );
+
+                        final String etag = getETag( item, httpMetadata, eventMetadata );
+                        final String lastModified = responseHelper.getLastModified( item, httpMetadata );
+                        if ( responseHelper.isNotModified( request, etag, lastModified ) )
+                        {
+                            logger.debug( "Not modified: {} (ETag: {}, Last-Modified: {})", item, etag, lastModified );
+                            return responseHelper.formatNotModifiedResponse( item, etag, lastModified,
+                                                                             builderModifier );
+                        }
+
+                        // metadata may be rewritten on its way out, so its byte positions aren't stable
+                        final boolean rangeable = spi == null || !spi.isMetadata();
+                        final List<ByteRange> ranges =
+                                        rangeable ? getRequestedRanges( request, item, etag, lastModified ) : null;
+
+                        final ResponseBuilder builder;
+                        if ( ranges != null && ranges.isEmpty() )
+                        {
+                            logger.debug( "Cannot satisfy range: {} of: {} ({} bytes)",
+                                          request.getHeader( ApplicationHeader.range.key() ), item, item.length() );
+                            builder = Response.status( Status.REQUESTED_RANGE_NOT_SATISFIABLE )
+                                              .header( ApplicationHeader.content_range.key(),
+                                                       ByteRange.unsatisfiedContentRange( item.length() ) );
+                        }
+                        else if ( ranges != null )
+                        {
+                            builder = Response.status( Status.PARTIAL_CONTENT );
+                            final RangeStreamingOutput output = openRanges( item, spi, ranges, contentType, eventMetadata );
+                            builder.entity( output );
+                            addFieldToActiveSpan( TRANSFER_SIZE, output.getContentLength() );
+
+                            responseHelper.setInfoHeaders( builder, item, sk, path, false, contentType, httpMetadata,
+                                                           etag );
+                            builder.header( ApplicationHeader.content_length.key(), output.getContentLength() );
+                            builder.header( ApplicationHeader.transfer_encoding.key(), null );
+                            if ( output.isMultipart() )
+                            {
+                                builder.header( ApplicationHeader.content_type.key(), null );
+                                builder.header( ApplicationHeader.content_type.key(), output.getMultipartContentType() );
+                            }
+                            else
+                            {
+                                builder.header( ApplicationHeader.content_range.key(),
+                                                ranges.get( 0 ).toContentRange( item.length() ) );
+                            }
+                            logger.debug( "Sending ranges: {} of: {}", ranges, item );
+                        }
+                        else
+                        {
+                            addFieldToActiveSpan( TRANSFER_SIZE, item.length() );
+                            InputStream in = item.openInputStream( true, eventMetadata );
+                            final FileChannel channel = getLocalFileChannel( item, spi, in );
+                            if ( channel != null )
+                            {
+                                builder = Response.ok( new TransferStreamingOutput( channel, metricsManager, metricsConfig ) );
+                            }
+                            else
+                            {
+                                builder = Response.ok( new TransferStreamingOutput( in, metricsManager, metricsConfig ) );
+                            }
+
+                            responseHelper.setInfoHeaders( builder, item, sk, path, true, contentType, httpMetadata,
+                                                           etag );
+                        }
+
+                        if ( rangeable )
+                        {
+                            builder.header( ApplicationHeader.accept_ranges.key(), null );
+                            builder.header( ApplicationHeader.accept_ranges.key(), ByteRange.BYTES_UNIT );
+                        }
 
-                        responseHelper.setInfoHeaders( builder, item, sk, path, true, contentController.getContentType( path ),
-                                        contentController.getHttpMetadata( item ) );
                         if ( builderModifier != null )
                         {
                             builderModifier.accept( builder );
@@ -554,6 +719,136 @@ public class ContentAccessHandler
         return response;
     }
 
+    /**
+     * Gets the stored file under the transfer's stream for zero-copy serving, if that is enabled and the stream is that
+     * file itself. The stream is opened through the transfer, so its read lock and access event are taken care of; when
+     * a read decorator (npm masking, checksumming, metrics...) or the cache provider wraps it, or it's metadata or a
+     * small file, the stream is sent as-is.
+     *
+     * @return the stream's file channel, or null to send the stream
+     */
+    protected FileChannel getLocalFileChannel( final Transfer item, final SpecialPathInfo spi, final InputStream in )
+            throws IOException
+    {
+        if ( indyConfig == null || !indyConfig.isZeroCopyContentEnabled() || in == null
+                        || in.getClass() != FileInputStream.class || ( spi != null && spi.isMetadata() )
+                        || item.length() < indyConfig.getZeroCopyContentMinBytes() )
+        {
+            return null;
+        }
+
+        final FileChannel channel = ( (FileInputStream) in ).getChannel();
+        if ( channel.position() != 0 || channel.size() != item.length() )
+        {
+            logger.trace( "Stored file of: {} doesn't match its length, sending its stream", item );
+            return null;
+        }
+
+        logger.debug( "Serving: {} from its stored file", item );
+        return channel;
+    }
+
+    /**
+     * Fires the access event that opening the transfer's stream would, for content sent without opening it (from a
+     * cache), so listeners like the folo tracking record still see the download.
+     */
+    protected void fireAccessEvent( final Transfer item, final EventMetadata eventMetadata )
+    {
+        if ( fileEventManager != null )
+        {
+            fileEventManager.fire( new FileAccessEvent( item, eventMetadata ) );
+        }
+    }
+
+    /**
+     * Reads the Range header of a GET request. The range is ignored, and the whole content sent, when an If-Range
+     * validator is given that doesn't match the current content: a strong entity tag must equal its ETag, and a date
+     * must equal its Last-Modified.
+     *
+     * @return see {@link ByteRange#parse(String, long)}
+     */
+    protected List<ByteRange> getRequestedRanges( final HttpServletRequest request, final Transfer item,
+                                                  final String etag, final String lastModified )
+    {
+        final String range = request.getHeader( ApplicationHeader.range.key() );
+        if ( range == null )
+        {
+            return null;
+        }
+
+        final String ifRange = request.getHeader( ApplicationHeader.if_range.key() );
+        if ( ifRange != null && !isIfRangeMatched( ifRange.trim(), etag, lastModified ) )
+        {
+            logger.debug( "If-Range: {} doesn't match: {}, sending the whole content", ifRange, item );
+            return null;
+        }
+
+        return ByteRange.parse( range, item.length() );
+    }
+
+    private boolean isIfRangeMatched( final String ifRange, final String etag, final String lastModified )
+    {
+        if ( ifRange.startsWith( "W/" ) )
+        {
+            // weak entity tags never match
+            return false;
+        }
+
+        if ( ifRange.startsWith( "\"" ) )
+        {
+            return ifRange.equals( etag );
+        }
+
+        if ( lastModified == null )
+        {
+            return false;
+        }
+
+        try
+        {
+            return HttpUtils.parseDateHeader( ifRange ).getTime() / 1000
+                            == HttpUtils.parseDateHeader( lastModified ).getTime() / 1000;
+        }
+        catch ( final ParseException e )
+        {
+            logger.debug( "Cannot parse If-Range date: {} or Last-Modified: {}", ifRange, lastModified );
+            return false;
+        }
+    }
+
+    /**
+     * Gets the ETag of the content. Generated group metadata gets it from its merged-metadata cache entry, through the
+     * event metadata, so revalidating it never causes a merge; anything else gets it from its checksums (see
+     * {@link ResponseHelper#getETag(Transfer, HttpExchangeMetadata)}).
+     */
+    protected String getETag( final Transfer item, final HttpExchangeMetadata httpMetadata,
+                              final EventMetadata eventMetadata )
+    {
+        final Object generated = eventMetadata.get( GroupMergeHelper.GROUP_METADATA_ETAG );
+        return generated != null ? generated.toString() : responseHelper.getETag( item, httpMetadata );
+    }
+
+    /**
+     * Opens the content for a ranged response, from the stored file when it can be read directly (see
+     * {@link #getLocalFileChannel(Transfer, SpecialPathInfo, InputStream)}) so each range is sent from its position,
+     * otherwise from its stream, skipping what comes before each range.
+     */
+    private RangeStreamingOutput openRanges( final Transfer item, final SpecialPathInfo spi,
+                                             final List<ByteRange> ranges, final String contentType,
+                                             final EventMetadata eventMetadata )
+            throws IOException
+    {
+        final long length = item.length();
+        final InputStream in = item.openInputStream( true, eventMetadata );
+        final FileChannel channel = getLocalFileChannel( item, spi, in );
+        if ( channel != null )
+        {
+            return new RangeStreamingOutput( channel, ranges, length, contentType, metricsManager, metricsConfig );
+        }
+
+        return new RangeStreamingOutput( in, ranges, length, contentType, metricsManager, metricsConfig );
+    }
+
     protected Response handleMissingContentQuery( final StoreKey sk, final String path,
                                                   final Consumer<ResponseBuilder> builderModifier )
     {
@@ -0,0 +1,354 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.servlet.handlers.ServletRequestContext;
+import io.undertow.util.Methods;
+import org.commonjava.indy.bind.jaxrs.IndyDeployment;
+import org.commonjava.indy.bind.jaxrs.NativeHandlerWrapper;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.util.PathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.commonjava.indy.model.core.GenericPackageTypeDescriptor.GENERIC_CONTENT_REST_BASE_PATH;
+import static org.commonjava.indy.model.core.GenericPackageTypeDescriptor.GENERIC_PKG_KEY;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_CONTENT_REST_BASE_PATH;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+
+/**
+ * Serves GET and HEAD requests for maven and generic-http content straight from Undertow, skipping RESTEasy's request
+ * matching, parameter injection and response writing. It runs after the security handlers of the deployment, applies
+ * the same filters as the content servlet, and gets its responses from {@link ContentAccessHandler} just like the
+ * content resources do. Requests it can't map the way the resources would (query parameters, encoded characters, other
+ * package types or methods) are left to RESTEasy.
+ */
+@ApplicationScoped
+public class ContentFastPathHandler
+        implements NativeHandlerWrapper
+{
+    private static final String CONTENT_PREFIX = "/api/content/";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private ContentAccessHandler handler;
+
+    @Inject
+    private IndyDeployment deployment;
+
+    @Inject
+    private IndyConfiguration indyConfig;
+
+    protected ContentFastPathHandler()
+    {
+    }
+
+    public ContentFastPathHandler( final ContentAccessHandler handler, final IndyDeployment deployment,
+                                   final IndyConfiguration indyConfig )
+    {
+        this.handler = handler;
+        this.deployment = deployment;
+        this.indyConfig = indyConfig;
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return indyConfig.isContentFastPathEnabled();
+    }
+
+    @Override
+    public HttpHandler wrap( final HttpHandler next )
+    {
+        return new FastPathHandler( next );
+    }
+
+    /**
+     * @return the content addressed by the request, or null if it should go through RESTEasy
+     */
+    static ContentRequest parse( final String method, final String relativePath, final String queryString )
+    {
+        final boolean head = Methods.HEAD_STRING.equals( method );
+        if ( !head && !Methods.GET_STRING.equals( method ) )
+        {
+            return null;
+        }
+
+        if ( relativePath == null || !relativePath.startsWith( CONTENT_PREFIX )
+                        || ( queryString != null && !queryString.isEmpty() ) )
+        {
+            return null;
+        }
+
+        final String contentPath = relativePath.substring( CONTENT_PREFIX.length() );
+        if ( !isPlainPath( contentPath ) )
+        {
+            return null;
+        }
+
+        final String[] parts = contentPath.split( "/", 4 );
+        if ( parts.length < 4 || parts[3].isEmpty() )
+        {
+            return null;
+        }
+
+        final String basePath;
+        if ( MAVEN_PKG_KEY.equals( parts[0] ) )
+        {
+            basePath = MAVEN_CONTENT_REST_BASE_PATH;
+        }
+        else if ( GENERIC_PKG_KEY.equals( parts[0] ) )
+        {
+            basePath = GENERIC_CONTENT_REST_BASE_PATH;
+        }
+        else
+        {
+            return null;
+        }
+
+        final StoreType type = StoreType.get( parts[1] );
+        if ( type == null || !type.singularEndpointName().equals( parts[1] ) )
+        {
+            return null;
+        }
+
+        return new ContentRequest( head, parts[0], parts[1], parts[2], parts[3], basePath );
+    }
+
+    // leave anything RESTEasy would decode or normalize differently to it: encoded characters, empty or dot segments
+    private static boolean isPlainPath( final String path )
+    {
+        if ( path.indexOf( '%' ) > -1 )
+        {
+            return false;
+        }
+
+        final String[] segments = path.split( "/", -1 );
+        for ( int i = 0; i < segments.length; i++ )
+        {
+            final String segment = segments[i];
+            if ( ( segment.isEmpty() && i < segments.length - 1 ) || ".".equals( segment ) || "..".equals( segment ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void serve( final ContentRequest content, final HttpServletRequest request,
+                        final HttpServletResponse response )
+            throws IOException
+    {
+        final String baseUri = getBaseUri( request, content.basePath );
+
+        final Response result;
+        if ( content.head )
+        {
+            result = handler.doHead( content.packageType, content.type, content.name, content.path, null, baseUri,
+                                     request, new EventMetadata() );
+        }
+        else
+        {
+            final String path =
+                    MAVEN_PKG_KEY.equals( content.packageType ) ? PathUtils.removeExtraSlash( content.path ) : content.path;
+
+            result = handler.doGet( content.packageType, content.type, content.name, path, baseUri, request,
+                                    new EventMetadata() );
+        }
+
+        write( result, request, response, content.head );
+    }
+
+    static void write( final Response result, final HttpServletRequest request, final HttpServletResponse response,
+                       final boolean head )
+            throws IOException
+    {
+        response.setStatus( result.getStatus() );
+        for ( final Map.Entry<String, List<Object>> header : result.getMetadata().entrySet() )
+        {
+            for ( final Object value : header.getValue() )
+            {
+                if ( value != null )
+                {
+                    response.addHeader( header.getKey(), toHeaderValue( value, request ) );
+                }
+            }
+        }
+
+        final Object entity = result.getEntity();
+        if ( entity == null || head )
+        {
+            return;
+        }
+
+        writeEntity( entity, response.getOutputStream() );
+    }
+
+    static void writeEntity( final Object entity, final OutputStream out )
+            throws IOException
+    {
+        if ( entity instanceof StreamingOutput )
+        {
+            ( (StreamingOutput) entity ).write( out );
+        }
+        else if ( entity instanceof byte[] )
+        {
+            out.write( (byte[]) entity );
+        }
+        else
+        {
+            out.write( entity.toString().getBytes( StandardCharsets.UTF_8 ) );
+        }
+    }
+
+    // RESTEasy sends relative locations (content listing redirects) as absolute ones
+    private static String toHeaderValue( final Object value, final HttpServletRequest request )
+    {
+        if ( value instanceof URI && !( (URI) value ).isAbsolute() )
+        {
+            return URI.create( request.getRequestURL().toString() ).resolve( (URI) value ).toString();
+        }
+
+        return value.toString();
+    }
+
+    private static String getBaseUri( final HttpServletRequest request, final String basePath )
+    {
+        final String url = request.getRequestURL().toString();
+        return url.substring( 0, url.length() - request.getRequestURI().length() ) + request.getContextPath()
+                        + basePath;
+    }
+
+    private final class FastPathHandler
+            implements HttpHandler
+    {
+        private final HttpHandler next;
+
+        private FastPathHandler( final HttpHandler next )
+        {
+            this.next = next;
+        }
+
+        @Override
+        public void handleRequest( final HttpServerExchange exchange )
+                throws Exception
+        {
+            final ContentRequest content = parse( exchange.getRequestMethod().toString(), exchange.getRelativePath(),
+                                                  exchange.getQueryString() );
+
+            final ServletRequestContext context = exchange.getAttachment( ServletRequestContext.ATTACHMENT_KEY );
+            if ( content == null || context == null || !( context.getServletRequest() instanceof HttpServletRequest ) )
+            {
+                next.handleRequest( exchange );
+                return;
+            }
+
+            if ( exchange.isInIoThread() )
+            {
+                exchange.dispatch( this );
+                return;
+            }
+
+            logger.trace( "Serving content natively: {}", content );
+            new ContentFilterChain( deployment.getContentFilters().iterator(), content ).doFilter(
+                    context.getServletRequest(), context.getServletResponse() );
+        }
+    }
+
+    private final class ContentFilterChain
+            implements FilterChain
+    {
+        private final Iterator<Filter> filters;
+
+        private final ContentRequest content;
+
+        private ContentFilterChain( final Iterator<Filter> filters, final ContentRequest content )
+        {
+            this.filters = filters;
+            this.content = content;
+        }
+
+        @Override
+        public void doFilter( final ServletRequest request, final ServletResponse response )
+                throws IOException, ServletException
+        {
+            if ( filters.hasNext() )
+            {
+                filters.next().doFilter( request, response, this );
+            }
+            else
+            {
+                serve( content, (HttpServletRequest) request, (HttpServletResponse) response );
+            }
+        }
+    }
+
+    static final class ContentRequest
+    {
+        final boolean head;
+
+        final String packageType;
+
+        final String type;
+
+        final String name;
+
+        final String path;
+
+        final String basePath;
+
+        private ContentRequest( final boolean head, final String packageType, final String type, final String name,
+                                final String path, final String basePath )
+        {
+            this.head = head;
+            this.packageType = packageType;
+            this.type = type;
+            this.name = name;
+            this.path = path;
+            this.basePath = basePath;
+        }
+
+        @Override
+        public String toString()
+        {
+            return ( head ? "HEAD " : "GET " ) + packageType + ":" + type + ":" + name + "/" + path;
+        }
+    }
+}
@@ -47,6 +47,7 @@ import org.commonjava.indy.core.bind.jaxrs.util.MaintenanceController;
 import org.commonjava.indy.core.ctl.ContentController;
 import org.commonjava.indy.core.ctl.IspnCacheController;
 import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.model.core.BatchArchiveRequest;
 import org.commonjava.indy.model.core.BatchDeleteRequest;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
@@ -320,6 +321,20 @@ public class MaintenanceHandler
         return contentAccessHandler.doDelete( request, new EventMetadata(  ).set( IGNORE_READONLY, Boolean.TRUE ) );
     }
 
+    @ApiOperation( "Retrieve the given paths from a package store (type/name) as one zip or tar archive, built while it is sent." )
+    @ApiResponses( { @ApiResponse( code = 200, message = "Archive of the paths that could be retrieved, in request order." ),
+                           @ApiResponse( code = 400, message = "Missing storeKey or paths, or unknown format." ),
+                           @ApiResponse( code = 404, message = "No such store." ) } )
+    @ApiImplicitParam( name = "body", paramType = "body",
+                    value = "JSON object, specifying storeKey, paths and format (zip or tar, zip by default).",
+                    required = true, dataType = "org.commonjava.indy.model.core.BatchArchiveRequest" )
+    @Path( "/content/batch/archive" )
+    @POST
+    public Response doArchive( final BatchArchiveRequest request )
+    {
+        return contentAccessHandler.doArchive( request, new EventMetadata() );
+    }
+
     @ApiOperation( "Import artifact stores from a ZIP file." )
     @ApiResponses( { @ApiResponse( code = 201, message = "Import ZIP content" ) } )
     @Path( "/store/import" )
@@ -0,0 +1,334 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs.util;
+
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.core.ctl.ContentController;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.util.ApplicationContent;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Builds a zip or tar archive of many paths while the response is written. The paths are retrieved in parallel through
+ * {@link ContentController#getAsync(StoreKey, String, EventMetadata)}, so groups are resolved the same way a single
+ * download is, but the entries are written in the order given. At most {@link #WINDOW} paths are retrieved ahead of the
+ * one being written, which keeps the memory and threads used by a request bounded however many paths it has. Paths that
+ * can't be retrieved are logged and left out of the archive.
+ */
+public class ArchiveStreamingOutput
+        implements StreamingOutput
+{
+    public static final int WINDOW = 16;
+
+    public enum Format
+    {
+        zip( ApplicationContent.application_zip ), tar( ApplicationContent.application_tar );
+
+        private final String contentType;
+
+        Format( final String contentType )
+        {
+            this.contentType = contentType;
+        }
+
+        public String getContentType()
+        {
+            return contentType;
+        }
+
+        /**
+         * @return the format with the given name (zip if none is given), or null if there is no such format
+         */
+        public static Format get( final String name )
+        {
+            if ( name == null || name.trim().isEmpty() )
+            {
+                return zip;
+            }
+
+            for ( final Format format : values() )
+            {
+                if ( format.name().equalsIgnoreCase( name.trim() ) )
+                {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ContentController contentController;
+
+    private final Map<String, StoreKey> entries;
+
+    private final Format format;
+
+    private final EventMetadata eventMetadata;
+
+    /**
+     * @param entries the paths to archive, each with the store to retrieve it from, in the order they are written
+     */
+    public ArchiveStreamingOutput( final ContentController contentController, final Map<String, StoreKey> entries,
+                                   final Format format, final EventMetadata eventMetadata )
+    {
+        this.contentController = contentController;
+        this.entries = entries;
+        this.format = format;
+        this.eventMetadata = eventMetadata;
+    }
+
+    @Override
+    public void write( final OutputStream out )
+            throws IOException, WebApplicationException
+    {
+        final long begin = System.currentTimeMillis();
+        final Iterator<Map.Entry<String, StoreKey>> pending = entries.entrySet().iterator();
+        final Deque<Retrieval> inFlight = new ArrayDeque<>( WINDOW );
+
+        final ArchiveOutputStream archive = open( out );
+        int written = 0;
+        try
+        {
+            fill( pending, inFlight );
+
+            Retrieval next;
+            while ( ( next = inFlight.poll() ) != null )
+            {
+                final Transfer transfer = next.await();
+
+                // keep the window full while this one is written
+                fill( pending, inFlight );
+
+                if ( transfer != null && writeEntry( archive, transfer ) )
+                {
+                    written++;
+                }
+            }
+
+            archive.finish();
+            archive.flush();
+        }
+        finally
+        {
+            // only left over if the client went away, no need to retrieve the rest
+            inFlight.forEach( retrieval -> retrieval.future.cancel( false ) );
+        }
+
+        logger.info( "Wrote {} archive of {} entries, requested: {}, timeMillis: {}", format, written, entries.size(),
+                     System.currentTimeMillis() - begin );
+    }
+
+    private void fill( final Iterator<Map.Entry<String, StoreKey>> pending, final Deque<Retrieval> inFlight )
+    {
+        while ( inFlight.size() < WINDOW && pending.hasNext() )
+        {
+            final Map.Entry<String, StoreKey> entry = pending.next();
+            inFlight.add( new Retrieval( entry.getValue(), entry.getKey(),
+                                         contentController.getAsync( entry.getValue(), entry.getKey(),
+                                                                     new EventMetadata( eventMetadata ) ) ) );
+        }
+    }
+
+    private ArchiveOutputStream open( final OutputStream out )
+    {
+        if ( format == Format.tar )
+        {
+            final TarArchiveOutputStream tar = new TarArchiveOutputStream( out );
+            tar.setLongFileMode( TarArchiveOutputStream.LONGFILE_POSIX );
+            tar.setBigNumberMode( TarArchiveOutputStream.BIGNUMBER_POSIX );
+            return tar;
+        }
+
+        return new ZipArchiveOutputStream( out );
+    }
+
+    /**
+     * @return false if the entry was left out because the transfer couldn't be read
+     */
+    private boolean writeEntry( final ArchiveOutputStream archive, final Transfer transfer )
+            throws IOException
+    {
+        String name = transfer.getPath();
+        while ( name.startsWith( "/" ) )
+        {
+            name = name.substring( 1 );
+        }
+
+        // open the content before writing the entry header, so an unreadable path can still be left out
+        final InputStream in;
+        try
+        {
+            in = transfer.openInputStream( true, new EventMetadata( eventMetadata ) );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( String.format( "Leaving %s out of the archive, cannot read it. Reason: %s", transfer,
+                                        e.getMessage() ), e );
+            return false;
+        }
+
+        try
+        {
+            if ( format == Format.tar )
+            {
+                return writeTarEntry( archive, transfer, name, in );
+            }
+            else
+            {
+                final ZipArchiveEntry entry = new ZipArchiveEntry( name );
+                entry.setTime( transfer.lastModified() );
+
+                archive.putArchiveEntry( entry );
+                IOUtils.copy( in, archive );
+                archive.closeArchiveEntry();
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+
+        return true;
+    }
+
+    /**
+     * A tar entry starts with the size of its content. That's the transfer's length when it's known, and the entry fails
+     * the archive if the content turns out to have a different size. Otherwise the content is copied to a temporary file
+     * first, and the entry written from that copy, with its size.
+     *
+     * @return false if the entry was left out because the transfer couldn't be read
+     */
+    private boolean writeTarEntry( final ArchiveOutputStream archive, final Transfer transfer, final String name,
+                                final InputStream in )
+            throws IOException
+    {
+        final TarArchiveEntry entry = new TarArchiveEntry( name );
+        entry.setModTime( transfer.lastModified() );
+
+        final long length = transfer.length();
+        if ( length >= 0 )
+        {
+            entry.setSize( length );
+            archive.putArchiveEntry( entry );
+
+            final long copied = IOUtils.copyLarge( in, archive, 0, length );
+            if ( copied != length || in.read() != -1 )
+            {
+                throw new IOException(
+                        String.format( "%s changed size while it was archived, expected %d bytes", transfer,
+                                       length ) );
+            }
+
+            archive.closeArchiveEntry();
+            return true;
+        }
+
+        final Path copy = Files.createTempFile( "indy-archive-", ".tmp" );
+        try
+        {
+            try
+            {
+                Files.copy( in, copy, StandardCopyOption.REPLACE_EXISTING );
+            }
+            catch ( final IOException e )
+            {
+                logger.warn( String.format( "Leaving %s out of the archive, cannot read it. Reason: %s", transfer,
+                                            e.getMessage() ), e );
+                return false;
+            }
+
+            entry.setSize( Files.size( copy ) );
+            archive.putArchiveEntry( entry );
+            Files.copy( copy, archive );
+            archive.closeArchiveEntry();
+            return true;
+        }
+        finally
+        {
+            Files.deleteIfExists( copy );
+        }
+    }
+
+    private final class Retrieval
+    {
+        private final StoreKey key;
+
+        private final String path;
+
+        private final Future<Transfer> future;
+
+        private Retrieval( final StoreKey key, final String path, final Future<Transfer> future )
+        {
+            this.key = key;
+            this.path = path;
+            this.future = future;
+        }
+
+        private Transfer await()
+                throws IOException
+        {
+            final Transfer transfer;
+            try
+            {
+                transfer = future.get();
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException( "Interrupted waiting for: " + path + " from: " + key );
+            }
+            catch ( final ExecutionException e )
+            {
+                logger.warn( String.format( "Leaving %s from %s out of the archive. Reason: %s", path, key,
+                                            e.getCause().getMessage() ), e.getCause() );
+                return null;
+            }
+
+            if ( transfer == null || !transfer.exists() || transfer.isDirectory() )
+            {
+                logger.warn( "Leaving {} from {} out of the archive, no such file.", path, key );
+                return null;
+            }
+            return transfer;
+        }
+    }
+}
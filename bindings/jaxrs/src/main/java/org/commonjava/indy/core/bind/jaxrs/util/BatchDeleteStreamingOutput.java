@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.core.ctl.ContentController;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.maven.galley.event.EventMetadata;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * Runs a batch delete while the response is written, and sends the result of each path (its status code, or the error
+ * message) as soon as it is done, as one field of a JSON object. The deletes all run, and the invalidations they
+ * deferred, even if the client goes away.
+ */
+public class BatchDeleteStreamingOutput
+        implements StreamingOutput
+{
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final ContentController contentController;
+
+    private final ArtifactStore store;
+
+    private final Collection<String> paths;
+
+    private final EventMetadata eventMetadata;
+
+    private IOException writeError;
+
+    public BatchDeleteStreamingOutput( final ContentController contentController, final ArtifactStore store,
+                                       final Collection<String> paths, final EventMetadata eventMetadata )
+    {
+        this.contentController = contentController;
+        this.store = store;
+        this.paths = paths;
+        this.eventMetadata = eventMetadata;
+    }
+
+    @Override
+    public void write( final OutputStream out )
+            throws IOException, WebApplicationException
+    {
+        // nothing is flushed before the first result, so an error before that can still get its own response
+        final JsonGenerator generator = FACTORY.createGenerator( out );
+        generator.disable( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+        generator.writeStartObject();
+
+        try
+        {
+            contentController.delete( store, paths, eventMetadata,
+                                      ( path, result ) -> writeResult( generator, path, result ) );
+        }
+        catch ( final IndyWorkflowException e )
+        {
+            throw new IOException( "Batch delete from " + store.getKey() + " failed: " + e.getMessage(), e );
+        }
+
+        synchronized ( generator )
+        {
+            if ( writeError != null )
+            {
+                throw writeError;
+            }
+
+            generator.writeEndObject();
+            generator.close();
+        }
+    }
+
+    private void writeResult( final JsonGenerator generator, final String path, final String result )
+    {
+        synchronized ( generator )
+        {
+            if ( writeError != null )
+            {
+                return;
+            }
+
+            try
+            {
+                generator.writeStringField( path, result );
+                generator.flush();
+            }
+            catch ( final IOException e )
+            {
+                writeError = e;
+            }
+        }
+    }
+}
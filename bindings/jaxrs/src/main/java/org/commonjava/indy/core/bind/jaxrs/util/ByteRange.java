@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One satisfiable range of bytes from a HTTP Range header (RFC 7233), with inclusive first and last positions.
+ */
+public final class ByteRange
+{
+    public static final String BYTES_UNIT = "bytes";
+
+    /**
+     * Range headers with more ranges than this are ignored, so a client can't make us seek all over the file.
+     */
+    static final int MAX_RANGES = 16;
+
+    private final long first;
+
+    private final long last;
+
+    public ByteRange( final long first, final long last )
+    {
+        this.first = first;
+        this.last = last;
+    }
+
+    public long getFirst()
+    {
+        return first;
+    }
+
+    public long getLast()
+    {
+        return last;
+    }
+
+    public long getLength()
+    {
+        return last - first + 1;
+    }
+
+    /**
+     * @return the value of the Content-Range header for this range of an entity of the given length
+     */
+    public String toContentRange( final long entityLength )
+    {
+        return BYTES_UNIT + " " + first + "-" + last + "/" + entityLength;
+    }
+
+    /**
+     * @return the value of the Content-Range header of a 416 response for an entity of the given length
+     */
+    public static String unsatisfiedContentRange( final long entityLength )
+    {
+        return BYTES_UNIT + " */" + entityLength;
+    }
+
+    /**
+     * Parses a Range header against an entity of the given length. Overlapping and adjacent ranges are coalesced, and
+     * the result is sorted by position.
+     *
+     * @return null if the header should be ignored and the whole entity sent (missing, malformed, another unit or too
+     * many ranges), an empty list if none of the ranges can be satisfied, otherwise the ranges to send
+     */
+    public static List<ByteRange> parse( final String header, final long entityLength )
+    {
+        if ( header == null || entityLength < 0 )
+        {
+            return null;
+        }
+
+        final String value = header.trim();
+        final int eq = value.indexOf( '=' );
+        if ( eq < 0 || !BYTES_UNIT.equalsIgnoreCase( value.substring( 0, eq ).trim() ) )
+        {
+            return null;
+        }
+
+        final String[] specs = value.substring( eq + 1 ).split( "," );
+        if ( specs.length > MAX_RANGES )
+        {
+            return null;
+        }
+
+        final List<ByteRange> ranges = new ArrayList<>( specs.length );
+        for ( final String rawSpec : specs )
+        {
+            final String spec = rawSpec.trim();
+            final int dash = spec.indexOf( '-' );
+            if ( dash < 0 )
+            {
+                return null;
+            }
+
+            final long first;
+            final long last;
+            try
+            {
+                if ( dash == 0 )
+                {
+                    // suffix range: the last N bytes
+                    final long suffix = Long.parseLong( spec.substring( 1 ) );
+                    if ( suffix < 0 )
+                    {
+                        return null;
+                    }
+                    if ( suffix == 0 || entityLength == 0 )
+                    {
+                        continue;
+                    }
+                    first = Math.max( 0, entityLength - suffix );
+                    last = entityLength - 1;
+                }
+                else
+                {
+                    first = Long.parseLong( spec.substring( 0, dash ).trim() );
+                    final String end = spec.substring( dash + 1 ).trim();
+                    final long requestedLast = end.isEmpty() ? Long.MAX_VALUE : Long.parseLong( end );
+                    if ( first < 0 || requestedLast < first )
+                    {
+                        return null;
+                    }
+                    if ( first >= entityLength )
+                    {
+                        continue;
+                    }
+                    last = Math.min( requestedLast, entityLength - 1 );
+                }
+            }
+            catch ( final NumberFormatException e )
+            {
+                return null;
+            }
+
+            ranges.add( new ByteRange( first, last ) );
+        }
+
+        return coalesce( ranges );
+    }
+
+    private static List<ByteRange> coalesce( final List<ByteRange> ranges )
+    {
+        if ( ranges.size() < 2 )
+        {
+            return Collections.unmodifiableList( ranges );
+        }
+
+        ranges.sort( Comparator.comparingLong( ByteRange::getFirst ) );
+
+        final List<ByteRange> result = new ArrayList<>( ranges.size() );
+        ByteRange current = ranges.get( 0 );
+        for ( final ByteRange next : ranges.subList( 1, ranges.size() ) )
+        {
+            if ( next.first <= current.last + 1 )
+            {
+                current = new ByteRange( current.first, Math.max( current.last, next.last ) );
+            }
+            else
+            {
+                result.add( current );
+                current = next;
+            }
+        }
+        result.add( current );
+
+        return Collections.unmodifiableList( result );
+    }
+
+    @Override
+    public boolean equals( final Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( !( o instanceof ByteRange ) )
+        {
+            return false;
+        }
+        final ByteRange other = (ByteRange) o;
+        return first == other.first && last == other.last;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * Long.hashCode( first ) + Long.hashCode( last );
+    }
+
+    @Override
+    public String toString()
+    {
+        return first + "-" + last;
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs.util;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
+import org.commonjava.indy.util.ApplicationHeader;
+import org.commonjava.o11yphant.metrics.MetricsManager;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Sends some ranges of the content for a 206 (Partial Content) response: a single range as is, several ranges as a
+ * multipart/byteranges body. The ranges must be sorted and must not overlap (see {@link ByteRange#parse(String, long)}),
+ * so the content is only read forward. Only the bytes written to the response are counted in the transfer metrics.
+ */
+public class RangeStreamingOutput
+        extends TransferStreamingOutput
+{
+    private static final String MULTIPART_BYTERANGES = "multipart/byteranges; boundary=";
+
+    private static final String CRLF = "\r\n";
+
+    private final InputStream stream;
+
+    private final FileChannel channel;
+
+    private final List<ByteRange> ranges;
+
+    private final String boundary;
+
+    private final List<byte[]> partHeaders;
+
+    private final byte[] trailer;
+
+    private final long contentLength;
+
+    public RangeStreamingOutput( final InputStream stream, final List<ByteRange> ranges, final long entityLength,
+                                 final String contentType, final MetricsManager metricsManager,
+                                 final IndyMetricsConfig metricsConfig )
+    {
+        this( stream, null, ranges, entityLength, contentType, metricsManager, metricsConfig );
+    }
+
+    public RangeStreamingOutput( final FileChannel channel, final List<ByteRange> ranges, final long entityLength,
+                                 final String contentType, final MetricsManager metricsManager,
+                                 final IndyMetricsConfig metricsConfig )
+    {
+        this( null, channel, ranges, entityLength, contentType, metricsManager, metricsConfig );
+    }
+
+    private RangeStreamingOutput( final InputStream stream, final FileChannel channel, final List<ByteRange> ranges,
+                                  final long entityLength, final String contentType,
+                                  final MetricsManager metricsManager, final IndyMetricsConfig metricsConfig )
+    {
+        super( stream, channel, metricsManager, metricsConfig );
+        this.stream = stream;
+        this.channel = channel;
+        this.ranges = ranges;
+
+        long length = 0;
+        if ( ranges.size() > 1 )
+        {
+            boundary = UUID.randomUUID().toString().replace( "-", "" );
+            partHeaders = new ArrayList<>( ranges.size() );
+            for ( final ByteRange range : ranges )
+            {
+                final StringBuilder sb = new StringBuilder().append( CRLF ).append( "--" ).append( boundary ).append( CRLF );
+                if ( contentType != null )
+                {
+                    sb.append( ApplicationHeader.content_type.key() ).append( ": " ).append( contentType ).append( CRLF );
+                }
+                sb.append( ApplicationHeader.content_range.key() )
+                  .append( ": " )
+                  .append( range.toContentRange( entityLength ) )
+                  .append( CRLF )
+                  .append( CRLF );
+
+                final byte[] header = sb.toString().getBytes( StandardCharsets.US_ASCII );
+                partHeaders.add( header );
+                length += header.length;
+            }
+            trailer = ( CRLF + "--" + boundary + "--" + CRLF ).getBytes( StandardCharsets.US_ASCII );
+            length += trailer.length;
+        }
+        else
+        {
+            boundary = null;
+            partHeaders = null;
+            trailer = null;
+        }
+
+        for ( final ByteRange range : ranges )
+        {
+            length += range.getLength();
+        }
+        this.contentLength = length;
+    }
+
+    public boolean isMultipart()
+    {
+        return boundary != null;
+    }
+
+    /**
+     * @return the Content-Type of a multipart response, or null if a single range is sent with the type of the content
+     */
+    public String getMultipartContentType()
+    {
+        return boundary == null ? null : MULTIPART_BYTERANGES + boundary;
+    }
+
+    /**
+     * @return the exact length of the response body, including the multipart headers
+     */
+    public long getContentLength()
+    {
+        return contentLength;
+    }
+
+    @Override
+    protected long transfer( final OutputStream out )
+            throws IOException
+    {
+        final WritableByteChannel target = channel == null ? null : Channels.newChannel( out );
+
+        long written = 0;
+        long position = 0;
+        for ( int i = 0; i < ranges.size(); i++ )
+        {
+            final ByteRange range = ranges.get( i );
+            if ( partHeaders != null )
+            {
+                final byte[] header = partHeaders.get( i );
+                out.write( header );
+                written += header.length;
+            }
+
+            if ( target != null )
+            {
+                written += transferRange( range, target );
+            }
+            else
+            {
+                IOUtils.skipFully( stream, range.getFirst() - position );
+                final long copied = IOUtils.copyLarge( stream, out, 0, range.getLength() );
+                written += copied;
+                if ( copied < range.getLength() )
+                {
+                    throw new EOFException( "Content ended before range: " + range );
+                }
+                position = range.getLast() + 1;
+            }
+        }
+
+        if ( trailer != null )
+        {
+            out.write( trailer );
+            written += trailer.length;
+        }
+
+        return written;
+    }
+
+    private long transferRange( final ByteRange range, final WritableByteChannel target )
+            throws IOException
+    {
+        long position = range.getFirst();
+        final long end = range.getLast() + 1;
+        while ( position < end )
+        {
+            final long n = channel.transferTo( position, end - position, target );
+            if ( n <= 0 )
+            {
+                throw new EOFException( "Content ended before range: " + range );
+            }
+            position += n;
+        }
+        return end - range.getFirst();
+    }
+}
@@ -15,6 +15,8 @@
  */
 package org.commonjava.indy.core.bind.jaxrs.util;
 
+import io.undertow.servlet.handlers.ServletRequestContext;
+import io.undertow.servlet.spec.ServletOutputStreamImpl;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.CountingOutputStream;
 import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
@@ -28,11 +30,15 @@ import org.commonjava.o11yphant.trace.spi.adapter.SpanAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.ServletOutputStream;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Optional;
 
 import static org.commonjava.indy.IndyContentConstants.NANOS_PER_SEC;
@@ -59,6 +65,8 @@ public class TransferStreamingOutput
 
     private final InputStream stream;
 
+    private final FileChannel channel;
+
     private final MetricsManager metricsManager;
 
     private final IndyMetricsConfig metricsConfig;
@@ -73,8 +81,25 @@ public class TransferStreamingOutput
 
     public TransferStreamingOutput( final InputStream stream, final MetricsManager metricsManager,
                                     final IndyMetricsConfig metricsConfig )
+    {
+        this( stream, null, metricsManager, metricsConfig );
+    }
+
+    /**
+     * Sends the whole file with {@link FileChannel#transferTo(long, long, WritableByteChannel)} (sendfile) instead of
+     * copying it through a stream; through Undertow's own file transfer when running in Undertow.
+     */
+    public TransferStreamingOutput( final FileChannel channel, final MetricsManager metricsManager,
+                                    final IndyMetricsConfig metricsConfig )
+    {
+        this( null, channel, metricsManager, metricsConfig );
+    }
+
+    protected TransferStreamingOutput( final InputStream stream, final FileChannel channel,
+                                       final MetricsManager metricsManager, final IndyMetricsConfig metricsConfig )
     {
         this.stream = stream;
+        this.channel = channel;
         this.metricsManager = metricsManager;
         this.metricsConfig = metricsConfig;
 
@@ -93,10 +118,9 @@ public class TransferStreamingOutput
         start = System.nanoTime();
         try
         {
-            cout = new CountingOutputStream( out );
-            IOUtils.copy( stream, cout );
+            final long bytes = transfer( out );
 
-            kbCount = (double) cout.getByteCount() / 1024;
+            kbCount = (double) bytes / 1024;
 
             Logger logger = LoggerFactory.getLogger( getClass() );
             logger.trace( "Wrote: {} bytes", kbCount );
@@ -110,6 +134,11 @@ public class TransferStreamingOutput
                         .ifPresent( s -> s.setInProgressField( LATENCY_TIMER_PAUSE_KEY,
                                                                s.getInProgressField( LATENCY_TIMER_PAUSE_KEY, 0.0 ) + (end-start) ) );
 
+            if ( metricsManager == null || metricsConfig == null )
+            {
+                return;
+            }
+
             String rateName = getName( metricsConfig.getNodePrefix(), TRANSFER_METRIC_NAME + WRITE_SPEED,
                                        getDefaultName( TransferStreamingOutput.class, WRITE_SPEED ), METER );
 
@@ -131,11 +160,58 @@ public class TransferStreamingOutput
         finally
         {
             IOUtils.closeQuietly( stream );
+            IOUtils.closeQuietly( channel );
 
             rootSpan.ifPresent( SpanAdapter::close );
         }
     }
 
+    /**
+     * Writes the content to the response.
+     *
+     * @return the number of bytes written, which are counted in the transfer metrics
+     */
+    protected long transfer( final OutputStream out )
+            throws IOException
+    {
+        if ( channel != null )
+        {
+            return transferFile( out );
+        }
+
+        cout = new CountingOutputStream( out );
+        IOUtils.copy( stream, cout );
+        return cout.getByteCount();
+    }
+
+    private long transferFile( final OutputStream out )
+            throws IOException
+    {
+        final long size = channel.size();
+
+        final ServletRequestContext context = ServletRequestContext.current();
+        if ( context != null )
+        {
+            final ServletOutputStream servletOut = context.getOriginalResponse().getOutputStream();
+            if ( servletOut instanceof ServletOutputStreamImpl )
+            {
+                // commit the headers set through JAX-RS before writing to the servlet response directly
+                out.flush();
+                ( (ServletOutputStreamImpl) servletOut ).transferFrom( channel );
+                return size;
+            }
+        }
+
+        logger.trace( "Not running in Undertow, transferring the file to the response stream" );
+        final WritableByteChannel target = Channels.newChannel( out );
+        long position = 0;
+        while ( position < size )
+        {
+            position += channel.transferTo( position, size - position, target );
+        }
+        return position;
+    }
+
     private class TransferFieldInjector
                     implements CloseBlockingDecorator
     {
@@ -144,7 +220,7 @@ public class TransferStreamingOutput
         @Override
         public void decorateSpanAtClose( SpanAdapter span )
         {
-            if ( cout == null || start == -1 )
+            if ( start == -1 )
             {
                 logger.trace( "Transfer was never started. Not decorating the span." );
                 return;
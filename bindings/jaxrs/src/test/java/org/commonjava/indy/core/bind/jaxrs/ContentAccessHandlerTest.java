@@ -0,0 +1,527 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs;
+
+import org.commonjava.indy.bind.jaxrs.util.JaxRsRequestHelper;
+import org.commonjava.indy.bind.jaxrs.util.ResponseHelper;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.content.ContentDigester;
+import org.commonjava.indy.content.IndyPathGenerator;
+import org.commonjava.indy.core.ctl.ContentController;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.util.HttpUtils;
+import org.commonjava.indy.util.AcceptInfo;
+import org.commonjava.indy.util.ApplicationContent;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.AbstractTransferDecorator;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.SpecialPathInfo;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.commonjava.maven.galley.spi.io.TransferDecorator;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ContentAccessHandlerTest
+{
+    private static final String PATH = "org/foo/1/foo-1.jar";
+
+    private static final String SHA1 = "4e1243bd22c66e76c2ba9eddc1f91394e57f9f83";
+
+    private static final String ETAG = "\"" + SHA1 + "\"";
+
+    private static final String BASE_URI = "http://localhost/api/content/maven";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final HostedRepository hosted = new HostedRepository( MAVEN_PKG_KEY, "test" );
+
+    private CacheProvider cacheProvider;
+
+    private DefaultIndyConfiguration config;
+
+    private RecordingHandler handler;
+
+    private byte[] content;
+
+    private String lastModified;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cacheProvider = cacheProvider( new NoOpTransferDecorator() );
+
+        content = new byte[1000];
+        for ( int i = 0; i < content.length; i++ )
+        {
+            content[i] = (byte) ( 'a' + i % 26 );
+        }
+        store( PATH, content );
+        lastModified = HttpUtils.formatDateHeader( getTransfer( PATH ).lastModified() );
+
+        config = new DefaultIndyConfiguration();
+        handler = new RecordingHandler();
+    }
+
+    @Test
+    public void unconditionalGetSendsValidators()
+    {
+        Response response = get();
+
+        assertThat( response.getStatus(), equalTo( 200 ) );
+        assertThat( response.getHeaderString( "ETag" ), equalTo( ETAG ) );
+        assertThat( response.getHeaderString( "Last-Modified" ), equalTo( lastModified ) );
+    }
+
+    @Test
+    public void ifNoneMatch()
+    {
+        assertNotModified( get( "If-None-Match", ETAG ) );
+        assertNotModified( get( "If-None-Match", "\"other\", " + ETAG ) );
+        assertThat( get( "If-None-Match", "\"other\"" ).getStatus(), equalTo( 200 ) );
+    }
+
+    @Test
+    public void ifNoneMatchWeakTag()
+    {
+        assertNotModified( get( "If-None-Match", "W/" + ETAG ) );
+    }
+
+    @Test
+    public void ifNoneMatchAnything()
+    {
+        assertNotModified( get( "If-None-Match", "*" ) );
+    }
+
+    @Test
+    public void ifModifiedSince()
+    {
+        assertNotModified( get( "If-Modified-Since", lastModified ) );
+        assertThat( get( "If-Modified-Since", HttpUtils.formatDateHeader( 0L ) ).getStatus(), equalTo( 200 ) );
+    }
+
+    @Test
+    public void ifNoneMatchTakesPrecedenceOverIfModifiedSince()
+    {
+        assertThat( get( "If-None-Match", "\"other\"", "If-Modified-Since", lastModified ).getStatus(),
+                    equalTo( 200 ) );
+        assertNotModified( get( "If-None-Match", ETAG, "If-Modified-Since", HttpUtils.formatDateHeader( 0L ) ) );
+    }
+
+    @Test
+    public void headIsConditionalToo()
+    {
+        assertNotModified( handler.doHead( MAVEN_PKG_KEY, "hosted", "test", PATH, true, BASE_URI,
+                                           request( "If-None-Match", ETAG ), new EventMetadata() ) );
+    }
+
+    @Test
+    public void singleRange()
+            throws Exception
+    {
+        Response response = get( "Range", "bytes=10-19" );
+
+        assertThat( response.getStatus(), equalTo( 206 ) );
+        assertThat( response.getHeaderString( "Content-Range" ), equalTo( "bytes 10-19/1000" ) );
+        assertThat( response.getHeaderString( "Content-Length" ), equalTo( "10" ) );
+        assertThat( response.getHeaderString( "Content-Type" ), equalTo( "application/java-archive" ) );
+        assertThat( response.getHeaderString( "Accept-Ranges" ), equalTo( "bytes" ) );
+        assertThat( body( response ), equalTo( Arrays.copyOfRange( content, 10, 20 ) ) );
+    }
+
+    @Test
+    public void suffixRange()
+            throws Exception
+    {
+        Response response = get( "Range", "bytes=-5" );
+
+        assertThat( response.getStatus(), equalTo( 206 ) );
+        assertThat( response.getHeaderString( "Content-Range" ), equalTo( "bytes 995-999/1000" ) );
+        assertThat( body( response ), equalTo( Arrays.copyOfRange( content, 995, 1000 ) ) );
+    }
+
+    @Test
+    public void unsatisfiableRange()
+    {
+        Response response = get( "Range", "bytes=2000-3000" );
+
+        assertThat( response.getStatus(), equalTo( 416 ) );
+        assertThat( response.getHeaderString( "Content-Range" ), equalTo( "bytes */1000" ) );
+        assertThat( response.getEntity(), nullValue() );
+    }
+
+    @Test
+    public void multipleRanges()
+            throws Exception
+    {
+        Response response = get( "Range", "bytes=900-909,0-1" );
+
+        assertThat( response.getStatus(), equalTo( 206 ) );
+        assertThat( response.getHeaderString( "Content-Range" ), nullValue() );
+
+        final String contentType = response.getHeaderString( "Content-Type" );
+        final String prefix = "multipart/byteranges; boundary=";
+        assertThat( contentType, contentType.startsWith( prefix ), equalTo( true ) );
+        final String boundary = contentType.substring( prefix.length() );
+
+        // parts in the order of the content, each with its own headers
+        final String expected = "\r\n--" + boundary + "\r\n"
+                        + "Content-Type: application/java-archive\r\n"
+                        + "Content-Range: bytes 0-1/1000\r\n\r\n"
+                        + new String( content, 0, 2, StandardCharsets.US_ASCII )
+                        + "\r\n--" + boundary + "\r\n"
+                        + "Content-Type: application/java-archive\r\n"
+                        + "Content-Range: bytes 900-909/1000\r\n\r\n"
+                        + new String( content, 900, 10, StandardCharsets.US_ASCII )
+                        + "\r\n--" + boundary + "--\r\n";
+
+        final byte[] body = body( response );
+        assertThat( new String( body, StandardCharsets.US_ASCII ), equalTo( expected ) );
+        assertThat( response.getHeaderString( "Content-Length" ), equalTo( String.valueOf( body.length ) ) );
+    }
+
+    @Test
+    public void ifRangeMatchingETag()
+            throws Exception
+    {
+        Response response = get( "Range", "bytes=10-19", "If-Range", ETAG );
+
+        assertThat( response.getStatus(), equalTo( 206 ) );
+        assertThat( body( response ), equalTo( Arrays.copyOfRange( content, 10, 20 ) ) );
+    }
+
+    @Test
+    public void ifRangeMatchingDate()
+    {
+        assertThat( get( "Range", "bytes=10-19", "If-Range", lastModified ).getStatus(), equalTo( 206 ) );
+    }
+
+    @Test
+    public void ifRangeMismatchSendsEverything()
+            throws Exception
+    {
+        assertWholeContent( get( "Range", "bytes=10-19", "If-Range", "\"other\"" ) );
+        assertWholeContent( get( "Range", "bytes=10-19", "If-Range", HttpUtils.formatDateHeader( 0L ) ) );
+
+        // a weak tag never matches
+        assertWholeContent( get( "Range", "bytes=10-19", "If-Range", "W/" + ETAG ) );
+    }
+
+    @Test
+    public void zeroCopySendsWhatTheStreamSends()
+            throws Exception
+    {
+        final Response streamed = get();
+        final Response streamedRange = get( "Range", "bytes=10-19" );
+        assertThat( handler.localFiles, equalTo( 0 ) );
+
+        enableZeroCopy();
+        final Response sent = get();
+        final Response sentRange = get( "Range", "bytes=10-19" );
+        assertThat( handler.localFiles, equalTo( 2 ) );
+
+        assertSameResponse( sent, streamed );
+        assertSameResponse( sentRange, streamedRange );
+    }
+
+    @Test
+    public void zeroCopyIsSkippedWhenReadsAreDecorated()
+            throws Exception
+    {
+        cacheProvider = cacheProvider( new UpperCaseDecorator() );
+        store( PATH, content );
+        enableZeroCopy();
+
+        final Response response = get();
+        final Response ranged = get( "Range", "bytes=10-19" );
+        assertThat( handler.localFiles, equalTo( 0 ) );
+
+        final byte[] expected = new String( content, StandardCharsets.US_ASCII ).toUpperCase( Locale.ROOT )
+                                                                                 .getBytes( StandardCharsets.US_ASCII );
+        assertThat( body( response ), equalTo( expected ) );
+        assertThat( body( ranged ), equalTo( Arrays.copyOfRange( expected, 10, 20 ) ) );
+    }
+
+    @Test
+    public void zeroCopyIsSkippedForMetadata()
+            throws Exception
+    {
+        final String path = "org/foo/maven-metadata.xml";
+        store( path, content );
+        enableZeroCopy();
+
+        final Response response = handler.doGet( MAVEN_PKG_KEY, "hosted", "test", path, BASE_URI, request(),
+                                                 new EventMetadata() );
+        assertThat( handler.localFiles, equalTo( 0 ) );
+        assertThat( body( response ), equalTo( content ) );
+    }
+
+    private void enableZeroCopy()
+    {
+        config.setZeroCopyContentEnabled( true );
+        config.setZeroCopyContentMinBytes( 0L );
+    }
+
+    private static void assertSameResponse( final Response actual, final Response expected )
+            throws IOException
+    {
+        assertThat( actual.getStatus(), equalTo( expected.getStatus() ) );
+        for ( final String header : Arrays.asList( "Content-Length", "Content-Type", "Content-Range", "ETag",
+                                                   "Last-Modified", "Accept-Ranges" ) )
+        {
+            assertThat( header, actual.getHeaderString( header ), equalTo( expected.getHeaderString( header ) ) );
+        }
+        assertThat( body( actual ), equalTo( body( expected ) ) );
+    }
+
+    private void assertWholeContent( final Response response )
+            throws IOException
+    {
+        assertThat( response.getStatus(), equalTo( 200 ) );
+        assertThat( response.getHeaderString( "Content-Range" ), nullValue() );
+        assertThat( body( response ), equalTo( content ) );
+    }
+
+    private static byte[] body( final Response response )
+            throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ( (StreamingOutput) response.getEntity() ).write( out );
+        return out.toByteArray();
+    }
+
+    private void assertNotModified( final Response response )
+    {
+        assertThat( response.getStatus(), equalTo( 304 ) );
+        assertThat( response.getHeaderString( "ETag" ), equalTo( ETAG ) );
+        assertThat( response.getHeaderString( "Last-Modified" ), equalTo( lastModified ) );
+        assertThat( response.getEntity(), nullValue() );
+    }
+
+    private Response get( final String... headers )
+    {
+        return handler.doGet( MAVEN_PKG_KEY, "hosted", "test", PATH, BASE_URI, request( headers ),
+                              new EventMetadata() );
+    }
+
+    private static HttpServletRequest request( final String... headers )
+    {
+        final Map<String, String> values = new HashMap<>();
+        for ( int i = 0; i < headers.length; i += 2 )
+        {
+            values.put( headers[i], headers[i + 1] );
+        }
+
+        return (HttpServletRequest) Proxy.newProxyInstance( ContentAccessHandlerTest.class.getClassLoader(),
+                                                            new Class[] { HttpServletRequest.class },
+                                                            ( proxy, method, args ) -> {
+                                                                switch ( method.getName() )
+                                                                {
+                                                                    case "getHeader":
+                                                                        return values.get( args[0] );
+                                                                    case "getPathInfo":
+                                                                        return "/hosted/test/" + PATH;
+                                                                    default:
+                                                                        throw new UnsupportedOperationException(
+                                                                                method.getName() );
+                                                                }
+                                                            } );
+    }
+
+    private void store( final String path, final byte[] bytes )
+            throws IOException
+    {
+        try (OutputStream out = getTransfer( path ).openOutputStream( TransferOperation.UPLOAD ))
+        {
+            out.write( bytes );
+        }
+    }
+
+    private CacheProvider cacheProvider( final TransferDecorator decorator )
+            throws IOException
+    {
+        return new FileCacheProvider( temp.newFolder(), new IndyPathGenerator(), new NoOpFileEventManager(),
+                                      new TransferDecoratorManager( decorator ), false );
+    }
+
+    private Transfer getTransfer( final String path )
+    {
+        return cacheProvider.getTransfer( new ConcreteResource( LocationUtils.toLocation( hosted ), path ) );
+    }
+
+    /**
+     * Counts the responses sent straight from the stored file.
+     */
+    private final class RecordingHandler
+            extends ContentAccessHandler
+    {
+        private int localFiles;
+
+        private RecordingHandler()
+        {
+            super( new StubContentController(), null, new StubRequestHelper(), new SpecialPathManagerImpl(),
+                   new ResponseHelper( new StubContentDigester() ), config );
+        }
+
+        @Override
+        protected FileChannel getLocalFileChannel( final Transfer item, final SpecialPathInfo spi,
+                                                   final InputStream in )
+                throws IOException
+        {
+            final FileChannel channel = super.getLocalFileChannel( item, spi, in );
+            if ( channel != null )
+            {
+                localFiles++;
+            }
+            return channel;
+        }
+    }
+
+    private static final class UpperCaseDecorator
+            extends AbstractTransferDecorator
+    {
+        @Override
+        public InputStream decorateRead( final InputStream stream, final Transfer transfer,
+                                         final EventMetadata metadata )
+        {
+            return new FilterInputStream( stream )
+            {
+                @Override
+                public int read()
+                        throws IOException
+                {
+                    final int b = super.read();
+                    return b < 0 ? b : Character.toUpperCase( b );
+                }
+
+                @Override
+                public int read( final byte[] b, final int off, final int len )
+                        throws IOException
+                {
+                    final int n = super.read( b, off, len );
+                    for ( int i = off; i < off + n; i++ )
+                    {
+                        b[i] = (byte) Character.toUpperCase( b[i] );
+                    }
+                    return n;
+                }
+            };
+        }
+    }
+
+    private final class StubContentController
+            extends ContentController
+    {
+        @Override
+        public Transfer get( final StoreKey key, final String path, final EventMetadata eventMetadata )
+        {
+            return getTransfer( path );
+        }
+
+        @Override
+        public Transfer getTransfer( final StoreKey storeKey, final String path, final TransferOperation op )
+        {
+            return getTransfer( path );
+        }
+
+        @Override
+        public String getContentType( final String path )
+        {
+            return "application/java-archive";
+        }
+
+        @Override
+        public HttpExchangeMetadata getHttpMetadata( final Transfer txfr )
+        {
+            return null;
+        }
+    }
+
+    private static final class StubRequestHelper
+            extends JaxRsRequestHelper
+    {
+        @Override
+        public AcceptInfo findAccept( final HttpServletRequest request, final String defaultAccept )
+        {
+            return new AcceptInfo( ApplicationContent.application_json, ApplicationContent.application_json, null );
+        }
+    }
+
+    private final class StubContentDigester
+            implements ContentDigester
+    {
+        @Override
+        public TransferMetadata getContentMetadata( final Transfer transfer )
+        {
+            return new TransferMetadata( Collections.singletonMap( ContentDigest.SHA_1, SHA1 ),
+                                         (long) content.length );
+        }
+
+        @Override
+        public TransferMetadata digest( final StoreKey affectedStore, final String s,
+                                        final EventMetadata eventMetadata )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addMetadata( final Transfer transfer, final TransferMetadata transferData )
+        {
+        }
+
+        @Override
+        public void removeMetadata( final Transfer transfer )
+        {
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs;
+
+import org.commonjava.indy.core.bind.jaxrs.ContentFastPathHandler.ContentRequest;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ContentFastPathHandlerTest
+{
+    @Test
+    public void parseContentRequests()
+    {
+        ContentRequest request =
+                ContentFastPathHandler.parse( "GET", "/api/content/maven/remote/central/org/foo/1/foo-1.jar", null );
+        assertThat( request, notNullValue() );
+        assertThat( request.head, equalTo( false ) );
+        assertThat( request.packageType, equalTo( "maven" ) );
+        assertThat( request.type, equalTo( "remote" ) );
+        assertThat( request.name, equalTo( "central" ) );
+        assertThat( request.path, equalTo( "org/foo/1/foo-1.jar" ) );
+        assertThat( request.basePath, equalTo( "/api/content/maven" ) );
+
+        request = ContentFastPathHandler.parse( "HEAD", "/api/content/generic-http/hosted/files/a/b.tar.gz", "" );
+        assertThat( request, notNullValue() );
+        assertThat( request.head, equalTo( true ) );
+        assertThat( request.path, equalTo( "a/b.tar.gz" ) );
+
+        request = ContentFastPathHandler.parse( "GET", "/api/content/maven/group/public/org/foo/", null );
+        assertThat( request.path, equalTo( "org/foo/" ) );
+    }
+
+    @Test
+    public void leaveOtherRequestsToRestEasy()
+    {
+        assertThat( ContentFastPathHandler.parse( "PUT", "/api/content/maven/hosted/local/a.jar", null ),
+                    nullValue() );
+        assertThat( ContentFastPathHandler.parse( "GET", "/api/content/npm/remote/npmjs/jquery", null ),
+                    nullValue() );
+        assertThat( ContentFastPathHandler.parse( "GET", "/api/content/maven/deploy/local/a.jar", null ),
+                    nullValue() );
+        assertThat( ContentFastPathHandler.parse( "GET", "/api/content/maven/hosted/local/", null ), nullValue() );
+        assertThat( ContentFastPathHandler.parse( "GET", "/api/content/maven/hosted/local", null ), nullValue() );
+        assertThat( ContentFastPathHandler.parse( "HEAD", "/api/content/maven/hosted/local/a.jar", "cache-only=true" ),
+                    nullValue() );
+        assertThat( ContentFastPathHandler.parse( "GET", "/api/content/maven/hosted/local/a%2Fb.jar", null ),
+                    nullValue() );
+        assertThat( ContentFastPathHandler.parse( "GET", "/api/content/maven/hosted/local/org//a.jar", null ),
+                    nullValue() );
+        assertThat( ContentFastPathHandler.parse( "GET", "/api/content/maven/hosted/local/org/../a.jar", null ),
+                    nullValue() );
+        assertThat( ContentFastPathHandler.parse( "GET", "/api/browse/maven/hosted/local/a.jar", null ),
+                    nullValue() );
+    }
+
+    @Test
+    public void writeCopiesHeadersAndResolvesRelativeLocation()
+            throws Exception
+    {
+        final Response result = Response.status( 303 )
+                                        .location( URI.create( "../bar/" ) )
+                                        .header( "X-Test", "a" )
+                                        .header( "X-Test", "b" )
+                                        .header( "Content-Length", 0 )
+                                        .build();
+
+        final RecordingResponse response = new RecordingResponse();
+        ContentFastPathHandler.write( result, request( "http://localhost:8080/api/content/maven/hosted/local/org/foo/" ),
+                                      response.proxy(), false );
+
+        assertThat( response.status, equalTo( 303 ) );
+        assertThat( response.headers.get( "Location" ), equalTo(
+                Collections.singletonList( "http://localhost:8080/api/content/maven/hosted/local/org/bar/" ) ) );
+        assertThat( response.headers.get( "X-Test" ), equalTo( Arrays.asList( "a", "b" ) ) );
+        assertThat( response.headers.get( "Content-Length" ), equalTo( Collections.singletonList( "0" ) ) );
+        assertThat( response.bodyOpened, equalTo( false ) );
+    }
+
+    @Test
+    public void headSendsNoBody()
+            throws Exception
+    {
+        final Response result = Response.ok( "content" ).header( "Content-Length", 7 ).build();
+
+        final RecordingResponse response = new RecordingResponse();
+        ContentFastPathHandler.write( result, request( "http://localhost:8080/api/content/maven/hosted/local/a.jar" ),
+                                      response.proxy(), true );
+
+        assertThat( response.status, equalTo( 200 ) );
+        assertThat( response.headers.get( "Content-Length" ), equalTo( Collections.singletonList( "7" ) ) );
+        assertThat( response.bodyOpened, equalTo( false ) );
+    }
+
+    @Test
+    public void writeEntityOfEachKind()
+            throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ContentFastPathHandler.writeEntity( "text", out );
+        assertThat( out.toString( StandardCharsets.UTF_8.name() ), equalTo( "text" ) );
+
+        out = new ByteArrayOutputStream();
+        ContentFastPathHandler.writeEntity( "bytes".getBytes( StandardCharsets.UTF_8 ), out );
+        assertThat( out.toString( StandardCharsets.UTF_8.name() ), equalTo( "bytes" ) );
+
+        out = new ByteArrayOutputStream();
+        ContentFastPathHandler.writeEntity( (StreamingOutput) o -> o.write( "streamed".getBytes( StandardCharsets.UTF_8 ) ),
+                                            out );
+        assertThat( out.toString( StandardCharsets.UTF_8.name() ), equalTo( "streamed" ) );
+    }
+
+    private static HttpServletRequest request( final String url )
+    {
+        return (HttpServletRequest) Proxy.newProxyInstance( ContentFastPathHandlerTest.class.getClassLoader(),
+                                                            new Class[] { HttpServletRequest.class },
+                                                            ( proxy, method, args ) -> {
+                                                                if ( "getRequestURL".equals( method.getName() ) )
+                                                                {
+                                                                    return new StringBuffer( url );
+                                                                }
+                                                                throw new UnsupportedOperationException(
+                                                                        method.getName() );
+                                                            } );
+    }
+
+    private static final class RecordingResponse
+            implements InvocationHandler
+    {
+        private int status;
+
+        private final Map<String, List<String>> headers = new LinkedHashMap<>();
+
+        private boolean bodyOpened;
+
+        HttpServletResponse proxy()
+        {
+            return (HttpServletResponse) Proxy.newProxyInstance( ContentFastPathHandlerTest.class.getClassLoader(),
+                                                                 new Class[] { HttpServletResponse.class }, this );
+        }
+
+        @Override
+        public Object invoke( final Object proxy, final Method method, final Object[] args )
+        {
+            switch ( method.getName() )
+            {
+                case "setStatus":
+                    status = (Integer) args[0];
+                    return null;
+                case "addHeader":
+                    headers.computeIfAbsent( (String) args[0], k -> new ArrayList<>() ).add( (String) args[1] );
+                    return null;
+                case "getOutputStream":
+                    bodyOpened = true;
+                    throw new UnsupportedOperationException( "no body expected" );
+                default:
+                    throw new UnsupportedOperationException( method.getName() );
+            }
+        }
+    }
+}
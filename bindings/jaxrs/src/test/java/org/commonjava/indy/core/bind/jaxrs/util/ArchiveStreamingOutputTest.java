@@ -0,0 +1,270 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs.util;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.content.IndyPathGenerator;
+import org.commonjava.indy.core.bind.jaxrs.ContentAccessHandler;
+import org.commonjava.indy.core.bind.jaxrs.util.ArchiveStreamingOutput.Format;
+import org.commonjava.indy.core.ctl.ContentController;
+import org.commonjava.indy.model.core.BatchArchiveRequest;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ArchiveStreamingOutputTest
+{
+    private static final String MISSING = "org/foo/missing/foo-missing.jar";
+
+    private static final String FAILING = "org/foo/failing/foo-failing.jar";
+
+    private static final String UNREADABLE = "org/foo/unreadable/foo-unreadable.jar";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final HostedRepository hosted = new HostedRepository( MAVEN_PKG_KEY, "test" );
+
+    private CacheProvider cacheProvider;
+
+    private StubContentController contentController;
+
+    private Map<String, StoreKey> entries;
+
+    private List<String> expected;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cacheProvider = new FileCacheProvider( temp.newFolder( "cache" ), new IndyPathGenerator(),
+                                               new NoOpFileEventManager(),
+                                               new TransferDecoratorManager( new NoOpTransferDecorator() ), false );
+        contentController = new StubContentController();
+
+        // more paths than the window, in an order that isn't sorted, with a missing, a failing and an unreadable one
+        // in between
+        store( UNREADABLE, "never read" );
+        entries = new LinkedHashMap<>();
+        expected = new ArrayList<>();
+        for ( int i = ArchiveStreamingOutput.WINDOW * 3; i > 0; i-- )
+        {
+            final String path = "org/foo/" + i + "/foo-" + i + ".jar";
+            store( path, "content of " + i );
+            entries.put( path, hosted.getKey() );
+            expected.add( path );
+
+            if ( i == ArchiveStreamingOutput.WINDOW )
+            {
+                entries.put( MISSING, hosted.getKey() );
+                entries.put( FAILING, hosted.getKey() );
+                entries.put( UNREADABLE, hosted.getKey() );
+            }
+        }
+    }
+
+    @Test
+    public void zipHasEntriesInRequestOrder()
+            throws Exception
+    {
+        final byte[] archive = write( Format.zip );
+
+        assertEntries( new ZipArchiveInputStream( new ByteArrayInputStream( archive ) ) );
+        assertRetrievals();
+    }
+
+    @Test
+    public void tarHasEntriesInRequestOrder()
+            throws Exception
+    {
+        final byte[] archive = write( Format.tar );
+
+        assertEntries( new TarArchiveInputStream( new ByteArrayInputStream( archive ) ) );
+        assertRetrievals();
+    }
+
+    @Test
+    public void formatByName()
+    {
+        assertThat( Format.get( null ), equalTo( Format.zip ) );
+        assertThat( Format.get( " " ), equalTo( Format.zip ) );
+        assertThat( Format.get( "zip" ), equalTo( Format.zip ) );
+        assertThat( Format.get( " TAR " ), equalTo( Format.tar ) );
+        assertThat( Format.get( "rar" ), nullValue() );
+
+        assertThat( Format.zip.getContentType(), equalTo( "application/zip" ) );
+        assertThat( Format.tar.getContentType(), equalTo( "application/x-tar" ) );
+    }
+
+    @Test
+    public void archiveResponse()
+    {
+        final ContentAccessHandler handler = new ContentAccessHandler( contentController, null, null );
+
+        Response response = handler.doArchive( entries, "rar", "test", new EventMetadata() );
+        assertThat( response.getStatus(), equalTo( 400 ) );
+
+        response = handler.doArchive( new BatchArchiveRequest(), new EventMetadata() );
+        assertThat( response.getStatus(), equalTo( 400 ) );
+
+        response = handler.doArchive( entries, "tar", "test", new EventMetadata() );
+        assertThat( response.getStatus(), equalTo( 200 ) );
+        assertThat( response.getMediaType().toString(), equalTo( "application/x-tar" ) );
+        assertThat( response.getHeaderString( "Content-Disposition" ), equalTo( "attachment; filename=\"test.tar\"" ) );
+        assertThat( response.getEntity() instanceof ArchiveStreamingOutput, equalTo( true ) );
+
+        // nothing is retrieved until the response is written
+        assertThat( contentController.requested.isEmpty(), equalTo( true ) );
+    }
+
+    private byte[] write( final Format format )
+            throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ArchiveStreamingOutput( contentController, entries, format, new EventMetadata() ).write( out );
+        return out.toByteArray();
+    }
+
+    private void assertEntries( final ArchiveInputStream archive )
+            throws IOException
+    {
+        final List<String> names = new ArrayList<>();
+        ArchiveEntry entry;
+        while ( ( entry = archive.getNextEntry() ) != null )
+        {
+            final String name = entry.getName();
+            final String index = name.substring( "org/foo/".length(), name.indexOf( '/', "org/foo/".length() ) );
+            assertThat( IOUtils.toString( archive, StandardCharsets.UTF_8 ), equalTo( "content of " + index ) );
+            names.add( name );
+        }
+
+        assertThat( names, equalTo( expected ) );
+    }
+
+    private void assertRetrievals()
+    {
+        // every path was requested once, in order, and never more than the window ahead of the one being written
+        final List<String> requested = new ArrayList<>( entries.keySet() );
+        assertThat( contentController.requested, equalTo( requested ) );
+        assertThat( contentController.maxInFlight, equalTo( ArchiveStreamingOutput.WINDOW ) );
+    }
+
+    private void store( final String path, final String content )
+            throws IOException
+    {
+        final Transfer transfer = getTransfer( path );
+        try (OutputStream out = transfer.openOutputStream( TransferOperation.UPLOAD ))
+        {
+            out.write( content.getBytes( StandardCharsets.UTF_8 ) );
+        }
+    }
+
+    private Transfer getTransfer( final String path )
+    {
+        return cacheProvider.getTransfer( new ConcreteResource( LocationUtils.toLocation( hosted ), path ) );
+    }
+
+    private final class StubContentController
+            extends ContentController
+    {
+        private final List<String> requested = Collections.synchronizedList( new ArrayList<>() );
+
+        private int awaited;
+
+        private int maxInFlight;
+
+        @Override
+        public Future<Transfer> getAsync( final StoreKey key, final String path, final EventMetadata eventMetadata )
+        {
+            requested.add( path );
+            maxInFlight = Math.max( maxInFlight, requested.size() - awaited );
+
+            final CompletableFuture<Transfer> future = new CompletableFuture<Transfer>()
+            {
+                @Override
+                public Transfer get()
+                        throws InterruptedException, ExecutionException
+                {
+                    awaited++;
+                    return super.get();
+                }
+            };
+
+            if ( FAILING.equals( path ) )
+            {
+                future.completeExceptionally( new IndyWorkflowException( "Cannot retrieve: %s", path ) );
+            }
+            else if ( UNREADABLE.equals( path ) )
+            {
+                future.complete( new Transfer( new ConcreteResource( LocationUtils.toLocation( hosted ), path ),
+                                               cacheProvider, new NoOpFileEventManager(),
+                                               new TransferDecoratorManager( new NoOpTransferDecorator() ) )
+                {
+                    @Override
+                    public InputStream openInputStream( final boolean fireEvents, final EventMetadata eventMetadata )
+                            throws IOException
+                    {
+                        throw new IOException( "Cannot read: " + path );
+                    }
+                } );
+            }
+            else
+            {
+                future.complete( getTransfer( path ) );
+            }
+            return future;
+        }
+    }
+}
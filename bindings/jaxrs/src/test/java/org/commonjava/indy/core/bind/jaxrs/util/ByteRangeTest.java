@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ByteRangeTest
+{
+    @Test
+    public void parseSingleRanges()
+    {
+        assertThat( ByteRange.parse( "bytes=0-99", 1000 ),
+                    equalTo( Collections.singletonList( new ByteRange( 0, 99 ) ) ) );
+        assertThat( ByteRange.parse( "bytes=500-", 1000 ),
+                    equalTo( Collections.singletonList( new ByteRange( 500, 999 ) ) ) );
+        assertThat( ByteRange.parse( "bytes=-100", 1000 ),
+                    equalTo( Collections.singletonList( new ByteRange( 900, 999 ) ) ) );
+        assertThat( ByteRange.parse( "bytes=900-2000", 1000 ),
+                    equalTo( Collections.singletonList( new ByteRange( 900, 999 ) ) ) );
+        assertThat( ByteRange.parse( "bytes=-2000", 1000 ),
+                    equalTo( Collections.singletonList( new ByteRange( 0, 999 ) ) ) );
+    }
+
+    @Test
+    public void parseMultipleRangesSortsAndCoalesces()
+    {
+        assertThat( ByteRange.parse( "bytes=500-599, 0-99, 90-199, 200-299", 1000 ),
+                    equalTo( Arrays.asList( new ByteRange( 0, 299 ), new ByteRange( 500, 599 ) ) ) );
+    }
+
+    @Test
+    public void unsatisfiableRangesAreEmpty()
+    {
+        assertThat( ByteRange.parse( "bytes=1000-", 1000 ), equalTo( Collections.emptyList() ) );
+        assertThat( ByteRange.parse( "bytes=-0", 1000 ), equalTo( Collections.emptyList() ) );
+        assertThat( ByteRange.parse( "bytes=0-", 0 ), equalTo( Collections.emptyList() ) );
+    }
+
+    @Test
+    public void invalidRangesAreIgnored()
+    {
+        assertThat( ByteRange.parse( null, 1000 ), nullValue() );
+        assertThat( ByteRange.parse( "items=0-1", 1000 ), nullValue() );
+        assertThat( ByteRange.parse( "bytes=abc", 1000 ), nullValue() );
+        assertThat( ByteRange.parse( "bytes=10-5", 1000 ), nullValue() );
+        assertThat( ByteRange.parse( "bytes=-", 1000 ), nullValue() );
+
+        StringBuilder tooMany = new StringBuilder( "bytes=0-0" );
+        for ( int i = 1; i <= ByteRange.MAX_RANGES; i++ )
+        {
+            tooMany.append( ',' ).append( i * 2 ).append( '-' ).append( i * 2 );
+        }
+        assertThat( ByteRange.parse( tooMany.toString(), 1000 ), nullValue() );
+    }
+}
@@ -29,6 +29,7 @@ import javax.inject.Inject;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.content.AbstractContentGenerator;
 import org.commonjava.indy.content.DirectContentAccess;
+import org.commonjava.indy.content.InvalidationBatch;
 import org.commonjava.indy.content.MergedContentAction;
 import org.commonjava.indy.core.content.group.GroupMergeHelper;
 import org.commonjava.indy.data.IndyDataException;
@@ -94,7 +95,16 @@ public abstract class AbstractMergedContentGenerator
     {
         if ( path.endsWith( getMergedMetadataName() ) )
         {
-            clearAllMerged( store, path );
+            final InvalidationBatch batch = InvalidationBatch.get( eventMetadata );
+            if ( batch != null )
+            {
+                batch.defer( getClass().getSimpleName() + ":" + store.getKey() + ":" + path,
+                             () -> clearAllMerged( store, path ) );
+            }
+            else
+            {
+                clearAllMerged( store, path );
+            }
         }
     }
 
@@ -33,6 +33,7 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -56,6 +57,12 @@ public class ContentGeneratorManager
         contentGenerators = new HashSet<>();
     }
 
+    public ContentGeneratorManager( final PathGenerator pathGenerator, final ContentGenerator... generators )
+    {
+        this.pathGenerator = pathGenerator;
+        this.contentGenerators = new HashSet<>( Arrays.asList( generators ) );
+    }
+
     @PostConstruct
     public void initialize()
     {
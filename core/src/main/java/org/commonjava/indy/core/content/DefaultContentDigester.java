@@ -24,11 +24,13 @@ import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
 import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
 import org.commonjava.maven.galley.io.checksum.TransferMetadata;
 import org.commonjava.maven.galley.model.Transfer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.io.IOException;
@@ -55,6 +57,8 @@ public class DefaultContentDigester
     @ContentMetadataCache
     private BasicCacheHandle<String, TransferMetadata> metadataCache;
 
+    private boolean lazyStrongDigests;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     protected DefaultContentDigester()
@@ -63,9 +67,23 @@ public class DefaultContentDigester
 
     public DefaultContentDigester( DirectContentAccess directContentAccess,
                                    BasicCacheHandle<String, TransferMetadata> metadataCache )
+    {
+        this( directContentAccess, metadataCache, false );
+    }
+
+    public DefaultContentDigester( DirectContentAccess directContentAccess,
+                                   BasicCacheHandle<String, TransferMetadata> metadataCache,
+                                   boolean lazyStrongDigests )
     {
         this.directContentAccess = directContentAccess;
         this.metadataCache = metadataCache;
+        this.lazyStrongDigests = lazyStrongDigests;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        lazyStrongDigests = Boolean.getBoolean( LAZY_STRONG_DIGESTS );
     }
 
     @Override
@@ -128,14 +146,14 @@ public class DefaultContentDigester
         }
 
         TransferMetadata meta = getContentMetadata( transfer );
-        if ( meta != null )
+        if ( meta != null && !( lazyStrongDigests && isMissingStrongDigest( meta ) ) )
         {
             logger.debug( "Get transferMetadata: {}", meta );
             return meta;
         }
 
         String cacheKey = generateCacheKey( transfer );
-        logger.debug( "TransferMetadata missing for: {}. Re-reading with FORCE_CHECKSUM now to calculate it.",
+        logger.debug( "TransferMetadata missing or incomplete for: {}. Re-reading with FORCE_CHECKSUM now to calculate it.",
                       cacheKey );
 
         EventMetadata forcedEventMetadata = new EventMetadata( eventMetadata ).set( FORCE_CHECKSUM, Boolean.TRUE );
@@ -155,4 +173,13 @@ public class DefaultContentDigester
 
         return getContentMetadata( transfer );
     }
+
+    /**
+     * With lazy strong digests (storage.checksum.lazy.strong.enabled), the SHA-256 isn't calculated when content is
+     * stored, so its metadata is completed the first time it's digested.
+     */
+    private boolean isMissingStrongDigest( final TransferMetadata meta )
+    {
+        return meta.getDigests() == null || !meta.getDigests().containsKey( ContentDigest.SHA_256 );
+    }
 }
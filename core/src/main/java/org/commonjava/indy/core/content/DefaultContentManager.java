@@ -17,6 +17,10 @@ package org.commonjava.indy.core.content;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
+import org.commonjava.cdi.util.weft.exception.PoolOverloadException;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.content.ContentDigester;
@@ -24,9 +28,11 @@ import org.commonjava.indy.content.ContentManager;
 import org.commonjava.indy.content.DownloadManager;
 import org.commonjava.indy.content.StoreResource;
 import org.commonjava.indy.core.content.group.GroupRepositoryFilterManager;
+import org.commonjava.indy.core.content.group.GroupRouteCache;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
@@ -54,6 +60,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static org.commonjava.indy.IndyContentConstants.CASCADE;
@@ -63,11 +71,18 @@ import static org.commonjava.indy.model.core.StoreType.group;
 import static org.commonjava.indy.model.core.StoreType.hosted;
 import static org.commonjava.indy.util.ContentUtils.dedupeListing;
 import static org.commonjava.maven.galley.io.SpecialPathConstants.HTTP_METADATA_EXT;
+import static org.commonjava.o11yphant.trace.TraceManager.addFieldToActiveSpan;
 
 public class DefaultContentManager
         implements ContentManager
 {
 
+    private static final String HEDGE_METRIC_PREFIX = "indy.content.group.hedge.";
+
+    private static final String HEDGE_HIT = "hit";
+
+    private static final String HEDGE_WASTED = "wasted";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -97,6 +112,17 @@ public class DefaultContentManager
     @Inject
     private GroupRepositoryFilterManager repositoryFilterManager;
 
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "group-hedged-retrieval", threads = 32, priority = 8, maxLoadFactor = 100, loadSensitive = ExecutorConfig.BooleanLiteral.TRUE )
+    private WeftExecutorService hedgedRetrievalService;
+
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private GroupRouteCache routeCache;
+
     protected DefaultContentManager()
     {
     }
@@ -115,6 +141,23 @@ public class DefaultContentManager
         this.contentGeneratorManager = contentGeneratorManager;
     }
 
+    public DefaultContentManager( final StoreDataManager storeManager, final DownloadManager downloadManager,
+                                  final IndyObjectMapper mapper, final SpecialPathManager specialPathManager,
+                                  final NotFoundCache nfc, final ContentDigester contentDigester,
+                                  final ContentGeneratorManager contentGeneratorManager,
+                                  final IndyConfiguration indyConfig,
+                                  final GroupRepositoryFilterManager repositoryFilterManager,
+                                  final WeftExecutorService hedgedRetrievalService,
+                                  final GroupRouteCache routeCache )
+    {
+        this( storeManager, downloadManager, mapper, specialPathManager, nfc, contentDigester,
+              contentGeneratorManager );
+        this.indyConfig = indyConfig;
+        this.repositoryFilterManager = repositoryFilterManager;
+        this.hedgedRetrievalService = hedgedRetrievalService;
+        this.routeCache = routeCache;
+    }
+
     @Override
     public Transfer retrieveFirst( final List<? extends ArtifactStore> stores, final String path )
             throws IndyWorkflowException
@@ -211,57 +254,241 @@ public class DefaultContentManager
         Transfer item;
         if ( group == store.getKey().getType() )
         {
-            List<ArtifactStore> members = getOrderedConcreteStoresAndFilter( (Group) store, path );
-            if ( logger.isDebugEnabled() )
-            {
-                logger.debug( "{} is a group. Attempting downloads from (in order):\n  {}", store.getKey(),
-                              StringUtils.join( members, "\n  " ) );
-            }
+            item = retrieveFromMembers( (Group) store, path, eventMetadata );
+        }
+        else
+        {
+            item = doRetrieve( store, path, eventMetadata );
+        }
+
+        if ( item != null )
+        {
+            logger.info( "Returning transfer {} from {}", item, store.getKey() );
+        }
+        else
+        {
+            logger.trace( "Not found path {} from {}", path, store.getKey() );
+        }
+
+        return item;
+    }
 
-            item = contentGeneratorManager.generateGroupFileContent( (Group) store, members, path, eventMetadata );
-            boolean generated = ( item != null );
+    private Transfer retrieveFromMembers( final Group store, final String path, final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        List<ArtifactStore> members = getOrderedConcreteStoresAndFilter( store, path );
+        if ( logger.isDebugEnabled() )
+        {
+            logger.debug( "{} is a group. Attempting downloads from (in order):\n  {}", store.getKey(),
+                          StringUtils.join( members, "\n  " ) );
+        }
 
-            if ( !generated )
+        Transfer item = contentGeneratorManager.generateGroupFileContent( store, members, path, eventMetadata );
+        boolean generated = ( item != null );
+
+        if ( !generated )
+        {
+            if ( PathMaskChecker.checkMask( store, path ) )
             {
-                if ( PathMaskChecker.checkMask( store, path ) )
+                item = retrieveRouted( store, members, path, eventMetadata );
+                if ( item == null )
                 {
-                    for ( final ArtifactStore member : members )
+                    if ( isHedgedRetrieval( members ) )
                     {
-                        try
-                        {
-                            item = doRetrieve( member, path, eventMetadata );
-                        }
-                        catch ( IndyWorkflowException e )
-                        {
-                            logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}",
-                                          path, member, store, e.getMessage() );
-                        }
-                        if ( item != null )
+                        item = retrieveHedged( store, members, path, eventMetadata );
+                    }
+                    else
+                    {
+                        for ( final ArtifactStore member : members )
                         {
-                            // get the item from the first member store
-                            break;
+                            item = retrieveMember( store, member, path, eventMetadata );
+                            if ( item != null )
+                            {
+                                // get the item from the first member store
+                                break;
+                            }
                         }
                     }
+
+                    if ( item != null && routeCache != null && routeCache.isEnabled() )
+                    {
+                        routeCache.putRoute( store.getKey(), path,
+                                             ( (KeyedLocation) item.getLocation() ).getKey() );
+                    }
                 }
             }
         }
-        else
+
+        return item;
+    }
+
+    /**
+     * Go straight to the member that served this path through the group last time, if we remember it. The route is
+     * only used while that member is still in the (enabled, filtered) member list; otherwise, or when the member
+     * doesn't have the path anymore, the route is dropped and null is returned so the group gets walked.
+     */
+    private Transfer retrieveRouted( final Group group, final List<ArtifactStore> members, final String path,
+                                     final EventMetadata eventMetadata )
+    {
+        if ( routeCache == null || !routeCache.isEnabled() )
         {
-            item = doRetrieve( store, path, eventMetadata );
+            return null;
         }
 
-        if ( item != null )
+        final StoreKey memberKey = routeCache.getRoute( group.getKey(), path );
+        if ( memberKey == null )
         {
-            logger.info( "Returning transfer {} from {}", item, store.getKey() );
+            return null;
+        }
+
+        final ArtifactStore member =
+                members.stream().filter( m -> memberKey.equals( m.getKey() ) ).findFirst().orElse( null );
+
+        final Transfer item = member == null ? null : retrieveMember( group, member, path, eventMetadata );
+        if ( item == null )
+        {
+            logger.debug( "Stale route for: {} in {} to {}; walking the group", path, group.getKey(), memberKey );
+            routeCache.invalidateRoute( group.getKey(), path );
         }
         else
         {
-            logger.trace( "Not found path {} from {}", path, store.getKey() );
+            logger.trace( "Routed: {} in {} straight to {}", path, group.getKey(), memberKey );
         }
 
         return item;
     }
 
+    private Transfer retrieveMember( final ArtifactStore group, final ArtifactStore member, final String path,
+                                     final EventMetadata eventMetadata )
+    {
+        try
+        {
+            return doRetrieve( member, path, eventMetadata );
+        }
+        catch ( IndyWorkflowException e )
+        {
+            logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}", path,
+                          member, group, e.getMessage() );
+        }
+
+        return null;
+    }
+
+    private boolean isHedgedRetrieval( final List<ArtifactStore> members )
+    {
+        return hedgedRetrievalService != null && indyConfig != null && indyConfig.isGroupHedgedRetrievalEnabled()
+                && members.size() > 1;
+    }
+
+    /**
+     * Probe the group members concurrently, keeping at most 'group.hedged.retrieval.width' probes in flight, but
+     * still return the first hit in group order. Probes behind the winner are cancelled when they haven't started yet;
+     * the ones already running are left to finish in the background and counted as wasted. If the pool is overloaded,
+     * the remaining members are probed on the calling thread.
+     */
+    private Transfer retrieveHedged( final Group group, final List<ArtifactStore> members, final String path,
+                                     final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        final int width = Math.max( 1, indyConfig.getGroupHedgedRetrievalWidth() );
+        final List<Future<Transfer>> probes = new ArrayList<>( members.size() );
+
+        Transfer item = null;
+        int winner = -1;
+        int i = 0;
+        boolean overloaded = false;
+        try
+        {
+            for ( ; i < members.size() && item == null; i++ )
+            {
+                while ( !overloaded && probes.size() < members.size() && probes.size() < i + width )
+                {
+                    final ArtifactStore member = members.get( probes.size() );
+                    try
+                    {
+                        probes.add( hedgedRetrievalService.submit( () -> {
+                            addFieldToActiveSpan( "storekey", member.getKey().toString() );
+                            addFieldToActiveSpan( "path", path );
+                            addFieldToActiveSpan( "activity", "retrieveHedged" );
+
+                            return retrieveMember( group, member, path, eventMetadata );
+                        } ) );
+                    }
+                    catch ( PoolOverloadException e )
+                    {
+                        logger.debug( "Hedged retrieval pool is overloaded; probing the rest of {} sequentially",
+                                      group.getKey() );
+                        overloaded = true;
+                    }
+                }
+
+                final ArtifactStore member = members.get( i );
+                if ( i < probes.size() )
+                {
+                    try
+                    {
+                        item = probes.get( i ).get();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new IndyWorkflowException( "Retrieval of %s in %s was interrupted", e, path, group );
+                    }
+                    catch ( ExecutionException e )
+                    {
+                        logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}",
+                                      path, member, group, e.getMessage() );
+                    }
+                }
+                else
+                {
+                    item = retrieveMember( group, member, path, eventMetadata );
+                }
+
+                if ( item != null )
+                {
+                    winner = i;
+                }
+            }
+        }
+        finally
+        {
+            // everything from i on was never awaited: drop it if it hasn't started yet
+            int wasted = 0;
+            for ( int j = i; j < probes.size(); j++ )
+            {
+                if ( !probes.get( j ).cancel( false ) )
+                {
+                    wasted++;
+                }
+            }
+
+            markHedgeMetrics( group, winner, wasted );
+        }
+
+        return item;
+    }
+
+    private void markHedgeMetrics( final Group group, final int winner, final int wasted )
+    {
+        if ( metricsManager == null )
+        {
+            return;
+        }
+
+        final String prefix = HEDGE_METRIC_PREFIX + group.getPackageType() + "." + group.getName() + ".";
+        if ( winner > 0 )
+        {
+            // the hit came from a member that was probed while earlier members were still being checked
+            metricsManager.getMeter( prefix + HEDGE_HIT ).mark();
+        }
+
+        if ( wasted > 0 )
+        {
+            metricsManager.getMeter( prefix + HEDGE_WASTED ).mark( wasted );
+        }
+    }
+
     private List<ArtifactStore> getOrderedConcreteStoresAndFilter( Group group, String path ) throws IndyWorkflowException
     {
         List<ArtifactStore> members;
@@ -23,11 +23,13 @@ import org.commonjava.indy.change.event.ArtifactStorePostRescanEvent;
 import org.commonjava.indy.change.event.ArtifactStorePreRescanEvent;
 import org.commonjava.indy.change.event.ArtifactStoreRescanEvent;
 import org.commonjava.indy.change.event.IndyStoreErrorEvent;
+import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.content.DownloadManager;
 import org.commonjava.indy.content.StoreResource;
 import org.commonjava.indy.core.change.event.IndyFileEventManager;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.HostedRepository;
@@ -76,7 +78,11 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.StreamSupport;
 
 import static org.commonjava.cdi.util.weft.ExecutorConfig.BooleanLiteral.TRUE;
@@ -94,6 +100,8 @@ public class DefaultDownloadManager
         implements DownloadManager
 {
 
+    private static final String COALESCED_DOWNLOADS = "indy.content.download.coalesced";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -105,6 +113,9 @@ public class DefaultDownloadManager
     // Byte, because it's small, and we really only care about the keys anyway.
     private final Map<StoreKey, Byte> rescansInProgress = new ConcurrentHashMap<>();
 
+    // remote downloads currently running, so concurrent requests for the same resource can wait on them
+    private final Map<String, CompletableFuture<Transfer>> downloadsInProgress = new ConcurrentHashMap<>();
+
     @Inject
     @WeftManaged
     @ExecutorConfig( priority = 10, threads = 2, named = "rescan-manager", loadSensitive = TRUE, maxLoadFactor = 2 )
@@ -129,6 +140,12 @@ public class DefaultDownloadManager
     @Any
     private Instance<ContentAdvisor> contentAdvisors;
 
+    @Inject
+    private IndyConfiguration indyConfig;
+
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
     protected DefaultDownloadManager()
     {
     }
@@ -159,6 +176,15 @@ public class DefaultDownloadManager
         this(storeManager, transfers, locationExpander, contentAdvisors, rescanService);
         this.nfc = nfc;
     }
+
+    public DefaultDownloadManager( final StoreDataManager storeManager, final TransferManager transfers,
+                                   final LocationExpander locationExpander, Instance<ContentAdvisor> contentAdvisors,
+                                   final NotFoundCache nfc, WeftExecutorService rescanService,
+                                   final IndyConfiguration indyConfig )
+    {
+        this( storeManager, transfers, locationExpander, contentAdvisors, nfc, rescanService );
+        this.indyConfig = indyConfig;
+    }
     @Override
     public List<StoreResource> list( final ArtifactStore store, final String path )
             throws IndyWorkflowException
@@ -446,7 +472,7 @@ public class DefaultDownloadManager
         {
             if ( store instanceof RemoteRepository )
             {
-                target = transfers.retrieve( res, suppressFailures, eventMetadata );
+                target = retrieveRemote( (RemoteRepository) store, res, suppressFailures, eventMetadata );
             }
             else
             {
@@ -481,6 +507,89 @@ public class DefaultDownloadManager
         return target;
     }
 
+    /**
+     * Single-flight wrapper around {@link TransferManager#retrieve(ConcreteResource, boolean, EventMetadata)}. The first
+     * caller for a resource does the upstream fetch; concurrent callers wait (bounded) for its outcome, including a
+     * not-found (null) result or the failure, instead of competing for the same transfer.
+     * <p>
+     * When the fetch succeeds, each waiter retrieves the now-cached file again with its own {@link EventMetadata}, so
+     * anything keyed on the request (tracking, decorators) sees that waiter and not the caller that did the fetch.
+     * A failure reaches each waiter as its own {@link IndyWorkflowException}, caused by the original failure.
+     */
+    private Transfer retrieveRemote( final RemoteRepository store, final ConcreteResource res,
+                                     final boolean suppressFailures, final EventMetadata eventMetadata )
+            throws TransferException, IndyWorkflowException
+    {
+        if ( !isDownloadCoalescing( store ) )
+        {
+            return transfers.retrieve( res, suppressFailures, eventMetadata );
+        }
+
+        final String key = store.getKey() + "#" + res.getPath() + "#" + suppressFailures;
+        final CompletableFuture<Transfer> download = new CompletableFuture<>();
+        final CompletableFuture<Transfer> inProgress = downloadsInProgress.putIfAbsent( key, download );
+        if ( inProgress == null )
+        {
+            try
+            {
+                Transfer target = transfers.retrieve( res, suppressFailures, eventMetadata );
+                download.complete( target );
+                return target;
+            }
+            catch ( TransferException | RuntimeException e )
+            {
+                download.completeExceptionally( e );
+                throw e;
+            }
+            finally
+            {
+                downloadsInProgress.remove( key, download );
+            }
+        }
+
+        logger.debug( "Waiting for in-progress download of: {}", res );
+        if ( metricsManager != null )
+        {
+            metricsManager.getMeter( COALESCED_DOWNLOADS ).mark();
+        }
+
+        final Transfer downloaded;
+        try
+        {
+            downloaded = inProgress.get( indyConfig.getDownloadCoalescingTimeoutSeconds(), TimeUnit.SECONDS );
+        }
+        catch ( TimeoutException e )
+        {
+            logger.warn( "Timed out waiting for in-progress download of: {}. Downloading it directly.", res );
+            return transfers.retrieve( res, suppressFailures, eventMetadata );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new TransferException( "Interrupted while waiting for in-progress download of: %s", e, res );
+        }
+        catch ( ExecutionException e )
+        {
+            // the download that failed already logged and reported the error; keep its cause so callers can still
+            // tell location errors apart
+            Throwable cause = e.getCause();
+            throw new IndyWorkflowException( "Failed to retrieve path: {} from: {}. Reason: {}", cause, res.getPath(),
+                                             store, cause.getMessage() );
+        }
+
+        return downloaded == null ? null : transfers.retrieve( res, suppressFailures, eventMetadata );
+    }
+
+    private boolean isDownloadCoalescing( final RemoteRepository store )
+    {
+        if ( indyConfig == null || !indyConfig.isDownloadCoalescingEnabled() )
+        {
+            return false;
+        }
+
+        return !Boolean.FALSE.toString().equalsIgnoreCase( store.getMetadata( RemoteRepository.METADATA_DOWNLOAD_COALESCING ) );
+    }
+
     @Override
     @Measure
     public boolean exists(final ArtifactStore store, String path)
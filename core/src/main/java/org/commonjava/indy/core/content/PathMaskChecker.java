@@ -25,6 +25,11 @@ public class PathMaskChecker
 {
     private static final Logger logger = LoggerFactory.getLogger( PathMaskChecker.class );
 
+    /**
+     * Transient metadata key under which the compiled {@link PathMaskMatcher} of a store is cached.
+     */
+    public static final String PATH_MASK_MATCHER_METADATA = "pathMaskMatcher";
+
     public static boolean checkMask(final ArtifactStore repo, final String path){
         Set<String> maskPatterns = repo.getPathMaskPatterns();
         logger.trace( "Checking mask in: {}, patterns: {}", repo.getKey(), maskPatterns );
@@ -37,23 +42,10 @@ public class PathMaskChecker
 
         String pathForCheck = path.startsWith( "/" ) ? path.substring( 1 ) : path;
 
-        for ( String pattern : maskPatterns )
+        if ( getMatcher( repo, maskPatterns ).matches( pathForCheck ) )
         {
-            // adding allPlaintext to the condition to reduce the number of isRegexPattern() calls
-            if ( isRegexPattern( pattern ) )
-            {
-                final String realRegex = pattern.substring( 2, pattern.length() - 1 );
-                if ( pathForCheck.matches( realRegex ) )
-                {
-                    logger.trace( "Checking mask in: {}, pattern with regex: {} - MATCH", repo.getName(), realRegex );
-                    return true;
-                }
-            }
-            else if ( pathForCheck.startsWith( pattern ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", repo.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", repo.getName(), pathForCheck );
+            return true;
         }
 
         logger.debug( "Path {} not available in path mask {} of repo {}", path, maskPatterns, repo );
@@ -73,24 +65,19 @@ public class PathMaskChecker
             return true;
         }
 
-        for ( String pattern : maskPatterns )
+        PathMaskMatcher matcher = getMatcher( store, maskPatterns );
+        if ( matcher.hasRegexes() )
         {
-            if ( isRegexPattern( pattern ) )
-            {
-                // if there is a regexp pattern we cannot check presence of directory listing, because we would have to
-                // check only the beginning of the regexp and that's impossible, so we have to assume that the path is
-                // present
-                return true;
-            }
+            // if there is a regexp pattern we cannot check presence of directory listing, because we would have to
+            // check only the beginning of the regexp and that's impossible, so we have to assume that the path is
+            // present
+            return true;
         }
 
-        for ( String pattern : maskPatterns )
+        if ( matcher.matchesPrefixEitherWay( path ) )
         {
-            if ( path.startsWith( pattern ) || pattern.startsWith( path ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", store.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", store.getName(), path );
+            return true;
         }
 
         logger.debug( "Listing for path {} not enabled by path mask {} of repo {}", path, maskPatterns, store.getKey() );
@@ -109,17 +96,11 @@ public class PathMaskChecker
             return true;
         }
 
-        for ( String pattern : maskPatterns )
+        // metadata patterns are listed as full paths, not use regex pattern
+        if ( getMatcher( store, maskPatterns ).matchesPrefixEitherWay( path ) )
         {
-            if ( isRegexPattern( pattern ) )
-            {
-                continue; // metadata patterns are listed as full paths, not use regex pattern
-            }
-            else if ( path.startsWith( pattern ) || pattern.startsWith( path ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", store.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", store.getName(), path );
+            return true;
         }
 
         logger.debug( "Metadata patterns not matched, path: {}, patterns: {}, repo: {}", path, maskPatterns,
@@ -131,4 +112,22 @@ public class PathMaskChecker
     {
         return pattern != null && pattern.startsWith( "r|" ) && pattern.endsWith( "|" );
     }
+
+    /**
+     * Get the compiled matcher cached with the store, (re)building it if there is none yet or the store's patterns have
+     * changed since it was built.
+     */
+    static PathMaskMatcher getMatcher( final ArtifactStore store, final Set<String> maskPatterns )
+    {
+        Object cached = store.getTransientMetadata( PATH_MASK_MATCHER_METADATA );
+        if ( cached instanceof PathMaskMatcher && ( (PathMaskMatcher) cached ).isFor( maskPatterns ) )
+        {
+            return (PathMaskMatcher) cached;
+        }
+
+        logger.trace( "Compiling path mask patterns of: {}", store.getKey() );
+        PathMaskMatcher matcher = new PathMaskMatcher( maskPatterns );
+        store.setTransientMetadata( PATH_MASK_MATCHER_METADATA, matcher );
+        return matcher;
+    }
 }
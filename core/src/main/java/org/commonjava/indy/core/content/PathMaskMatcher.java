@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.commonjava.indy.core.content.PathMaskChecker.isRegexPattern;
+
+/**
+ * Compiled form of a store's path mask patterns. Plain patterns are kept in a prefix trie, so a path is checked against
+ * all of them in one walk over its characters; regex patterns (<code>r|...|</code>) are compiled once, and combined into
+ * a single alternation when none of them uses back-references (which would be renumbered by the combination).
+ * <p>
+ * Instances are immutable and built by {@link PathMaskChecker} once per set of patterns.
+ */
+public final class PathMaskMatcher
+{
+    private static final Pattern BACK_REFERENCE = Pattern.compile( "\\\\(?:[1-9]|k<)" );
+
+    private final Set<String> patterns;
+
+    private final Node prefixes = new Node();
+
+    private final boolean hasPrefixes;
+
+    private final List<Pattern> regexes;
+
+    private final Pattern combinedRegex;
+
+    public PathMaskMatcher( final Set<String> patterns )
+    {
+        this.patterns = Collections.unmodifiableSet( new HashSet<>( patterns ) );
+
+        List<String> regexSources = new ArrayList<>();
+        boolean prefixFound = false;
+        for ( String pattern : this.patterns )
+        {
+            if ( isRegexPattern( pattern ) )
+            {
+                regexSources.add( pattern.substring( 2, pattern.length() - 1 ) );
+            }
+            else if ( pattern != null )
+            {
+                prefixes.add( pattern );
+                prefixFound = true;
+            }
+        }
+
+        this.hasPrefixes = prefixFound;
+
+        List<Pattern> compiled = new ArrayList<>( regexSources.size() );
+        boolean combinable = regexSources.size() > 1;
+        StringBuilder combined = new StringBuilder();
+        for ( String regex : regexSources )
+        {
+            compiled.add( Pattern.compile( regex ) );
+            if ( BACK_REFERENCE.matcher( regex ).find() )
+            {
+                combinable = false;
+            }
+
+            if ( combined.length() > 0 )
+            {
+                combined.append( '|' );
+            }
+            combined.append( "(?:" ).append( regex ).append( ')' );
+        }
+
+        this.regexes = Collections.unmodifiableList( compiled );
+        this.combinedRegex = combinable ? Pattern.compile( combined.toString() ) : null;
+    }
+
+    /**
+     * Whether this matcher was built from the given patterns, so it can still be used for a store that has them.
+     */
+    public boolean isFor( final Set<String> patterns )
+    {
+        return this.patterns.equals( patterns );
+    }
+
+    public boolean hasRegexes()
+    {
+        return !regexes.isEmpty();
+    }
+
+    /**
+     * Whether the path starts with one of the plain patterns, or fully matches one of the regex patterns.
+     */
+    public boolean matches( final String path )
+    {
+        if ( hasPrefixes && prefixes.hasPrefixOf( path ) )
+        {
+            return true;
+        }
+
+        if ( combinedRegex != null )
+        {
+            return combinedRegex.matcher( path ).matches();
+        }
+
+        for ( Pattern regex : regexes )
+        {
+            if ( regex.matcher( path ).matches() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Whether the path starts with one of the plain patterns, or one of them starts with the path. Regex patterns are
+     * not considered.
+     */
+    public boolean matchesPrefixEitherWay( final String path )
+    {
+        return hasPrefixes && prefixes.isPrefixOrExtensionOf( path );
+    }
+
+    private static final class Node
+    {
+        private final Map<Character, Node> children = new HashMap<>();
+
+        private boolean terminal;
+
+        void add( final String pattern )
+        {
+            Node node = this;
+            for ( int i = 0; i < pattern.length(); i++ )
+            {
+                node = node.children.computeIfAbsent( pattern.charAt( i ), c -> new Node() );
+            }
+            node.terminal = true;
+        }
+
+        /**
+         * Some pattern is a prefix of the path.
+         */
+        boolean hasPrefixOf( final String path )
+        {
+            Node node = this;
+            for ( int i = 0; ; i++ )
+            {
+                if ( node.terminal )
+                {
+                    return true;
+                }
+
+                if ( i == path.length() )
+                {
+                    return false;
+                }
+
+                node = node.children.get( path.charAt( i ) );
+                if ( node == null )
+                {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Some pattern is a prefix of the path, or the path is a prefix of some pattern.
+         */
+        boolean isPrefixOrExtensionOf( final String path )
+        {
+            Node node = this;
+            for ( int i = 0; i < path.length(); i++ )
+            {
+                if ( node.terminal )
+                {
+                    return true;
+                }
+
+                node = node.children.get( path.charAt( i ) );
+                if ( node == null )
+                {
+                    return false;
+                }
+            }
+
+            // the whole path was consumed, so at least one pattern starts with it
+            return true;
+        }
+    }
+}
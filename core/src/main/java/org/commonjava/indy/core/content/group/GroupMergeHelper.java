@@ -21,6 +21,7 @@ import static org.commonjava.indy.util.LocationUtils.getKey;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -40,6 +41,11 @@ public class GroupMergeHelper
 
     public static final String GROUP_METADATA_EXISTS = "group-metadata-exists";
 
+    /**
+     * Set by generators to the ETag of the group metadata they return, when it is known without reading the content.
+     */
+    public static final String GROUP_METADATA_ETAG = "group-metadata-etag";
+
     public static final String MERGEINFO_SUFFIX = ".info";
 
     public static final String SHA_SUFFIX = ".sha";
@@ -123,6 +129,37 @@ public class GroupMergeHelper
         return mergeInfoBuilder.toString();
     }
 
+    /**
+     * Reverse of {@link #generateMergeInfoFromKeys(List)}. Lines that aren't store keys are skipped.
+     */
+    public final List<StoreKey> getKeysFromMergeInfo( final String mergeInfo )
+    {
+        final List<StoreKey> keys = new ArrayList<>();
+        if ( mergeInfo == null )
+        {
+            return keys;
+        }
+
+        for ( final String line : mergeInfo.split( "\n" ) )
+        {
+            final String trimmed = line.trim();
+            if ( trimmed.isEmpty() )
+            {
+                continue;
+            }
+
+            try
+            {
+                keys.add( StoreKey.fromString( trimmed ) );
+            }
+            catch ( final IllegalArgumentException e )
+            {
+                logger.debug( "Skipping merge info line that isn't a store key: {}", trimmed );
+            }
+        }
+        return keys;
+    }
+
     public final void writeMergeInfo( final String mergeInfo, final Group group, final String path )
     {
         final String infoPath = path+MERGEINFO_SUFFIX;
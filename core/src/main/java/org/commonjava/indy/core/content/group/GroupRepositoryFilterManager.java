@@ -62,6 +62,14 @@ public class GroupRepositoryFilterManager
     {
     }
 
+    public GroupRepositoryFilterManager( final IndyConfiguration indyConfiguration,
+                                         final List<GroupRepositoryFilter> filters )
+    {
+        this.indyConfiguration = indyConfiguration;
+        this.groupRepositoryFilters.addAll( filters );
+        Collections.sort( groupRepositoryFilters, Collections.reverseOrder() );
+    }
+
     @PostConstruct
     void setup()
     {
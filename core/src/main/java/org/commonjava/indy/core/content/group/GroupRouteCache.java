@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.commonjava.indy.change.event.ArtifactStoreDeletePreEvent;
+import org.commonjava.indy.change.event.ArtifactStoreEnablementEvent;
+import org.commonjava.indy.change.event.ArtifactStorePreUpdateEvent;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.maven.galley.event.FileDeletionEvent;
+import org.commonjava.maven.galley.event.FileStorageEvent;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.model.core.StoreType.group;
+
+/**
+ * Remembers which member of a group served a path the last time it was retrieved through that group, so the next
+ * retrieval can go straight to that member instead of walking the filters, masks and NFC checks of every earlier
+ * member.
+ * <p>
+ * A route is dropped when it expires, when the group or any store reachable from it is updated, deleted, enabled or
+ * disabled, and when the path is uploaded to or deleted from any store (an upload to an earlier member changes which
+ * member should win).
+ * <p>
+ * Routes are held per path, so dropping a path is a single removal; the cache holds at most
+ * 'group.route.cache.max.entries' routes and evicts the least recently used paths beyond that.
+ */
+@ApplicationScoped
+public class GroupRouteCache
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private IndyConfiguration indyConfiguration;
+
+    @Inject
+    private StoreDataManager storeDataManager;
+
+    // path -> (group -> route); the inner maps are never changed once they're in the cache
+    private Cache<String, Map<StoreKey, Route>> routes;
+
+    public GroupRouteCache()
+    {
+    }
+
+    public GroupRouteCache( final IndyConfiguration indyConfiguration, final StoreDataManager storeDataManager )
+    {
+        this.indyConfiguration = indyConfiguration;
+        this.storeDataManager = storeDataManager;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        routes = CacheBuilder.newBuilder()
+                             .maximumWeight( indyConfiguration.getGroupRouteCacheMaxEntries() )
+                             .weigher( ( String path, Map<StoreKey, Route> groupRoutes ) -> groupRoutes.size() )
+                             .expireAfterWrite( indyConfiguration.getGroupRouteCacheTimeoutSeconds(),
+                                                TimeUnit.SECONDS )
+                             .build();
+    }
+
+    public boolean isEnabled()
+    {
+        return indyConfiguration != null && indyConfiguration.isGroupRouteCacheEnabled();
+    }
+
+    public StoreKey getRoute( final StoreKey groupKey, final String path )
+    {
+        final Map<StoreKey, Route> pathRoutes = routes.getIfPresent( path );
+        if ( pathRoutes == null )
+        {
+            return null;
+        }
+
+        final Route route = pathRoutes.get( groupKey );
+        if ( route == null )
+        {
+            return null;
+        }
+
+        if ( route.isExpired() )
+        {
+            invalidateRoute( groupKey, path );
+            return null;
+        }
+
+        return route.member;
+    }
+
+    public void putRoute( final StoreKey groupKey, final String path, final StoreKey member )
+    {
+        if ( !isEnabled() )
+        {
+            return;
+        }
+
+        final Route route = new Route( member, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(
+                indyConfiguration.getGroupRouteCacheTimeoutSeconds() ) );
+
+        routes.asMap().compute( path, ( p, old ) -> {
+            if ( old == null )
+            {
+                return Collections.singletonMap( groupKey, route );
+            }
+
+            final Map<StoreKey, Route> updated = new HashMap<>( old );
+            updated.put( groupKey, route );
+            return updated;
+        } );
+    }
+
+    public void invalidateRoute( final StoreKey groupKey, final String path )
+    {
+        routes.asMap().computeIfPresent( path, ( p, old ) -> without( old, groupKey ) );
+    }
+
+    public void invalidatePath( final String path )
+    {
+        routes.invalidate( path );
+    }
+
+    /**
+     * Drop the routes of the given store (if it's a group) and of every group containing it, directly or not.
+     */
+    public void invalidateStore( final StoreKey key )
+    {
+        if ( routes.size() < 1 )
+        {
+            return;
+        }
+
+        if ( key.getType() == group )
+        {
+            invalidateGroup( key );
+        }
+
+        try
+        {
+            Set<Group> affected = storeDataManager.query().getGroupsAffectedBy( key );
+            affected.forEach( g -> invalidateGroup( g.getKey() ) );
+        }
+        catch ( IndyDataException e )
+        {
+            logger.warn( "Failed to lookup groups affected by: {}; dropping all group routes. Reason: {}", key,
+                         e.getMessage() );
+            routes.invalidateAll();
+        }
+    }
+
+    public void onStoreUpdate( @Observes final ArtifactStorePreUpdateEvent event )
+    {
+        event.getChanges().forEach( store -> invalidateStore( store.getKey() ) );
+    }
+
+    public void onStoreDeletion( @Observes final ArtifactStoreDeletePreEvent event )
+    {
+        event.getStores().forEach( store -> invalidateStore( store.getKey() ) );
+    }
+
+    public void onStoreEnablement( @Observes final ArtifactStoreEnablementEvent event )
+    {
+        if ( event.isPreprocessing() )
+        {
+            event.getStores().stream().map( ArtifactStore::getKey ).forEach( this::invalidateStore );
+        }
+    }
+
+    public void onFileStorage( @Observes final FileStorageEvent event )
+    {
+        if ( event.getType() == TransferOperation.UPLOAD )
+        {
+            invalidatePath( event.getTransfer().getPath() );
+        }
+    }
+
+    public void onFileDeletion( @Observes final FileDeletionEvent event )
+    {
+        invalidatePath( event.getTransfer().getPath() );
+    }
+
+    private void invalidateGroup( final StoreKey groupKey )
+    {
+        // store changes are rare next to uploads, so this is the one place where every path gets looked at
+        routes.asMap().keySet().forEach( path -> invalidateRoute( groupKey, path ) );
+        logger.debug( "Dropped routes of group: {}", groupKey );
+    }
+
+    private static Map<StoreKey, Route> without( final Map<StoreKey, Route> pathRoutes, final StoreKey groupKey )
+    {
+        if ( !pathRoutes.containsKey( groupKey ) )
+        {
+            return pathRoutes;
+        }
+
+        if ( pathRoutes.size() == 1 )
+        {
+            return null;
+        }
+
+        final Map<StoreKey, Route> updated = new HashMap<>( pathRoutes );
+        updated.remove( groupKey );
+        return updated;
+    }
+
+    private static final class Route
+    {
+        private final StoreKey member;
+
+        private final long expires;
+
+        private Route( final StoreKey member, final long expires )
+        {
+            this.member = member;
+            this.expires = expires;
+        }
+
+        private boolean isExpired()
+        {
+            return System.currentTimeMillis() > expires;
+        }
+    }
+}
@@ -17,14 +17,20 @@ package org.commonjava.indy.core.ctl;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.cdi.util.weft.DrainingExecutorCompletionService;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.IndyRequestConstants;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.content.ContentManager;
+import org.commonjava.indy.content.InvalidationBatch;
 import org.commonjava.indy.content.StoreResource;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.model.core.dto.DirectoryListingDTO;
@@ -35,6 +41,7 @@ import org.commonjava.indy.util.ApplicationContent;
 import org.commonjava.indy.util.ApplicationStatus;
 import org.commonjava.indy.util.MimeTyper;
 import org.commonjava.indy.util.UriFormatter;
+import org.commonjava.indy.util.ValuePipe;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Transfer;
@@ -51,16 +58,25 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 import java.util.regex.Pattern;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
+import static org.commonjava.indy.data.StoreDataManager.AFFECTED_GROUPS;
+import static org.commonjava.indy.data.StoreDataManager.TARGET_STORE;
 import static org.commonjava.maven.galley.util.PathUtils.normalize;
 import static org.commonjava.maven.galley.util.PathUtils.parentPath;
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -104,6 +120,16 @@ public class ContentController
     @Inject
     private MimeTyper mimeTyper;
 
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "content-batch-delete", threads = 8, priority = 4 )
+    private WeftExecutorService batchDeleteService;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "content-batch-retrieve", threads = 8, priority = 4 )
+    private WeftExecutorService batchRetrieveService;
+
     protected ContentController()
     {
     }
@@ -118,6 +144,16 @@ public class ContentController
         this.mimeTyper = mimeTyper;
     }
 
+    public ContentController( final StoreDataManager storeManager, final ContentManager contentManager,
+                              final TemplatingEngine templates, final ObjectMapper mapper, final MimeTyper mimeTyper,
+                              final WeftExecutorService batchDeleteService,
+                              final WeftExecutorService batchRetrieveService )
+    {
+        this( storeManager, contentManager, templates, mapper, mimeTyper );
+        this.batchDeleteService = batchDeleteService;
+        this.batchRetrieveService = batchRetrieveService;
+    }
+
     public ApplicationStatus delete( final StoreType type, final String name, final String path )
         throws IndyWorkflowException
     {
@@ -146,6 +182,117 @@ public class ContentController
         return deleted ? ApplicationStatus.NO_CONTENT : ApplicationStatus.NOT_FOUND;
     }
 
+    /**
+     * Deletes many paths from a store, in parallel. The groups affected by the store are looked up once for the whole
+     * batch, and invalidations that many of the paths would repeat (see {@link InvalidationBatch}) run once, after all
+     * the paths are deleted.
+     *
+     * @param resultConsumer gets the status code of each deletion, or the error message if it failed, as soon as the
+     * path is done. It is called from the worker threads, and from the calling thread for the paths left over when
+     * waiting for the workers is interrupted or fails.
+     */
+    public void delete( final ArtifactStore store, final Collection<String> paths, final EventMetadata eventMetadata,
+                        final BiConsumer<String, String> resultConsumer )
+        throws IndyWorkflowException
+    {
+        final long begin = System.currentTimeMillis();
+
+        final Set<Group> affectedGroups;
+        try
+        {
+            affectedGroups = storeManager.query().getGroupsAffectedBy( store.getKey() );
+        }
+        catch ( final IndyDataException e )
+        {
+            throw new IndyWorkflowException( "Failed to retrieve groups affected by: %s. Reason: %s", e,
+                                             store.getKey(), e.getMessage() );
+        }
+
+        final InvalidationBatch invalidations = new InvalidationBatch();
+        eventMetadata.set( AFFECTED_GROUPS, new ValuePipe<>( affectedGroups ) )
+                     .set( TARGET_STORE, store )
+                     .set( InvalidationBatch.EVENT_METADATA_KEY, invalidations );
+
+        final Queue<String> pending = new ConcurrentLinkedQueue<>( paths );
+        final int workers = batchDeleteService == null ? 0 : Math.min( batchDeleteService.getCorePoolSize(), paths.size() );
+        if ( workers < 2 )
+        {
+            deletePending( store, pending, eventMetadata, resultConsumer );
+        }
+        else
+        {
+            final DrainingExecutorCompletionService<Integer> svc =
+                    new DrainingExecutorCompletionService<>( batchDeleteService );
+            for ( int i = 0; i < workers; i++ )
+            {
+                svc.submit( () -> deletePending( store, pending, eventMetadata, resultConsumer ) );
+            }
+
+            try
+            {
+                svc.drain( count -> {} );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                logger.error( String.format( "Interrupted waiting for batch delete from: %s", store.getKey() ), e );
+                failPending( store, pending, "Batch delete was interrupted", resultConsumer );
+            }
+            catch ( ExecutionException e )
+            {
+                logger.error( String.format( "Error waiting for batch delete from: %s", store.getKey() ), e );
+                failPending( store, pending, "Batch delete failed: " + e.getCause().getMessage(), resultConsumer );
+            }
+        }
+
+        final int invalidated = invalidations.run();
+        logger.info( "Batch delete from: {} done, paths: {}, invalidations: {}, affected groups: {}, timeMillis: {}",
+                     store.getKey(), paths.size(), invalidated, affectedGroups.size(),
+                     System.currentTimeMillis() - begin );
+    }
+
+    private int deletePending( final ArtifactStore store, final Queue<String> pending,
+                               final EventMetadata eventMetadata, final BiConsumer<String, String> resultConsumer )
+    {
+        int count = 0;
+        String path;
+        while ( ( path = pending.poll() ) != null )
+        {
+            String result;
+            try
+            {
+                // listeners may add to the metadata, so each path gets its own
+                final boolean deleted = contentManager.delete( store, path, new EventMetadata( eventMetadata ) );
+                result = String.valueOf( ( deleted ? ApplicationStatus.NO_CONTENT : ApplicationStatus.NOT_FOUND ).code() );
+            }
+            catch ( final IndyWorkflowException | RuntimeException e )
+            {
+                logger.error( String.format( "Failed to delete: %s from: %s. Reason: %s", path, store.getKey(),
+                                             e.getMessage() ), e );
+                result = e.getMessage();
+            }
+
+            resultConsumer.accept( path, result );
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Report the paths no worker has taken yet as not deleted, so every requested path still gets a result. Workers that
+     * are still running take nothing more from the queue once it's empty.
+     */
+    private void failPending( final ArtifactStore store, final Queue<String> pending, final String reason,
+                              final BiConsumer<String, String> resultConsumer )
+    {
+        String path;
+        while ( ( path = pending.poll() ) != null )
+        {
+            logger.warn( "Not deleted: {} from: {}. Reason: {}", path, store.getKey(), reason );
+            resultConsumer.accept( path, reason );
+        }
+    }
+
     public Transfer get( final StoreKey key, final String path )
         throws IndyWorkflowException
     {
@@ -161,6 +308,30 @@ public class ContentController
         return contentManager.retrieve( store, path, eventMetadata );
     }
 
+    /**
+     * Starts retrieving a path the way {@link #get(StoreKey, String, EventMetadata)} does, on the batch retrieval pool,
+     * for callers that handle many paths and want several of them in flight at once. Without the pool (outside CDI) the
+     * path is retrieved before this returns.
+     */
+    public Future<Transfer> getAsync( final StoreKey key, final String path, final EventMetadata eventMetadata )
+    {
+        if ( batchRetrieveService == null )
+        {
+            final CompletableFuture<Transfer> future = new CompletableFuture<>();
+            try
+            {
+                future.complete( get( key, path, eventMetadata ) );
+            }
+            catch ( final IndyWorkflowException | RuntimeException e )
+            {
+                future.completeExceptionally( e );
+            }
+            return future;
+        }
+
+        return batchRetrieveService.submit( () -> get( key, path, eventMetadata ) );
+    }
+
     public String getContentType( final String path )
     {
         return mimeTyper.getContentType( path );
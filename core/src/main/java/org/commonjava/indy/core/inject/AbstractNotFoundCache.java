@@ -22,7 +22,9 @@ import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -31,6 +33,7 @@ import java.util.Set;
  */
 public abstract class AbstractNotFoundCache implements NotFoundCache
 {
+    private static final String MAVEN_METADATA = "maven-metadata.xml";
 
     public Map<Location, Set<String>> getAllMissing( int pageIndex, int pageSize )
     {
@@ -58,6 +61,59 @@ public abstract class AbstractNotFoundCache implements NotFoundCache
         return timeoutInSeconds;
     }
 
+    /**
+     * Directory to mark missing along with the resource, so its whole subtree is covered: the directory of a missing
+     * maven-metadata.xml, if enabled. Missing directories (paths ending with '/') cover their subtree by themselves.
+     */
+    protected String getSubtreeEntry( ConcreteResource resource )
+    {
+        IndyConfiguration config = getIndyConfiguration();
+        if ( !config.isNfcSubtreeEnabled() || !config.isNfcSubtreeMetadataEnabled() )
+        {
+            return null;
+        }
+
+        String path = resource.getPath();
+        if ( path.endsWith( "/" + MAVEN_METADATA ) )
+        {
+            String dir = path.substring( 0, path.length() - MAVEN_METADATA.length() );
+            return isSubtreeRoot( dir ) ? dir : null;
+        }
+        return null;
+    }
+
+    /**
+     * Directories above the resource whose missing entries (if any) cover it, nearest last. Empty if subtree entries
+     * are disabled.
+     */
+    protected List<String> getCoveringSubtrees( ConcreteResource resource )
+    {
+        if ( !getIndyConfiguration().isNfcSubtreeEnabled() )
+        {
+            return Collections.emptyList();
+        }
+
+        String path = resource.getPath();
+        List<String> dirs = new ArrayList<>();
+        int idx = path.indexOf( '/' );
+        while ( idx >= 0 && idx < path.length() - 1 )
+        {
+            String dir = path.substring( 0, idx + 1 );
+            if ( isSubtreeRoot( dir ) )
+            {
+                dirs.add( dir );
+            }
+            idx = path.indexOf( '/', idx + 1 );
+        }
+        return dirs;
+    }
+
+    // never let a single entry cover the whole repository
+    private static boolean isSubtreeRoot( String dir )
+    {
+        return !dir.isEmpty() && !"/".equals( dir );
+    }
+
     protected abstract IndyConfiguration getIndyConfiguration();
 
 }
@@ -15,34 +15,43 @@
  */
 package org.commonjava.indy.core.inject;
 
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
 import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.subsys.cassandra.CassandraClient;
-import org.commonjava.indy.subsys.infinispan.CacheHandle;
-import org.commonjava.indy.subsys.infinispan.CacheProducer;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
 import javax.inject.Inject;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.commonjava.indy.conf.DefaultIndyConfiguration.DEFAULT_NOT_FOUND_CACHE_TIMEOUT_SECONDS;
 import static org.commonjava.indy.subsys.cassandra.util.SchemaUtils.getSchemaCreateKeyspace;
@@ -56,10 +65,32 @@ public class CassandraNotFoundCache
 
     private static final String TIMEOUT_FORMAT = "yyyy-MM-dd HH:mm:ss z";
 
+    private static final String BLOOM_METRIC_PREFIX = "indy.nfc.bloom.";
+
+    // lookups answered by the Bloom filter without querying Cassandra
+    private static final String BLOOM_SKIPPED = BLOOM_METRIC_PREFIX + "skipped";
+
+    // lookups the Bloom filter passed on to Cassandra
+    private static final String BLOOM_POSITIVE = BLOOM_METRIC_PREFIX + "positive";
+
+    // lookups the Bloom filter passed on to Cassandra that weren't in the NFC; false.positive / positive is the rate
+    private static final String BLOOM_FALSE_POSITIVE = BLOOM_METRIC_PREFIX + "false.positive";
+
+    private static final String BLOOM_REBUILD_THREAD = "nfc-bloom-rebuild";
+
+    private static final String WRITE_BEHIND_THREAD = "nfc-write-behind";
+
+    // statements per unlogged batch; all of a batch's rows are in the same storekey partition
+    private static final int MAX_BATCH_SIZE = 50;
+
     private PreparedStatement preparedInsert;
 
     private PreparedStatement preparedExistQuery;
 
+    private PreparedStatement preparedExistAnyQuery;
+
+    private PreparedStatement preparedDeleteAny;
+
     private PreparedStatement preparedDelete;
 
     private PreparedStatement preparedDeleteByStore;
@@ -68,6 +99,8 @@ public class CassandraNotFoundCache
 
     private PreparedStatement preparedQueryByStore;
 
+    private PreparedStatement preparedQueryAll;
+
     // @formatter:off
     private static String getSchemaCreateTable( String keyspace )
     {
@@ -84,40 +117,64 @@ public class CassandraNotFoundCache
     @Inject
     private CassandraClient cassandraClient;
 
-    @Inject
-    private CacheProducer cacheProducer;
-
-    private CacheHandle<ConcreteResource, Object> inMemoryCache;
+    // the same bound the Infinispan cache used for this had
+    private static final long IN_MEMORY_MAX_ENTRIES = 200000;
 
-    private final static Object DUMB_CACHE_VALUE = new Object();
+    // front tier for recently added / confirmed entries, so that clearing a store only touches that store's entries
+    private final NotFoundIndex inMemoryCache = new NotFoundIndex( IN_MEMORY_MAX_ENTRIES );
 
     private int maxResultSetSize; // limit the max size for REST endpoint getMissing to avoid OOM
 
     @Inject
     protected IndyConfiguration config;
 
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
     private String keyspace;
 
     private Session session;
 
+    private NotFoundBloomFilter bloomFilter;
+
+    private ScheduledExecutorService bloomRebuildService;
+
+    /**
+     * Write-behind inserts not yet flushed to Cassandra: storekey -&gt; path -&gt; insert. Inner maps are only changed
+     * inside compute() calls on the outer map, so the flusher can take a whole partition away with remove().
+     */
+    private final Map<String, Map<String, BoundStatement>> pendingInserts = new ConcurrentHashMap<>();
+
+    // bounds the pending inserts; callers that can't get a permit insert synchronously
+    private Semaphore pendingPermits;
+
+    // held while a partition is flushed or while pending inserts are cancelled and the rows deleted, so a flush can't
+    // write an entry back after it was cleared
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private ScheduledExecutorService writeBehindService;
+
     protected CassandraNotFoundCache()
     {
     }
 
-    public CassandraNotFoundCache( final IndyConfiguration config, final CacheProducer cacheProducer,
-                                   final CassandraClient cassandraClient )
+    public CassandraNotFoundCache( final IndyConfiguration config, final CassandraClient cassandraClient )
+    {
+        this( config, cassandraClient, null );
+    }
+
+    public CassandraNotFoundCache( final IndyConfiguration config, final CassandraClient cassandraClient,
+                                   final DefaultMetricsManager metricsManager )
     {
         this.config = config;
-        this.cacheProducer = cacheProducer;
         this.cassandraClient = cassandraClient;
+        this.metricsManager = metricsManager;
         start();
     }
 
     @PostConstruct
     public void start()
     {
-        inMemoryCache = cacheProducer.getCache( "nfc-in-memory-cache" );
-
         keyspace = config.getCacheKeyspace();
         maxResultSetSize = config.getNfcMaxResultSetSize();
 
@@ -134,6 +191,9 @@ public class CassandraNotFoundCache
         preparedExistQuery =
                         session.prepare( "SELECT expiration FROM " + keyspace + ".nfc WHERE storekey=? and path=?;" );
 
+        preparedExistAnyQuery = session.prepare(
+                        "SELECT path, expiration FROM " + keyspace + ".nfc WHERE storekey=? and path IN ?;" );
+
         preparedCountByStore = session.prepare( "SELECT count(*) FROM " + keyspace + ".nfc WHERE storekey=?;" );
 
         preparedQueryByStore = session.prepare( "SELECT * FROM " + keyspace + ".nfc WHERE storekey=?;" );
@@ -142,8 +202,215 @@ public class CassandraNotFoundCache
 
         preparedDelete = session.prepare( "DELETE FROM " + keyspace + ".nfc WHERE storekey=? AND path=?;" );
 
+        preparedDeleteAny = session.prepare( "DELETE FROM " + keyspace + ".nfc WHERE storekey=? AND path IN ?;" );
+
         preparedInsert = session.prepare( "INSERT INTO " + keyspace
                                                           + ".nfc (storekey,path,creation,expiration) VALUES (?,?,?,?) USING TTL ?;" ); // ttl in seconds
+
+        if ( config.isNfcBloomFilterEnabled() )
+        {
+            startBloomFilter();
+        }
+
+        if ( config.isNfcWriteBehindEnabled() )
+        {
+            startWriteBehind();
+        }
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if ( bloomRebuildService != null )
+        {
+            bloomRebuildService.shutdownNow();
+        }
+
+        if ( writeBehindService != null )
+        {
+            writeBehindService.shutdown();
+            try
+            {
+                writeBehindService.awaitTermination( 30, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            logger.info( "[NFC] Flushing pending inserts on shutdown" );
+            flushPendingInserts();
+        }
+    }
+
+    private void startWriteBehind()
+    {
+        pendingPermits = new Semaphore( config.getNfcWriteBehindQueueSize() );
+
+        final long flushMillis = config.getNfcWriteBehindFlushMillis();
+        writeBehindService = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory( WRITE_BEHIND_THREAD, new ThreadGroup( WRITE_BEHIND_THREAD ), true, 5 ) );
+        writeBehindService.scheduleWithFixedDelay( this::flushPendingInserts, flushMillis, flushMillis,
+                                                   TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Queue the insert for the write-behind flusher. Returns false if write-behind is off or the queue is full, in
+     * which case the caller has to insert synchronously.
+     */
+    private boolean queueInsert( final String storeKey, final String path, final BoundStatement insert )
+    {
+        if ( pendingPermits == null || !pendingPermits.tryAcquire() )
+        {
+            return false;
+        }
+
+        pendingInserts.compute( storeKey, ( k, paths ) -> {
+            if ( paths == null )
+            {
+                paths = new ConcurrentHashMap<>();
+            }
+            if ( paths.put( path, insert ) != null )
+            {
+                // replaced an insert still pending for the same path
+                pendingPermits.release();
+            }
+            return paths;
+        } );
+
+        return true;
+    }
+
+    private boolean isPendingInsert( final String storeKey, final String path )
+    {
+        if ( pendingInserts.isEmpty() )
+        {
+            return false;
+        }
+
+        final Map<String, BoundStatement> paths = pendingInserts.get( storeKey );
+        return paths != null && paths.containsKey( path );
+    }
+
+    private void flushPendingInserts()
+    {
+        new ArrayList<>( pendingInserts.keySet() ).forEach( this::flushPendingInserts );
+    }
+
+    private void flushPendingInserts( final String storeKey )
+    {
+        if ( pendingPermits == null )
+        {
+            return;
+        }
+
+        flushLock.lock();
+        try
+        {
+            final Map<String, BoundStatement> paths = pendingInserts.remove( storeKey );
+            if ( paths == null || paths.isEmpty() )
+            {
+                return;
+            }
+
+            pendingPermits.release( paths.size() );
+
+            final List<BoundStatement> inserts = new ArrayList<>( paths.values() );
+            for ( int i = 0; i < inserts.size(); i += MAX_BATCH_SIZE )
+            {
+                final BatchStatement batch = new BatchStatement( BatchStatement.Type.UNLOGGED );
+                batch.addAll( inserts.subList( i, Math.min( i + MAX_BATCH_SIZE, inserts.size() ) ) );
+                session.execute( batch );
+            }
+
+            logger.debug( "[NFC] Flushed {} pending inserts of {}", inserts.size(), storeKey );
+        }
+        catch ( RuntimeException e )
+        {
+            // these entries are lost from Cassandra, which only means the paths will be retried upstream
+            logger.error( "[NFC] Failed to flush pending inserts of: " + storeKey, e );
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Drop the pending inserts of the given store (or all of them, if null) that match the given path (or all its
+     * paths, if null). Must be called holding {@link #flushLock}.
+     */
+    private void cancelPendingInserts( final String storeKey, final String path )
+    {
+        if ( pendingPermits == null || pendingInserts.isEmpty() )
+        {
+            return;
+        }
+
+        if ( storeKey == null )
+        {
+            new ArrayList<>( pendingInserts.keySet() ).forEach( k -> cancelPendingInserts( k, null ) );
+            return;
+        }
+
+        pendingInserts.computeIfPresent( storeKey, ( k, paths ) -> {
+            if ( path == null )
+            {
+                pendingPermits.release( paths.size() );
+                return null;
+            }
+
+            if ( paths.remove( path ) != null )
+            {
+                pendingPermits.release();
+            }
+            return paths.isEmpty() ? null : paths;
+        } );
+    }
+
+    private void startBloomFilter()
+    {
+        preparedQueryAll = session.prepare( "SELECT storekey, path FROM " + keyspace + ".nfc;" );
+
+        bloomFilter = new NotFoundBloomFilter( config.getNfcBloomFilterStoreEntries() );
+
+        // the filter only answers lookups once the first (async) rebuild is done, and is reloaded periodically to pick
+        // up entries added by other nodes
+        final int rebuildMins = config.getNfcBloomFilterRebuildMinutes();
+        bloomRebuildService = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory( BLOOM_REBUILD_THREAD, new ThreadGroup( BLOOM_REBUILD_THREAD ), true, 1 ) );
+        bloomRebuildService.scheduleWithFixedDelay( this::rebuildBloomFilter, 0, rebuildMins, TimeUnit.MINUTES );
+    }
+
+    private void rebuildBloomFilter()
+    {
+        long start = System.currentTimeMillis();
+        try
+        {
+            final int[] count = new int[1];
+            bloomFilter.rebuild( consumer -> {
+                for ( Row row : session.execute( preparedQueryAll.bind() ) )
+                {
+                    consumer.accept( row.getString( 0 ), row.getString( 1 ) );
+                    count[0]++;
+                }
+            } );
+            logger.info( "[NFC] Bloom filter rebuilt with {} entries in {}ms", count[0],
+                         System.currentTimeMillis() - start );
+        }
+        catch ( RuntimeException e )
+        {
+            // keep the schedule running; lookups keep using the previous filter (or Cassandra, if there is none yet)
+            logger.error( "[NFC] Bloom filter rebuild failed", e );
+        }
+    }
+
+    private void markBloomMetric( final String name )
+    {
+        if ( metricsManager != null )
+        {
+            metricsManager.getMeter( name ).mark();
+        }
     }
 
     @Override
@@ -172,35 +439,94 @@ public class CassandraNotFoundCache
 
         BoundStatement bound = preparedInsert.bind( key.toString(), resource.getPath(), curDate, timeoutDate,
                                                     timeoutInSeconds );
-        session.execute( bound );
-        inMemoryCache.put( resource, DUMB_CACHE_VALUE, timeoutInSeconds, TimeUnit.SECONDS );
+        if ( !queueInsert( key.toString(), resource.getPath(), bound ) )
+        {
+            session.execute( bound );
+        }
+        inMemoryCache.add( resource.getLocation(), resource.getPath(), timeoutDate.getTime() );
+
+        if ( bloomFilter != null )
+        {
+            bloomFilter.put( key.toString(), resource.getPath() );
+        }
+
+        String subtree = getSubtreeEntry( resource );
+        if ( subtree != null )
+        {
+            logger.debug( "[NFC] Marking subtree {} missing along with {}", subtree, resource );
+            addMissing( new ConcreteResource( location, subtree ) );
+        }
     }
 
     @Override
     @Measure
     public boolean isMissing( final ConcreteResource resource )
     {
-        if ( inMemoryCache.get( resource ) != null )
+        final List<String> subtrees = getCoveringSubtrees( resource );
+        final List<String> paths;
+        if ( subtrees.isEmpty() )
+        {
+            paths = Collections.singletonList( resource.getPath() );
+        }
+        else
+        {
+            // the entry for the path itself, or for any directory above it
+            paths = new ArrayList<>( subtrees );
+            paths.add( resource.getPath() );
+        }
+
+        final Location location = resource.getLocation();
+        if ( paths.stream().anyMatch( p -> inMemoryCache.contains( location, p ) ) )
         {
             return true;
         }
         StoreKey key = getResourceKey( resource );
-        BoundStatement bound = preparedExistQuery.bind( key.toString(), resource.getPath() );
-        ResultSet result = session.execute( bound );
-        Row row = result.one();
+        if ( paths.stream().anyMatch( p -> isPendingInsert( key.toString(), p ) ) )
+        {
+            return true;
+        }
+
+        final boolean bloomChecked = bloomFilter != null && bloomFilter.isReady();
+        if ( bloomChecked )
+        {
+            if ( paths.stream().noneMatch( p -> bloomFilter.mightContain( key.toString(), p ) ) )
+            {
+                markBloomMetric( BLOOM_SKIPPED );
+                return false;
+            }
+            markBloomMetric( BLOOM_POSITIVE );
+        }
+
+        final String path;
+        final Row row;
+        if ( paths.size() == 1 )
+        {
+            path = resource.getPath();
+            row = session.execute( preparedExistQuery.bind( key.toString(), path ) ).one();
+        }
+        else
+        {
+            row = session.execute( preparedExistAnyQuery.bind( key.toString(), paths ) ).one();
+            path = row == null ? null : row.getString( 0 );
+        }
+
         if ( row == null )
         {
+            if ( bloomChecked )
+            {
+                markBloomMetric( BLOOM_FALSE_POSITIVE );
+            }
             return false;
         }
-        Date expiration = row.get( 0, Date.class );
+        Date expiration = row.get( "expiration", Date.class );
         boolean missing = true;
-        logger.trace( "NFC check: {}, missing: {}", resource, missing );
+        logger.trace( "NFC check: {}, missing: {} (entry: {})", resource, missing, path );
         if ( missing )
         {
             long timeout = expiration.getTime() - System.currentTimeMillis();
             if ( timeout > 1000 )
             {
-                inMemoryCache.put( resource, DUMB_CACHE_VALUE, new Long( timeout / 1000 ).intValue(), TimeUnit.SECONDS );
+                inMemoryCache.add( location, path, expiration.getTime() );
             }
         }
         return missing;
@@ -212,27 +538,21 @@ public class CassandraNotFoundCache
     {
         StoreKey key = ( (KeyedLocation) location ).getKey();
         BoundStatement bound = preparedDeleteByStore.bind( key.toString() );
-        session.execute( bound );
-        clearInMemoryCache( location );
-    }
-
-    private void clearInMemoryCache( final Location location )
-    {
-        inMemoryCache.executeCache( c -> {
-            c.entrySet()
-             .stream()
-             .filter( e -> e.getKey().getLocation().equals( location ) )
-             .forEach( ( cache, e ) -> cache.remove( e.getKey() ) );
-            return c;
-        } );
-    }
-
-    private void clearInMemoryCache()
-    {
-        inMemoryCache.executeCache( c -> {
-            c.clear();
-            return c;
-        } );
+        flushLock.lock();
+        try
+        {
+            cancelPendingInserts( key.toString(), null );
+            session.execute( bound );
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+        inMemoryCache.remove( location );
+        if ( bloomFilter != null )
+        {
+            bloomFilter.clear( key.toString() );
+        }
     }
 
     @Override
@@ -240,17 +560,47 @@ public class CassandraNotFoundCache
     public void clearMissing( final ConcreteResource resource )
     {
         StoreKey key = getResourceKey( resource );
-        BoundStatement bound = preparedDelete.bind( key.toString(), resource.getPath() );
-        session.execute( bound );
-        inMemoryCache.remove( resource );
+
+        // the path may exist now, so directories above it can't be assumed missing anymore
+        final List<String> subtrees = getCoveringSubtrees( resource );
+        final List<String> paths = new ArrayList<>( subtrees );
+        paths.add( resource.getPath() );
+
+        BoundStatement bound = subtrees.isEmpty() ?
+                        preparedDelete.bind( key.toString(), resource.getPath() ) :
+                        preparedDeleteAny.bind( key.toString(), paths );
+        flushLock.lock();
+        try
+        {
+            paths.forEach( p -> cancelPendingInserts( key.toString(), p ) );
+            session.execute( bound );
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+        paths.forEach( p -> inMemoryCache.remove( resource.getLocation(), p ) );
     }
 
     @Override
     @Measure
     public void clearAllMissing()
     {
-        session.execute( "TRUNCATE " + keyspace + ".nfc;" );
-        clearInMemoryCache();
+        flushLock.lock();
+        try
+        {
+            cancelPendingInserts( null, null );
+            session.execute( "TRUNCATE " + keyspace + ".nfc;" );
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+        inMemoryCache.clear();
+        if ( bloomFilter != null )
+        {
+            bloomFilter.clearAll();
+        }
     }
 
     @Override
@@ -266,6 +616,7 @@ public class CassandraNotFoundCache
     {
         logger.debug( "[NFC] getMissing for {}", location );
         StoreKey key = ( (KeyedLocation) location ).getKey();
+        flushPendingInserts( key.toString() );
         BoundStatement bound = preparedQueryByStore.bind( key.toString() );
         ResultSet result = session.execute( bound );
         int count = 0;
@@ -309,6 +660,7 @@ public class CassandraNotFoundCache
     @Measure
     public long getSize( StoreKey storeKey )
     {
+        flushPendingInserts( storeKey.toString() );
         BoundStatement bound = preparedCountByStore.bind( storeKey.toString() );
         ResultSet result = session.execute( bound );
         return result.one().get( 0, Long.class );
@@ -21,12 +21,13 @@ import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.model.core.io.ModuleSet;
 import org.commonjava.indy.subsys.cassandra.CassandraClient;
 import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
-import org.commonjava.indy.subsys.infinispan.CacheProducer;
 import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Default;
 import javax.enterprise.inject.Instance;
@@ -46,9 +47,6 @@ public class CoreProvider
     @Inject
     private CassandraClient cassandraClient;
 
-    @Inject
-    private CacheProducer cacheProducer;
-
     @Inject
     @NfcCache
     private BasicCacheHandle<String, NfcConcreteResourceWrapper> nfcCache;
@@ -56,6 +54,9 @@ public class CoreProvider
     @Inject
     private Instance<Module> objectMapperModules;
 
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
     @Inject
     private Instance<ModuleSet> objectMapperModuleSets;
 
@@ -74,8 +75,7 @@ public class CoreProvider
         logger.info( "Apply nfc provider: {}", nfcProvider );
         if ( CASSANDRA_NFC_PROVIDER.equals( nfcProvider ) )
         {
-            notFoundCache = new CassandraNotFoundCache( indyConfiguration, cacheProducer,
-                                                        cassandraClient );
+            notFoundCache = new CassandraNotFoundCache( indyConfiguration, cassandraClient, metricsManager );
         }
         else
         {
@@ -84,6 +84,16 @@ public class CoreProvider
 
     }
 
+    @PreDestroy
+    public void shutdown()
+    {
+        // not a managed bean, so its @PreDestroy isn't called by the container
+        if ( notFoundCache instanceof CassandraNotFoundCache )
+        {
+            ( (CassandraNotFoundCache) notFoundCache ).stop();
+        }
+    }
+
     @Produces
     @Default
     public IndyObjectMapper getIndyObjectMapper()
@@ -19,17 +19,12 @@ import static org.commonjava.maven.galley.util.PathUtils.normalize;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
-import java.util.stream.Collectors;
-
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
@@ -56,8 +51,8 @@ public class ExpiringMemoryNotFoundCache
     @Inject
     protected IndyConfiguration config;
 
-    // TODO: Now using a simple hashmap, need to take attention here to see if need ISPN instead if it is a mem eater.
-    protected final Map<ConcreteResource, Long> missingWithTimeout = new ConcurrentHashMap<>();
+    // TODO: Now using simple hashmaps, need to take attention here to see if need ISPN instead if it is a mem eater.
+    protected final NotFoundIndex missingWithTimeout = new NotFoundIndex( 0 );
 
     private final ScheduledExecutorService evictionService = Executors.newScheduledThreadPool( 1 );
 
@@ -112,18 +107,23 @@ public class ExpiringMemoryNotFoundCache
             }
         } );
 
-        missingWithTimeout.put( resource, timeout );
+        missingWithTimeout.add( resource.getLocation(), resource.getPath(), timeout );
+
+        String subtree = getSubtreeEntry( resource );
+        if ( subtree != null )
+        {
+            logger.debug( "[NFC] Marking subtree {} of {} missing along with {}", subtree, loc, resource.getPath() );
+            missingWithTimeout.add( loc, subtree, timeout );
+        }
     }
 
     @Override
     public boolean isMissing( final ConcreteResource resource )
     {
-        final Long timeout = missingWithTimeout.get( resource );
-        boolean result = false;
-        if ( timeout != null && System.currentTimeMillis() < timeout )
-        {
-            result = true;
-        }
+        boolean result = missingWithTimeout.contains( resource.getLocation(), resource.getPath() )
+                || getCoveringSubtrees( resource ).stream()
+                                                 .anyMatch( dir -> missingWithTimeout.contains( resource.getLocation(),
+                                                                                                dir ) );
 
         logger.debug( "NFC check: {} result is: {}", resource, result );
         return result;
@@ -132,20 +132,16 @@ public class ExpiringMemoryNotFoundCache
     @Override
     public void clearMissing( final Location location )
     {
-        Set<ConcreteResource> paths = keys().stream()
-                    .filter( r -> r != null && r.getLocation().equals( location ) )
-                    .collect( Collectors.toSet() );
-
-        if ( !paths.isEmpty() )
-        {
-            paths.forEach( r -> missingWithTimeout.remove( r ) );
-        }
+        missingWithTimeout.remove( location );
     }
 
     @Override
     public void clearMissing( final ConcreteResource resource )
     {
-        missingWithTimeout.remove( resource );
+        missingWithTimeout.remove( resource.getLocation(), resource.getPath() );
+
+        // the path may exist now, so directories above it can't be assumed missing anymore
+        getCoveringSubtrees( resource ).forEach( dir -> missingWithTimeout.remove( resource.getLocation(), dir ) );
     }
 
     @Override
@@ -157,58 +153,20 @@ public class ExpiringMemoryNotFoundCache
     @Override
     public Map<Location, Set<String>> getAllMissing()
     {
-        clearAllExpiredMissing();
-        Set<ConcreteResource> paths = keys();
-
-        final Map<Location, Set<String>> result = new HashMap<>();
-        paths.forEach( resource->{
-            final Location loc = resource.getLocation();
-            Set<String> locationPaths = result.computeIfAbsent( loc, k -> new HashSet<>() );
-
-            locationPaths.add( resource.getPath() );
-        } );
-
-        return result;
+        return missingWithTimeout.getAll();
     }
 
     @Override
     public Set<String> getMissing( final Location location )
     {
-        clearAllExpiredMissing();
-        return keys().stream()
-                    .filter( r -> r != null && r.getLocation().equals( location ) )
-                    .map( r -> r.getPath() )
-                    .collect( Collectors.toSet() );
-    }
-
-    private Set<ConcreteResource> keys()
-    {
-        Set<ConcreteResource> paths;
-        paths = new HashSet<>(missingWithTimeout.keySet());
-
-        return paths;
+        return missingWithTimeout.getPaths( location );
     }
 
-    private synchronized void clearAllExpiredMissing()
+    private void clearAllExpiredMissing()
     {
         try
         {
-            long tstamp = System.currentTimeMillis();
-            Set<ConcreteResource> paths = keys().stream().filter( r ->
-                                   {
-                                       if ( r == null )
-                                       {
-                                           return false;
-                                       }
-
-                                       Long timeout = missingWithTimeout.get( r );
-                                       return timeout != null && timeout < tstamp;
-                                   } ).collect( Collectors.toSet() );
-
-            if ( !paths.isEmpty() )
-            {
-                paths.forEach( r -> missingWithTimeout.remove( r ) );
-            }
+            missingWithTimeout.purgeExpired();
         }
         catch ( Throwable error )
         {
@@ -220,7 +178,7 @@ public class ExpiringMemoryNotFoundCache
     @Override
     public long getSize( StoreKey storeKey )
     {
-        return 0; // Not support
+        return missingWithTimeout.size( storeKey );
     }
 
     @Override
@@ -138,21 +138,55 @@ public class IspnNotFoundCache
             logger.debug( "[NFC] {} will not be checked again", resource );
             nfcCache.execute( cache -> cache.put( key, new NfcConcreteResourceWrapper( resource, Long.MAX_VALUE ) ) );
         }
+
+        String subtree = getSubtreeEntry( resource );
+        if ( subtree != null )
+        {
+            logger.debug( "[NFC] Marking subtree {} missing along with {}", subtree, resource );
+            addMissing( new ConcreteResource( resource.getLocation(), subtree ), withTimeout );
+        }
     }
 
     @Override
     @Measure
     public boolean isMissing( final ConcreteResource resource )
     {
-        String key = getResourceKey( resource );
-        NfcConcreteResourceWrapper obj = nfcCache.get( key );
-        boolean timeout = ( obj != null && obj.getTimeout() < System.currentTimeMillis() );
-        boolean missing = ( obj != null && !timeout );
-        if ( timeout )
+        // the resource and the subtrees covering it, in one round trip to the cache
+        final Map<String, String> paths = new HashMap<>();
+        paths.put( getResourceKey( resource ), resource.getPath() );
+        for ( String dir : getCoveringSubtrees( resource ) )
+        {
+            paths.put( getResourceKey( new ConcreteResource( resource.getLocation(), dir ) ), dir );
+        }
+
+        final Map<String, NfcConcreteResourceWrapper> entries = nfcCache.getAll( paths.keySet() );
+        if ( entries == null )
+        {
+            return false;
+        }
+
+        final long now = System.currentTimeMillis();
+        boolean missing = false;
+        for ( Map.Entry<String, NfcConcreteResourceWrapper> entry : entries.entrySet() )
         {
-            nfcCache.remove( key );
+            final NfcConcreteResourceWrapper obj = entry.getValue();
+            if ( obj == null )
+            {
+                continue;
+            }
+
+            if ( obj.getTimeout() < now )
+            {
+                nfcCache.remove( entry.getKey() );
+            }
+            else
+            {
+                logger.trace( "NFC check: {} is missing, entry: {}", resource, paths.get( entry.getKey() ) );
+                missing = true;
+            }
         }
-        logger.trace( "NFC check: {}, obj: {}, timeout: {}, missing: {}", resource, obj, timeout, missing );
+
+        logger.trace( "NFC check: {}, missing: {}", resource, missing );
         return missing;
     }
 
@@ -173,6 +207,12 @@ public class IspnNotFoundCache
     {
         String key = getResourceKey( resource );
         nfcCache.execute( cache -> cache.remove( key ) );
+
+        // the path may exist now, so directories above it can't be assumed missing anymore
+        getCoveringSubtrees( resource ).forEach( dir -> {
+            String dirKey = getResourceKey( new ConcreteResource( resource.getLocation(), dir ) );
+            nfcCache.execute( cache -> cache.remove( dirKey ) );
+        } );
     }
 
     @Override
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Node-local Bloom filters over the paths of a persistent not-found cache, partitioned by store key. A negative answer
+ * from {@link #mightContain(String, String)} means the path was never added since the last rebuild, so the backing
+ * store doesn't need to be queried; a positive answer may be false and has to be confirmed there.
+ * <p>
+ * Paths can't be removed from a Bloom filter. Clearing a single path leaves it in the filter (a later lookup will be a
+ * false positive); clearing a whole store drops its filter. {@link #rebuild(Consumer)} reloads the filters from the
+ * backing store, which also picks up entries added by other nodes.
+ */
+public final class NotFoundBloomFilter
+{
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final int expectedEntriesPerStore;
+
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    private volatile Map<String, BloomFilter<CharSequence>> filters = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    private volatile Queue<String[]> addedDuringRebuild;
+
+    public NotFoundBloomFilter( final int expectedEntriesPerStore )
+    {
+        this.expectedEntriesPerStore = expectedEntriesPerStore;
+    }
+
+    /**
+     * Until the first rebuild is done nothing is known about the entries already in the backing store, so every lookup
+     * has to go there.
+     */
+    public boolean isReady()
+    {
+        return ready;
+    }
+
+    public boolean mightContain( final String storeKey, final String path )
+    {
+        final BloomFilter<CharSequence> filter = filters.get( storeKey );
+        return filter != null && filter.mightContain( path );
+    }
+
+    public void put( final String storeKey, final String path )
+    {
+        swapLock.readLock().lock();
+        try
+        {
+            newFilter( filters, storeKey, expectedEntriesPerStore ).put( path );
+
+            final Queue<String[]> pending = addedDuringRebuild;
+            if ( pending != null )
+            {
+                pending.add( new String[] { storeKey, path } );
+            }
+        }
+        finally
+        {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    public void clear( final String storeKey )
+    {
+        filters.remove( storeKey );
+    }
+
+    public void clearAll()
+    {
+        filters.clear();
+    }
+
+    /**
+     * Replace the filters with new ones built from the entries the loader feeds to the given consumer (store key,
+     * path). Entries added while the loader runs are carried over to the new filters.
+     * <p>
+     * Entries are expected grouped by store key (as a partition-ordered table scan returns them), so each store's
+     * filter can be sized for its actual number of entries.
+     *
+     * @param loader called once with a consumer accepting every entry currently in the backing store
+     */
+    public void rebuild( final Consumer<BiConsumer<String, String>> loader )
+    {
+        final Map<String, BloomFilter<CharSequence>> rebuilt = new ConcurrentHashMap<>();
+        final List<String> storePaths = new ArrayList<>();
+        final String[] currentStore = new String[1];
+
+        addedDuringRebuild = new ConcurrentLinkedQueue<>();
+        try
+        {
+            loader.accept( ( storeKey, path ) -> {
+                if ( !storeKey.equals( currentStore[0] ) )
+                {
+                    fill( rebuilt, currentStore[0], storePaths );
+                    currentStore[0] = storeKey;
+                }
+                storePaths.add( path );
+            } );
+            fill( rebuilt, currentStore[0], storePaths );
+
+            swapLock.writeLock().lock();
+            try
+            {
+                addedDuringRebuild.forEach( e -> newFilter( rebuilt, e[0], expectedEntriesPerStore ).put( e[1] ) );
+                filters = rebuilt;
+                ready = true;
+            }
+            finally
+            {
+                swapLock.writeLock().unlock();
+            }
+        }
+        finally
+        {
+            addedDuringRebuild = null;
+        }
+    }
+
+    private void fill( final Map<String, BloomFilter<CharSequence>> rebuilt, final String storeKey,
+                       final List<String> paths )
+    {
+        if ( storeKey != null && !paths.isEmpty() )
+        {
+            // leave room for the entries added until the next rebuild
+            final BloomFilter<CharSequence> filter =
+                    newFilter( rebuilt, storeKey, Math.max( expectedEntriesPerStore, paths.size() * 2 ) );
+            paths.forEach( filter::put );
+        }
+        paths.clear();
+    }
+
+    private static BloomFilter<CharSequence> newFilter( final Map<String, BloomFilter<CharSequence>> filters,
+                                                        final String storeKey, final int expectedEntries )
+    {
+        return filters.computeIfAbsent( storeKey, k -> create( expectedEntries ) );
+    }
+
+    private static BloomFilter<CharSequence> create( final int expectedEntries )
+    {
+        return BloomFilter.create( Funnels.stringFunnel( StandardCharsets.UTF_8 ), expectedEntries,
+                                   FALSE_POSITIVE_PROBABILITY );
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.maven.galley.model.Location;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory NFC entries indexed by location, then path, each with its own expiration. Clearing or listing a location
+ * only touches that location's entries, and per-location counts don't need a scan.
+ * <p>
+ * Inner maps are only modified inside compute() calls on the outer map, so a location's map can be dropped as a whole
+ * without losing concurrent additions.
+ */
+public final class NotFoundIndex
+{
+    /**
+     * Share of the bound evicted at once when the index is full of live entries: 1/10.
+     */
+    public static final int EVICT_FRACTION = 10;
+
+    private final Map<Location, Map<String, Long>> missing = new ConcurrentHashMap<>();
+
+    // approximate; only used to bound the index
+    private final AtomicLong size = new AtomicLong();
+
+    private final long maxEntries;
+
+    private volatile long lastPurge;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * @param maxEntries when an add takes the index past this, expired entries are purged, and if that isn't enough
+     * the entries that expire soonest are evicted (see {@link #EVICT_FRACTION}); 0 means unbounded
+     */
+    public NotFoundIndex( final long maxEntries )
+    {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Add the entry, or refresh its expiration if it is already there. The index is never too full for an add; entries
+     * that would expire soonest make room for it instead.
+     */
+    public void add( final Location location, final String path, final long expiration )
+    {
+        missing.compute( location, ( loc, paths ) -> {
+            if ( paths == null )
+            {
+                paths = new ConcurrentHashMap<>();
+            }
+            if ( paths.put( path, expiration ) == null )
+            {
+                size.incrementAndGet();
+            }
+            return paths;
+        } );
+
+        if ( maxEntries > 0 && size.get() > maxEntries )
+        {
+            makeRoom();
+        }
+    }
+
+    private void makeRoom()
+    {
+        // one eviction at a time; adds racing with it can overshoot the bound a little until the next one
+        if ( !evictionLock.tryLock() )
+        {
+            return;
+        }
+
+        try
+        {
+            // don't rescan the whole index on every add while it's full of live entries
+            if ( System.currentTimeMillis() - lastPurge > TimeUnit.SECONDS.toMillis( 1 ) )
+            {
+                purgeExpired();
+            }
+
+            final long excess = size.get() - maxEntries;
+            if ( excess > 0 )
+            {
+                // evict a batch past the bound, so the next adds don't each need a scan
+                evictSoonestExpiring( excess + maxEntries / EVICT_FRACTION );
+            }
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    private void evictSoonestExpiring( final long count )
+    {
+        final long[] expirations =
+                missing.values().stream().flatMap( paths -> paths.values().stream() ).mapToLong( Long::longValue ).toArray();
+        if ( expirations.length == 0 )
+        {
+            return;
+        }
+
+        Arrays.sort( expirations );
+        final long threshold = expirations[(int) Math.min( count, expirations.length ) - 1];
+
+        final AtomicLong remaining = new AtomicLong( count );
+        missing.keySet().forEach( location -> missing.computeIfPresent( location, ( loc, paths ) -> {
+            paths.entrySet().removeIf( e -> {
+                if ( e.getValue() <= threshold && remaining.getAndDecrement() > 0 )
+                {
+                    size.decrementAndGet();
+                    return true;
+                }
+                return false;
+            } );
+            return paths.isEmpty() ? null : paths;
+        } ) );
+    }
+
+    public boolean contains( final Location location, final String path )
+    {
+        final Map<String, Long> paths = missing.get( location );
+        final Long expiration = paths == null ? null : paths.get( path );
+        if ( expiration == null )
+        {
+            return false;
+        }
+
+        if ( expiration <= System.currentTimeMillis() )
+        {
+            remove( location, path );
+            return false;
+        }
+
+        return true;
+    }
+
+    public void remove( final Location location, final String path )
+    {
+        missing.computeIfPresent( location, ( loc, paths ) -> {
+            if ( paths.remove( path ) != null )
+            {
+                size.decrementAndGet();
+            }
+            return paths.isEmpty() ? null : paths;
+        } );
+    }
+
+    /**
+     * Drop all entries of the location, in time proportional to their number.
+     */
+    public void remove( final Location location )
+    {
+        final Map<String, Long> paths = missing.remove( location );
+        if ( paths != null )
+        {
+            size.addAndGet( -paths.size() );
+        }
+    }
+
+    public void clear()
+    {
+        missing.clear();
+        size.set( 0 );
+    }
+
+    /**
+     * Paths of the location that have not expired yet.
+     */
+    public Set<String> getPaths( final Location location )
+    {
+        final Map<String, Long> paths = missing.get( location );
+        if ( paths == null )
+        {
+            return new HashSet<>();
+        }
+
+        final long now = System.currentTimeMillis();
+        return paths.entrySet()
+                    .stream()
+                    .filter( e -> e.getValue() > now )
+                    .map( Map.Entry::getKey )
+                    .collect( Collectors.toSet() );
+    }
+
+    public Map<Location, Set<String>> getAll()
+    {
+        final Map<Location, Set<String>> result = new HashMap<>();
+        missing.keySet().forEach( loc -> {
+            final Set<String> paths = getPaths( loc );
+            if ( !paths.isEmpty() )
+            {
+                result.put( loc, paths );
+            }
+        } );
+        return result;
+    }
+
+    /**
+     * Number of entries (including expired ones not purged yet) of all locations with the given store key. This is a
+     * walk over the locations, not their entries.
+     */
+    public long size( final StoreKey storeKey )
+    {
+        return missing.entrySet()
+                      .stream()
+                      .filter( e -> e.getKey() instanceof KeyedLocation
+                              && storeKey.equals( ( (KeyedLocation) e.getKey() ).getKey() ) )
+                      .mapToLong( e -> e.getValue().size() )
+                      .sum();
+    }
+
+    public long size()
+    {
+        return missing.values().stream().mapToLong( Map::size ).sum();
+    }
+
+    public void purgeExpired()
+    {
+        final long now = System.currentTimeMillis();
+        lastPurge = now;
+        missing.keySet().forEach( location -> missing.computeIfPresent( location, ( loc, paths ) -> {
+            paths.entrySet().removeIf( e -> {
+                if ( e.getValue() <= now )
+                {
+                    size.decrementAndGet();
+                    return true;
+                }
+                return false;
+            } );
+            return paths.isEmpty() ? null : paths;
+        } ) );
+    }
+}
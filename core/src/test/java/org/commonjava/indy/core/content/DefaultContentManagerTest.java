@@ -15,10 +15,182 @@
  */
 package org.commonjava.indy.core.content;
 
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.content.AbstractContentGenerator;
+import org.commonjava.indy.content.IndyLocationExpander;
+import org.commonjava.indy.content.IndyPathGenerator;
+import org.commonjava.indy.core.content.group.AbstractGroupRepositoryFilter;
+import org.commonjava.indy.core.content.group.GroupRepositoryFilterManager;
+import org.commonjava.indy.core.content.group.GroupRouteCache;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.maven.galley.GalleyCore;
+import org.commonjava.maven.galley.GalleyCoreBuilder;
+import org.commonjava.maven.galley.GalleyInitException;
+import org.commonjava.maven.galley.cache.FileCacheProviderFactory;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
 
 public class DefaultContentManagerTest
 {
+    private static final String PATH = "org/foo/bar/1/bar-1.jar";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private MemoryStoreDataManager storeManager;
+
+    private DefaultIndyConfiguration config;
+
+    private GroupRouteCache routeCache;
+
+    private ThreadPoolExecutor pool;
+
+    private DefaultContentManager contentManager;
+
+    private final Map<StoreKey, Probe> probes = new ConcurrentHashMap<>();
+
+    private final List<StoreKey> probed = Collections.synchronizedList( new ArrayList<>() );
+
+    private final Set<StoreKey> filteredOut = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger generatorCalls = new AtomicInteger();
+
+    private HostedRepository one;
+
+    private HostedRepository two;
+
+    private HostedRepository three;
+
+    private Group group;
+
+    @Before
+    public void setup()
+            throws IOException, GalleyInitException, IndyDataException
+    {
+        GalleyCore core = new GalleyCoreBuilder( new FileCacheProviderFactory( temp.newFolder( "cache" ) ) ).build();
+
+        storeManager = new MemoryStoreDataManager( true );
+
+        config = new DefaultIndyConfiguration();
+        config.setGroupRouteCacheEnabled( true );
+        config.setRepositoryFilterEnabled( true );
+
+        DefaultDownloadManager downloadManager =
+                new DefaultDownloadManager( storeManager, core.getTransferManager(),
+                                            new IndyLocationExpander( storeManager ), null, new MemoryNotFoundCache(),
+                                            null )
+                {
+                    @Override
+                    public Transfer retrieve( final ArtifactStore store, final String path,
+                                              final EventMetadata eventMetadata )
+                            throws IndyWorkflowException
+                    {
+                        probed.add( store.getKey() );
+                        Probe probe = probes.get( store.getKey() );
+                        return probe == null ? null : probe.retrieve( this, store, path );
+                    }
+                };
+
+        GroupRepositoryFilterManager filterManager =
+                new GroupRepositoryFilterManager( config, Collections.singletonList( new AbstractGroupRepositoryFilter()
+                {
+                    @Override
+                    public int getPriority()
+                    {
+                        return 0;
+                    }
+
+                    @Override
+                    public List<ArtifactStore> filter( final String path, final Group group,
+                                                       final List<ArtifactStore> concreteStores )
+                    {
+                        return concreteStores.stream()
+                                             .filter( s -> !filteredOut.contains( s.getKey() ) )
+                                             .collect( Collectors.toList() );
+                    }
+                } ) );
+
+        ContentGeneratorManager generatorManager =
+                new ContentGeneratorManager( new IndyPathGenerator(), new AbstractContentGenerator()
+                {
+                    @Override
+                    public Transfer generateGroupFileContent( final Group group, final List<ArtifactStore> members,
+                                                              final String path, final EventMetadata eventMetadata )
+                    {
+                        generatorCalls.incrementAndGet();
+                        return null;
+                    }
+
+                    @Override
+                    public boolean canProcess( final String path )
+                    {
+                        return true;
+                    }
+                } );
+
+        routeCache = new GroupRouteCache( config, storeManager );
+
+        pool = new ThreadPoolExecutor( 4, 4, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>() );
+
+        contentManager = new DefaultContentManager( storeManager, downloadManager, new IndyObjectMapper( true ),
+                                                    new SpecialPathManagerImpl(), new MemoryNotFoundCache(), null,
+                                                    generatorManager, config, filterManager,
+                                                    new PoolWeftExecutorService( "test-hedged-retrieval", pool, 4,
+                                                                                 10f, false, null, null ),
+                                                    routeCache );
+
+        one = new HostedRepository( MAVEN_PKG_KEY, "one" );
+        two = new HostedRepository( MAVEN_PKG_KEY, "two" );
+        three = new HostedRepository( MAVEN_PKG_KEY, "three" );
+        group = new Group( MAVEN_PKG_KEY, "group", one.getKey(), two.getKey(), three.getKey() );
+
+        save( one, two, three, group );
+    }
+
+    @After
+    public void shutdown()
+    {
+        pool.shutdownNow();
+    }
 
     @Test
     public void hexOfZero()
@@ -26,4 +198,284 @@ public class DefaultContentManagerTest
         System.out.println( Integer.toHexString( 0x00 & 0xff ) );
     }
 
+    @Test
+    public void routedRetrievalGoesStraightToMember()
+            throws Exception
+    {
+        probes.put( three.getKey(), Probe.HIT );
+
+        assertFrom( contentManager.retrieve( group, PATH ), three );
+        assertThat( probed, equalTo( keys( one, two, three ) ) );
+        assertThat( routeCache.getRoute( group.getKey(), PATH ), equalTo( three.getKey() ) );
+
+        probed.clear();
+        assertFrom( contentManager.retrieve( group, PATH ), three );
+        assertThat( probed, equalTo( keys( three ) ) );
+
+        // group content generators still get their chance before the route is used
+        assertThat( generatorCalls.get(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void staleRouteFallsBackToGroupWalk()
+            throws Exception
+    {
+        probes.put( three.getKey(), Probe.HIT );
+        contentManager.retrieve( group, PATH );
+
+        probes.remove( three.getKey() );
+        probes.put( two.getKey(), Probe.HIT );
+        probed.clear();
+
+        assertFrom( contentManager.retrieve( group, PATH ), two );
+        assertThat( probed, equalTo( keys( three, one, two ) ) );
+        assertThat( routeCache.getRoute( group.getKey(), PATH ), equalTo( two.getKey() ) );
+    }
+
+    @Test
+    public void routeToDisabledMemberIsNotUsed()
+            throws Exception
+    {
+        probes.put( two.getKey(), Probe.HIT );
+        probes.put( three.getKey(), Probe.HIT );
+        filteredOut.add( two.getKey() );
+        contentManager.retrieve( group, PATH );
+        assertThat( routeCache.getRoute( group.getKey(), PATH ), equalTo( three.getKey() ) );
+
+        three.setDisabled( true );
+        save( three );
+        filteredOut.clear();
+        probed.clear();
+
+        assertFrom( contentManager.retrieve( group, PATH ), two );
+        assertThat( probed, equalTo( keys( one, two ) ) );
+    }
+
+    @Test
+    public void routeToRemovedMemberIsNotUsed()
+            throws Exception
+    {
+        probes.put( three.getKey(), Probe.HIT );
+        contentManager.retrieve( group, PATH );
+
+        group.removeConstituent( three.getKey() );
+        save( group );
+        probed.clear();
+
+        assertThat( contentManager.retrieve( group, PATH ), nullValue() );
+        assertThat( probed, equalTo( keys( one, two ) ) );
+        assertThat( routeCache.getRoute( group.getKey(), PATH ), nullValue() );
+    }
+
+    @Test
+    public void routeToFilteredMemberIsNotUsed()
+            throws Exception
+    {
+        probes.put( two.getKey(), Probe.HIT );
+        probes.put( three.getKey(), Probe.HIT );
+        filteredOut.add( two.getKey() );
+        contentManager.retrieve( group, PATH );
+
+        filteredOut.clear();
+        filteredOut.add( three.getKey() );
+        probed.clear();
+
+        assertFrom( contentManager.retrieve( group, PATH ), two );
+        assertThat( probed, equalTo( keys( one, two ) ) );
+    }
+
+    @Test
+    public void memberChangeDropsRoutesOfEveryGroupReachingIt()
+            throws Exception
+    {
+        Group outer = new Group( MAVEN_PKG_KEY, "outer", group.getKey() );
+        save( outer );
+
+        probes.put( three.getKey(), Probe.HIT );
+        contentManager.retrieve( group, PATH );
+        contentManager.retrieve( outer, PATH );
+        assertThat( routeCache.getRoute( outer.getKey(), PATH ), equalTo( three.getKey() ) );
+
+        routeCache.invalidateStore( three.getKey() );
+
+        assertThat( routeCache.getRoute( group.getKey(), PATH ), nullValue() );
+        assertThat( routeCache.getRoute( outer.getKey(), PATH ), nullValue() );
+    }
+
+    @Test
+    public void hedgedRetrievalKeepsGroupOrderWhenLaterMemberAnswersFirst()
+            throws Exception
+    {
+        hedge( 3 );
+
+        CountDownLatch threeAnswered = new CountDownLatch( 1 );
+        probes.put( one.getKey(), after( threeAnswered, Probe.HIT ) );
+        probes.put( two.getKey(), Probe.MISS );
+        probes.put( three.getKey(), ( downloads, store, path ) -> {
+            try
+            {
+                return Probe.HIT.retrieve( downloads, store, path );
+            }
+            finally
+            {
+                threeAnswered.countDown();
+            }
+        } );
+
+        assertFrom( contentManager.retrieve( group, PATH ), one );
+        assertThat( threeAnswered.getCount(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void hedgedRetrievalDoesNotWaitForLosers()
+            throws Exception
+    {
+        hedge( 3 );
+
+        CountDownLatch losersStarted = new CountDownLatch( 2 );
+        CountDownLatch release = new CountDownLatch( 1 );
+        AtomicInteger losersFinished = new AtomicInteger();
+        Probe loser = ( downloads, store, path ) -> {
+            losersStarted.countDown();
+            Transfer hit = after( release, Probe.HIT ).retrieve( downloads, store, path );
+            losersFinished.incrementAndGet();
+            return hit;
+        };
+
+        probes.put( one.getKey(), after( losersStarted, Probe.HIT ) );
+        probes.put( two.getKey(), loser );
+        probes.put( three.getKey(), loser );
+
+        try
+        {
+            assertFrom( contentManager.retrieve( group, PATH ), one );
+            assertThat( losersFinished.get(), equalTo( 0 ) );
+        }
+        finally
+        {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void hedgedRetrievalSkipsFailedAndMissingMembers()
+            throws Exception
+    {
+        hedge( 3 );
+
+        probes.put( one.getKey(), Probe.FAIL );
+        probes.put( two.getKey(), Probe.MISS );
+        probes.put( three.getKey(), Probe.HIT );
+
+        assertFrom( contentManager.retrieve( group, PATH ), three );
+    }
+
+    @Test
+    public void hedgedRetrievalWhenAllMembersMiss()
+            throws Exception
+    {
+        hedge( 3 );
+
+        assertThat( contentManager.retrieve( group, PATH ), nullValue() );
+        assertThat( new HashSet<>( probed ), equalTo( new HashSet<>( keys( one, two, three ) ) ) );
+    }
+
+    @Test
+    public void hedgedRetrievalWhenAllMembersFail()
+            throws Exception
+    {
+        hedge( 3 );
+
+        probes.put( one.getKey(), Probe.FAIL );
+        probes.put( two.getKey(), Probe.FAIL );
+        probes.put( three.getKey(), Probe.FAIL );
+
+        assertThat( contentManager.retrieve( group, PATH ), nullValue() );
+        assertThat( new HashSet<>( probed ), equalTo( new HashSet<>( keys( one, two, three ) ) ) );
+    }
+
+    @Test
+    public void hedgedRetrievalOfWidthOneIsSequential()
+            throws Exception
+    {
+        config.setGroupRouteCacheEnabled( false );
+        probes.put( one.getKey(), Probe.FAIL );
+        probes.put( two.getKey(), Probe.HIT );
+        probes.put( three.getKey(), Probe.HIT );
+
+        Transfer sequential = contentManager.retrieve( group, PATH );
+        List<StoreKey> sequentialProbes = new ArrayList<>( probed );
+        assertThat( sequentialProbes, equalTo( keys( one, two ) ) );
+
+        hedge( 1 );
+        probed.clear();
+
+        Transfer hedged = contentManager.retrieve( group, PATH );
+        assertThat( probed, equalTo( sequentialProbes ) );
+        assertFrom( hedged, two );
+        assertFrom( sequential, two );
+    }
+
+    private void hedge( final int width )
+    {
+        config.setGroupRouteCacheEnabled( false );
+        config.setGroupHedgedRetrievalEnabled( true );
+        config.setGroupHedgedRetrievalWidth( width );
+    }
+
+    private static Probe after( final CountDownLatch latch, final Probe then )
+    {
+        return ( downloads, store, path ) -> {
+            try
+            {
+                if ( !latch.await( 10, TimeUnit.SECONDS ) )
+                {
+                    throw new IndyWorkflowException( "Timed out waiting to probe: %s", store.getKey() );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+
+            return then.retrieve( downloads, store, path );
+        };
+    }
+
+    private void save( final ArtifactStore... stores )
+            throws IndyDataException
+    {
+        for ( ArtifactStore store : stores )
+        {
+            storeManager.storeArtifactStore( store, new ChangeSummary( ChangeSummary.SYSTEM_USER, "test setup" ),
+                                             false, true, new EventMetadata() );
+        }
+    }
+
+    private static List<StoreKey> keys( final ArtifactStore... stores )
+    {
+        return Arrays.stream( stores ).map( ArtifactStore::getKey ).collect( Collectors.toList() );
+    }
+
+    private static void assertFrom( final Transfer transfer, final ArtifactStore store )
+    {
+        assertThat( transfer, notNullValue() );
+        assertThat( ( (KeyedLocation) transfer.getLocation() ).getKey(), equalTo( store.getKey() ) );
+    }
+
+    @FunctionalInterface
+    private interface Probe
+    {
+        Probe HIT = ( downloads, store, path ) -> downloads.getStorageReference( store, path );
+
+        Probe MISS = ( downloads, store, path ) -> null;
+
+        Probe FAIL = ( downloads, store, path ) -> {
+            throw new IndyWorkflowException( "Upstream failure in: %s", store.getKey() );
+        };
+
+        Transfer retrieve( DefaultDownloadManager downloads, ArtifactStore store, String path )
+                throws IndyWorkflowException;
+    }
 }
@@ -23,22 +23,28 @@ import org.commonjava.indy.content.ContentDigester;
 import org.commonjava.indy.content.ContentGenerator;
 import org.commonjava.indy.content.ContentManager;
 import org.commonjava.indy.content.DirectContentAccess;
+import org.commonjava.indy.content.DownloadManager;
 import org.commonjava.indy.conf.DefaultIndyConfiguration;
 import org.commonjava.indy.content.IndyLocationExpander;
 import org.commonjava.indy.core.inject.ExpiringMemoryNotFoundCache;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.subsys.infinispan.CacheHandle;
 import org.commonjava.maven.galley.GalleyCore;
 import org.commonjava.maven.galley.GalleyCoreBuilder;
 import org.commonjava.maven.galley.GalleyInitException;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferManager;
 import org.commonjava.maven.galley.cache.FileCacheProviderFactory;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
 import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferOperation;
 import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
@@ -56,14 +62,23 @@ import org.junit.rules.TemporaryFolder;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 /**
@@ -71,6 +86,8 @@ import static org.hamcrest.MatcherAssert.assertThat;
  */
 public class DefaultDownloadManagerTest
 {
+    private static final String PATH = "org/foo/bar/1/bar-1.pom";
+
     @Rule
     public TemporaryFolder temp = new TemporaryFolder();
 
@@ -184,4 +201,296 @@ public class DefaultDownloadManagerTest
 
         transfer.delete();
     }
+
+    @Test
+    public void concurrentRetrievalsShareOneUpstreamFetch()
+            throws Exception
+    {
+        CountDownLatch release = new CountDownLatch( 1 );
+        Upstream upstream = new Upstream( release, "content" );
+        DefaultDownloadManager manager = coalescingManager( new DefaultIndyConfiguration(), upstream );
+        RemoteRepository remote = storeRemote();
+
+        EventMetadata leaderMetadata = new EventMetadata();
+        EventMetadata waiterMetadata = new EventMetadata();
+
+        Caller leader = new Caller( manager, remote, leaderMetadata );
+        leader.start();
+        upstream.awaitFetching();
+
+        Caller waiter = new Caller( manager, remote, waiterMetadata );
+        waiter.start();
+        awaitParked( waiter );
+
+        release.countDown();
+        leader.join( 10000 );
+        waiter.join( 10000 );
+
+        assertThat( upstream.fetches.get(), equalTo( 1 ) );
+        assertThat( leader.result.exists(), equalTo( true ) );
+        assertThat( waiter.result.exists(), equalTo( true ) );
+        assertThat( waiter.result.getPath(), equalTo( leader.result.getPath() ) );
+
+        // the waiter retrieves the cached file again with its own metadata
+        assertThat( upstream.retrievedWith.stream().anyMatch( m -> m == waiterMetadata ), equalTo( true ) );
+    }
+
+    @Test
+    public void upstreamFailureReachesWaitersAsTheirOwnException()
+            throws Exception
+    {
+        CountDownLatch release = new CountDownLatch( 1 );
+        Upstream upstream = new Upstream( release, null );
+        upstream.failure = new TransferException( "Upstream is down" );
+        DefaultDownloadManager manager = coalescingManager( new DefaultIndyConfiguration(), upstream );
+        RemoteRepository remote = storeRemote();
+
+        Caller leader = new Caller( manager, remote, new EventMetadata() );
+        leader.start();
+        upstream.awaitFetching();
+
+        Caller waiter = new Caller( manager, remote, new EventMetadata() );
+        waiter.start();
+        awaitParked( waiter );
+
+        release.countDown();
+        leader.join( 10000 );
+        waiter.join( 10000 );
+
+        assertThat( upstream.fetches.get(), equalTo( 1 ) );
+        assertThat( leader.error, notNullValue() );
+        assertThat( waiter.error, notNullValue() );
+        assertThat( waiter.error == leader.error, equalTo( false ) );
+        assertThat( waiter.error.getCause(), sameInstance( upstream.failure ) );
+    }
+
+    @Test
+    public void upstreamNotFoundReachesWaiters()
+            throws Exception
+    {
+        CountDownLatch release = new CountDownLatch( 1 );
+        Upstream upstream = new Upstream( release, null );
+        DefaultDownloadManager manager = coalescingManager( new DefaultIndyConfiguration(), upstream );
+        RemoteRepository remote = storeRemote();
+
+        Caller leader = new Caller( manager, remote, new EventMetadata() );
+        leader.start();
+        upstream.awaitFetching();
+
+        Caller waiter = new Caller( manager, remote, new EventMetadata() );
+        waiter.start();
+        awaitParked( waiter );
+
+        release.countDown();
+        leader.join( 10000 );
+        waiter.join( 10000 );
+
+        assertThat( upstream.fetches.get(), equalTo( 1 ) );
+        assertThat( leader.error, nullValue() );
+        assertThat( leader.result, nullValue() );
+        assertThat( waiter.error, nullValue() );
+        assertThat( waiter.result, nullValue() );
+    }
+
+    @Test
+    public void waiterFetchesDirectlyAfterTimeout()
+            throws Exception
+    {
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setDownloadCoalescingTimeoutSeconds( 1 );
+
+        CountDownLatch release = new CountDownLatch( 1 );
+        Upstream upstream = new Upstream( release, "content" );
+        DefaultDownloadManager manager = coalescingManager( config, upstream );
+        RemoteRepository remote = storeRemote();
+
+        Caller leader = new Caller( manager, remote, new EventMetadata() );
+        leader.start();
+        upstream.awaitFetching();
+
+        try
+        {
+            Transfer transfer = manager.retrieve( remote, PATH, new EventMetadata() );
+            assertThat( transfer.exists(), equalTo( true ) );
+            assertThat( upstream.fetches.get(), equalTo( 2 ) );
+        }
+        finally
+        {
+            release.countDown();
+            leader.join( 10000 );
+        }
+    }
+
+    @Test
+    public void storeCanOptOutOfCoalescing()
+            throws Exception
+    {
+        CountDownLatch release = new CountDownLatch( 1 );
+        Upstream upstream = new Upstream( release, "content" );
+        DefaultDownloadManager manager = coalescingManager( new DefaultIndyConfiguration(), upstream );
+
+        RemoteRepository remote = new RemoteRepository( MAVEN_PKG_KEY, "remote", "http://upstream.invalid/" );
+        remote.setMetadata( RemoteRepository.METADATA_DOWNLOAD_COALESCING, "false" );
+        storeManager.storeArtifactStore( remote, new ChangeSummary( ChangeSummary.SYSTEM_USER, "Test setup" ), false,
+                                         true, new EventMetadata() );
+
+        Caller leader = new Caller( manager, remote, new EventMetadata() );
+        leader.start();
+        upstream.awaitFetching();
+
+        try
+        {
+            // doesn't wait behind the blocked download
+            Transfer transfer = manager.retrieve( remote, PATH, new EventMetadata() );
+            assertThat( transfer.exists(), equalTo( true ) );
+            assertThat( upstream.fetches.get(), equalTo( 2 ) );
+        }
+        finally
+        {
+            release.countDown();
+            leader.join( 10000 );
+        }
+    }
+
+    private RemoteRepository storeRemote()
+            throws IndyDataException
+    {
+        RemoteRepository remote = new RemoteRepository( MAVEN_PKG_KEY, "remote", "http://upstream.invalid/" );
+        storeManager.storeArtifactStore( remote, new ChangeSummary( ChangeSummary.SYSTEM_USER, "Test setup" ), false,
+                                         true, new EventMetadata() );
+        return remote;
+    }
+
+    /**
+     * Wraps the real transfer manager so remote retrievals of files that aren't cached yet go to the given upstream,
+     * while retrievals of cached files are answered from the cache, as galley does.
+     */
+    private DefaultDownloadManager coalescingManager( final DefaultIndyConfiguration config, final Upstream upstream )
+    {
+        final TransferManager real = core.getTransferManager();
+        final TransferManager transfers =
+                (TransferManager) Proxy.newProxyInstance( TransferManager.class.getClassLoader(),
+                                                          new Class<?>[] { TransferManager.class },
+                                                          ( proxy, method, args ) -> {
+                    if ( "retrieve".equals( method.getName() ) && args != null && args.length == 3 )
+                    {
+                        upstream.retrievedWith.add( (EventMetadata) args[2] );
+                        Transfer target = real.getCacheReference( (ConcreteResource) args[0] );
+                        return target.exists() ? target : upstream.fetch( target );
+                    }
+
+                    try
+                    {
+                        return method.invoke( real, args );
+                    }
+                    catch ( InvocationTargetException e )
+                    {
+                        throw e.getCause();
+                    }
+                } );
+
+        return new DefaultDownloadManager( storeManager, transfers, new IndyLocationExpander( storeManager ), null,
+                                           new MemoryNotFoundCache(), null, config );
+    }
+
+    private static void awaitParked( final Thread thread )
+            throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000;
+        while ( thread.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertThat( thread.getState(), equalTo( Thread.State.TIMED_WAITING ) );
+    }
+
+    private static final class Upstream
+    {
+        private final CountDownLatch release;
+
+        private final String content;
+
+        private final CountDownLatch fetching = new CountDownLatch( 1 );
+
+        private final AtomicInteger fetches = new AtomicInteger();
+
+        private final List<EventMetadata> retrievedWith = new CopyOnWriteArrayList<>();
+
+        private TransferException failure;
+
+        private Upstream( final CountDownLatch release, final String content )
+        {
+            this.release = release;
+            this.content = content;
+        }
+
+        private Transfer fetch( final Transfer target )
+                throws Exception
+        {
+            // only the first fetch is held back
+            if ( fetches.incrementAndGet() == 1 )
+            {
+                fetching.countDown();
+                release.await( 10, TimeUnit.SECONDS );
+            }
+
+            if ( failure != null )
+            {
+                throw failure;
+            }
+
+            if ( content == null )
+            {
+                return null;
+            }
+
+            try (OutputStream out = target.openOutputStream( TransferOperation.DOWNLOAD ))
+            {
+                out.write( content.getBytes() );
+            }
+
+            return target;
+        }
+
+        private void awaitFetching()
+                throws InterruptedException
+        {
+            assertThat( fetching.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        }
+    }
+
+    private static final class Caller
+            extends Thread
+    {
+        private final DownloadManager manager;
+
+        private final ArtifactStore store;
+
+        private final EventMetadata metadata;
+
+        private volatile Transfer result;
+
+        private volatile IndyWorkflowException error;
+
+        private Caller( final DownloadManager manager, final ArtifactStore store, final EventMetadata metadata )
+        {
+            this.manager = manager;
+            this.store = store;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                result = manager.retrieve( store, PATH, metadata );
+            }
+            catch ( IndyWorkflowException e )
+            {
+                error = e;
+            }
+        }
+    }
 }
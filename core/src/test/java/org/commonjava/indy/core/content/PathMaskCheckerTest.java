@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.junit.Test;
+
+public class PathMaskCheckerTest
+{
+
+    @Test
+    public void plainAndRegexPatterns()
+    {
+        final RemoteRepository repo = new RemoteRepository( "maven", "test", "http://repo.example.com/" );
+        repo.setPathMaskPatterns( new HashSet<>(
+                Arrays.asList( "org/foo/", "org/bar/baz", "r|com/.+/lib-\\d+\\.jar|", "r|net/(a|b)/.*|" ) ) );
+
+        assertThat( PathMaskChecker.checkMask( repo, "/org/foo/1.0/foo-1.0.pom" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkMask( repo, "org/bar/baz-1.0.jar" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkMask( repo, "com/example/lib-2.jar" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkMask( repo, "net/b/x.pom" ), equalTo( true ) );
+
+        assertThat( PathMaskChecker.checkMask( repo, "org/fo" ), equalTo( false ) );
+        assertThat( PathMaskChecker.checkMask( repo, "com/example/lib-2.jar.sha1" ), equalTo( false ) );
+        assertThat( PathMaskChecker.checkMask( repo, "net/c/x.pom" ), equalTo( false ) );
+
+        // any regex pattern means listings can't be excluded
+        assertThat( PathMaskChecker.checkListingMask( repo, "anything/" ), equalTo( true ) );
+    }
+
+    @Test
+    public void listingAndMetadataMasks()
+    {
+        final RemoteRepository repo = new RemoteRepository( "maven", "test", "http://repo.example.com/" );
+        repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( "org/foo/bar/", "com/baz/maven-metadata.xml" ) ) );
+
+        assertThat( PathMaskChecker.checkListingMask( repo, "org/" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkListingMask( repo, "org/foo/bar/1.0/" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkListingMask( repo, "org/other/" ), equalTo( false ) );
+
+        assertThat( PathMaskChecker.checkMavenMetadataMask( repo, "com/baz/maven-metadata.xml" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkMavenMetadataMask( repo, "com/qux/maven-metadata.xml" ), equalTo( false ) );
+    }
+
+    @Test
+    public void backReferencesAreNotCombined()
+    {
+        final RemoteRepository repo = new RemoteRepository( "maven", "test", "http://repo.example.com/" );
+        repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( "r|(a+)/\\1|", "r|(b+)/\\1|" ) ) );
+
+        assertThat( PathMaskChecker.checkMask( repo, "aa/aa" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkMask( repo, "bb/bb" ), equalTo( true ) );
+        assertThat( PathMaskChecker.checkMask( repo, "bb/b" ), equalTo( false ) );
+    }
+
+    @Test
+    public void matcherIsCachedUntilPatternsChange()
+    {
+        final RemoteRepository repo = new RemoteRepository( "maven", "test", "http://repo.example.com/" );
+        repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( "org/foo/" ) ) );
+
+        assertThat( PathMaskChecker.checkMask( repo, "org/foo/x.pom" ), equalTo( true ) );
+        final Object matcher = repo.getTransientMetadata( PathMaskChecker.PATH_MASK_MATCHER_METADATA );
+
+        assertThat( PathMaskChecker.checkMask( repo, "org/foo/y.pom" ), equalTo( true ) );
+        assertThat( repo.getTransientMetadata( PathMaskChecker.PATH_MASK_MATCHER_METADATA ), sameInstance( matcher ) );
+
+        repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( "org/bar/" ) ) );
+
+        assertThat( PathMaskChecker.checkMask( repo, "org/foo/x.pom" ), equalTo( false ) );
+        assertThat( PathMaskChecker.checkMask( repo, "org/bar/x.pom" ), equalTo( true ) );
+        assertThat( repo.getTransientMetadata( PathMaskChecker.PATH_MASK_MATCHER_METADATA ),
+                    not( sameInstance( matcher ) ) );
+    }
+}
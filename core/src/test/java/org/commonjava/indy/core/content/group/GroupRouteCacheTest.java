@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.StoreKey;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.stream.IntStream;
+
+import static org.commonjava.indy.model.core.StoreType.group;
+import static org.commonjava.indy.model.core.StoreType.hosted;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GroupRouteCacheTest
+{
+    private static final StoreKey GROUP_A = new StoreKey( MAVEN_PKG_KEY, group, "a" );
+
+    private static final StoreKey GROUP_B = new StoreKey( MAVEN_PKG_KEY, group, "b" );
+
+    private static final StoreKey MEMBER = new StoreKey( MAVEN_PKG_KEY, hosted, "member" );
+
+    private DefaultIndyConfiguration config;
+
+    @Before
+    public void setup()
+    {
+        config = new DefaultIndyConfiguration();
+        config.setGroupRouteCacheEnabled( true );
+    }
+
+    @Test
+    public void pathInvalidationDropsRoutesOfEveryGroup()
+    {
+        GroupRouteCache cache = new GroupRouteCache( config, new MemoryStoreDataManager( true ) );
+        cache.putRoute( GROUP_A, "x.jar", MEMBER );
+        cache.putRoute( GROUP_B, "x.jar", MEMBER );
+        cache.putRoute( GROUP_A, "y.jar", MEMBER );
+
+        cache.invalidatePath( "x.jar" );
+
+        assertThat( cache.getRoute( GROUP_A, "x.jar" ), nullValue() );
+        assertThat( cache.getRoute( GROUP_B, "x.jar" ), nullValue() );
+        assertThat( cache.getRoute( GROUP_A, "y.jar" ), equalTo( MEMBER ) );
+    }
+
+    @Test
+    public void routeInvalidationKeepsOtherGroups()
+    {
+        GroupRouteCache cache = new GroupRouteCache( config, new MemoryStoreDataManager( true ) );
+        cache.putRoute( GROUP_A, "x.jar", MEMBER );
+        cache.putRoute( GROUP_B, "x.jar", MEMBER );
+
+        cache.invalidateRoute( GROUP_A, "x.jar" );
+
+        assertThat( cache.getRoute( GROUP_A, "x.jar" ), nullValue() );
+        assertThat( cache.getRoute( GROUP_B, "x.jar" ), equalTo( MEMBER ) );
+    }
+
+    @Test
+    public void fullCacheEvictsInsteadOfRefusing()
+    {
+        config.setGroupRouteCacheMaxEntries( 8 );
+        GroupRouteCache cache = new GroupRouteCache( config, new MemoryStoreDataManager( true ) );
+
+        IntStream.range( 0, 100 ).forEach( i -> cache.putRoute( GROUP_A, i + ".jar", MEMBER ) );
+
+        long cached = IntStream.range( 0, 100 ).filter( i -> cache.getRoute( GROUP_A, i + ".jar" ) != null ).count();
+        assertThat( "cached routes: " + cached, cached <= 8, equalTo( true ) );
+
+        // the newest route always makes it in
+        assertThat( cache.getRoute( GROUP_A, "99.jar" ), equalTo( MEMBER ) );
+    }
+}
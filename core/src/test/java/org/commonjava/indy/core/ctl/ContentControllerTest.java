@@ -17,12 +17,14 @@ package org.commonjava.indy.core.ctl;
 
 import groovy.text.GStringTemplateEngine;
 import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
 import org.commonjava.cdi.util.weft.WeftExecutorService;
 import org.commonjava.indy.content.ContentGenerator;
 import org.commonjava.indy.content.ContentManager;
 import org.commonjava.indy.content.DirectContentAccess;
 import org.commonjava.indy.content.DownloadManager;
+import org.commonjava.indy.content.InvalidationBatch;
 import org.commonjava.indy.core.content.ContentGeneratorManager;
 import org.commonjava.indy.core.content.DefaultContentDigester;
 import org.commonjava.indy.core.content.DefaultContentManager;
@@ -30,12 +32,14 @@ import org.commonjava.indy.core.content.DefaultDirectContentAccess;
 import org.commonjava.indy.core.content.DefaultDownloadManager;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.HostedRepository;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.subsys.datafile.DataFileManager;
 import org.commonjava.indy.subsys.datafile.change.DataFileEventManager;
 import org.commonjava.indy.subsys.infinispan.CacheHandle;
 import org.commonjava.indy.subsys.template.TemplatingEngine;
 import org.commonjava.indy.util.MimeTyper;
+import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
 import org.commonjava.maven.galley.io.checksum.TransferMetadata;
 import org.commonjava.maven.galley.model.ConcreteResource;
@@ -56,10 +60,21 @@ import org.junit.Test;
 
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -238,4 +253,157 @@ public class ContentControllerTest
         assertThat( content.isHtmlContent( tx ), equalTo( true ) );
     }
 
+    @Test
+    public void batchDeleteStreamsResultsAndRunsDeferredInvalidationsOnce()
+            throws Exception
+    {
+        final List<String> paths = new ArrayList<>();
+        for ( int i = 0; i < 50; i++ )
+        {
+            paths.add( "org/foo/" + i + "/foo-" + i + ".pom" );
+        }
+        paths.add( "missing" );
+        paths.add( "failing" );
+
+        final Set<String> workers = ConcurrentHashMap.newKeySet();
+        final CountDownLatch parallel = new CountDownLatch( 2 );
+        final AtomicInteger invalidated = new AtomicInteger();
+        final AtomicBoolean invalidatedEarly = new AtomicBoolean();
+
+        // each path defers the same invalidation, as the merged metadata listeners do for a shared directory
+        final ContentManager contentManager = (ContentManager) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[] { ContentManager.class }, ( proxy, method, args ) -> {
+                    if ( !"delete".equals( method.getName() ) || args.length != 3 )
+                    {
+                        throw new UnsupportedOperationException( method.getName() );
+                    }
+
+                    if ( workers.add( Thread.currentThread().getName() ) )
+                    {
+                        parallel.countDown();
+                    }
+                    parallel.await( 5, TimeUnit.SECONDS );
+
+                    InvalidationBatch.get( (EventMetadata) args[2] ).defer( "org/foo", invalidated::incrementAndGet );
+
+                    final String path = (String) args[1];
+                    if ( "failing".equals( path ) )
+                    {
+                        throw new IndyWorkflowException( "Cannot delete: %s", path );
+                    }
+                    return !"missing".equals( path );
+                } );
+
+        final ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool( 4 );
+        final WeftExecutorService deleteService =
+                new PoolWeftExecutorService( "test-batch-delete-executor", pool, 4, 10f, false, null, null );
+        try
+        {
+            final ContentController controller =
+                    new ContentController( new MemoryStoreDataManager( true ), contentManager, null,
+                                           new IndyObjectMapper( true ), new MimeTyper(), deleteService, null );
+
+            final Thread caller = Thread.currentThread();
+            final Map<String, String> results = new ConcurrentHashMap<>();
+            controller.delete( new HostedRepository( MAVEN_PKG_KEY, "test" ), paths, new EventMetadata(),
+                               ( path, result ) -> {
+                                   if ( invalidated.get() > 0 || Thread.currentThread() == caller )
+                                   {
+                                       invalidatedEarly.set( true );
+                                   }
+                                   results.put( path, result );
+                               } );
+
+            assertThat( workers.size() > 1, equalTo( true ) );
+            assertThat( results.size(), equalTo( paths.size() ) );
+            assertThat( results.get( "org/foo/0/foo-0.pom" ), equalTo( "204" ) );
+            assertThat( results.get( "missing" ), equalTo( "404" ) );
+            assertThat( results.get( "failing" ), equalTo( "Cannot delete: failing" ) );
+
+            // results were streamed from the workers before the invalidation, which ran once after all paths
+            assertThat( invalidatedEarly.get(), equalTo( false ) );
+            assertThat( invalidated.get(), equalTo( 1 ) );
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void interruptedBatchDeleteReportsEveryPath()
+            throws Exception
+    {
+        final List<String> paths = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            paths.add( "org/foo/" + i + "/foo-" + i + ".pom" );
+        }
+
+        final CountDownLatch started = new CountDownLatch( 4 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        // every delete blocks until released, so the workers hold one path each while the caller is interrupted
+        final ContentManager contentManager = (ContentManager) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[] { ContentManager.class }, ( proxy, method, args ) -> {
+                    if ( !"delete".equals( method.getName() ) || args.length != 3 )
+                    {
+                        throw new UnsupportedOperationException( method.getName() );
+                    }
+
+                    started.countDown();
+                    release.await( 10, TimeUnit.SECONDS );
+                    return true;
+                } );
+
+        final ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool( 4 );
+        final WeftExecutorService deleteService =
+                new PoolWeftExecutorService( "test-batch-delete-executor", pool, 4, 10f, false, null, null );
+        try
+        {
+            final ContentController controller =
+                    new ContentController( new MemoryStoreDataManager( true ), contentManager, null,
+                                           new IndyObjectMapper( true ), new MimeTyper(), deleteService, null );
+
+            final Map<String, String> results = new ConcurrentHashMap<>();
+            final AtomicBoolean stillInterrupted = new AtomicBoolean();
+            final Thread caller = new Thread( () -> {
+                try
+                {
+                    controller.delete( new HostedRepository( MAVEN_PKG_KEY, "test" ), paths, new EventMetadata(),
+                                       results::put );
+                }
+                catch ( IndyWorkflowException e )
+                {
+                    throw new IllegalStateException( e );
+                }
+                stillInterrupted.set( Thread.currentThread().isInterrupted() );
+            } );
+
+            caller.start();
+            assertThat( started.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+
+            caller.interrupt();
+            caller.join( 10000 );
+            assertThat( stillInterrupted.get(), equalTo( true ) );
+
+            // the paths no worker had taken were reported as soon as the caller gave up
+            assertThat( results.size(), equalTo( paths.size() - 4 ) );
+            assertThat( results.values().stream().allMatch( "Batch delete was interrupted"::equals ),
+                        equalTo( true ) );
+
+            // the ones in progress still report when they finish
+            release.countDown();
+            pool.shutdown();
+            assertThat( pool.awaitTermination( 10, TimeUnit.SECONDS ), equalTo( true ) );
+            assertThat( results.size(), equalTo( paths.size() ) );
+            assertThat( results.values().stream().filter( "204"::equals ).count(), equalTo( 4L ) );
+        }
+        finally
+        {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
 }
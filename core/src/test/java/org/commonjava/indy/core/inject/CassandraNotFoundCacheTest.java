@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import com.datastax.driver.core.Session;
+import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
+import org.commonjava.indy.cassandra.testcat.CassandraTest;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.indy.subsys.cassandra.CassandraClient;
+import org.commonjava.indy.subsys.cassandra.config.CassandraConfig;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.commonjava.indy.util.LocationUtils.toLocation;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@Category( CassandraTest.class )
+public class CassandraNotFoundCacheTest
+{
+    private static final String KEYSPACE = "nfc_test";
+
+    private static final String PATH = "org/foo/bar/1/bar-1.pom";
+
+    private static final String OTHER_PATH = "org/foo/bar/2/bar-2.pom";
+
+    private CassandraClient client;
+
+    private DefaultIndyConfiguration indyConfig;
+
+    private final KeyedLocation location = toLocation( new RemoteRepository( MAVEN_PKG_KEY, "central", "http://central/" ) );
+
+    private final KeyedLocation otherLocation =
+            toLocation( new RemoteRepository( MAVEN_PKG_KEY, "other", "http://other/" ) );
+
+    @Before
+    public void start()
+            throws Exception
+    {
+        EmbeddedCassandraServerHelper.startEmbeddedCassandra();
+
+        CassandraConfig config = new CassandraConfig();
+        config.setEnabled( true );
+        config.setCassandraHost( "localhost" );
+        config.setCassandraPort( 9142 );
+
+        client = new CassandraClient( config );
+
+        indyConfig = new DefaultIndyConfiguration();
+        indyConfig.setKeyspaceReplicas( 1 );
+        indyConfig.setCacheKeyspace( KEYSPACE );
+        indyConfig.setNfcWriteBehindEnabled( true );
+        // long enough that nothing is flushed by the schedule while a test runs
+        indyConfig.setNfcWriteBehindFlushMillis( 600000 );
+    }
+
+    @After
+    public void stop()
+    {
+        client.close();
+        EmbeddedCassandraServerHelper.cleanEmbeddedCassandra();
+    }
+
+    @Test
+    public void pendingInsertIsMissingBeforeFlush()
+    {
+        CassandraNotFoundCache nfc = new CassandraNotFoundCache( indyConfig, client );
+        try
+        {
+            nfc.addMissing( new ConcreteResource( location, PATH ) );
+
+            assertThat( storedRows( location ), equalTo( 0L ) );
+            assertThat( nfc.isMissing( new ConcreteResource( location, PATH ) ), equalTo( true ) );
+            assertThat( nfc.isMissing( new ConcreteResource( location, OTHER_PATH ) ), equalTo( false ) );
+        }
+        finally
+        {
+            nfc.stop();
+        }
+    }
+
+    @Test
+    public void stopFlushesPendingInserts()
+    {
+        CassandraNotFoundCache nfc = new CassandraNotFoundCache( indyConfig, client );
+        nfc.addMissing( new ConcreteResource( location, PATH ) );
+        nfc.addMissing( new ConcreteResource( location, OTHER_PATH ) );
+        nfc.addMissing( new ConcreteResource( otherLocation, PATH ) );
+        assertThat( storedRows( location ), equalTo( 0L ) );
+
+        nfc.stop();
+
+        assertThat( storedRows( location ), equalTo( 2L ) );
+        assertThat( storedRows( otherLocation ), equalTo( 1L ) );
+        assertThat( reopened().isMissing( new ConcreteResource( location, PATH ) ), equalTo( true ) );
+    }
+
+    @Test
+    public void clearingStoreCancelsItsPendingInserts()
+    {
+        CassandraNotFoundCache nfc = new CassandraNotFoundCache( indyConfig, client );
+        nfc.addMissing( new ConcreteResource( location, PATH ) );
+        nfc.addMissing( new ConcreteResource( otherLocation, PATH ) );
+
+        nfc.clearMissing( location );
+        assertThat( nfc.isMissing( new ConcreteResource( location, PATH ) ), equalTo( false ) );
+
+        nfc.stop();
+
+        assertThat( storedRows( location ), equalTo( 0L ) );
+        assertThat( storedRows( otherLocation ), equalTo( 1L ) );
+    }
+
+    @Test
+    public void clearingPathCancelsOnlyItsPendingInsert()
+    {
+        CassandraNotFoundCache nfc = new CassandraNotFoundCache( indyConfig, client );
+        nfc.addMissing( new ConcreteResource( location, PATH ) );
+        nfc.addMissing( new ConcreteResource( location, OTHER_PATH ) );
+
+        nfc.clearMissing( new ConcreteResource( location, PATH ) );
+        assertThat( nfc.isMissing( new ConcreteResource( location, PATH ) ), equalTo( false ) );
+
+        nfc.stop();
+
+        CassandraNotFoundCache reopened = reopened();
+        assertThat( reopened.isMissing( new ConcreteResource( location, PATH ) ), equalTo( false ) );
+        assertThat( reopened.isMissing( new ConcreteResource( location, OTHER_PATH ) ), equalTo( true ) );
+    }
+
+    @Test
+    public void clearingAllCancelsEveryPendingInsert()
+    {
+        CassandraNotFoundCache nfc = new CassandraNotFoundCache( indyConfig, client );
+        nfc.addMissing( new ConcreteResource( location, PATH ) );
+        nfc.addMissing( new ConcreteResource( otherLocation, PATH ) );
+
+        nfc.clearAllMissing();
+        assertThat( nfc.isMissing( new ConcreteResource( location, PATH ) ), equalTo( false ) );
+
+        nfc.stop();
+
+        assertThat( storedRows( location ), equalTo( 0L ) );
+        assertThat( storedRows( otherLocation ), equalTo( 0L ) );
+    }
+
+    @Test
+    public void addAfterClearIsKept()
+    {
+        CassandraNotFoundCache nfc = new CassandraNotFoundCache( indyConfig, client );
+        nfc.addMissing( new ConcreteResource( location, PATH ) );
+        nfc.clearMissing( location );
+        nfc.addMissing( new ConcreteResource( location, OTHER_PATH ) );
+
+        nfc.stop();
+
+        CassandraNotFoundCache reopened = reopened();
+        assertThat( reopened.isMissing( new ConcreteResource( location, PATH ) ), equalTo( false ) );
+        assertThat( reopened.isMissing( new ConcreteResource( location, OTHER_PATH ) ), equalTo( true ) );
+    }
+
+    /**
+     * A cache without write-behind or an in-memory entry, so lookups go to Cassandra.
+     */
+    private CassandraNotFoundCache reopened()
+    {
+        indyConfig.setNfcWriteBehindEnabled( false );
+        return new CassandraNotFoundCache( indyConfig, client );
+    }
+
+    private long storedRows( final KeyedLocation location )
+    {
+        Session session = client.getSession( KEYSPACE );
+        return session.execute( "SELECT count(*) FROM " + KEYSPACE + ".nfc WHERE storekey=?;",
+                                location.getKey().toString() ).one().get( 0, Long.class );
+    }
+}
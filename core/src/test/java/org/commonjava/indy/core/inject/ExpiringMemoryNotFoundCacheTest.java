@@ -88,4 +88,28 @@ public class ExpiringMemoryNotFoundCacheTest
         assertThat( allMissing == null || allMissing.isEmpty(), equalTo( true ) );
     }
 
+    @Test
+    public void missingDirectoryCoversSubtreeUntilPathCleared()
+        throws Exception
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setNfcSubtreeEnabled( true );
+        config.setNfcSubtreeMetadataEnabled( true );
+
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( config );
+
+        final SimpleLocation loc = new SimpleLocation( "test:uri" );
+        nfc.addMissing( new ConcreteResource( loc, "org/foo/bar/maven-metadata.xml" ) );
+
+        final ConcreteResource pom = new ConcreteResource( loc, "org/foo/bar/1.0/bar-1.0.pom" );
+        final ConcreteResource jar = new ConcreteResource( loc, "org/foo/bar/1.0/bar-1.0.jar" );
+        assertThat( nfc.isMissing( pom ), equalTo( true ) );
+        assertThat( nfc.isMissing( jar ), equalTo( true ) );
+        assertThat( nfc.isMissing( new ConcreteResource( loc, "org/foo/baz/1.0/baz-1.0.pom" ) ), equalTo( false ) );
+
+        nfc.clearMissing( pom );
+        assertThat( nfc.isMissing( pom ), equalTo( false ) );
+        assertThat( nfc.isMissing( jar ), equalTo( false ) );
+    }
+
 }
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+public class NotFoundBloomFilterTest
+{
+
+    @Test
+    public void rebuildLoadsEntriesAndKeepsConcurrentAdds()
+    {
+        final NotFoundBloomFilter filter = new NotFoundBloomFilter( 100 );
+        assertThat( filter.isReady(), equalTo( false ) );
+
+        filter.rebuild( consumer -> {
+            consumer.accept( "maven:remote:central", "org/foo/1.0/foo-1.0.pom" );
+            consumer.accept( "maven:remote:central", "org/foo/1.0/foo-1.0.jar" );
+            consumer.accept( "maven:hosted:local", "org/bar/1.0/bar-1.0.pom" );
+
+            // added while the rebuild is running
+            filter.put( "maven:hosted:local", "org/baz/1.0/baz-1.0.pom" );
+        } );
+
+        assertThat( filter.isReady(), equalTo( true ) );
+        assertThat( filter.mightContain( "maven:remote:central", "org/foo/1.0/foo-1.0.jar" ), equalTo( true ) );
+        assertThat( filter.mightContain( "maven:hosted:local", "org/bar/1.0/bar-1.0.pom" ), equalTo( true ) );
+        assertThat( filter.mightContain( "maven:hosted:local", "org/baz/1.0/baz-1.0.pom" ), equalTo( true ) );
+
+        assertThat( filter.mightContain( "maven:hosted:other", "org/foo/1.0/foo-1.0.jar" ), equalTo( false ) );
+    }
+
+    @Test
+    public void clearStoreDropsItsEntries()
+    {
+        final NotFoundBloomFilter filter = new NotFoundBloomFilter( 100 );
+        filter.rebuild( consumer -> {} );
+
+        filter.put( "maven:remote:central", "org/foo/1.0/foo-1.0.pom" );
+        filter.put( "maven:remote:other", "org/foo/1.0/foo-1.0.pom" );
+        assertThat( filter.mightContain( "maven:remote:central", "org/foo/1.0/foo-1.0.pom" ), equalTo( true ) );
+
+        filter.clear( "maven:remote:central" );
+        assertThat( filter.mightContain( "maven:remote:central", "org/foo/1.0/foo-1.0.pom" ), equalTo( false ) );
+        assertThat( filter.mightContain( "maven:remote:other", "org/foo/1.0/foo-1.0.pom" ), equalTo( true ) );
+
+        filter.clearAll();
+        assertThat( filter.mightContain( "maven:remote:other", "org/foo/1.0/foo-1.0.pom" ), equalTo( false ) );
+    }
+}
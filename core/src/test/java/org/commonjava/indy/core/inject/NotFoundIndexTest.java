@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class NotFoundIndexTest
+{
+    private final Location first = new SimpleLocation( "test:first" );
+
+    private final Location second = new SimpleLocation( "test:second" );
+
+    @Test
+    public void addAndContains()
+    {
+        final NotFoundIndex index = new NotFoundIndex( 0 );
+        final long later = System.currentTimeMillis() + 60000;
+
+        index.add( first, "/a", later );
+        index.add( second, "/b", later );
+
+        assertThat( index.contains( first, "/a" ), equalTo( true ) );
+        assertThat( index.contains( first, "/b" ), equalTo( false ) );
+        assertThat( index.contains( second, "/b" ), equalTo( true ) );
+        assertThat( index.getPaths( first ), equalTo( Collections.singleton( "/a" ) ) );
+        assertThat( index.size(), equalTo( 2L ) );
+    }
+
+    @Test
+    public void expiredEntriesAreGone()
+    {
+        final NotFoundIndex index = new NotFoundIndex( 0 );
+        final long now = System.currentTimeMillis();
+
+        index.add( first, "/expired", now - 1 );
+        index.add( first, "/live", now + 60000 );
+
+        assertThat( index.getPaths( first ), equalTo( Collections.singleton( "/live" ) ) );
+        assertThat( index.contains( first, "/expired" ), equalTo( false ) );
+
+        index.add( first, "/other", now - 1 );
+        index.purgeExpired();
+        assertThat( index.size(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void fullIndexEvictsSoonestExpiring()
+    {
+        final NotFoundIndex index = new NotFoundIndex( 10 );
+        final long now = System.currentTimeMillis();
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            index.add( first, "/" + i, now + 60000 + i * 1000 );
+        }
+
+        index.add( second, "/new", now + 120000 );
+
+        assertThat( index.contains( second, "/new" ), equalTo( true ) );
+        assertThat( index.contains( first, "/0" ), equalTo( false ) );
+        assertThat( index.contains( first, "/1" ), equalTo( false ) );
+        assertThat( index.contains( first, "/2" ), equalTo( true ) );
+        assertThat( index.contains( first, "/9" ), equalTo( true ) );
+        assertThat( index.size() <= 10, equalTo( true ) );
+    }
+
+    @Test
+    public void fullIndexRefreshesExistingEntry()
+    {
+        final NotFoundIndex index = new NotFoundIndex( 3 );
+        final long now = System.currentTimeMillis();
+
+        index.add( first, "/a", now + 1000 );
+        index.add( first, "/b", now + 60000 );
+        index.add( first, "/c", now + 60000 );
+
+        // refreshing /a makes it the last to expire, so it survives the next eviction
+        index.add( first, "/a", now + 120000 );
+        index.add( first, "/d", now + 90000 );
+
+        assertThat( index.contains( first, "/a" ), equalTo( true ) );
+        assertThat( index.contains( first, "/d" ), equalTo( true ) );
+        assertThat( index.size() <= 3, equalTo( true ) );
+    }
+
+    @Test
+    public void removeLocationOnlyDropsItsEntries()
+    {
+        final NotFoundIndex index = new NotFoundIndex( 0 );
+        final long later = System.currentTimeMillis() + 60000;
+
+        index.add( first, "/a", later );
+        index.add( first, "/b", later );
+        index.add( second, "/a", later );
+
+        index.remove( first );
+
+        assertThat( index.contains( first, "/a" ), equalTo( false ) );
+        assertThat( index.getPaths( first ).isEmpty(), equalTo( true ) );
+        assertThat( index.contains( second, "/a" ), equalTo( true ) );
+        assertThat( index.size(), equalTo( 1L ) );
+
+        index.add( first, "/c", later );
+        index.add( first, "/d", later );
+        index.remove( first, "/c" );
+        assertThat( index.getPaths( first ), equalTo( new HashSet<>( Arrays.asList( "/d" ) ) ) );
+    }
+}
@@ -20,6 +20,9 @@ import org.commonjava.cdi.util.weft.ExecutorConfig;
 import org.commonjava.cdi.util.weft.Locker;
 import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.change.event.ArtifactStoreDeletePreEvent;
+import org.commonjava.indy.change.event.ArtifactStoreEnablementEvent;
+import org.commonjava.indy.change.event.ArtifactStorePreUpdateEvent;
 import org.commonjava.indy.change.event.ArtifactStoreUpdateType;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.conf.InternalFeatureConfig;
@@ -30,6 +33,7 @@ import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.data.StoreEventDispatcher;
 import org.commonjava.indy.data.StoreValidator;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
@@ -43,6 +47,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.Reception;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -94,6 +100,11 @@ public abstract class AbstractStoreDataManager
     @Inject
     InternalFeatureConfig internalFeatureConfig;
 
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    private volatile GroupMembershipCache membershipCache;
+
     protected static final String AFFECTED_BY_ASYNC_RUNNER_NAME = "store-affected-by-async-runner";
 
     @Inject
@@ -105,10 +116,70 @@ public abstract class AbstractStoreDataManager
     {
     }
 
+    protected AbstractStoreDataManager( final IndyConfiguration indyConfiguration )
+    {
+        this.indyConfiguration = indyConfiguration;
+    }
+
     @Override
     public ArtifactStoreQuery<ArtifactStore> query()
     {
-        return new DefaultArtifactStoreQuery<>( this );
+        return new DefaultArtifactStoreQuery<>( this, getMembershipCache() );
+    }
+
+    private GroupMembershipCache getMembershipCache()
+    {
+        if ( membershipCache == null && indyConfiguration != null
+                && indyConfiguration.isGroupMembershipCacheEnabled() )
+        {
+            synchronized ( this )
+            {
+                if ( membershipCache == null )
+                {
+                    membershipCache = new GroupMembershipCache(
+                            indyConfiguration.getGroupMembershipCacheExpirationSeconds(), metricsManager );
+                }
+            }
+        }
+
+        return membershipCache;
+    }
+
+    /**
+     * Drop the memoized group orderings that the given store takes part in. Subclasses should call
+     * {@link #invalidateGroupMemberships()} when they drop their stores wholesale.
+     */
+    protected void invalidateGroupMembership( final StoreKey key )
+    {
+        GroupMembershipCache cache = membershipCache;
+        if ( cache != null )
+        {
+            cache.invalidate( key );
+        }
+    }
+
+    protected void invalidateGroupMemberships()
+    {
+        GroupMembershipCache cache = membershipCache;
+        if ( cache != null )
+        {
+            cache.clear();
+        }
+    }
+
+    public void onStoreUpdating( @Observes( notifyObserver = Reception.IF_EXISTS ) final ArtifactStorePreUpdateEvent event )
+    {
+        event.getChanges().forEach( store -> invalidateGroupMembership( store.getKey() ) );
+    }
+
+    public void onStoreDeleting( @Observes( notifyObserver = Reception.IF_EXISTS ) final ArtifactStoreDeletePreEvent event )
+    {
+        event.getStores().forEach( store -> invalidateGroupMembership( store.getKey() ) );
+    }
+
+    public void onStoreEnablement( @Observes( notifyObserver = Reception.IF_EXISTS ) final ArtifactStoreEnablementEvent event )
+    {
+        event.getStores().forEach( store -> invalidateGroupMembership( store.getKey() ) );
     }
 
     protected abstract ArtifactStore getArtifactStoreInternal( final StoreKey key );
@@ -219,7 +290,7 @@ public abstract class AbstractStoreDataManager
             return;
         }
 
-        if ( store instanceof Group && isExcludedGroup( (Group) store ) )
+        if ( store instanceof Group && !isAffectedByIndexed( (Group) store ) )
         {
             logger.info( "Skip affectedBy calculation of group: {}", store.getName() );
             return;
@@ -285,6 +356,15 @@ public abstract class AbstractStoreDataManager
         }
     }
 
+    /**
+     * Whether {@link #refreshAffectedBy(ArtifactStore, ArtifactStore, StoreUpdateAction)} keeps the affected-by mapping
+     * of this group up to date. Excluded groups are skipped by default.
+     */
+    protected boolean isAffectedByIndexed( final Group group )
+    {
+        return !isExcludedGroup( group );
+    }
+
     protected abstract void removeAffectedBy( StoreKey key, StoreKey affected );
 
     protected abstract void addAffectedBy( StoreKey key, StoreKey affected );
@@ -322,6 +402,9 @@ public abstract class AbstractStoreDataManager
                 ArtifactStore removed = removeArtifactStoreInternal( k );
                 logger.info( "REMOVED store: {}", removed );
 
+                // the pre-delete event already did this, but an ordering may have been rebuilt in the meantime
+                invalidateGroupMembership( k );
+
                 postDelete( store, summary, true, eventMetadata );
             }
             catch ( IndyDataException e )
@@ -491,6 +574,10 @@ public abstract class AbstractStoreDataManager
         logger.debug( "Put {} to stores map", k );
         final ArtifactStore old = putArtifactStoreInternal( store.getKey(), store );
 
+        // the pre-update event already did this (if events are fired), but an ordering may have been rebuilt in the
+        // meantime from the old definition
+        invalidateGroupMembership( k );
+
         try
         {
             logger.debug( "Starting post-store actions for {}", k );
@@ -503,6 +590,7 @@ public abstract class AbstractStoreDataManager
             {
                 logger.error( "postStore() failed for {}. Rollback to old value: {}", store, old );
                 putArtifactStoreInternal( old.getKey(), old );
+                invalidateGroupMembership( k );
             }
             error.set( e );
             return false;
@@ -70,6 +70,8 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
 
     private final StoreDataManager dataManager;
 
+    private final GroupMembershipCache membershipCache;
+
     private String packageType = MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
 
     private Set<StoreType> types;
@@ -77,9 +79,15 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     private Boolean enabled;
 
     public DefaultArtifactStoreQuery( StoreDataManager dataManager )
+    {
+        this( dataManager, null );
+    }
+
+    public DefaultArtifactStoreQuery( StoreDataManager dataManager, GroupMembershipCache membershipCache )
     {
         logger.debug( "CREATE new default store query with data manager only" );
         this.dataManager = dataManager;
+        this.membershipCache = membershipCache;
     }
 
     @SuppressWarnings( "unused" )
@@ -89,6 +97,7 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
         logger.debug( "CREATE new default store query with params (internal?)" );
 
         this.dataManager = dataManager;
+        this.membershipCache = null;
         this.packageType = packageType;
         this.enabled = enabled;
         storeType( storeCls );
@@ -531,7 +540,23 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
             throw new IndyDataException( "packageType must be set on the query before calling this method!" );
         }
 
-        final Group master = (Group) dataManager.getArtifactStore( new StoreKey( packageType, group, groupName ) );
+        final StoreKey groupKey = new StoreKey( packageType, group, groupName );
+        if ( membershipCache != null )
+        {
+            return membershipCache.getOrdering( groupKey, enabled, includeGroups, recurseGroups,
+                                                touched -> loadGroupOrdering( groupKey, enabled, includeGroups,
+                                                                              recurseGroups, touched ) );
+        }
+
+        return loadGroupOrdering( groupKey, enabled, includeGroups, recurseGroups, new HashSet<>() );
+    }
+
+    private List<ArtifactStore> loadGroupOrdering( final StoreKey groupKey, final Boolean enabled,
+                                                   final boolean includeGroups, final boolean recurseGroups,
+                                                   final Set<StoreKey> touched )
+            throws IndyDataException
+    {
+        final Group master = (Group) dataManager.getArtifactStore( groupKey );
         if ( master == null )
         {
             return emptyList();
@@ -539,12 +564,13 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
 
         final List<ArtifactStore> result = new ArrayList<>();
 
-        return getMembersOrdering( master, enabled, result, includeGroups, recurseGroups );
+        return getMembersOrdering( master, enabled, result, includeGroups, recurseGroups, touched );
 
     }
 
     private List<ArtifactStore> getMembersOrdering(final Group groupRepo, final Boolean enabled, final List<ArtifactStore> result,
-                                                   final boolean includeGroups, final boolean recurseGroups) throws IndyDataException
+                                                   final boolean includeGroups, final boolean recurseGroups,
+                                                   final Set<StoreKey> touched ) throws IndyDataException
     {
 
         if ( groupRepo == null || groupRepo.isDisabled() && enabled )
@@ -563,6 +589,7 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
 
         members.forEach(( key ) ->
         {
+            touched.add( key );
             if (!seen.contains( key ))
             {
                 seen.add( key );
@@ -573,7 +600,7 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
                     {
                         // if we're here, we're definitely recursing groups...
                         Group group = (Group) dataManager.getArtifactStore(key);
-                        getMembersOrdering( group, enabled, result, includeGroups, recurseGroups );
+                        getMembersOrdering( group, enabled, result, includeGroups, recurseGroups, touched );
                     }
                     else
                     {
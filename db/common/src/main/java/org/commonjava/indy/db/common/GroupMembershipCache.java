@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizes the flattened, ordered member lists computed by {@link DefaultArtifactStoreQuery} for groups. Each entry
+ * remembers every store key that was looked at while it was built (the group itself, nested groups and members, even
+ * missing ones), so {@link #invalidate(StoreKey)} drops exactly the entries of the changed store and all the groups
+ * that reach it.
+ * <p>
+ * Invalidation is local to this node. The optional expiration bounds how long changes made on other nodes of a
+ * cluster can go unnoticed.
+ */
+public class GroupMembershipCache
+{
+    private static final String METRIC_PREFIX = "indy.store.group.membership.";
+
+    private static final String HIT = METRIC_PREFIX + "hit";
+
+    private static final String MISS = METRIC_PREFIX + "miss";
+
+    private static final String REBUILD_MILLIS = METRIC_PREFIX + "rebuild.millis";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<OrderingKey, Ordering> orderings = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, Set<OrderingKey>> dependents = new ConcurrentHashMap<>();
+
+    // bumped on every invalidation, so an ordering built concurrently with a change is never cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final long expirationMillis;
+
+    private final DefaultMetricsManager metricsManager;
+
+    public GroupMembershipCache( final long expirationSeconds, final DefaultMetricsManager metricsManager )
+    {
+        this.expirationMillis = TimeUnit.SECONDS.toMillis( expirationSeconds );
+        this.metricsManager = metricsManager;
+    }
+
+    public List<ArtifactStore> getOrdering( final StoreKey groupKey, final Boolean enabled, final boolean includeGroups,
+                                            final boolean recurseGroups, final OrderingLoader loader )
+            throws IndyDataException
+    {
+        final OrderingKey key = new OrderingKey( groupKey, enabled, includeGroups, recurseGroups );
+        final Ordering cached = orderings.get( key );
+        if ( cached != null && !cached.isExpired() )
+        {
+            mark( HIT );
+            return new ArrayList<>( cached.stores );
+        }
+
+        mark( MISS );
+
+        final long gen = generation.get();
+        final long start = System.currentTimeMillis();
+
+        final Set<StoreKey> touched = new HashSet<>();
+        touched.add( groupKey );
+        final List<ArtifactStore> stores = loader.load( touched );
+
+        final long elapsed = System.currentTimeMillis() - start;
+        if ( metricsManager != null )
+        {
+            metricsManager.getHistogram( REBUILD_MILLIS ).update( elapsed );
+        }
+
+        synchronized ( this )
+        {
+            if ( gen == generation.get() )
+            {
+                orderings.put( key, new Ordering( Collections.unmodifiableList( new ArrayList<>( stores ) ), touched ) );
+                touched.forEach( k -> dependents.computeIfAbsent( k, x -> ConcurrentHashMap.newKeySet() ).add( key ) );
+            }
+            else
+            {
+                logger.debug( "Membership of {} changed while it was being computed; not caching it.", groupKey );
+            }
+        }
+
+        return stores;
+    }
+
+    /**
+     * Drop every cached ordering that the given store participated in, i.e. the store's own ordering (if it's a group)
+     * and the orderings of all groups containing it, directly or through nested groups.
+     */
+    public synchronized void invalidate( final StoreKey storeKey )
+    {
+        generation.incrementAndGet();
+
+        final Set<OrderingKey> keys = dependents.remove( storeKey );
+        if ( keys == null )
+        {
+            return;
+        }
+
+        keys.forEach( key -> {
+            Ordering removed = orderings.remove( key );
+            if ( removed != null )
+            {
+                removed.touched.forEach( k -> {
+                    Set<OrderingKey> deps = dependents.get( k );
+                    if ( deps != null )
+                    {
+                        deps.remove( key );
+                        if ( deps.isEmpty() )
+                        {
+                            dependents.remove( k );
+                        }
+                    }
+                } );
+            }
+        } );
+
+        logger.debug( "Invalidated {} cached group orderings affected by: {}", keys.size(), storeKey );
+    }
+
+    public synchronized void clear()
+    {
+        generation.incrementAndGet();
+        orderings.clear();
+        dependents.clear();
+    }
+
+    private void mark( final String name )
+    {
+        if ( metricsManager != null )
+        {
+            metricsManager.getMeter( name ).mark();
+        }
+    }
+
+    @FunctionalInterface
+    public interface OrderingLoader
+    {
+        /**
+         * Compute the ordering, adding every store key looked at along the way to the given set.
+         */
+        List<ArtifactStore> load( Set<StoreKey> touched )
+                throws IndyDataException;
+    }
+
+    private final class Ordering
+    {
+        private final List<ArtifactStore> stores;
+
+        private final Set<StoreKey> touched;
+
+        private final long created = System.currentTimeMillis();
+
+        private Ordering( final List<ArtifactStore> stores, final Set<StoreKey> touched )
+        {
+            this.stores = stores;
+            this.touched = touched;
+        }
+
+        private boolean isExpired()
+        {
+            return expirationMillis > 0 && System.currentTimeMillis() - created > expirationMillis;
+        }
+    }
+
+    private static final class OrderingKey
+    {
+        private final StoreKey groupKey;
+
+        private final Boolean enabled;
+
+        private final boolean includeGroups;
+
+        private final boolean recurseGroups;
+
+        private OrderingKey( final StoreKey groupKey, final Boolean enabled, final boolean includeGroups,
+                             final boolean recurseGroups )
+        {
+            this.groupKey = groupKey;
+            this.enabled = enabled;
+            this.includeGroups = includeGroups;
+            this.recurseGroups = recurseGroups;
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+            OrderingKey that = (OrderingKey) o;
+            return includeGroups == that.includeGroups && recurseGroups == that.recurseGroups && groupKey.equals(
+                    that.groupKey ) && Objects.equals( enabled, that.enabled );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( groupKey, enabled, includeGroups, recurseGroups );
+        }
+    }
+}
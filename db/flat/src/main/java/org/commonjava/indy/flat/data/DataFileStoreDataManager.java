@@ -23,6 +23,7 @@ import javax.enterprise.inject.Alternative;
 import javax.inject.Inject;
 
 import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.data.StoreEventDispatcher;
@@ -75,6 +76,15 @@ public class DataFileStoreDataManager
         this.started = true;
     }
 
+    public DataFileStoreDataManager( final DataFileManager manager, final IndyObjectMapper serializer,
+                                     final StoreEventDispatcher dispatcher, final IndyConfiguration indyConfiguration )
+    {
+        super( dispatcher, indyConfiguration );
+        this.manager = manager;
+        this.serializer = serializer;
+        this.started = true;
+    }
+
     @PostConstruct
     public void readDefinitions()
     {
@@ -20,10 +20,17 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.commonjava.indy.audit.ChangeSummary;
 import org.commonjava.indy.conf.DefaultIndyConfiguration;
 import org.commonjava.indy.core.data.testutil.StoreEventDispatcherStub;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
 import org.commonjava.indy.model.core.RemoteRepository;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
@@ -74,4 +81,110 @@ public class DataFileStoreDataManagerTest
                 new File( fileCfg.getDataBasedir(), "indy/remote/" + name + ".json" ).getAbsolutePath() ) );
     }
 
+    @Test
+    public void affectedByReachesGroupsThroughExcludedGroup()
+            throws Exception
+    {
+        DataFileStoreDataManager dataManager = excludingManager();
+        HostedRepository hosted = nestedGroups( dataManager );
+
+        Group top = new Group( MAVEN_PKG_KEY, "top", new StoreKey( MAVEN_PKG_KEY, StoreType.group, "outer" ) );
+        store( dataManager, top );
+
+        assertThat( names( dataManager.affectedBy( Collections.singleton( hosted.getKey() ) ) ),
+                    equalTo( new HashSet<>( Arrays.asList( "outer", "direct", "top" ) ) ) );
+    }
+
+    @Test
+    public void affectedByFollowsMembershipUpdateOfExcludedGroup()
+            throws Exception
+    {
+        DataFileStoreDataManager dataManager = excludingManager();
+        HostedRepository hosted = nestedGroups( dataManager );
+
+        Group temp = (Group) dataManager.getArtifactStore( new StoreKey( MAVEN_PKG_KEY, StoreType.group, "temp-build" ) ).copyOf();
+        temp.removeConstituent( hosted.getKey() );
+        store( dataManager, temp );
+
+        assertThat( names( dataManager.affectedBy( Collections.singleton( hosted.getKey() ) ) ),
+                    equalTo( Collections.singleton( "direct" ) ) );
+
+        temp = (Group) temp.copyOf();
+        temp.addConstituent( hosted.getKey() );
+        store( dataManager, temp );
+
+        assertThat( names( dataManager.affectedBy( Collections.singleton( hosted.getKey() ) ) ),
+                    equalTo( new HashSet<>( Arrays.asList( "outer", "direct" ) ) ) );
+    }
+
+    @Test
+    public void affectedByFollowsDeletionOfExcludedGroup()
+            throws Exception
+    {
+        DataFileStoreDataManager dataManager = excludingManager();
+        HostedRepository hosted = nestedGroups( dataManager );
+
+        dataManager.deleteArtifactStore( new StoreKey( MAVEN_PKG_KEY, StoreType.group, "temp-build" ),
+                                 new ChangeSummary( "test-user", "delete" ), new EventMetadata() );
+
+        assertThat( names( dataManager.affectedBy( Collections.singleton( hosted.getKey() ) ) ),
+                    equalTo( Collections.singleton( "direct" ) ) );
+    }
+
+    @Test
+    public void affectedByFollowsUpdateOfGroupContainingExcludedGroup()
+            throws Exception
+    {
+        DataFileStoreDataManager dataManager = excludingManager();
+        HostedRepository hosted = nestedGroups( dataManager );
+
+        Group outer = (Group) dataManager.getArtifactStore( new StoreKey( MAVEN_PKG_KEY, StoreType.group, "outer" ) ).copyOf();
+        outer.removeConstituent( new StoreKey( MAVEN_PKG_KEY, StoreType.group, "temp-build" ) );
+        store( dataManager, outer );
+
+        assertThat( names( dataManager.affectedBy( Collections.singleton( hosted.getKey() ) ) ),
+                    equalTo( Collections.singleton( "direct" ) ) );
+    }
+
+    private DataFileStoreDataManager excludingManager()
+    {
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setAffectedGroupsExcludeFilter( "^temp-.+" );
+
+        return new DataFileStoreDataManager( new DataFileManager( fileCfg, new DataFileEventManager() ),
+                                             new IndyObjectMapper( false ), new StoreEventDispatcherStub(), config );
+    }
+
+    /**
+     * hosted &lt;- temp-build (excluded) &lt;- outer, and hosted &lt;- direct
+     */
+    private HostedRepository nestedGroups( final DataFileStoreDataManager dataManager )
+            throws Exception
+    {
+        HostedRepository hosted = new HostedRepository( MAVEN_PKG_KEY, "hosted" );
+        Group temp = new Group( MAVEN_PKG_KEY, "temp-build", hosted.getKey() );
+        Group outer = new Group( MAVEN_PKG_KEY, "outer", temp.getKey() );
+        Group direct = new Group( MAVEN_PKG_KEY, "direct", hosted.getKey() );
+
+        store( dataManager, hosted, temp, outer, direct );
+        return hosted;
+    }
+
+    private void store( final DataFileStoreDataManager dataManager, final ArtifactStore... stores )
+            throws Exception
+    {
+        for ( ArtifactStore store : stores )
+        {
+            dataManager.storeArtifactStore( store, new ChangeSummary( "test-user", "init" ), false, true,
+                                    new EventMetadata() );
+        }
+    }
+
+    private Set<String> names( final Set<Group> groups )
+    {
+        Set<String> names = new HashSet<>();
+        groups.forEach( g -> names.add( g.getName() ) );
+        return names;
+    }
+
 }
@@ -17,11 +17,13 @@ package org.commonjava.indy.mem.data;
 
 import org.commonjava.cdi.util.weft.NamedThreadFactory;
 import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.NoOpStoreEventDispatcher;
 import org.commonjava.indy.data.StoreEventDispatcher;
 import org.commonjava.indy.db.common.AbstractStoreDataManager;
 import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.slf4j.Logger;
@@ -30,8 +32,10 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
 import javax.inject.Inject;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -48,6 +52,12 @@ public class MemoryStoreDataManager
 
     private final Map<StoreKey, ArtifactStore> stores = new ConcurrentHashMap<>();
 
+    /**
+     * Reverse membership index: constituent key -&gt; keys of the groups that directly contain it. Maintained through the
+     * affected-by hooks called from postStore() / postDelete() as groups are stored and deleted.
+     */
+    private final Map<StoreKey, Set<StoreKey>> affectedByStores = new ConcurrentHashMap<>();
+
     @Inject
     private StoreEventDispatcher dispatcher;
 
@@ -71,6 +81,12 @@ public class MemoryStoreDataManager
         this.dispatcher = dispatcher;
     }
 
+    public MemoryStoreDataManager( final StoreEventDispatcher dispatcher, final IndyConfiguration indyConfiguration )
+    {
+        super( indyConfiguration );
+        this.dispatcher = dispatcher;
+    }
+
     @Override
     protected StoreEventDispatcher getStoreEventDispatcher()
     {
@@ -83,22 +99,80 @@ public class MemoryStoreDataManager
         return stores.get( key );
     }
 
+    /**
+     * Excluded groups are indexed too: {@link #affectedBy(Collection)} has to walk through them to reach the groups
+     * that contain them, and only drops them from its result at the end.
+     */
     @Override
-    protected void removeAffectedBy( StoreKey key, StoreKey affected )
+    protected boolean isAffectedByIndexed( final Group group )
     {
+        return true;
+    }
 
+    @Override
+    protected void removeAffectedBy( StoreKey key, StoreKey affected )
+    {
+        affectedByStores.computeIfPresent( key, ( k, groups ) -> {
+            groups.remove( affected );
+            return groups.isEmpty() ? null : groups;
+        } );
     }
 
     @Override
     protected void addAffectedBy( StoreKey key, StoreKey affected )
     {
-
+        affectedByStores.computeIfAbsent( key, k -> ConcurrentHashMap.newKeySet() ).add( affected );
     }
 
     @Override
     protected void removeAffectedStore( StoreKey key )
     {
+        // groups that still list a deleted store keep being affected by it (e.g. if it's re-created), so the mapping
+        // stays until those groups are updated or deleted
+    }
+
+    @Override
+    public Set<Group> affectedBy( final Collection<StoreKey> keys )
+    {
+        logger.debug( "Getting groups affected by: {}", keys );
+
+        final Set<Group> result = new HashSet<>();
+
+        // use these to avoid recursion
+        final Set<StoreKey> processed = new HashSet<>();
+        final LinkedList<StoreKey> toProcess = new LinkedList<>( keys );
+
+        while ( !toProcess.isEmpty() )
+        {
+            StoreKey key = toProcess.removeFirst();
+            if ( key == null || !processed.add( key ) )
+            {
+                continue;
+            }
+
+            Set<StoreKey> affected = affectedByStores.get( key );
+            if ( affected == null )
+            {
+                continue;
+            }
+
+            for ( StoreKey gKey : affected )
+            {
+                if ( processed.contains( gKey ) )
+                {
+                    continue;
+                }
+
+                ArtifactStore store = stores.get( gKey );
+                if ( store instanceof Group && result.add( (Group) store ) )
+                {
+                    // recurse upwards, to the groups containing this one
+                    toProcess.addLast( gKey );
+                }
+            }
+        }
 
+        return filterAffectedGroups( result );
     }
 
     @Override
@@ -118,6 +192,8 @@ public class MemoryStoreDataManager
             throws IndyDataException
     {
         stores.clear();
+        affectedByStores.clear();
+        invalidateGroupMemberships();
     }
 
     @Override
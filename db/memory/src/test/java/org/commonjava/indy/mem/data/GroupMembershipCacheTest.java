@@ -0,0 +1,277 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.mem.data;
+
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.change.event.ArtifactStoreEnablementEvent;
+import org.commonjava.indy.change.event.ArtifactStorePreUpdateEvent;
+import org.commonjava.indy.change.event.ArtifactStoreUpdateType;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.NoOpStoreEventDispatcher;
+import org.commonjava.indy.db.common.GroupMembershipCache;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.commonjava.indy.model.core.StoreType.group;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GroupMembershipCacheTest
+{
+    private final HostedRepository one = new HostedRepository( MAVEN_PKG_KEY, "one" );
+
+    private final HostedRepository two = new HostedRepository( MAVEN_PKG_KEY, "two" );
+
+    private final HostedRepository three = new HostedRepository( MAVEN_PKG_KEY, "three" );
+
+    private CountingStoreDataManager dataManager;
+
+    @Before
+    public void setup()
+            throws IndyDataException
+    {
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setGroupMembershipCacheEnabled( true );
+        dataManager = new CountingStoreDataManager( config );
+
+        store( one );
+        store( two );
+        store( three );
+        store( new Group( MAVEN_PKG_KEY, "inner", two.getKey() ) );
+        store( new Group( MAVEN_PKG_KEY, "outer", one.getKey(),
+                          new StoreKey( MAVEN_PKG_KEY, group, "inner" ) ) );
+    }
+
+    @Test
+    public void repeatedLookupIsCached()
+            throws IndyDataException
+    {
+        assertThat( members( "outer" ), equalTo( asList( "one", "two" ) ) );
+        int lookups = dataManager.lookups.get();
+
+        assertThat( members( "outer" ), equalTo( asList( "one", "two" ) ) );
+        assertThat( dataManager.lookups.get(), equalTo( lookups ) );
+    }
+
+    @Test
+    public void addedMemberIsSeen()
+            throws IndyDataException
+    {
+        assertThat( members( "outer" ), equalTo( asList( "one", "two" ) ) );
+
+        store( new Group( MAVEN_PKG_KEY, "inner", two.getKey(), three.getKey() ) );
+
+        assertThat( members( "inner" ), equalTo( asList( "two", "three" ) ) );
+        assertThat( members( "outer" ), equalTo( asList( "one", "two", "three" ) ) );
+    }
+
+    @Test
+    public void removedMemberIsGone()
+            throws IndyDataException
+    {
+        assertThat( members( "outer" ), equalTo( asList( "one", "two" ) ) );
+
+        store( new Group( MAVEN_PKG_KEY, "inner" ) );
+
+        assertThat( members( "outer" ), equalTo( asList( "one" ) ) );
+    }
+
+    @Test
+    public void deletedMemberIsGone()
+            throws IndyDataException
+    {
+        assertThat( members( "outer" ), equalTo( asList( "one", "two" ) ) );
+
+        dataManager.deleteArtifactStore( one.getKey(), new ChangeSummary( ChangeSummary.SYSTEM_USER, "test" ),
+                                         new EventMetadata() );
+
+        assertThat( members( "outer" ), equalTo( asList( "two" ) ) );
+    }
+
+    @Test
+    public void disabledMemberIsSkipped()
+            throws IndyDataException
+    {
+        assertThat( members( "outer" ), equalTo( asList( "one", "two" ) ) );
+
+        HostedRepository disabled = new HostedRepository( MAVEN_PKG_KEY, "two" );
+        disabled.setDisabled( true );
+        store( disabled );
+
+        assertThat( members( "inner" ), equalTo( Collections.<String>emptyList() ) );
+        assertThat( members( "outer" ), equalTo( asList( "one" ) ) );
+    }
+
+    @Test
+    public void nestedChangeLeavesUnrelatedGroupsCached()
+            throws IndyDataException
+    {
+        store( new Group( MAVEN_PKG_KEY, "other", three.getKey() ) );
+        members( "outer" );
+        members( "other" );
+
+        store( new Group( MAVEN_PKG_KEY, "inner", three.getKey() ) );
+        int lookups = dataManager.lookups.get();
+
+        assertThat( members( "other" ), equalTo( asList( "three" ) ) );
+        assertThat( dataManager.lookups.get(), equalTo( lookups ) );
+        assertThat( members( "outer" ), equalTo( asList( "one", "three" ) ) );
+    }
+
+    @Test
+    public void updateEventInvalidates()
+            throws IndyDataException
+    {
+        assertThat( members( "outer" ), equalTo( asList( "one", "two" ) ) );
+
+        // changed behind the data manager's back (e.g. on another node), only the event tells the cache about it
+        Group inner = new Group( MAVEN_PKG_KEY, "inner", three.getKey() );
+        dataManager.putSilently( inner );
+        assertThat( members( "outer" ), equalTo( asList( "one", "two" ) ) );
+
+        Map<ArtifactStore, ArtifactStore> changes = Collections.singletonMap( inner, inner );
+        dataManager.onStoreUpdating(
+                new ArtifactStorePreUpdateEvent( ArtifactStoreUpdateType.UPDATE, new EventMetadata(), changes ) );
+
+        assertThat( members( "outer" ), equalTo( asList( "one", "three" ) ) );
+    }
+
+    @Test
+    public void enablementEventInvalidates()
+            throws IndyDataException
+    {
+        assertThat( members( "outer" ), equalTo( asList( "one", "two" ) ) );
+
+        HostedRepository disabled = new HostedRepository( MAVEN_PKG_KEY, "one" );
+        disabled.setDisabled( true );
+        dataManager.putSilently( disabled );
+        assertThat( members( "outer" ), equalTo( asList( "one", "two" ) ) );
+
+        dataManager.onStoreEnablement( new ArtifactStoreEnablementEvent( true, new EventMetadata(), true, disabled ) );
+
+        assertThat( members( "outer" ), equalTo( asList( "two" ) ) );
+    }
+
+    @Test
+    public void orderingComputedAcrossAnInvalidationIsNotCached()
+            throws Exception
+    {
+        GroupMembershipCache cache = new GroupMembershipCache( 0, null );
+        StoreKey groupKey = new StoreKey( MAVEN_PKG_KEY, group, "outer" );
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch( 1 );
+        CountDownLatch invalidated = new CountDownLatch( 1 );
+
+        Thread loader = new Thread( () -> {
+            try
+            {
+                cache.getOrdering( groupKey, true, false, true, touched -> {
+                    loads.incrementAndGet();
+                    touched.add( one.getKey() );
+                    loading.countDown();
+                    try
+                    {
+                        invalidated.await( 10, TimeUnit.SECONDS );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Collections.singletonList( one );
+                } );
+            }
+            catch ( IndyDataException e )
+            {
+                throw new IllegalStateException( e );
+            }
+        } );
+        loader.start();
+
+        assertThat( loading.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        cache.invalidate( two.getKey() );
+        invalidated.countDown();
+        loader.join( 10000 );
+
+        // the first ordering may predate the change, so the next lookup computes it again
+        cache.getOrdering( groupKey, true, false, true, touched -> {
+            loads.incrementAndGet();
+            return Collections.singletonList( one );
+        } );
+        assertThat( loads.get(), equalTo( 2 ) );
+
+        cache.getOrdering( groupKey, true, false, true, touched -> {
+            loads.incrementAndGet();
+            return Collections.singletonList( one );
+        } );
+        assertThat( loads.get(), equalTo( 2 ) );
+    }
+
+    private List<String> members( final String groupName )
+            throws IndyDataException
+    {
+        return dataManager.query()
+                          .getOrderedConcreteStoresInGroup( MAVEN_PKG_KEY, groupName, true )
+                          .stream()
+                          .map( ArtifactStore::getName )
+                          .collect( Collectors.toList() );
+    }
+
+    private void store( final ArtifactStore store )
+            throws IndyDataException
+    {
+        dataManager.storeArtifactStore( store, new ChangeSummary( ChangeSummary.SYSTEM_USER, "test" ), false, true,
+                                        new EventMetadata() );
+    }
+
+    private static final class CountingStoreDataManager
+            extends MemoryStoreDataManager
+    {
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        private CountingStoreDataManager( final DefaultIndyConfiguration config )
+        {
+            super( new NoOpStoreEventDispatcher(), config );
+        }
+
+        @Override
+        protected ArtifactStore getArtifactStoreInternal( final StoreKey key )
+        {
+            lookups.incrementAndGet();
+            return super.getArtifactStoreInternal( key );
+        }
+
+        private void putSilently( final ArtifactStore store )
+        {
+            putArtifactStoreInternal( store.getKey(), store );
+        }
+    }
+}
@@ -37,6 +37,7 @@ import org.commonjava.maven.galley.cache.CacheProviderFactory;
 import org.commonjava.maven.galley.cache.partyline.PartyLineCacheProviderFactory;
 import org.commonjava.maven.galley.cache.pathmapped.PathMappedCacheProviderFactory;
 import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.io.ChecksummingTransferDecorator;
 import org.commonjava.maven.galley.io.NoCacheTransferDecorator;
 import org.commonjava.maven.galley.io.TransferDecoratorManager;
@@ -47,6 +48,7 @@ import org.commonjava.maven.galley.io.checksum.Sha256GeneratorFactory;
 import org.commonjava.maven.galley.io.checksum.TransferMetadataConsumer;
 import org.commonjava.maven.galley.model.FilePatternMatcher;
 import org.commonjava.maven.galley.model.SpecialPathInfo;
+import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferOperation;
 import org.commonjava.maven.galley.spi.cache.CacheProvider;
 import org.commonjava.maven.galley.spi.event.FileEventManager;
@@ -120,6 +122,11 @@ public class DefaultGalleyStorageProvider
     @Inject
     private ExecutorService deleteExecutor;
 
+    @ExecutorConfig( named = "galley-checksum-executor", threads = 8, priority = 7 )
+    @WeftManaged
+    @Inject
+    private ExecutorService checksumExecutor;
+
     @Inject
     private TransferMetadataConsumer contentMetadataConsumer;
 
@@ -296,6 +303,16 @@ public class DefaultGalleyStorageProvider
             decorators.add( decorator );
         }
         decorators.add( getChecksummingTransferDecorator() );
+        if ( config.isParallelChecksumEnabled() )
+        {
+            logger.info( "Calculating checksums of stored content in parallel (lazy SHA-256: {})",
+                         config.isLazyStrongChecksumEnabled() );
+            decorators.add( new ParallelChecksummingTransferDecorator( this::getChecksumWriteAdvice,
+                                                                       specialPathManager, contentMetadataConsumer,
+                                                                       checksumExecutor, meterProvider(),
+                                                                       cumulativeTimer(),
+                                                                       config.isLazyStrongChecksumEnabled() ) );
+        }
 
         transferDecorator = new TransferDecoratorManager( decorators );
     }
@@ -351,41 +368,49 @@ public class DefaultGalleyStorageProvider
             return result;
         };
 
-        ChecksummingDecoratorAdvisor writeAdvisor = ( transfer, op, eventMetadata ) -> {
-            ChecksummingDecoratorAdvisor.ChecksumAdvice result = NO_DECORATE;
-            if ( TransferOperation.GENERATE == op )
-            {
-                result = CALCULATE_AND_WRITE;
-            }
-            else if ( checksumAdvisors != null )
+        // with parallel checksums, the write side is handled by ParallelChecksummingTransferDecorator
+        ChecksummingDecoratorAdvisor writeAdvisor = config.isParallelChecksumEnabled() ?
+                        ( transfer, op, eventMetadata ) -> NO_DECORATE :
+                        this::getChecksumWriteAdvice;
+
+        return new ChecksummingTransferDecorator( readAdvisor, writeAdvisor, specialPathManager, timerProviderFunction(),
+                                                  contentMetadataConsumer, new Md5GeneratorFactory(),
+                                                  new Sha1GeneratorFactory(), new Sha256GeneratorFactory() );
+    }
+
+    private ChecksummingDecoratorAdvisor.ChecksumAdvice getChecksumWriteAdvice( final Transfer transfer,
+                                                                             final TransferOperation op,
+                                                                             final EventMetadata eventMetadata )
+    {
+        ChecksummingDecoratorAdvisor.ChecksumAdvice result = NO_DECORATE;
+        if ( TransferOperation.GENERATE == op )
+        {
+            result = CALCULATE_AND_WRITE;
+        }
+        else if ( checksumAdvisors != null )
+        {
+            for ( IndyChecksumAdvisor advisor : checksumAdvisors )
             {
-                for ( IndyChecksumAdvisor advisor : checksumAdvisors )
-                {
-                    Optional<ChecksummingDecoratorAdvisor.ChecksumAdvice> advice =
-                                    advisor.getChecksumWriteAdvice( transfer, op, eventMetadata );
+                Optional<ChecksummingDecoratorAdvisor.ChecksumAdvice> advice =
+                                advisor.getChecksumWriteAdvice( transfer, op, eventMetadata );
 
-                    if ( advice.isPresent() )
+                if ( advice.isPresent() )
+                {
+                    ChecksummingDecoratorAdvisor.ChecksumAdvice checksumAdvice = advice.get();
+                    if ( checksumAdvice.ordinal() > result.ordinal() )
                     {
-                        ChecksummingDecoratorAdvisor.ChecksumAdvice checksumAdvice = advice.get();
-                        if ( checksumAdvice.ordinal() > result.ordinal() )
+                        result = checksumAdvice;
+                        if ( checksumAdvice == CALCULATE_AND_WRITE )
                         {
-                            result = checksumAdvice;
-                            if ( checksumAdvice == CALCULATE_AND_WRITE )
-                            {
-                                break;
-                            }
+                            break;
                         }
                     }
                 }
             }
+        }
 
-            logger.debug( "Advising {} for {} of: {}", result, op, transfer );
-            return result;
-        };
-
-        return new ChecksummingTransferDecorator( readAdvisor, writeAdvisor, specialPathManager, timerProviderFunction(),
-                                                  contentMetadataConsumer, new Md5GeneratorFactory(),
-                                                  new Sha1GeneratorFactory(), new Sha256GeneratorFactory() );
+        logger.debug( "Advising {} for {} of: {}", result, op, transfer );
+        return result;
     }
 
     @Produces
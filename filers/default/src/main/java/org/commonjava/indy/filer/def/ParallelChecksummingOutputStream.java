@@ -0,0 +1,364 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.filer.def;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Output stream that digests everything written through it with several algorithms at once, off the writing thread.
+ * <p>
+ * Written bytes are copied into pooled chunks, and each full chunk is handed to one lane per algorithm. A lane digests
+ * its chunks in order on the executor, so the algorithms run in parallel with each other and with the write to the
+ * underlying stream. At most {@link #RING_SIZE} chunks are in flight per stream; the writer waits for a free slot
+ * once the digests fall behind. If the executor rejects a lane, the lane runs on the writing thread instead.
+ * <p>
+ * The digests are available through {@link #getDigests()} once the stream is closed.
+ */
+public class ParallelChecksummingOutputStream
+        extends FilterOutputStream
+{
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    static final int RING_SIZE = 8;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final BufferPool pool;
+
+    private final Executor executor;
+
+    private final List<Lane> lanes;
+
+    private final Semaphore ring = new Semaphore( RING_SIZE );
+
+    private byte[] current;
+
+    private int fill;
+
+    private long size;
+
+    private boolean closed;
+
+    private Map<String, byte[]> digests;
+
+    /**
+     * @param algorithms {@link MessageDigest} algorithm names
+     * @param executor where the digests run; null to run them on the writing thread
+     */
+    public ParallelChecksummingOutputStream( final OutputStream out, final List<String> algorithms,
+                                             final BufferPool pool, final Executor executor )
+            throws IOException
+    {
+        super( out );
+        this.pool = pool;
+        this.executor = executor;
+
+        final List<Lane> lanes = new ArrayList<>( algorithms.size() );
+        for ( final String algorithm : algorithms )
+        {
+            try
+            {
+                lanes.add( new Lane( algorithm, MessageDigest.getInstance( algorithm ) ) );
+            }
+            catch ( final NoSuchAlgorithmException e )
+            {
+                throw new IOException( "Cannot get message digest for: " + algorithm, e );
+            }
+        }
+        this.lanes = Collections.unmodifiableList( lanes );
+        this.current = pool.acquire();
+    }
+
+    @Override
+    public void write( final int b )
+            throws IOException
+    {
+        current[fill++] = (byte) b;
+        if ( fill == CHUNK_SIZE )
+        {
+            dispatch();
+        }
+        out.write( b );
+        size++;
+    }
+
+    @Override
+    public void write( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        int pos = off;
+        int remaining = len;
+        while ( remaining > 0 )
+        {
+            final int n = Math.min( remaining, CHUNK_SIZE - fill );
+            System.arraycopy( b, pos, current, fill, n );
+            fill += n;
+            pos += n;
+            remaining -= n;
+            if ( fill == CHUNK_SIZE )
+            {
+                dispatch();
+            }
+        }
+
+        out.write( b, off, len );
+        size += len;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+
+        try
+        {
+            if ( fill > 0 )
+            {
+                dispatch();
+            }
+            out.close();
+        }
+        finally
+        {
+            if ( current != null )
+            {
+                pool.release( current );
+                current = null;
+            }
+            awaitLanes();
+        }
+
+        final Map<String, byte[]> result = new LinkedHashMap<>();
+        for ( final Lane lane : lanes )
+        {
+            result.put( lane.algorithm, lane.digest.digest() );
+        }
+        digests = result;
+    }
+
+    /**
+     * @return the digest per algorithm, or null if the stream isn't closed yet
+     */
+    public Map<String, byte[]> getDigests()
+    {
+        return digests;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return nanoseconds spent digesting with the algorithm
+     */
+    public long getDigestNanos( final String algorithm )
+    {
+        return lanes.stream().filter( lane -> lane.algorithm.equals( algorithm ) ).mapToLong( lane -> lane.nanos ).sum();
+    }
+
+    private void dispatch()
+            throws IOException
+    {
+        try
+        {
+            ring.acquire();
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for checksum workers" );
+        }
+
+        final Chunk chunk = new Chunk( current, fill, lanes.size() );
+        current = pool.acquire();
+        fill = 0;
+
+        for ( final Lane lane : lanes )
+        {
+            lane.offer( chunk );
+        }
+    }
+
+    private void awaitLanes()
+            throws IOException
+    {
+        try
+        {
+            ring.acquire( RING_SIZE );
+            ring.release( RING_SIZE );
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for checksum workers" );
+        }
+    }
+
+    private final class Chunk
+    {
+        private final byte[] buffer;
+
+        private final int length;
+
+        private final AtomicInteger pending;
+
+        private Chunk( final byte[] buffer, final int length, final int lanes )
+        {
+            this.buffer = buffer;
+            this.length = length;
+            this.pending = new AtomicInteger( lanes );
+        }
+
+        private void digested()
+        {
+            if ( pending.decrementAndGet() == 0 )
+            {
+                pool.release( buffer );
+                ring.release();
+            }
+        }
+    }
+
+    /**
+     * Digests the chunks of one algorithm in order. At most one drain runs at a time, so the digest is never updated
+     * concurrently.
+     */
+    private final class Lane
+    {
+        private final String algorithm;
+
+        private final MessageDigest digest;
+
+        private final Queue<Chunk> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private long nanos;
+
+        private Lane( final String algorithm, final MessageDigest digest )
+        {
+            this.algorithm = algorithm;
+            this.digest = digest;
+        }
+
+        private void offer( final Chunk chunk )
+        {
+            queue.add( chunk );
+            if ( scheduled.compareAndSet( false, true ) )
+            {
+                if ( executor == null )
+                {
+                    drain();
+                    return;
+                }
+
+                try
+                {
+                    executor.execute( this::drain );
+                }
+                catch ( final RejectedExecutionException e )
+                {
+                    logger.trace( "Checksum executor is full, digesting {} on the writing thread", algorithm );
+                    drain();
+                }
+            }
+        }
+
+        private void drain()
+        {
+            do
+            {
+                Chunk chunk;
+                while ( ( chunk = queue.poll() ) != null )
+                {
+                    final long start = System.nanoTime();
+                    digest.update( chunk.buffer, 0, chunk.length );
+                    nanos += System.nanoTime() - start;
+                    chunk.digested();
+                }
+                scheduled.set( false );
+            }
+            while ( !queue.isEmpty() && scheduled.compareAndSet( false, true ) );
+        }
+    }
+
+    /**
+     * Chunk buffers shared by all streams. Up to a fixed number of released buffers are kept for reuse; the rest are
+     * left to the garbage collector.
+     */
+    public static final class BufferPool
+    {
+        private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger available = new AtomicInteger();
+
+        private final int maxRetained;
+
+        public BufferPool( final int maxRetained )
+        {
+            this.maxRetained = maxRetained;
+        }
+
+        byte[] acquire()
+        {
+            final byte[] buffer = buffers.poll();
+            if ( buffer == null )
+            {
+                return new byte[CHUNK_SIZE];
+            }
+            available.decrementAndGet();
+            return buffer;
+        }
+
+        void release( final byte[] buffer )
+        {
+            if ( available.incrementAndGet() <= maxRetained )
+            {
+                buffers.add( buffer );
+            }
+            else
+            {
+                available.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.filer.def;
+
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.AbstractTransferDecorator;
+import org.commonjava.maven.galley.io.checksum.ChecksummingDecoratorAdvisor.ChecksumAdvice;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.io.checksum.TransferMetadataConsumer;
+import org.commonjava.maven.galley.model.SpecialPathInfo;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.io.SpecialPathManager;
+import org.commonjava.o11yphant.metrics.api.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static org.commonjava.indy.IndyContentConstants.NANOS_PER_MILLISECOND;
+import static org.commonjava.indy.IndyContentConstants.NANOS_PER_SEC;
+import static org.commonjava.maven.galley.io.checksum.ChecksummingDecoratorAdvisor.ChecksumAdvice.CALCULATE_AND_WRITE;
+import static org.commonjava.maven.galley.io.checksum.ChecksummingDecoratorAdvisor.ChecksumAdvice.NO_DECORATE;
+
+/**
+ * Calculates the checksums (MD5, SHA-1 and SHA-256) of stored content with {@link ParallelChecksummingOutputStream},
+ * so the digests run on worker threads in parallel with the write instead of one after another on the request thread.
+ * It takes over the write side of galley's ChecksummingTransferDecorator: the checksum files and the
+ * {@link TransferMetadata} are produced the same way, following the same write advice.
+ * <p>
+ * With lazy strong digests, only MD5 and SHA-1 are calculated on write. Any SHA-256 file left from earlier content is
+ * removed, and the SHA-256 is calculated when it is first asked for (see ContentMetadataGenerator and
+ * DefaultContentDigester).
+ */
+public class ParallelChecksummingTransferDecorator
+        extends AbstractTransferDecorator
+{
+    private static final String CHECKSUM_IO = "io.checksum.";
+
+    private static final String RATE = ".rate";
+
+    private static final int MAX_RETAINED_BUFFERS = 256;
+
+    /**
+     * Same contract as galley's ChecksummingDecoratorAdvisor, for the write side.
+     */
+    @FunctionalInterface
+    public interface WriteAdvisor
+    {
+        ChecksumAdvice getWriteAdvice( Transfer transfer, TransferOperation op, EventMetadata eventMetadata );
+    }
+
+    private enum Checksum
+    {
+        MD5( ContentDigest.MD5, "MD5", ".md5", false ),
+        SHA_1( ContentDigest.SHA_1, "SHA-1", ".sha1", false ),
+        SHA_256( ContentDigest.SHA_256, "SHA-256", ".sha256", true );
+
+        private final ContentDigest digest;
+
+        private final String algorithm;
+
+        private final String extension;
+
+        private final boolean strong;
+
+        Checksum( final ContentDigest digest, final String algorithm, final String extension, final boolean strong )
+        {
+            this.digest = digest;
+            this.algorithm = algorithm;
+            this.extension = extension;
+            this.strong = strong;
+        }
+
+        private String metricName()
+        {
+            return CHECKSUM_IO + name().toLowerCase().replace( "_", "" );
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final WriteAdvisor writeAdvisor;
+
+    private final SpecialPathManager specialPathManager;
+
+    private final TransferMetadataConsumer consumer;
+
+    private final ExecutorService executor;
+
+    private final Function<String, Meter> meterProvider;
+
+    private final BiConsumer<String, Double> cumulativeTimer;
+
+    private final List<Checksum> eager;
+
+    private final List<Checksum> lazy;
+
+    private final ParallelChecksummingOutputStream.BufferPool pool =
+            new ParallelChecksummingOutputStream.BufferPool( MAX_RETAINED_BUFFERS );
+
+    public ParallelChecksummingTransferDecorator( final WriteAdvisor writeAdvisor,
+                                                  final SpecialPathManager specialPathManager,
+                                                  final TransferMetadataConsumer consumer,
+                                                  final ExecutorService executor,
+                                                  final Function<String, Meter> meterProvider,
+                                                  final BiConsumer<String, Double> cumulativeTimer,
+                                                  final boolean lazyStrongDigests )
+    {
+        this.writeAdvisor = writeAdvisor;
+        this.specialPathManager = specialPathManager;
+        this.consumer = consumer;
+        this.executor = executor;
+        this.meterProvider = meterProvider;
+        this.cumulativeTimer = cumulativeTimer;
+
+        final List<Checksum> eager = new ArrayList<>();
+        final List<Checksum> lazy = new ArrayList<>();
+        for ( final Checksum checksum : Checksum.values() )
+        {
+            ( lazyStrongDigests && checksum.strong ? lazy : eager ).add( checksum );
+        }
+        this.eager = Collections.unmodifiableList( eager );
+        this.lazy = Collections.unmodifiableList( lazy );
+    }
+
+    @Override
+    public OutputStream decorateWrite( final OutputStream stream, final Transfer transfer, final TransferOperation op,
+                                       final EventMetadata metadata )
+            throws IOException
+    {
+        final SpecialPathInfo specialPathInfo = specialPathManager.getSpecialPathInfo( transfer.getPath() );
+        if ( specialPathInfo != null && !specialPathInfo.isDecoratable() )
+        {
+            return stream;
+        }
+
+        final ChecksumAdvice advice = writeAdvisor.getWriteAdvice( transfer, op, metadata );
+        if ( advice == NO_DECORATE )
+        {
+            return stream;
+        }
+
+        if ( consumer != null )
+        {
+            consumer.removeMetadata( transfer );
+        }
+
+        final List<String> algorithms = new ArrayList<>( eager.size() );
+        eager.forEach( checksum -> algorithms.add( checksum.algorithm ) );
+
+        logger.trace( "Calculating {} of: {} in parallel (advice: {})", algorithms, transfer, advice );
+        return new ParallelChecksummingOutputStream( stream, algorithms, pool, executor )
+        {
+            @Override
+            public void close()
+                    throws IOException
+            {
+                final boolean first = getDigests() == null;
+                super.close();
+                if ( first && getDigests() != null )
+                {
+                    complete( transfer, advice, this );
+                }
+            }
+        };
+    }
+
+    private void complete( final Transfer transfer, final ChecksumAdvice advice,
+                           final ParallelChecksummingOutputStream stream )
+            throws IOException
+    {
+        final Map<String, byte[]> digests = stream.getDigests();
+        final Map<ContentDigest, String> hexDigests = new EnumMap<>( ContentDigest.class );
+
+        for ( final Checksum checksum : eager )
+        {
+            final String hex = toHex( digests.get( checksum.algorithm ) );
+            hexDigests.put( checksum.digest, hex );
+            mark( checksum, stream.getSize(), stream.getDigestNanos( checksum.algorithm ) );
+
+            if ( advice == CALCULATE_AND_WRITE )
+            {
+                final Transfer checksumFile = transfer.getSiblingMeta( checksum.extension );
+                try (OutputStream out = checksumFile.openOutputStream( TransferOperation.GENERATE, false ))
+                {
+                    out.write( hex.getBytes( StandardCharsets.UTF_8 ) );
+                }
+            }
+        }
+
+        for ( final Checksum checksum : lazy )
+        {
+            final Transfer checksumFile = transfer.getSiblingMeta( checksum.extension );
+            if ( checksumFile != null && checksumFile.exists() )
+            {
+                logger.trace( "Removing stale {} of: {}, it will be calculated on request", checksum.algorithm,
+                              transfer );
+                checksumFile.delete( false );
+            }
+        }
+
+        if ( consumer != null )
+        {
+            consumer.addMetadata( transfer, new TransferMetadata( hexDigests, stream.getSize() ) );
+        }
+    }
+
+    private void mark( final Checksum checksum, final long bytes, final long nanos )
+    {
+        if ( nanos <= 0 )
+        {
+            return;
+        }
+
+        if ( meterProvider != null )
+        {
+            final Meter meter = meterProvider.apply( checksum.metricName() + RATE );
+            if ( meter != null )
+            {
+                meter.mark( (long) ( bytes / ( nanos / NANOS_PER_SEC ) ) );
+            }
+        }
+
+        if ( cumulativeTimer != null )
+        {
+            cumulativeTimer.accept( checksum.metricName(), nanos / NANOS_PER_MILLISECOND );
+        }
+    }
+
+    private static String toHex( final byte[] digest )
+    {
+        final StringBuilder sb = new StringBuilder( digest.length * 2 );
+        for ( final byte b : digest )
+        {
+            sb.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+        }
+        return sb.toString();
+    }
+}
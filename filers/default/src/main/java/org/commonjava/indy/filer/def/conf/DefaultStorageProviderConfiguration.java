@@ -18,6 +18,7 @@ package org.commonjava.indy.filer.def.conf;
 import org.commonjava.indy.conf.IndyConfigInfo;
 import org.commonjava.indy.conf.SystemPropertyProvider;
 import org.commonjava.propulsor.config.annotation.ConfigName;
+import org.commonjava.indy.content.ContentDigester;
 import org.commonjava.propulsor.config.annotation.SectionName;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -55,6 +56,10 @@ public class DefaultStorageProviderConfiguration
 
     private boolean physicalFileExistenceCheckEnabled = false;
 
+    private boolean parallelChecksumEnabled = false;
+
+    private boolean lazyStrongChecksumEnabled = false;
+
     public DefaultStorageProviderConfiguration()
     {
     }
@@ -113,6 +118,8 @@ public class DefaultStorageProviderConfiguration
         Properties p = new Properties();
         p.setProperty( STORAGE_DIR, getStorageRootDirectory().getAbsolutePath() );
         p.setProperty( NFS_STORAGE_DIR, getStorageRootDirectory().getAbsolutePath() );
+        p.setProperty( ContentDigester.LAZY_STRONG_DIGESTS,
+                       String.valueOf( isParallelChecksumEnabled() && isLazyStrongChecksumEnabled() ) );
         return p;
     }
 
@@ -244,4 +251,33 @@ public class DefaultStorageProviderConfiguration
     public void setPhysicalFileExistenceCheckEnabled(boolean physicalFileExistenceCheckEnabled) {
         this.physicalFileExistenceCheckEnabled = physicalFileExistenceCheckEnabled;
     }
+
+    public boolean isParallelChecksumEnabled()
+    {
+        return parallelChecksumEnabled;
+    }
+
+    /**
+     * Calculate the checksums of stored content on worker threads, in parallel with the write.
+     */
+    @ConfigName( "storage.checksum.parallel.enabled" )
+    public void setParallelChecksumEnabled( boolean parallelChecksumEnabled )
+    {
+        this.parallelChecksumEnabled = parallelChecksumEnabled;
+    }
+
+    public boolean isLazyStrongChecksumEnabled()
+    {
+        return lazyStrongChecksumEnabled;
+    }
+
+    /**
+     * Calculate the SHA-256 of stored content when it is first asked for instead of on write. Only used together with
+     * storage.checksum.parallel.enabled.
+     */
+    @ConfigName( "storage.checksum.lazy.strong.enabled" )
+    public void setLazyStrongChecksumEnabled( boolean lazyStrongChecksumEnabled )
+    {
+        this.lazyStrongChecksumEnabled = lazyStrongChecksumEnabled;
+    }
 }
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.filer.def;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ParallelChecksummingOutputStreamTest
+{
+    private static final List<String> ALGORITHMS = Arrays.asList( "MD5", "SHA-1", "SHA-256" );
+
+    private final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+
+    private final ParallelChecksummingOutputStream.BufferPool pool = new ParallelChecksummingOutputStream.BufferPool( 4 );
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void digestsMatchSequentialDigests()
+            throws Exception
+    {
+        // spans more chunks than the ring holds, with a partial last chunk
+        byte[] content = new byte[ParallelChecksummingOutputStream.CHUNK_SIZE * 20 + 123];
+        new Random( 42 ).nextBytes( content );
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        ParallelChecksummingOutputStream stream =
+                new ParallelChecksummingOutputStream( written, ALGORITHMS, pool, executor );
+
+        stream.write( content[0] );
+        for ( int off = 1; off < content.length; off += 7001 )
+        {
+            stream.write( content, off, Math.min( 7001, content.length - off ) );
+        }
+        stream.close();
+        stream.close();
+
+        assertThat( Arrays.equals( written.toByteArray(), content ), equalTo( true ) );
+        assertThat( stream.getSize(), equalTo( (long) content.length ) );
+        for ( String algorithm : ALGORITHMS )
+        {
+            assertThat( algorithm, Arrays.equals( stream.getDigests().get( algorithm ),
+                                                  MessageDigest.getInstance( algorithm ).digest( content ) ),
+                        equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void digestsOnWritingThreadWithoutExecutor()
+            throws Exception
+    {
+        byte[] content = "hello".getBytes();
+
+        ParallelChecksummingOutputStream stream =
+                new ParallelChecksummingOutputStream( new ByteArrayOutputStream(), ALGORITHMS, pool, null );
+        stream.write( content );
+        stream.close();
+
+        assertThat( Arrays.equals( stream.getDigests().get( "MD5" ), MessageDigest.getInstance( "MD5" ).digest( content ) ),
+                    equalTo( true ) );
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.filer.def;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.content.IndyPathGenerator;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.io.checksum.ChecksummingDecoratorAdvisor.ChecksumAdvice;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.io.checksum.TransferMetadataConsumer;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.commonjava.o11yphant.metrics.api.Meter;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.commonjava.maven.galley.io.checksum.ChecksummingDecoratorAdvisor.ChecksumAdvice.CALCULATE_AND_WRITE;
+import static org.commonjava.maven.galley.io.checksum.ChecksummingDecoratorAdvisor.ChecksumAdvice.CALCULATE_NO_WRITE;
+import static org.commonjava.maven.galley.io.checksum.ChecksummingDecoratorAdvisor.ChecksumAdvice.NO_DECORATE;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ParallelChecksummingTransferDecoratorTest
+{
+    private static final String PATH = "org/foo/1/foo-1.jar";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+
+    private final HostedRepository repo = new HostedRepository( MAVEN_PKG_KEY, "test" );
+
+    private final RecordingConsumer consumer = new RecordingConsumer();
+
+    private final Map<String, Long> marked = new HashMap<>();
+
+    private final Map<String, Double> timed = new HashMap<>();
+
+    private final List<TransferOperation> advised = new ArrayList<>();
+
+    private CacheProvider cacheProvider;
+
+    private byte[] content;
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void noDecorateAdviceLeavesTheWriteAlone()
+            throws Exception
+    {
+        setup( NO_DECORATE, false );
+
+        store( PATH );
+
+        assertThat( advised, equalTo( Collections.singletonList( TransferOperation.UPLOAD ) ) );
+        assertThat( read( getTransfer( PATH ) ), equalTo( content ) );
+        assertNoChecksumFiles();
+        assertThat( consumer.removed, equalTo( 0 ) );
+        assertThat( consumer.added, nullValue() );
+        assertThat( marked.isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void calculateAndWriteAdviceWritesEveryChecksum()
+            throws Exception
+    {
+        setup( CALCULATE_AND_WRITE, false );
+
+        store( PATH );
+
+        assertThat( read( getTransfer( PATH ) ), equalTo( content ) );
+        assertChecksumFile( ".md5", "MD5" );
+        assertChecksumFile( ".sha1", "SHA-1" );
+        assertChecksumFile( ".sha256", "SHA-256" );
+
+        assertThat( consumer.removed, equalTo( 1 ) );
+        assertThat( consumer.added.getSize(), equalTo( (long) content.length ) );
+        assertThat( consumer.added.getDigests().get( ContentDigest.MD5 ), equalTo( hex( "MD5" ) ) );
+        assertThat( consumer.added.getDigests().get( ContentDigest.SHA_1 ), equalTo( hex( "SHA-1" ) ) );
+        assertThat( consumer.added.getDigests().get( ContentDigest.SHA_256 ), equalTo( hex( "SHA-256" ) ) );
+    }
+
+    @Test
+    public void calculateNoWriteAdviceOnlyKeepsMetadata()
+            throws Exception
+    {
+        setup( CALCULATE_NO_WRITE, false );
+
+        store( PATH );
+
+        assertNoChecksumFiles();
+        assertThat( consumer.added.getDigests().get( ContentDigest.SHA_256 ), equalTo( hex( "SHA-256" ) ) );
+    }
+
+    @Test
+    public void checksumFilesAreNotDecorated()
+            throws Exception
+    {
+        setup( CALCULATE_AND_WRITE, false );
+
+        store( PATH );
+
+        // only the content itself was advised, not the checksum files written for it
+        assertThat( advised, equalTo( Collections.singletonList( TransferOperation.UPLOAD ) ) );
+    }
+
+    @Test
+    public void lazyStrongDigestsRemoveStaleSha256()
+            throws Exception
+    {
+        setup( CALCULATE_AND_WRITE, true );
+        try (OutputStream out = getTransfer( PATH ).getSiblingMeta( ".sha256" )
+                                                   .openOutputStream( TransferOperation.GENERATE, false ))
+        {
+            out.write( "stale".getBytes( StandardCharsets.UTF_8 ) );
+        }
+
+        store( PATH );
+
+        assertChecksumFile( ".md5", "MD5" );
+        assertChecksumFile( ".sha1", "SHA-1" );
+        assertThat( getTransfer( PATH ).getSiblingMeta( ".sha256" ).exists(), equalTo( false ) );
+        assertThat( consumer.added.getDigests().containsKey( ContentDigest.SHA_256 ), equalTo( false ) );
+        assertThat( consumer.added.getDigests().get( ContentDigest.SHA_1 ), equalTo( hex( "SHA-1" ) ) );
+    }
+
+    @Test
+    public void eachDigestIsMetered()
+            throws Exception
+    {
+        setup( CALCULATE_AND_WRITE, false );
+
+        store( PATH );
+
+        assertThat( marked.keySet(), hasItems( "io.checksum.md5.rate", "io.checksum.sha1.rate",
+                                               "io.checksum.sha256.rate" ) );
+        assertThat( timed.keySet(), hasItems( "io.checksum.md5", "io.checksum.sha1", "io.checksum.sha256" ) );
+        marked.values().forEach( rate -> assertThat( rate > 0, equalTo( true ) ) );
+    }
+
+    @Test
+    public void lazyDigestsAreNotMetered()
+            throws Exception
+    {
+        setup( CALCULATE_AND_WRITE, true );
+
+        store( PATH );
+
+        assertThat( marked.keySet(), hasItems( "io.checksum.md5.rate", "io.checksum.sha1.rate" ) );
+        assertThat( marked.keySet(), not( hasItems( "io.checksum.sha256.rate" ) ) );
+        assertThat( timed.keySet(), not( hasItems( "io.checksum.sha256" ) ) );
+    }
+
+    private void setup( final ChecksumAdvice advice, final boolean lazyStrongDigests )
+            throws IOException
+    {
+        // spans several chunks, so every digest takes measurable time
+        content = new byte[ParallelChecksummingOutputStream.CHUNK_SIZE * 16 + 123];
+        new Random( 42 ).nextBytes( content );
+
+        final ParallelChecksummingTransferDecorator decorator = new ParallelChecksummingTransferDecorator(
+                ( transfer, op, eventMetadata ) -> {
+                    advised.add( op );
+                    return advice;
+                }, new SpecialPathManagerImpl(), consumer, executor, this::meter, timed::put, lazyStrongDigests );
+
+        cacheProvider = new FileCacheProvider( temp.newFolder( "cache" ), new IndyPathGenerator(),
+                                               new NoOpFileEventManager(), new TransferDecoratorManager( decorator ),
+                                               false );
+    }
+
+    private Meter meter( final String name )
+    {
+        return (Meter) Proxy.newProxyInstance( getClass().getClassLoader(), new Class[] { Meter.class },
+                                               ( proxy, method, args ) -> {
+                                                   if ( "mark".equals( method.getName() ) && args != null )
+                                                   {
+                                                       marked.put( name, (Long) args[0] );
+                                                   }
+                                                   return null;
+                                               } );
+    }
+
+    private void store( final String path )
+            throws IOException
+    {
+        try (OutputStream out = getTransfer( path ).openOutputStream( TransferOperation.UPLOAD ))
+        {
+            out.write( content );
+        }
+    }
+
+    private void assertChecksumFile( final String extension, final String algorithm )
+            throws Exception
+    {
+        final Transfer checksum = getTransfer( PATH ).getSiblingMeta( extension );
+        assertThat( extension, new String( read( checksum ), StandardCharsets.UTF_8 ), equalTo( hex( algorithm ) ) );
+    }
+
+    private void assertNoChecksumFiles()
+    {
+        for ( final String extension : new String[] { ".md5", ".sha1", ".sha256" } )
+        {
+            assertThat( extension, getTransfer( PATH ).getSiblingMeta( extension ).exists(), equalTo( false ) );
+        }
+    }
+
+    private String hex( final String algorithm )
+            throws Exception
+    {
+        final StringBuilder sb = new StringBuilder();
+        for ( final byte b : MessageDigest.getInstance( algorithm ).digest( content ) )
+        {
+            sb.append( String.format( "%02x", b ) );
+        }
+        return sb.toString();
+    }
+
+    private static byte[] read( final Transfer transfer )
+            throws IOException
+    {
+        try (InputStream in = transfer.openInputStream())
+        {
+            return IOUtils.toByteArray( in );
+        }
+    }
+
+    private Transfer getTransfer( final String path )
+    {
+        return cacheProvider.getTransfer( new ConcreteResource( LocationUtils.toLocation( repo ), path ) );
+    }
+
+    private static final class RecordingConsumer
+            implements TransferMetadataConsumer
+    {
+        private int removed;
+
+        private TransferMetadata added;
+
+        @Override
+        public void addMetadata( final Transfer transfer, final TransferMetadata transferMetadata )
+        {
+            added = transferMetadata;
+        }
+
+        @Override
+        public void removeMetadata( final Transfer transfer )
+        {
+            removed++;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.model.core;
+
+import io.swagger.annotations.ApiModel;
+
+import java.util.List;
+import java.util.Objects;
+
+@ApiModel( description = "Request of batch files that will be retrieved from the repository and sent back as one archive."
+                + " The entries are written in the order of the paths, and format is zip (the default) or tar." )
+public class BatchArchiveRequest
+{
+
+    private StoreKey storeKey;
+
+    private List<String> paths;
+
+    private String format;
+
+    public StoreKey getStoreKey()
+    {
+        return storeKey;
+    }
+
+    public void setStoreKey( StoreKey storeKey )
+    {
+        this.storeKey = storeKey;
+    }
+
+    public List<String> getPaths()
+    {
+        return paths;
+    }
+
+    public void setPaths( List<String> paths )
+    {
+        this.paths = paths;
+    }
+
+    public String getFormat()
+    {
+        return format;
+    }
+
+    public void setFormat( String format )
+    {
+        this.format = format;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+            return true;
+        if ( o == null || getClass() != o.getClass() )
+            return false;
+        BatchArchiveRequest that = (BatchArchiveRequest) o;
+        return Objects.equals( storeKey, that.storeKey ) && Objects.equals( paths, that.paths )
+                        && Objects.equals( format, that.format );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( storeKey, paths, format );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BatchArchiveRequest{" + "storeKey=" + storeKey + ", paths=" + paths + ", format='" + format + '\''
+                        + '}';
+    }
+}
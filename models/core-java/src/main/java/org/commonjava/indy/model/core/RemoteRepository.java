@@ -47,6 +47,12 @@ public class RemoteRepository
 
     public static final int DEFAULT_MAX_CONNECTIONS = 30;
 
+    /**
+     * Store metadata key; set to "false" to stop concurrent downloads of the same path from this remote being coalesced
+     * into a single upstream request.
+     */
+    public static final String METADATA_DOWNLOAD_COALESCING = "download_coalescing";
+
     @ApiModelProperty( required = true, value = "The remote URL to proxy" )
     @JsonProperty( "url" )
     private String url;
@@ -66,6 +66,14 @@ public final class HttpUtils
         return new SimpleDateFormat( DATE_HEADER_FMT ).parse( date );
     }
 
+    /**
+     * @return a strong entity tag for content with the given checksum (hex digest), or null if there is no checksum
+     */
+    public static String formatETag( final String checksum )
+    {
+        return isEmpty( checksum ) ? null : "\"" + checksum + "\"";
+    }
+
     public static Map<String, String[]> parseQueryMap( final String query )
     {
         final Map<String, String[]> result = new HashMap<String, String[]>();
@@ -21,6 +21,9 @@ import org.infinispan.commons.api.BasicCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -156,6 +159,24 @@ public class BasicCacheHandle<K,V>
         return doExecute( "get", cache -> cache.get( key ) );
     }
 
+    /**
+     * Get the values of many keys, in one round trip where the cache supports it. Keys without a value are left out.
+     */
+    public Map<K, V> getAll( Set<K> keys )
+    {
+        return doExecute( "getAll", cache -> {
+            Map<K, V> result = new HashMap<>();
+            keys.forEach( key -> {
+                V value = cache.get( key );
+                if ( value != null )
+                {
+                    result.put( key, value );
+                }
+            } );
+            return result;
+        } );
+    }
+
     /**
      * WARNING: Be careful to use this clear operation, because we don't know if it will swept out all persistent data
      * of this cache if the persistence has been enabled for it!!!
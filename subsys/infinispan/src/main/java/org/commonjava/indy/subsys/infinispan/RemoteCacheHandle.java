@@ -18,6 +18,9 @@ package org.commonjava.indy.subsys.infinispan;
 import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.infinispan.client.hotrod.RemoteCache;
 
+import java.util.Map;
+import java.util.Set;
+
 import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
 
 public class RemoteCacheHandle<K,V> extends BasicCacheHandle<K, V>
@@ -33,6 +36,12 @@ public class RemoteCacheHandle<K,V> extends BasicCacheHandle<K, V>
         this( named, cache, null, null );
     }
 
+    @Override
+    public Map<K, V> getAll( Set<K> keys )
+    {
+        return doExecute( "getAll", cache -> ( (RemoteCache<K, V>) cache ).getAll( keys ) );
+    }
+
     @Override
     protected String getMetricName( String opName )
     {
@@ -42,11 +42,14 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
 import javax.servlet.Servlet;
 import javax.ws.rs.core.Application;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 @ApplicationScoped
@@ -57,6 +60,22 @@ public class IndyDeployment
 
     public static final String API_PREFIX = "api";
 
+    private static final String SLASH_TOLERATION_FILTER = "SlashToleration";
+
+    private static final String TRACE_FILTER = "O11yphant-Trace";
+
+    private static final String THREAD_CONTEXT_FILTER = "ThreadContext Management";
+
+    private static final String GOLDEN_SIGNALS_FILTER = "Golden-Signals";
+
+    private static final String RESOURCE_MANAGEMENT_FILTER = "Naming and Resource Management";
+
+    private static final String API_VERSIONING_FILTER = "ApiVersioning";
+
+    private static final Set<String> FILTER_NAMES = new HashSet<>(
+            Arrays.asList( SLASH_TOLERATION_FILTER, TRACE_FILTER, THREAD_CONTEXT_FILTER, GOLDEN_SIGNALS_FILTER,
+                           RESOURCE_MANAGEMENT_FILTER, API_VERSIONING_FILTER ) );
+
     @Inject
     private Instance<IndyResources> resources;
 
@@ -66,6 +85,9 @@ public class IndyDeployment
     @Inject
     private Instance<IndyDeploymentProvider> deployments;
 
+    @Inject
+    private Instance<NativeHandlerWrapper> nativeHandlers;
+
     @Inject
     private UIServlet ui;
 
@@ -175,30 +197,30 @@ public class IndyDeployment
                                                     .addMapping( "/api-docs/*" );
 
         final FilterInfo slashTolerationFilter =
-                        Servlets.filter("SlashToleration", SlashTolerationFilter.class,
+                        Servlets.filter( SLASH_TOLERATION_FILTER, SlashTolerationFilter.class,
                                  new ImmediateInstanceFactory<>(
                                          this.slashTolerationFilter ) );
 
         final FilterInfo traceFilter =
-                        Servlets.filter( "O11yphant-Trace", TraceFilter.class,
+                        Servlets.filter( TRACE_FILTER, TraceFilter.class,
                                  new ImmediateInstanceFactory<>(
                                          this.traceFilter ) );
 
         final FilterInfo threadContextFilter =
-                Servlets.filter( "ThreadContext Management", ThreadContextFilter.class,
+                Servlets.filter( THREAD_CONTEXT_FILTER, ThreadContextFilter.class,
                                  new ImmediateInstanceFactory<>(
                                          this.threadContextFilter ) );
 
-        final FilterInfo goldenSignalsFilter = Servlets.filter( "Golden-Signals", GoldenSignalsFilter.class,
+        final FilterInfo goldenSignalsFilter = Servlets.filter( GOLDEN_SIGNALS_FILTER, GoldenSignalsFilter.class,
                                                                 new ImmediateInstanceFactory<>(
                                                                         this.goldenSignalsFilter ) );
 
         final FilterInfo resourceManagementFilter =
-                Servlets.filter( "Naming and Resource Management", ResourceManagementFilter.class,
+                Servlets.filter( RESOURCE_MANAGEMENT_FILTER, ResourceManagementFilter.class,
                                  new ImmediateInstanceFactory<ResourceManagementFilter>(
                                          this.resourceManagementFilter ) );
         final FilterInfo apiVersioningFilter =
-                        Servlets.filter( "ApiVersioning", ApiVersioningFilter.class,
+                        Servlets.filter( API_VERSIONING_FILTER, ApiVersioningFilter.class,
                                          new ImmediateInstanceFactory<ApiVersioningFilter>(
                                                          this.apiVersioningFilter ) );
 
@@ -265,6 +287,8 @@ public class IndyDeployment
             DeploymentInfoUtils.mergeFromProviders( di, deploymentProviders, contextRoot, application );
         }
 
+        addNativeHandlers( di );
+
         if ( uiConfiguration.getEnabled() )
         {
             // Add UI servlet at the end so its mappings don't obscure any from add-ons.
@@ -281,6 +305,46 @@ public class IndyDeployment
         return di;
     }
 
+    /**
+     * The request filters mapped to the content API (/api/content/*), in the order the servlet container applies them.
+     * Native handlers serving content apply these themselves.
+     */
+    public List<Filter> getContentFilters()
+    {
+        return Arrays.asList( slashTolerationFilter, threadContextFilter, traceFilter, goldenSignalsFilter,
+                              resourceManagementFilter, apiVersioningFilter );
+    }
+
+    private void addNativeHandlers( final DeploymentInfo di )
+    {
+        if ( nativeHandlers == null )
+        {
+            return;
+        }
+
+        // native handlers only apply our own filters, so they would skip any an add-on registered
+        final Set<String> addOnFilters = new HashSet<>( di.getFilters().keySet() );
+        addOnFilters.removeAll( FILTER_NAMES );
+
+        for ( final NativeHandlerWrapper handler : nativeHandlers )
+        {
+            if ( !handler.isEnabled() )
+            {
+                continue;
+            }
+
+            if ( !addOnFilters.isEmpty() )
+            {
+                logger.info( "Not installing native handler: {}, add-ons registered servlet filters: {}", handler,
+                             addOnFilters );
+                continue;
+            }
+
+            logger.info( "Installing native handler: {}", handler );
+            di.addInnerHandlerChainWrapper( handler );
+        }
+    }
+
     public Set<Class<?>> getClasses()
     {
         final Set<Class<?>> classes = new LinkedHashSet<>();
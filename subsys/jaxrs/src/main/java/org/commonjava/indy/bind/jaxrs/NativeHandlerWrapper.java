@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.bind.jaxrs;
+
+import io.undertow.server.HandlerWrapper;
+
+/**
+ * Undertow handler installed in front of the servlets of the Indy deployment, after its security handlers, so it can
+ * answer some requests itself without going through RESTEasy. It is responsible for applying the request filters the
+ * servlet would have had (see {@link IndyDeployment#getContentFilters()}), and must pass anything else to the next
+ * handler.
+ */
+public interface NativeHandlerWrapper
+        extends HandlerWrapper
+{
+
+    boolean isEnabled();
+
+}
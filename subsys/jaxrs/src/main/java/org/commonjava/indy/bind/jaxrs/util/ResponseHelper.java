@@ -28,6 +28,8 @@ import org.commonjava.indy.util.ApplicationContent;
 import org.commonjava.indy.util.ApplicationHeader;
 import org.commonjava.indy.util.ApplicationStatus;
 import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
 import org.slf4j.Logger;
@@ -35,6 +37,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -43,6 +46,7 @@ import javax.ws.rs.core.Response.Status;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URI;
+import java.text.ParseException;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -68,6 +72,15 @@ public class ResponseHelper
     @Inject
     ContentDigester contentDigester;
 
+    public ResponseHelper()
+    {
+    }
+
+    public ResponseHelper( final ContentDigester contentDigester )
+    {
+        this.contentDigester = contentDigester;
+    }
+
     public Response formatRedirect( final URI uri )
     {
         ResponseBuilder builder = Response.status( Status.MOVED_PERMANENTLY ).location( uri );
@@ -137,6 +150,21 @@ public class ResponseHelper
                                                   final String contentType,
                                                   final HttpExchangeMetadata exchangeMetadata )
             throws IndyWorkflowException
+    {
+        return setInfoHeaders( builder, item, sk, path, includeContentLength, contentType, exchangeMetadata,
+                               getETag( item, exchangeMetadata ) );
+    }
+
+    /**
+     * Same as {@link #setInfoHeaders(ResponseBuilder, Transfer, StoreKey, String, boolean, String, HttpExchangeMetadata)},
+     * with an ETag already known for the content (see {@link #getETag(Transfer, HttpExchangeMetadata)}), or null for
+     * none.
+     */
+    public ResponseBuilder setInfoHeaders( final ResponseBuilder builder, final Transfer item, final StoreKey sk,
+                                                  final String path, final boolean includeContentLength,
+                                                  final String contentType,
+                                                  final HttpExchangeMetadata exchangeMetadata, final String etag )
+            throws IndyWorkflowException
     {
         Logger logger = LoggerFactory.getLogger( ResponseHelper.class );
 
@@ -178,6 +206,11 @@ public class ResponseHelper
                                 continue;
                             }
                         }
+                        else if ( ApplicationHeader.etag.upperKey().equals( key ) )
+                        {
+                            // the upstream ETag is only used when there is no checksum for the content
+                            continue;
+                        }
 
                         logger.debug( "Setting header: '{}'= '{}'", key, value );
                         builder.header( key, value );
@@ -214,6 +247,11 @@ public class ResponseHelper
                 builder.header( ApplicationHeader.content_type.key(), contentType );
             }
 
+            if ( etag != null )
+            {
+                builder.header( ApplicationHeader.etag.key(), etag );
+            }
+
             // Indy origin contains the storeKey of the repository where the content came from
             builder.header( ApplicationHeader.indy_origin.key(), LocationUtils.getKey( item ).toString() );
             
@@ -236,6 +274,146 @@ public class ResponseHelper
     }
 
 
+    /**
+     * Gets the ETag of stored content from the checksums already calculated for it, without reading the content. Its
+     * SHA-1 is used, or its MD5 if that's all there is. Without checksums, the ETag sent by the upstream server (if any)
+     * is used.
+     *
+     * @return the ETag, or null if there is none
+     */
+    public String getETag( final Transfer item, final HttpExchangeMetadata exchangeMetadata )
+    {
+        if ( item != null && contentDigester != null )
+        {
+            final TransferMetadata metadata = contentDigester.getContentMetadata( item );
+            if ( metadata != null && metadata.getDigests() != null && ( metadata.getSize() == null
+                            || metadata.getSize() == item.length() ) )
+            {
+                String checksum = metadata.getDigests().get( ContentDigest.SHA_1 );
+                if ( checksum == null )
+                {
+                    checksum = metadata.getDigests().get( ContentDigest.MD5 );
+                }
+
+                if ( checksum != null )
+                {
+                    return HttpUtils.formatETag( checksum );
+                }
+            }
+        }
+
+        return getResponseHeader( exchangeMetadata, ApplicationHeader.etag );
+    }
+
+    /**
+     * @return the Last-Modified header sent for the content: the one from the upstream server if any, otherwise the
+     * timestamp of the stored file
+     */
+    public String getLastModified( final Transfer item, final HttpExchangeMetadata exchangeMetadata )
+    {
+        final String lastModified = getResponseHeader( exchangeMetadata, ApplicationHeader.last_modified );
+        if ( lastModified != null || item == null || !item.exists() )
+        {
+            return lastModified;
+        }
+
+        return HttpUtils.formatDateHeader( item.lastModified() );
+    }
+
+    /**
+     * Evaluates the If-None-Match and If-Modified-Since headers of a GET or HEAD request (RFC 7232). If-Modified-Since
+     * is only used when there is no If-None-Match.
+     *
+     * @param etag the current ETag of the content, or null
+     * @param lastModified the current Last-Modified of the content, or null
+     * @return true if the client's copy is current, so a 304 (Not Modified) can be sent instead of the content
+     */
+    public boolean isNotModified( final HttpServletRequest request, final String etag, final String lastModified )
+    {
+        final String ifNoneMatch = request.getHeader( ApplicationHeader.if_none_match.key() );
+        if ( ifNoneMatch != null )
+        {
+            for ( final String tag : ifNoneMatch.split( "," ) )
+            {
+                final String candidate = tag.trim();
+                // "*" matches any current content, with or without an ETag
+                if ( "*".equals( candidate ) || etag != null && opaqueTag( etag ).equals( opaqueTag( candidate ) ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        final String ifModifiedSince = request.getHeader( ApplicationHeader.if_modified_since.key() );
+        if ( ifModifiedSince == null || lastModified == null )
+        {
+            return false;
+        }
+
+        try
+        {
+            return HttpUtils.parseDateHeader( lastModified ).getTime() / 1000
+                            <= HttpUtils.parseDateHeader( ifModifiedSince.trim() ).getTime() / 1000;
+        }
+        catch ( final ParseException e )
+        {
+            LOGGER.debug( "Cannot parse If-Modified-Since: {} or Last-Modified: {}", ifModifiedSince, lastModified );
+            return false;
+        }
+    }
+
+    /**
+     * Builds a 304 (Not Modified) response with the validators of the content, without its body.
+     */
+    public Response formatNotModifiedResponse( final Transfer item, final String etag, final String lastModified,
+                                               final Consumer<ResponseBuilder> builderModifier )
+    {
+        setContext( HTTP_STATUS, String.valueOf( ApplicationStatus.NOT_MODIFIED.code() ) );
+
+        final ResponseBuilder builder = Response.notModified();
+        if ( etag != null )
+        {
+            builder.header( ApplicationHeader.etag.key(), etag );
+        }
+        if ( lastModified != null )
+        {
+            builder.header( ApplicationHeader.last_modified.key(), lastModified );
+        }
+        if ( item != null )
+        {
+            builder.header( ApplicationHeader.indy_origin.key(), LocationUtils.getKey( item ).toString() );
+        }
+
+        if ( builderModifier != null )
+        {
+            builderModifier.accept( builder );
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * @return the first value of a response header saved from the upstream server, or null
+     */
+    public static String getResponseHeader( final HttpExchangeMetadata exchangeMetadata,
+                                            final ApplicationHeader header )
+    {
+        if ( exchangeMetadata == null || exchangeMetadata.getResponseHeaders() == null )
+        {
+            return null;
+        }
+
+        final List<String> values = exchangeMetadata.getResponseHeaders().get( header.upperKey() );
+        return values == null || values.isEmpty() ? null : values.get( 0 );
+    }
+
+    // weak comparison, as If-None-Match uses
+    private static String opaqueTag( final String etag )
+    {
+        return etag.startsWith( "W/" ) ? etag.substring( 2 ) : etag;
+    }
+
     public Response formatResponseFromMetadata( final HttpExchangeMetadata metadata )
     {
         return formatResponseFromMetadata( metadata, null );
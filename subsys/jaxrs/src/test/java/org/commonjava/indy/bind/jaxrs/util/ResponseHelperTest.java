@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2011-2022 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.bind.jaxrs.util;
+
+import org.commonjava.indy.model.util.HttpUtils;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.Response;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ResponseHelperTest
+{
+    private static final String ETAG = "\"0123456789abcdef\"";
+
+    private static final long MODIFIED = 1500000000000L;
+
+    private static final String LAST_MODIFIED = HttpUtils.formatDateHeader( MODIFIED );
+
+    private static final String EARLIER = HttpUtils.formatDateHeader( MODIFIED - 60000 );
+
+    private static final String LATER = HttpUtils.formatDateHeader( MODIFIED + 60000 );
+
+    private final ResponseHelper helper = new ResponseHelper();
+
+    @Test
+    public void noValidatorsMeansModified()
+    {
+        assertThat( helper.isNotModified( request(), ETAG, LAST_MODIFIED ), equalTo( false ) );
+    }
+
+    @Test
+    public void ifNoneMatch()
+    {
+        assertThat( helper.isNotModified( request( "If-None-Match", ETAG ), ETAG, null ), equalTo( true ) );
+        assertThat( helper.isNotModified( request( "If-None-Match", "\"other\"" ), ETAG, null ), equalTo( false ) );
+        assertThat( helper.isNotModified( request( "If-None-Match", "\"other\", " + ETAG ), ETAG, null ),
+                    equalTo( true ) );
+
+        // nothing to compare a tag to
+        assertThat( helper.isNotModified( request( "If-None-Match", ETAG ), null, LAST_MODIFIED ), equalTo( false ) );
+    }
+
+    @Test
+    public void ifNoneMatchComparesWeakly()
+    {
+        assertThat( helper.isNotModified( request( "If-None-Match", "W/" + ETAG ), ETAG, null ), equalTo( true ) );
+        assertThat( helper.isNotModified( request( "If-None-Match", ETAG ), "W/" + ETAG, null ), equalTo( true ) );
+        assertThat( helper.isNotModified( request( "If-None-Match", "W/\"other\"" ), ETAG, null ), equalTo( false ) );
+    }
+
+    @Test
+    public void ifNoneMatchAnything()
+    {
+        assertThat( helper.isNotModified( request( "If-None-Match", "*" ), ETAG, null ), equalTo( true ) );
+        assertThat( helper.isNotModified( request( "If-None-Match", "*" ), null, null ), equalTo( true ) );
+    }
+
+    @Test
+    public void ifModifiedSince()
+    {
+        assertThat( helper.isNotModified( request( "If-Modified-Since", LAST_MODIFIED ), ETAG, LAST_MODIFIED ),
+                    equalTo( true ) );
+        assertThat( helper.isNotModified( request( "If-Modified-Since", LATER ), ETAG, LAST_MODIFIED ),
+                    equalTo( true ) );
+        assertThat( helper.isNotModified( request( "If-Modified-Since", EARLIER ), ETAG, LAST_MODIFIED ),
+                    equalTo( false ) );
+
+        assertThat( helper.isNotModified( request( "If-Modified-Since", LATER ), ETAG, null ), equalTo( false ) );
+        assertThat( helper.isNotModified( request( "If-Modified-Since", "yesterday" ), ETAG, LAST_MODIFIED ),
+                    equalTo( false ) );
+    }
+
+    @Test
+    public void ifNoneMatchTakesPrecedence()
+    {
+        // a matching date doesn't help a tag that doesn't match
+        assertThat( helper.isNotModified( request( "If-None-Match", "\"other\"", "If-Modified-Since", LATER ), ETAG,
+                                          LAST_MODIFIED ), equalTo( false ) );
+
+        // and an outdated date doesn't hurt a tag that does
+        assertThat( helper.isNotModified( request( "If-None-Match", ETAG, "If-Modified-Since", EARLIER ), ETAG,
+                                          LAST_MODIFIED ), equalTo( true ) );
+    }
+
+    @Test
+    public void notModifiedResponseHasValidatorsOnly()
+    {
+        Response response = helper.formatNotModifiedResponse( null, ETAG, LAST_MODIFIED,
+                                                              builder -> builder.header( "X-Test", "yes" ) );
+
+        assertThat( response.getStatus(), equalTo( 304 ) );
+        assertThat( response.getHeaderString( "ETag" ), equalTo( ETAG ) );
+        assertThat( response.getHeaderString( "Last-Modified" ), equalTo( LAST_MODIFIED ) );
+        assertThat( response.getHeaderString( "X-Test" ), equalTo( "yes" ) );
+        assertThat( response.getEntity(), nullValue() );
+
+        response = helper.formatNotModifiedResponse( null, null, null, null );
+        assertThat( response.getStatus(), equalTo( 304 ) );
+        assertThat( response.getHeaderString( "ETag" ), nullValue() );
+        assertThat( response.getHeaderString( "Last-Modified" ), nullValue() );
+    }
+
+    private static HttpServletRequest request( final String... headers )
+    {
+        final Map<String, String> values = new HashMap<>();
+        for ( int i = 0; i < headers.length; i += 2 )
+        {
+            values.put( headers[i], headers[i + 1] );
+        }
+
+        return (HttpServletRequest) Proxy.newProxyInstance( ResponseHelperTest.class.getClassLoader(),
+                                                            new Class[] { HttpServletRequest.class },
+                                                            ( proxy, method, args ) -> {
+                                                                if ( "getHeader".equals( method.getName() ) )
+                                                                {
+                                                                    return values.get( args[0] );
+                                                                }
+                                                                throw new UnsupportedOperationException(
+                                                                        method.getName() );
+                                                            } );
+    }
+}